@@ -0,0 +1,666 @@
+package watson;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+  * Local HTTP/JSON API over a {@link Database}, so that other tools can read
+  * and write contacts without running the GUI.
+  *
+  * <p>Every request is authenticated with HTTP Basic authentication, as a
+  * user of the database (or the DBO), and runs in a
+  * {@link Database#session session} of that user's, borrowed from a
+  * {@link ConnectionPool}, so any number of users can be served at once.
+  * Requests run on virtual threads where the JVM has them (Java 21 and
+  * later), and on a pool of ordinary threads otherwise; either way, at most
+  * {@code maxSessions} use the database at once, and the rest wait (for up to
+  * {@value BUSY_SECONDS} seconds, and then get {@code 503}).</p>
+  *
+  * <p>Basic authentication sends passwords in the clear, so the server only
+  * listens on the loopback interface.</p>
+  *
+  * <pre>{@code
+  * $ WATSON_BOOT_PASSWORD=bootpass ./server example --port 8080
+  * $ curl -u jeff:jeffpass localhost:8080/contacts?q=mark
+  * [{"id":1,"firstname":"Mark","surname":"Jones","phone":"+44567829344","groups":["FAMILY","LADS"]}]
+  * $ curl -u jeff:jeffpass -d '{"firstname":"Anne","phone":"+353871234567"}' localhost:8080/contacts
+  * {"ids":[7]}
+  * }</pre>
+  *
+  * <p>Endpoints (request and response bodies are JSON):</p>
+  *
+  * <pre>
+  * GET    /contacts[?q=TEXT&amp;limit=N]  contacts, with their groups; with q, those
+  *                                    matching filter text (see Database.filterContacts())
+  * POST   /contacts                   add a contact {"firstname": ..., ...}, or an array of them
+  * GET    /contacts/ID                one contact
+  * PUT    /contacts/ID                replace a contact
+  * DELETE /contacts/ID                delete a contact
+  * GET    /groups                     names of groups
+  * GET    /groups/NAME                IDs of a group's members
+  * POST   /groups/NAME                add contacts [ID, ...] to a group
+  * DELETE /groups/NAME[?ids=ID,...]   remove contacts from a group, or delete it
+  * GET    /users                      names of users (DBO only)
+  * POST   /users                      add a user {"username": ..., "password": ...} (DBO only)
+  * DELETE /users/NAME                 delete a user (DBO only)
+  * PUT    /password                   change your password {"password": ...}
+  * </pre>
+  *
+  * <p>Failures are reported as {@code {"error": "..."}}, with the message
+  * which would have been logged, and status {@code 400} (the operation
+  * failed), {@code 401} (wrong user name or password), {@code 403},
+  * {@code 404}, {@code 405}, {@code 413} (body too large), or
+  * {@code 503}.</p>
+  *
+  * <p>The script {@code src/main/resources/LoadTest.java} measures the
+  * server's throughput and latency.</p>
+  *
+  **/
+public final class ApiServer {
+
+  /** Port on which the server listens, unless told otherwise. **/
+  public static final int DEFAULT_PORT = 8080;
+
+  /** Sessions which may use the database at once, unless told otherwise. **/
+  public static final int DEFAULT_SESSIONS = 16;
+
+  /** Longest time (in seconds) a request waits for a free session. **/
+  static final long BUSY_SECONDS = 10;
+
+  /** Most contacts returned for filter text, unless a limit is given. **/
+  static final int DEFAULT_LIMIT = 1000;
+
+  /** Largest request body accepted, in bytes. **/
+  static final int MAX_BODY = 64 << 20;
+
+  private static final String USAGE = String.join("\n",
+    "usage: server <database> [--port <port>] [--sessions <n>] [--network [<port>]]",
+    "",
+    "--network opens the database through a Derby network server on localhost",
+    "the boot password is read from WATSON_BOOT_PASSWORD, or the console");
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final ConnectionPool pool;
+
+  // permits to use the database; one per session
+  private final int maxSessions;
+  private final Semaphore permits;
+
+  private ApiServer (HttpServer server, ExecutorService executor, ConnectionPool pool, int maxSessions) {
+    this.server = server;
+    this.executor = executor;
+    this.pool = pool;
+    this.maxSessions = maxSessions;
+    this.permits = new Semaphore(maxSessions, true);
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  STARTING AND STOPPING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Runs a server until the JVM is stopped; see {@link ApiServer} for usage.
+    *
+    * @param args database name, and options
+    *
+    **/
+  public static void main (String[] args) {
+    List<String> rest = new ArrayList<>(Arrays.asList(args));
+    int port = DEFAULT_PORT, maxSessions = DEFAULT_SESSIONS;
+
+    if (!NetworkServer.option(rest)) {
+      Log.flush();
+      System.exit(1);
+    }
+
+    try {
+      for (int at; (at = rest.indexOf("--port")) >= 0; rest.subList(at, at + 2).clear())
+        port = Integer.parseInt(rest.get(at + 1));
+      for (int at; (at = rest.indexOf("--sessions")) >= 0; rest.subList(at, at + 2).clear())
+        maxSessions = Integer.parseInt(rest.get(at + 1));
+    } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+      rest.clear();
+    }
+
+    if (rest.size() != 1) {
+      System.err.println(USAGE);
+      System.exit(2);
+    }
+
+    String bootPassword = Cli.secret("WATSON_BOOT_PASSWORD", "boot password for " + rest.get(0));
+    Optional<ApiServer> server = bootPassword == null ? Optional.empty() :
+      start(rest.get(0), bootPassword, port, maxSessions);
+
+    if (!server.isPresent()) {
+      Log.flush();
+      System.exit(1);
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> { server.get().stop(); Log.flush(); }));
+  }
+
+  /**
+    * Starts a server, on the loopback interface, over an existing database.
+    *
+    * @param dbName name of the database
+    * @param bootPassword boot password for the database
+    * @param port port on which to listen, or {@code 0} for any free port
+    * @param maxSessions most requests which may use the database at once
+    *
+    * @return the running server, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public static Optional<ApiServer> start (String dbName, String bootPassword, int port, int maxSessions) {
+    String opName = "start()";
+
+    if (dbName == null || bootPassword == null || maxSessions < 1) {
+      IOUtils.printError(opName, "database name and boot password cannot be null, and sessions must be at least 1");
+      return Optional.empty();
+    }
+
+    // sessions never create databases, so catch a mistyped name now (a
+    // network server's databases may not be in this directory, though)
+    if (!NetworkServer.attached() && !Files.isDirectory(Paths.get(dbName))) {
+      IOUtils.printError(opName, "no database named \"" + dbName + "\"");
+      return Optional.empty();
+    }
+
+    HttpServer http;
+    try {
+      http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 256);
+    } catch (IOException ex) {
+      IOUtils.printError(opName, "could not listen on port " + port + ": " + ex.getMessage());
+      return Optional.empty();
+    }
+
+    ExecutorService executor = executor();
+    ApiServer server = new ApiServer(http, executor, new ConnectionPool(dbName, bootPassword, maxSessions), maxSessions);
+    http.createContext("/", server::handle);
+    http.setExecutor(executor);
+    http.start();
+
+    IOUtils.printMessage(opName, "serving database \"" + dbName + "\" on http://" +
+      http.getAddress().getHostString() + ":" + http.getAddress().getPort() + "/ (" +
+      (executor.getClass().getName().contains("ThreadPerTask") ? "virtual" : "platform") + " threads)");
+    return Optional.of(server);
+  }
+
+  /**
+    * Returns the port on which this server is listening.
+    *
+    * @return the server's port
+    *
+    **/
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+    * Stops this server: waits (up to a second) for requests in progress to
+    * finish, and closes the pooled sessions.
+    *
+    **/
+  public void stop() {
+    server.stop(1);
+    executor.shutdown();
+    pool.close();
+  }
+
+  // a virtual thread per request where the JVM has them (Java 21 and later;
+  // found reflectively, as this is built for Java 8), or else a cached pool
+  private static ExecutorService executor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+
+    } catch (ReflectiveOperationException ex) {
+      return Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "api-request");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  REQUESTS
+  //
+  //----------------------------------------------------------------------------
+
+  // a request which can't be served, with the status and message to send
+  private static final class Failure extends Exception {
+    private static final long serialVersionUID = 1L;
+    final int status;
+    Failure (int status, String message) {
+      super(message, null, false, false);
+      this.status = status;
+    }
+  }
+
+  // authenticates the request, borrows a session, and routes the request
+  private void handle (HttpExchange exchange) {
+    try {
+      try {
+        String[] credentials = credentials(exchange);
+        IOUtils.lastError(); // forget any error left by an earlier request on this thread
+
+        if (!permits.tryAcquire(BUSY_SECONDS, TimeUnit.SECONDS))
+          throw new Failure(503, "all " + maxSessions + " sessions are busy; try again later");
+
+        try {
+          Optional<Database> session = pool.borrow(credentials[0], credentials[1]);
+          if (!session.isPresent()) throw unauthorized(exchange);
+
+          try {
+            route(exchange, session.get(), credentials);
+          } finally {
+            pool.release(session.get());
+          }
+
+        } finally {
+          permits.release();
+        }
+
+      } catch (Failure f) {
+        send(exchange, f.status, error(f.getMessage()));
+
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        send(exchange, 503, error("server is stopping"));
+
+      } catch (RuntimeException ex) {
+        IOUtils.printError("handle()", "unexpected " + ex);
+        send(exchange, 500, error("internal error; see the server log"));
+      }
+
+    } catch (IOException ex) {
+      // the response couldn't be sent; the client has probably gone
+      IOUtils.printWarning("handle()", "could not respond to " + exchange.getRequestURI() + ": " + ex.getMessage());
+
+    } finally {
+      exchange.close();
+    }
+  }
+
+  // user name and password, from the Authorization header
+  private static String[] credentials (HttpExchange exchange) throws Failure {
+    String header = exchange.getRequestHeaders().getFirst("Authorization");
+    if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6)) throw unauthorized(exchange);
+
+    String decoded;
+    try {
+      decoded = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException ex) {
+      throw unauthorized(exchange);
+    }
+
+    int colon = decoded.indexOf(':');
+    if (colon < 1) throw unauthorized(exchange);
+    return new String[] { decoded.substring(0, colon), decoded.substring(colon + 1) };
+  }
+
+  private static Failure unauthorized (HttpExchange exchange) {
+    exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"watson\", charset=\"UTF-8\"");
+    return new Failure(401, "a valid user name and password are required");
+  }
+
+  private void route (HttpExchange exchange, Database db, String[] credentials)
+    throws Failure, IOException {
+
+    List<String> path = new ArrayList<>();
+    for (String segment : exchange.getRequestURI().getPath().split("/"))
+      if (!segment.isEmpty()) path.add(segment);
+
+    String method = exchange.getRequestMethod();
+    String resource = path.isEmpty() ? "" : path.get(0);
+    String name = path.size() == 2 ? path.get(1) : null;
+    if (path.size() > 2) throw new Failure(404, "no such resource");
+
+    switch (resource) {
+
+      case "contacts":
+        if (name == null) {
+          if (method.equals("GET"))  { listContacts(exchange, db); return; }
+          if (method.equals("POST")) { addContacts(exchange, db); return; }
+          throw notAllowed(exchange, "GET, POST");
+        }
+
+        int ID = id(name);
+        if (method.equals("GET")) {
+          Contact contact = db.getContact(ID).orElseThrow(() -> new Failure(404, "no contact with ID " + ID));
+          Map<String, Object> json = new LinkedHashMap<>();
+          json.put("id", ID);
+          json.putAll(json(contact));
+          send(exchange, 200, json);
+          return;
+        }
+        if (method.equals("PUT"))    { ok(exchange, db.updateContact(ID, contact(body(exchange)))); return; }
+        if (method.equals("DELETE")) { ok(exchange, db.deleteContacts(ID)); return; }
+        throw notAllowed(exchange, "GET, PUT, DELETE");
+
+      case "groups":
+        if (name == null) {
+          if (method.equals("GET")) { send(exchange, 200, succeeded(db.groups())); return; }
+          throw notAllowed(exchange, "GET");
+        }
+
+        if (method.equals("GET")) { send(exchange, 200, Collections.singletonMap("ids", members(db, name))); return; }
+        if (method.equals("POST")) { ok(exchange, db.addToGroup(name, ids(body(exchange)))); return; }
+        if (method.equals("DELETE")) {
+          String ids = query(exchange).get("ids");
+          ok(exchange, ids == null ? db.deleteGroup(name) : db.removeFromGroup(name, ids(ids)));
+          return;
+        }
+        throw notAllowed(exchange, "GET, POST, DELETE");
+
+      case "users":
+        if (!db.userIsDBO()) throw new Failure(403, "only the database owner can manage users");
+
+        if (name == null && method.equals("GET")) { send(exchange, 200, succeeded(db.users())); return; }
+        if (name == null && method.equals("POST")) {
+          Map<String, Object> user = object(body(exchange));
+          boolean added = db.addUser(string(user, "username"), string(user, "password"), credentials[1]);
+          if (!added) throw failed();
+          send(exchange, 201, Collections.singletonMap("ok", true));
+          return;
+        }
+        if (name != null && method.equals("DELETE")) {
+          boolean deleted = db.deleteUser(name, credentials[1]);
+          if (deleted) pool.invalidate(name);
+          ok(exchange, deleted);
+          return;
+        }
+        throw notAllowed(exchange, name == null ? "GET, POST" : "DELETE");
+
+      case "password":
+        if (name != null) throw new Failure(404, "no such resource");
+        if (!method.equals("PUT")) throw notAllowed(exchange, "PUT");
+
+        boolean changed = db.changePassword(credentials[1], string(object(body(exchange)), "password"));
+        if (changed) pool.invalidate(credentials[0]);
+        ok(exchange, changed);
+        return;
+
+      default:
+        throw new Failure(404, "no such resource");
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  CONTACTS
+  //
+  //----------------------------------------------------------------------------
+
+  // streams contacts (all of them, or those matching ?q=) as a JSON array
+  private static void listContacts (HttpExchange exchange, Database db) throws Failure, IOException {
+    Map<String, String> query = query(exchange);
+    String text = query.get("q");
+    int limit = query.containsKey("limit") ? id(query.get("limit")) : DEFAULT_LIMIT;
+
+    ContactStream stream = new ContactStream(exchange);
+    boolean ok = text == null ? db.contactsWithGroups(stream) :
+      db.filterContacts(text, limit, () -> stream.broken != null, stream).isPresent();
+
+    if (stream.broken != null) throw stream.broken;
+    if (stream.started) { stream.finish(ok); return; }
+    if (!ok) throw failed();
+    send(exchange, 200, Collections.emptyList());
+  }
+
+  // writes rows of contacts (after the column names) as a JSON array, starting
+  // the response with the first contact, so that it's streamed as it's read
+  private static final class ContactStream implements Consumer<List<String>> {
+    final HttpExchange exchange;
+    final StringBuilder sb = new StringBuilder();
+    OutputStream out = null;
+    boolean header = true, started = false;
+    IOException broken = null;
+
+    ContactStream (HttpExchange exchange) { this.exchange = exchange; }
+
+    @Override
+    public void accept (List<String> row) {
+      if (header) { header = false; return; }
+      if (broken != null) return;
+
+      sb.append(started ? ",\n" : "[");
+      Map<String, Object> contact = new LinkedHashMap<>();
+      contact.put("id", Integer.parseInt(row.get(0)));
+      contact.put("firstname", row.get(1));
+      contact.put("surname", row.get(2));
+      contact.put("phone", row.get(3));
+      contact.put("groups", row.get(4) == null || row.get(4).isEmpty() ?
+        Collections.emptyList() : Arrays.asList(row.get(4).split(", ")));
+      Json.write(contact, sb);
+
+      try {
+        if (!started) {
+          started = true;
+          exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+          exchange.sendResponseHeaders(200, 0); // chunked
+          out = exchange.getResponseBody();
+        }
+        if (sb.length() >= 1 << 16) flush();
+      } catch (IOException ex) {
+        broken = ex;
+      }
+    }
+
+    void flush() throws IOException {
+      out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+      sb.setLength(0);
+    }
+
+    // ends the array; if reading failed part-way, the array is left
+    // unterminated, so the client can't mistake it for a complete result
+    void finish (boolean ok) throws IOException {
+      if (ok) sb.append("]\n");
+      else IOUtils.printWarning("listContacts()", "reading contacts failed part-way; response truncated");
+      flush();
+    }
+  }
+
+  private static void addContacts (HttpExchange exchange, Database db) throws Failure, IOException {
+    Object body = body(exchange);
+
+    List<Contact> contacts = new ArrayList<>();
+    if (body instanceof List) for (Object element : (List<?>) body) contacts.add(contact(element));
+    else contacts.add(contact(body));
+
+    int[] IDs = succeeded(db.addContacts(contacts));
+    send(exchange, 201, Collections.singletonMap("ids", IDs));
+  }
+
+  // the IDs of a group's members, found with SQL rather than the session's
+  // group index (see Database.contactsMatching()), which would have to be
+  // refilled after every change made by another of the user's sessions
+  private static List<Integer> members (Database db, String group) throws Failure {
+    String criteria = succeeded(db.smartGroups()).get(group.toUpperCase(Locale.ROOT));
+
+    ContactCriteria members;
+    try {
+      members = criteria == null ? new ContactCriteria().inGroup(group) :
+        ContactCriteria.parse(criteria).orElseThrow(ApiServer::failed);
+    } catch (IllegalArgumentException ex) {
+      throw new Failure(400, ex.getMessage());
+    }
+    return succeeded(db.findContacts(members));
+  }
+
+  // a Contact from a JSON object of its fields (any missing field is unset)
+  private static Contact contact (Object json) throws Failure {
+    Map<String, Object> fields = object(json);
+    Contact contact = new Contact();
+
+    for (Map.Entry<String, Object> e : fields.entrySet()) {
+      if (!(e.getValue() == null || e.getValue() instanceof String))
+        throw new Failure(400, "field \"" + e.getKey() + "\" must be a string or null");
+
+      // set() logs (rather than throws) an error for an unknown or invalid field
+      contact.set(e.getKey(), (String) e.getValue());
+      String error = IOUtils.lastError();
+      if (error != null) throw new Failure(400, error);
+    }
+    return contact;
+  }
+
+  // a Contact's fields, as a JSON object
+  private static Map<String, Object> json (Contact contact) {
+    Map<String, Object> json = new LinkedHashMap<>();
+    for (String KEY : contact.info.keySet()) json.put(KEY.toLowerCase(), contact.raw(KEY));
+    return json;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  REQUEST AND RESPONSE BODIES
+  //
+  //----------------------------------------------------------------------------
+
+  // the request body, parsed as JSON
+  private static Object body (HttpExchange exchange) throws Failure, IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+
+    try (InputStream in = exchange.getRequestBody()) {
+      for (int n; (n = in.read(buffer)) > 0; ) {
+        if (bytes.size() + n > MAX_BODY)
+          throw new Failure(413, "request body is larger than " + (MAX_BODY >> 20) + " MB");
+        bytes.write(buffer, 0, n);
+      }
+    }
+
+    try {
+      return Json.parse(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    } catch (IllegalArgumentException ex) {
+      throw new Failure(400, ex.getMessage());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> object (Object json) throws Failure {
+    if (json instanceof Map) return (Map<String, Object>) json;
+    throw new Failure(400, "expected a JSON object");
+  }
+
+  private static String string (Map<String, Object> json, String key) throws Failure {
+    Object value = json.get(key);
+    if (value instanceof String) return (String) value;
+    throw new Failure(400, "expected a string \"" + key + "\"");
+  }
+
+  // contact IDs, from a JSON array of numbers, or a comma-separated list
+  private static int[] ids (Object json) throws Failure {
+    List<?> list = json instanceof String ? Arrays.asList(((String) json).split(",")) :
+      json instanceof List ? (List<?>) json : null;
+    if (list == null) throw new Failure(400, "expected an array of contact IDs");
+
+    int[] IDs = new int[list.size()];
+    for (int ii = 0; ii < IDs.length; ++ii) {
+      Object ID = list.get(ii);
+      if (ID instanceof Long) IDs[ii] = (int) (long) (Long) ID;
+      else if (ID instanceof String) IDs[ii] = id(((String) ID).trim());
+      else throw new Failure(400, "expected an array of contact IDs");
+    }
+    return IDs;
+  }
+
+  private static int id (String text) throws Failure {
+    try {
+      return Integer.parseInt(text);
+    } catch (NumberFormatException ex) {
+      throw new Failure(400, "\"" + text + "\" is not a number");
+    }
+  }
+
+  // the (decoded) query parameters of the request URI
+  private static Map<String, String> query (HttpExchange exchange) throws Failure {
+    Map<String, String> query = new HashMap<>();
+    String raw = exchange.getRequestURI().getRawQuery();
+    if (raw == null) return query;
+
+    try {
+      for (String pair : raw.split("&")) {
+        int eq = pair.indexOf('=');
+        if (eq < 0) query.put(URLDecoder.decode(pair, "UTF-8"), "");
+        else query.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                       URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+      }
+    } catch (UnsupportedEncodingException | IllegalArgumentException ex) {
+      throw new Failure(400, "invalid query string");
+    }
+    return query;
+  }
+
+  // the value of a Database operation which succeeded, or else a failure
+  private static <T> T succeeded (Optional<T> result) throws Failure {
+    if (!result.isPresent()) throw failed();
+    return result.get();
+  }
+
+  // responds {"ok": true}, if a Database operation succeeded
+  private static void ok (HttpExchange exchange, boolean succeeded) throws Failure, IOException {
+    if (!succeeded) throw failed();
+    send(exchange, 200, Collections.singletonMap("ok", true));
+  }
+
+  // a failed Database operation, with the reason it logged (if any)
+  private static Failure failed() {
+    String error = IOUtils.lastError();
+    return new Failure(400, error == null ? "operation failed" : error);
+  }
+
+  private static Failure notAllowed (HttpExchange exchange, String allowed) {
+    exchange.getResponseHeaders().set("Allow", allowed);
+    return new Failure(405, "method not allowed; use " + allowed);
+  }
+
+  private static Map<String, Object> error (String message) {
+    return Collections.singletonMap("error", message);
+  }
+
+  private static void send (HttpExchange exchange, int status, Object json) throws IOException {
+    byte[] bytes = (Json.write(json) + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+}
@@ -1,5 +1,9 @@
 package watson;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
@@ -21,12 +25,21 @@ public class App extends Application {
   /**
     * Entry point for MyContacts application.
     *
+    * <p>With the option {@code --network [port]}, databases are opened through
+    * a {@link NetworkServer} on {@code localhost} (started, if need be), so
+    * that several instances can share one.</p>
+    *
     * @param args arguments passed to
     * {@link Application#launch(String...) Application.launch()}
     *
     **/
   public static void main (String[] args) {
-    launch(args);
+    List<String> rest = new ArrayList<>(Arrays.asList(args));
+    if (!NetworkServer.option(rest)) {
+      Log.flush();
+      System.exit(1);
+    }
+    launch(rest.toArray(new String[0]));
   }
 
   @Override
@@ -0,0 +1,513 @@
+package watson;
+
+import java.io.IOException;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.text.SimpleDateFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+  * Online backups, log archiving, and restore / roll-forward recovery for
+  * MyContacts databases.
+  *
+  * <p>Backups are taken with Derby's {@code SYSCS_BACKUP_DATABASE_NOWAIT}
+  * procedure, which copies the database while it is open and in use. The
+  * service uses its own {@link Connection} to the database, so a backup in
+  * progress never holds the lock on the user's connection. Only the database
+  * owner (DBO) can take backups:</p>
+  *
+  * <pre>{@code
+  * jshell> BackupService bs = BackupService.open("example", "bootpass", "owner", "ownerpass", "backups", 7).get()
+  * bs ==> watson.BackupService@5ba23b66
+  *
+  * jshell> bs.backupNow()
+  *        MESSAGE | backupNow() : backed up database to backups/20261018-101500 in 212 ms
+  * $3 ==> Optional[backups/20261018-101500]
+  * }</pre>
+  *
+  * <p>Each backup is written to a new, timestamped directory under the backup
+  * root, and only the newest {@code retain} backups are kept. Backups can be
+  * taken on a fixed schedule with {@link schedule schedule()}:</p>
+  *
+  * <pre>{@code
+  * jshell> bs.schedule(1, TimeUnit.HOURS)
+  *        MESSAGE | schedule() : backing up every 1 hours
+  * $4 ==> true
+  * }</pre>
+  *
+  * <p>Derby has no incremental backup of its own. Instead, when
+  * {@link enableLogArchive log archiving} is enabled, Derby keeps every
+  * transaction log written since the last backup. A full backup plus these
+  * archived logs can be used to recover the database up to its last committed
+  * transaction with {@link rollForwardRecoveryFrom rollForwardRecoveryFrom()}.
+  * Without log archiving, {@link restoreFrom restoreFrom()} restores the
+  * database exactly as it was at the time of the backup:</p>
+  *
+  * <pre>{@code
+  * jshell> bs.close(); Database.disconnect()
+  *
+  * jshell> BackupService.restoreFrom("backups/20261018-101500", "example", "bootpass", "owner", "ownerpass")
+  *        MESSAGE | connect() : database successfully initialised
+  *        MESSAGE | restoreFrom() : restored database from backups/20261018-101500 in 530 ms
+  * $7 ==> Optional[watson.Database@4d76f3f8]
+  * }</pre>
+  *
+  **/
+public final class BackupService implements AutoCloseable {
+
+  //----------------------------------------------------------------------------
+  //
+  //  IMPLEMENTATION NOTES:
+  //
+  //  SYSCS_BACKUP_DATABASE_NOWAIT(dir) copies the database to `dir/<name>`,
+  //  where <name> is the last component of the database's path. The _NOWAIT
+  //  variants fail immediately (rather than waiting) if a transaction which
+  //  performed unlogged operations is still in progress, so a backup can
+  //  never hang behind a user's transaction.
+  //
+  //  Once log archive mode has been enabled, every subsequent backup is taken
+  //  with SYSCS_BACKUP_DATABASE_AND_ENABLE_LOG_ARCHIVE_MODE_NOWAIT, with
+  //  deleteOnlineArchivedLogFiles = 1, so that archived logs which are only
+  //  needed by older backups are pruned as new backups are taken.
+  //
+  //  Restoring replaces the database directory entirely, so the database must
+  //  not be booted while restoreFrom / rollForwardRecoveryFrom run.
+  //
+  //  see "Backing up and restoring databases" in the Derby Server and
+  //  Administration Guide: https://db.apache.org/derby/docs/10.14/adminguide/
+  //
+  //----------------------------------------------------------------------------
+
+  // name format of timestamped backup directories
+  private static final String STAMP = "yyyyMMdd-HHmmss";
+
+  private final Connection connection;
+  private final String     dbLeaf;  // last component of the database's path
+  private final Path       root;    // directory containing timestamped backups
+  private final int        retain;  // number of backups to keep
+
+  private boolean archiving = false;
+  private ScheduledExecutorService scheduler = null;
+
+  private BackupService (Connection connection, String dbLeaf, Path root, int retain) {
+    this.connection = connection;
+    this.dbLeaf     = dbLeaf;
+    this.root       = root;
+    this.retain     = retain;
+  }
+
+  /**
+    * Opens a new {@link BackupService} for the given database, which writes
+    * backups to timestamped subdirectories of {@code backupRoot}.
+    *
+    * <p>Returns {@link Optional#empty an empty Optional} if the given user is
+    * not the database owner, if {@code retain < 1}, or if a connection to the
+    * database can't be made.</p>
+    *
+    * @param dbName name of the database to back up
+    * @param bootPassword boot password of the database
+    * @param dboName username of the database owner
+    * @param dboPassword password of the database owner
+    * @param backupRoot directory in which backups will be stored
+    * @param retain number of backups to keep; older backups are deleted
+    *
+    * @return a new {@link BackupService}, wrapped in an {@link Optional}, or
+    * an {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public static Optional<BackupService> open (String dbName, String bootPassword,
+    String dboName, String dboPassword, String backupRoot, int retain) {
+
+    String opName = "open()";
+
+    if (backupRoot == null || "".equals(backupRoot.trim())) {
+      IOUtils.printError(opName, "backup directory cannot be null, empty, or all whitespace");
+      return Optional.empty();
+    }
+
+    if (retain < 1) {
+      IOUtils.printError(opName, "must retain at least one backup");
+      return Optional.empty();
+    }
+
+    Connection conn = null;
+    BackupService service = null;
+
+    try {
+      conn = Database.newConnection(dbName, bootPassword, dboName, dboPassword);
+      boolean archiving;
+
+      // only the DBO can run the backup procedures
+      try (Statement st = conn.createStatement()) {
+        ResultSet rs = st.executeQuery("values current_user");
+        rs.next(); String USER = rs.getString(1).toUpperCase();
+
+        rs = st.executeQuery("select authorizationid from sys.sysschemas where schemaname='SYS'");
+        rs.next(); String OWNER = rs.getString(1).toUpperCase();
+
+        if (!OWNER.equals(USER)) {
+          IOUtils.printError(opName, "only database owner can back up the database");
+          return Optional.empty();
+        }
+
+        // log archive mode may have been enabled by an earlier BackupService
+        rs = st.executeQuery("values SYSCS_UTIL.SYSCS_GET_DATABASE_PROPERTY(" +
+          "'derby.storage.logArchiveMode')");
+        rs.next(); archiving = "true".equalsIgnoreCase(rs.getString(1));
+      }
+
+      Path root = Paths.get(backupRoot);
+      Files.createDirectories(root);
+
+      String leaf = Paths.get(dbName).getFileName().toString();
+      service = new BackupService(conn, leaf, root, retain);
+      service.archiving = archiving;
+      return Optional.of(service);
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+      return Optional.empty();
+
+    } catch (IOException ex) {
+      IOUtils.printError(opName, "could not create backup directory \"" + backupRoot + "\"");
+      return Optional.empty();
+
+    } finally { // the connection is only kept by a service which was opened
+      if (service == null && conn != null)
+        try { conn.close(); }
+        catch (SQLException ex) { /* nothing more can be done */ }
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  BACKUPS AND LOG ARCHIVING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Takes an online backup of the database, without blocking other users.
+    *
+    * <p>The backup is written to a new, timestamped subdirectory of the backup
+    * root. Once the backup has succeeded, all but the newest {@code retain}
+    * backups are deleted.</p>
+    *
+    * @return the directory the backup was written to, wrapped in an
+    * {@link Optional}, or an {@link Optional#empty empty Optional} if there
+    * was a problem
+    *
+    **/
+  public synchronized Optional<Path> backupNow() {
+    return backup("backupNow()");
+  }
+
+  /**
+    * Enables Derby's log archive mode and takes a backup (which is required to
+    * start archiving).
+    *
+    * <p>From this point on, every transaction log is kept until a later backup
+    * makes it redundant, allowing {@link rollForwardRecoveryFrom roll-forward
+    * recovery} to any point after this backup.</p>
+    *
+    * @return {@code true} if log archive mode was enabled and the backup succeeded
+    *
+    **/
+  public synchronized boolean enableLogArchive() {
+    archiving = true;
+    if (backup("enableLogArchive()").isPresent()) return true;
+    archiving = false;
+    return false;
+  }
+
+  /**
+    * Disables Derby's log archive mode.
+    *
+    * @param deleteArchivedLogs if {@code true}, archived log files are deleted
+    *
+    * @return {@code true} if log archive mode was successfully disabled
+    *
+    **/
+  public synchronized boolean disableLogArchive (boolean deleteArchivedLogs) {
+    try (CallableStatement cs = connection.prepareCall(
+      "call SYSCS_UTIL.SYSCS_DISABLE_LOG_ARCHIVE_MODE(?)")) {
+
+      cs.setShort(1, (short) (deleteArchivedLogs ? 1 : 0));
+      cs.execute();
+      archiving = false;
+
+      IOUtils.printMessage("disableLogArchive()", "log archive mode disabled");
+      return true;
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException("disableLogArchive()", ex);
+      return false;
+    }
+  }
+
+  /**
+    * Takes a backup immediately, then once every {@code period} {@code unit}s,
+    * on a background thread, until {@link cancel cancel()} or
+    * {@link close close()} is called.
+    *
+    * @param period time between backups
+    * @param unit unit of {@code period}
+    *
+    * @return {@code true} if the schedule was started
+    *
+    **/
+  public synchronized boolean schedule (long period, TimeUnit unit) {
+
+    if (period < 1 || unit == null) {
+      IOUtils.printError("schedule()", "period must be positive and unit cannot be null");
+      return false;
+    }
+
+    cancel();
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "watson-backup");
+      t.setDaemon(true);
+      return t;
+    });
+
+    scheduler.scheduleAtFixedRate(() -> {
+      synchronized (this) { backup("schedule()"); }
+    }, 0, period, unit);
+
+    IOUtils.printMessage("schedule()", "backing up every " + period + " " + unit.toString().toLowerCase());
+    return true;
+  }
+
+  /**
+    * Cancels scheduled backups, if any. A backup in progress is allowed to finish.
+    *
+    **/
+  public synchronized void cancel() {
+    if (scheduler == null) return;
+    scheduler.shutdown();
+    scheduler = null;
+  }
+
+  /**
+    * Returns the backups currently held in the backup root, oldest first.
+    *
+    * @return the directories of all retained backups, oldest first
+    *
+    **/
+  public List<Path> backups() {
+    try (Stream<Path> dirs = Files.list(root)) {
+      return dirs.filter(p -> Files.isDirectory(p.resolve(dbLeaf)))
+        .sorted().collect(Collectors.toList());
+
+    } catch (IOException ex) {
+      IOUtils.printError("backups()", "could not list backup directory \"" + root + "\"");
+      return new ArrayList<>();
+    }
+  }
+
+  /**
+    * Cancels scheduled backups and closes this service's connection.
+    *
+    **/
+  @Override
+  public synchronized void close() {
+    cancel();
+    try { connection.close(); }
+    catch (SQLException ex) { /* database may already be shut down */ }
+  }
+
+  // take one backup into a new timestamped directory, then apply retention
+  private Optional<Path> backup (String opName) {
+
+    Path dir = root.resolve(new SimpleDateFormat(STAMP).format(new Date()));
+    for (int ii = 1; Files.exists(dir); ++ii) // two backups in the same second
+      dir = root.resolve(new SimpleDateFormat(STAMP).format(new Date()) + "-" + ii);
+
+    String sql = archiving ?
+      "call SYSCS_UTIL.SYSCS_BACKUP_DATABASE_AND_ENABLE_LOG_ARCHIVE_MODE_NOWAIT(?, 1)" :
+      "call SYSCS_UTIL.SYSCS_BACKUP_DATABASE_NOWAIT(?)";
+
+    long start = System.nanoTime();
+
+    try (CallableStatement cs = connection.prepareCall(sql)) {
+      cs.setString(1, dir.toAbsolutePath().toString());
+      cs.execute();
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+      return Optional.empty();
+    }
+
+    long ms = (System.nanoTime() - start) / 1000000;
+    IOUtils.printMessage(opName, "backed up database to " + dir + " in " + ms + " ms");
+
+    prune(opName);
+    return Optional.of(dir);
+  }
+
+  // delete all but the newest `retain` backups
+  private void prune (String opName) {
+    List<Path> all = backups();
+    Collections.reverse(all); // newest first
+
+    for (Path old : all.subList(Math.min(retain, all.size()), all.size()))
+      try {
+        deleteRecursively(old);
+        IOUtils.printMessage(opName, "deleted expired backup " + old);
+
+      } catch (IOException ex) {
+        IOUtils.printWarning(opName, "could not delete expired backup " + old);
+      }
+  }
+
+  private static void deleteRecursively (Path path) throws IOException {
+    Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+
+      @Override
+      public FileVisitResult visitFile (Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory (Path dir, IOException ex) throws IOException {
+        if (ex != null) throw ex;
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  RESTORE AND ROLL-FORWARD RECOVERY
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Replaces the database {@code dbName} with the backup in {@code backupDir}
+    * and connects to the restored database.
+    *
+    * <p>{@code backupDir} can either be one of the timestamped directories
+    * returned by {@link backups backups()} or the database directory inside
+    * it. The database must not be in use (call
+    * {@link Database#disconnect Database.disconnect()} first), and the
+    * restore should be run by the database owner, who is the only user
+    * allowed to shut down a booted database. The time taken to restore and
+    * boot the database is printed.</p>
+    *
+    * @param backupDir directory containing the backup
+    * @param dbName name of the database to restore
+    * @param bootPassword boot password of the database
+    * @param userName name of the user logging in to the restored database
+    * @param userPassword password of the user logging in
+    *
+    * @return the restored {@link Database}, wrapped in an {@link Optional},
+    * or an {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public static Optional<Database> restoreFrom (String backupDir, String dbName,
+    String bootPassword, String userName, String userPassword) {
+    return recover("restoreFrom()", "restoreFrom", "restored database from ",
+      backupDir, dbName, bootPassword, userName, userPassword);
+  }
+
+  /**
+    * Restores the database {@code dbName} from the backup in
+    * {@code backupDir}, then replays all archived and online transaction logs
+    * written since that backup, and connects to the recovered database.
+    *
+    * <p>The backup must have been taken while log archive mode was enabled
+    * (see {@link enableLogArchive enableLogArchive()}). The database must not
+    * be in use, and recovery should be run by the database owner. The time taken to recover and boot the database is
+    * printed.</p>
+    *
+    * @param backupDir directory containing the backup
+    * @param dbName name of the database to recover
+    * @param bootPassword boot password of the database
+    * @param userName name of the user logging in to the recovered database
+    * @param userPassword password of the user logging in
+    *
+    * @return the recovered {@link Database}, wrapped in an {@link Optional},
+    * or an {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public static Optional<Database> rollForwardRecoveryFrom (String backupDir,
+    String dbName, String bootPassword, String userName, String userPassword) {
+    return recover("rollForwardRecoveryFrom()", "rollForwardRecoveryFrom",
+      "rolled database forward from ",
+      backupDir, dbName, bootPassword, userName, userPassword);
+  }
+
+  private static Optional<Database> recover (String opName, String attribute, String done,
+    String backupDir, String dbName, String bootPassword, String userName,
+    String userPassword) {
+
+    if (backupDir == null || dbName == null) {
+      IOUtils.printError(opName, "backup directory and database name cannot be null");
+      return Optional.empty();
+    }
+
+    if (Database.name() != null) {
+      IOUtils.printError(opName, "disconnect from the database before restoring it");
+      return Optional.empty();
+    }
+
+    // accept either the timestamped directory or the database directory in it
+    Path backup = Paths.get(backupDir);
+    Path leaf   = backup.resolve(Paths.get(dbName).getFileName());
+    if (Files.exists(leaf.resolve("service.properties"))) backup = leaf;
+
+    if (!Files.exists(backup.resolve("service.properties"))) {
+      IOUtils.printError(opName, "no database backup found in \"" + backupDir + "\"");
+      return Optional.empty();
+    }
+
+    // another connection (a BackupService, say) may still have the database
+    // booted, in which case Derby would silently ignore the restore attribute
+    // (with SQL authorization enabled, only the DBO may shut the database down)
+    try { // shut down database, always throws an SQLException (http://bit.ly/2AcngnA)
+      DriverManager.getConnection(NetworkServer.url(dbName) + ";user=" + userName +
+        ";password=" + userPassword + ";shutdown=true");
+
+    } catch (SQLException ex) {
+      // do nothing, this is expected
+    }
+
+    long start = System.nanoTime();
+
+    Optional<Database> optdb = Database.connect(dbName, bootPassword, userName,
+      userPassword, attribute + "=" + backup.toAbsolutePath());
+
+    if (optdb.isPresent()) {
+      long ms = (System.nanoTime() - start) / 1000000;
+      IOUtils.printMessage(opName, done + backupDir + " in " + ms + " ms");
+    }
+
+    return optdb;
+  }
+
+}
@@ -0,0 +1,480 @@
+package watson;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+  * Headless command-line front end, for scripted and bulk operations.
+  *
+  * <p>Unlike {@link App}, this never starts JavaFX (none of its classes are
+  * even loaded), so it starts quickly and runs without a display. Each
+  * command connects to the database, does its work through the same
+  * (batched) {@link Database} methods as the GUI, and disconnects:</p>
+  *
+  * <pre>{@code
+  * $ export WATSON_BOOT_PASSWORD=bootpass WATSON_PASSWORD=jeffpass
+  * $ ./cli example jeff import contacts.csv
+  * {"command":"import","ok":true,"contacts":5000,"groups":12,"ms":913}
+  * $ ./cli example jeff search "jo mur"
+  * ID,FIRSTNAME,SURNAME,PHONE,GROUPS
+  * 1,John,Murphy,+353445671234,FAMILY;WORK
+  * {"command":"search","ok":true,"contacts":1,"ms":48}
+  * }</pre>
+  *
+  * <p>Log messages go to the standard error stream, as usual (see
+  * {@link Log}); the standard output holds only a command's results (if it
+  * has any), followed by a one-line JSON summary, with the time taken in
+  * milliseconds. The exit status is {@code 0} on success, {@code 1} if the
+  * command failed, and {@code 2} if it was used incorrectly.</p>
+  *
+  * <p>Passwords are read from the environment variables
+  * {@code WATSON_BOOT_PASSWORD} and {@code WATSON_PASSWORD} (so they don't
+  * appear in the process list), or, failing that, from the console.</p>
+  *
+  * <p>With the option {@code --network [port]}, the database is opened
+  * through a {@link NetworkServer}, so commands can run while the app (or
+  * another command) has the same database open.</p>
+  *
+  **/
+public final class Cli {
+
+  // private constructor for utility class
+  private Cli() { }
+
+  private static final String USAGE = String.join("\n",
+    "usage: cli <database> <user> <command> [arguments] [--network [<port>]]",
+    "",
+    "commands:",
+    "  import <file.csv[.gz]>                  add contacts (and groups) from CSV, as exported",
+    "  export <file> [csv|vcard|json] [--gzip] [--all]",
+    "                                          export contacts (--all: every user's, DBO only)",
+    "  add-users <file>                        add users from lines of 'username password' (DBO only)",
+    "  stats                                   count contacts and groups (every user's, for the DBO)",
+    "  search <text> [--limit <n>]             print contacts matching filter text, as CSV",
+    "  backup <directory> [--retain <n>]       back up the database (DBO only)",
+    "",
+    "--network opens the database through a Derby network server on localhost",
+    "passwords are read from WATSON_BOOT_PASSWORD and WATSON_PASSWORD, or the console");
+
+  // contacts added per batch by the import command
+  private static final int IMPORT_BATCH = 10000;
+
+  /**
+    * Runs a single command; see {@link Cli} for usage.
+    *
+    * @param args database name, user name, command, and its arguments
+    *
+    **/
+  public static void main (String[] args) {
+    int status;
+    try {
+      status = run(args);
+    } finally {
+      Log.flush();
+    }
+    System.exit(status);
+  }
+
+  // runs the command given by `args`, returning the exit status
+  private static int run (String[] args) {
+    List<String> all = new ArrayList<>(Arrays.asList(args));
+    boolean attached = NetworkServer.option(all);
+    if (all.size() < 3) return usage();
+
+    String dbName = all.get(0), user = all.get(1), command = all.get(2);
+    List<String> rest = new ArrayList<>(all.subList(3, all.size()));
+
+    String bootPassword = secret("WATSON_BOOT_PASSWORD", "boot password for " + dbName);
+    String password     = secret("WATSON_PASSWORD", "password for " + user);
+    if (bootPassword == null || password == null) return usage();
+
+    long start = System.nanoTime();
+    Map<String, Object> summary = new LinkedHashMap<>();
+    summary.put("command", command);
+    boolean ok;
+
+    if (!attached) return summarize(summary, false, start);
+
+    // connecting would create a database with a mistyped name; through a
+    // network server, names are relative to the server's directory instead
+    if (!NetworkServer.attached() && !Files.isDirectory(Paths.get(dbName))) {
+      IOUtils.printError(command, "no database named \"" + dbName + "\"");
+      return summarize(summary, false, start);
+    }
+
+    // the backup service opens a connection of its own
+    if (command.equals("backup")) {
+      if (rest.isEmpty()) return usage();
+
+      int retain;
+      try {
+        retain = Integer.parseInt(option(rest, "--retain", "5"));
+      } catch (NumberFormatException ex) {
+        return usage();
+      }
+
+      Optional<BackupService> service = BackupService.open(dbName, bootPassword, user, password, rest.get(0), retain);
+      Optional<Path> backup = service.flatMap(BackupService::backupNow);
+      service.ifPresent(BackupService::close);
+
+      ok = backup.isPresent();
+      if (ok) summary.put("directory", backup.get().toString());
+      return summarize(summary, ok, start);
+    }
+
+    Optional<Database> optDB = Database.connect(dbName, bootPassword, user, password);
+    if (!optDB.isPresent()) return summarize(summary, false, start);
+    Database db = optDB.get();
+
+    try {
+      switch (command) {
+        case "import":    ok = !rest.isEmpty() && importContacts(db, rest.get(0), summary); break;
+        case "export":    ok = !rest.isEmpty() && exportContacts(db, rest, password, summary); break;
+        case "add-users": ok = !rest.isEmpty() && addUsers(db, rest.get(0), password, summary); break;
+        case "stats":     ok = stats(db, summary); break;
+        case "search":    ok = !rest.isEmpty() && search(db, rest, summary); break;
+        default:          return usage();
+      }
+    } catch (NumberFormatException ex) {
+      return usage();
+    } finally {
+      Database.disconnect();
+    }
+
+    return summarize(summary, ok, start);
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  COMMANDS
+  //
+  //----------------------------------------------------------------------------
+
+  // adds the contacts in a CSV file, IMPORT_BATCH at a time, each batch with
+  // its group memberships in one transaction; if a batch fails, the summary
+  // still counts the contacts (and groups) already added
+  private static boolean importContacts (Database db, String fileName, Map<String, Object> summary) {
+    String opName = "import";
+    int contacts = 0, skipped = 0;
+    Set<String> groups = new LinkedHashSet<>();
+
+    try (BufferedReader in = reader(fileName)) {
+      List<String> header = csvRecord(in);
+      if (header == null) {
+        IOUtils.printError(opName, "file \"" + fileName + "\" is empty");
+        return false;
+      }
+
+      int first = indexOf(header, "FIRSTNAME"), sur = indexOf(header, "SURNAME");
+      int phone = indexOf(header, "PHONE"), group = indexOf(header, "GROUPS");
+
+      List<Contact> batch = new ArrayList<>(IMPORT_BATCH);
+      List<String>  batchGroups = new ArrayList<>(IMPORT_BATCH);
+
+      for (List<String> record; (record = csvRecord(in)) != null; ) {
+        Contact c = new Contact();
+        if (field(record, first) != null) c.set("FIRSTNAME", field(record, first));
+        if (field(record, sur)   != null) c.set("SURNAME",   field(record, sur));
+        if (field(record, phone) != null) c.set("PHONE",     field(record, phone));
+
+        // contacts with no (valid) fields can't be added
+        if (c.toString() == null) { ++skipped; continue; }
+
+        batch.add(c);
+        batchGroups.add(field(record, group));
+
+        if (batch.size() == IMPORT_BATCH) {
+          if (!importBatch(db, batch, batchGroups, groups)) return false;
+          contacts += batch.size();
+          batch.clear(); batchGroups.clear();
+        }
+      }
+
+      if (!batch.isEmpty()) {
+        if (!importBatch(db, batch, batchGroups, groups)) return false;
+        contacts += batch.size();
+      }
+
+    } catch (IOException ex) {
+      IOUtils.printError(opName, "could not read file \"" + fileName + "\": " + ex.getMessage());
+      return false;
+
+    } finally {
+      summary.put("contacts", contacts);
+      summary.put("skipped", skipped);
+      summary.put("groups", groups.size());
+    }
+
+    return true;
+  }
+
+  // adds one batch of contacts and, in the same transaction, each group's new
+  // members from the batch, so a batch is added with its groups or not at all
+  private static boolean importBatch (Database db, List<Contact> batch, List<String> batchGroups,
+    Set<String> groups) {
+
+    Map<String, List<Integer>> members = new LinkedHashMap<>();
+
+    boolean added = db.inTransaction(tx -> {
+      Optional<int[]> IDs = db.addContacts(batch);
+      if (!IDs.isPresent()) return false;
+
+      for (int ii = 0; ii < batch.size(); ++ii) {
+        if (batchGroups.get(ii) == null) continue;
+        for (String group : batchGroups.get(ii).split(";"))
+          if (!group.trim().isEmpty())
+            members.computeIfAbsent(group.trim(), g -> new ArrayList<>()).add(IDs.get()[ii]);
+      }
+
+      for (Map.Entry<String, List<Integer>> e : members.entrySet())
+        if (!db.addToGroup(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray()))
+          return false;
+      return true;
+    });
+
+    if (added) groups.addAll(members.keySet());
+    return added;
+  }
+
+  private static boolean exportContacts (Database db, List<String> rest, String password,
+    Map<String, Object> summary) {
+
+    boolean gzip = rest.remove("--gzip");
+    boolean all  = rest.remove("--all");
+    String fileName = rest.get(0);
+
+    Exporter.Format format = Exporter.Format.CSV;
+    if (rest.size() > 1) {
+      try {
+        format = Exporter.Format.valueOf(rest.get(1).toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException ex) {
+        IOUtils.printError("export", "unknown format \"" + rest.get(1) + "\"");
+        return false;
+      }
+    }
+
+    Optional<Integer> count = all ? db.exportAllContacts(fileName, format, gzip)
+                                  : db.exportContacts(fileName, format, gzip);
+    count.ifPresent(n -> summary.put("contacts", n));
+    return count.isPresent();
+  }
+
+  // adds a user for each line of the file which holds a name and password
+  private static boolean addUsers (Database db, String fileName, String password,
+    Map<String, Object> summary) {
+
+    int added = 0, failed = 0;
+    try (BufferedReader in = reader(fileName)) {
+      for (String line; (line = in.readLine()) != null; ) {
+        String[] words = line.trim().split("\\s+");
+        if (words.length == 1 && words[0].isEmpty()) continue;
+
+        if (words.length == 2 && db.addUser(words[0], words[1], password)) ++added;
+        else ++failed;
+      }
+
+    } catch (IOException ex) {
+      IOUtils.printError("add-users", "could not read file \"" + fileName + "\": " + ex.getMessage());
+      return false;
+    }
+
+    summary.put("added", added);
+    summary.put("failed", failed);
+    return failed == 0;
+  }
+
+  // counts contacts, group memberships, and groups, per user
+  private static boolean stats (Database db, Map<String, Object> summary) {
+    List<String> USERS = new ArrayList<>();
+
+    if (db.userIsDBO()) {
+      Optional<List<String>> all = db.users();
+      Optional<String> OWNER = db.owner();
+      if (!all.isPresent() || !OWNER.isPresent()) return false;
+      for (String USER : all.get()) if (!USER.equals(OWNER.get())) USERS.add(USER);
+
+    } else {
+      Optional<String> USER = db.user();
+      if (!USER.isPresent()) return false;
+      USERS.add(USER.get());
+    }
+
+    Map<String, Object> users = new LinkedHashMap<>();
+    for (String USER : USERS) {
+
+      // tables are streamed, so only the counts are held in memory
+      int[] contacts = { -1 }, memberships = { -1 };
+      if (!db.table(USER + ".CONTACTS", row -> ++contacts[0])) return false;
+      if (!db.table(USER + ".GROUPS", row -> ++memberships[0])) return false;
+
+      Optional<Map<String, Integer>> groups = db.facets(USER + ".GROUPS", "NAME", Integer.MAX_VALUE);
+      if (!groups.isPresent()) return false;
+
+      Map<String, Object> counts = new LinkedHashMap<>();
+      counts.put("contacts", contacts[0]);
+      counts.put("memberships", memberships[0]);
+      counts.put("groups", groups.get().size());
+      users.put(USER, counts);
+    }
+
+    summary.put("users", users);
+    return true;
+  }
+
+  // prints the contacts matching the filter text, as CSV
+  private static boolean search (Database db, List<String> rest, Map<String, Object> summary) {
+    int limit = Integer.parseInt(option(rest, "--limit", "1000"));
+    if (rest.isEmpty()) throw new NumberFormatException(); // no filter text: usage
+
+    StringBuilder out = new StringBuilder();
+    Optional<Integer> count = db.filterContacts(String.join(" ", rest), limit, () -> false, row -> {
+      for (int ii = 0; ii < row.size(); ++ii) {
+        if (ii > 0) out.append(',');
+        String value = ii == 4 ? row.get(ii).replace(", ", ";") : row.get(ii);
+        out.append(csvField(value));
+      }
+      out.append('\n');
+
+      // print as we go, rather than holding every result
+      if (out.length() > 1 << 16) { System.out.print(out); out.setLength(0); }
+    });
+    System.out.print(out);
+
+    count.ifPresent(n -> summary.put("contacts", n));
+    return count.isPresent();
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  HELPERS
+  //
+  //----------------------------------------------------------------------------
+
+  // prints the usage message, returning the exit status for incorrect usage
+  private static int usage() {
+    System.err.println(USAGE);
+    return 2;
+  }
+
+  // prints the summary, as a line of JSON, returning the exit status
+  private static int summarize (Map<String, Object> summary, boolean ok, long start) {
+    Map<String, Object> line = new LinkedHashMap<>();
+    line.put("command", summary.remove("command"));
+    line.put("ok", ok);
+    line.putAll(summary);
+    line.put("ms", (System.nanoTime() - start) / 1000000);
+
+    Log.flush(); // so the log doesn't interleave with the summary
+    System.out.println(Json.write(line));
+    return ok ? 0 : 1;
+  }
+
+  // the value of an environment variable, or else one typed at the console
+  static String secret (String variable, String prompt) {
+    String value = System.getenv(variable);
+    if (value != null) return value;
+
+    if (System.console() == null) {
+      System.err.println(variable + " is not set, and there is no console to ask for the " + prompt);
+      return null;
+    }
+
+    char[] typed = System.console().readPassword("%s: ", prompt);
+    return typed == null ? null : new String(typed);
+  }
+
+  // removes `--name value` from `args`, returning the value (or `otherwise`)
+  private static String option (List<String> args, String name, String otherwise) {
+    int at = args.indexOf(name);
+    if (at < 0) return otherwise;
+    if (at + 1 >= args.size()) throw new NumberFormatException(); // missing value: usage
+
+    String value = args.get(at + 1);
+    args.subList(at, at + 2).clear();
+    return value;
+  }
+
+  // opens a (possibly gzip-compressed) text file
+  private static BufferedReader reader (String fileName) throws IOException {
+    InputStream in = Files.newInputStream(Paths.get(fileName));
+    if (fileName.endsWith(".gz")) in = new GZIPInputStream(in, 1 << 16);
+    return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+  }
+
+  // the position of a column in the CSV header, ignoring case, or -1
+  private static int indexOf (List<String> header, String column) {
+    for (int ii = 0; ii < header.size(); ++ii)
+      if (header.get(ii).trim().equalsIgnoreCase(column)) return ii;
+    return -1;
+  }
+
+  // the value of a CSV field, or null if it's missing or empty
+  private static String field (List<String> record, int at) {
+    if (at < 0 || at >= record.size() || record.get(at).isEmpty()) return null;
+    return record.get(at);
+  }
+
+  // a CSV field, quoted only if it contains a comma, quote, or line break (as
+  // written by the Exporter); null is an empty field
+  private static String csvField (String s) {
+    if (s == null) return "";
+    if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\r') < 0 && s.indexOf('\n') < 0) return s;
+    return '"' + s.replace("\"", "\"\"") + '"';
+  }
+
+  // reads one RFC 4180 record (which may span lines, within quotes), or
+  // returns null at the end of the input
+  private static List<String> csvRecord (BufferedReader in) throws IOException {
+    String line = in.readLine();
+    if (line == null) return null;
+
+    List<String> fields = new ArrayList<>();
+    StringBuilder sb = new StringBuilder();
+    boolean quoted = false;
+
+    for (int ii = 0; ; ++ii) {
+      if (ii == line.length()) {
+        if (!quoted) break;
+
+        // a line break inside a quoted field
+        line = in.readLine();
+        if (line == null) break;
+        sb.append('\n');
+        ii = -1;
+        continue;
+      }
+
+      char ch = line.charAt(ii);
+      if (quoted) {
+        if (ch != '"') sb.append(ch);
+        else if (ii + 1 < line.length() && line.charAt(ii + 1) == '"') { sb.append('"'); ++ii; }
+        else quoted = false;
+
+      } else if (ch == '"') quoted = true;
+      else if (ch == ',') { fields.add(sb.toString()); sb.setLength(0); }
+      else sb.append(ch);
+    }
+
+    fields.add(sb.toString());
+    return fields;
+  }
+
+}
@@ -0,0 +1,298 @@
+package watson;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.beans.InvalidationListener;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+
+/**
+  * Compact, column-oriented table model for the GUI's {@code TableView}s.
+  *
+  * <p>Rather than holding every row as an {@link ObservableList} of
+  * {@link String}s (an object per cell, plus a list, with its own listener
+  * machinery, per row), each column is kept as a single array: a column of
+  * integers (such as {@code ID}s) as an {@code int[]}, and any other column
+  * as an {@code int[]} of codes into a dictionary of its distinct values, so
+  * that a value repeated down a column (a group name, a common surname) is
+  * stored once. Rows are only materialised as lightweight, read-only views
+  * when the table asks for them -- in practice, for the visible rows.</p>
+  *
+  * <p>Like {@link Database#table(String) Database.table()}, the first row
+  * {@link append appended} holds the column names, so a table can be filled
+  * straight from {@link Database#table(String, java.util.function.Consumer)
+  * Database.table()}, one row at a time:</p>
+  *
+  * <pre>{@code
+  * ColumnarTable rows = new ColumnarTable();
+  * db.table("JEFF.CONTACTS", rows::append);
+  * tableView.setItems(rows);
+  * }</pre>
+  *
+  **/
+final class ColumnarTable extends ObservableListBase<ObservableList<String>> {
+
+  // column names, and their contents
+  private final List<String> names = new ArrayList<>();
+  private final List<Column> columns = new ArrayList<>();
+
+  // number of rows (not counting the column names)
+  private int size = 0;
+
+  //----------------------------------------------------------------------------
+  //
+  //  FILLING THE TABLE
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Appends a row to this table. The first row appended (after creation, or
+    * after {@link clear clear()}) holds the column names; later rows are data,
+    * and must have a value (possibly {@code null}) for every column.
+    *
+    * @param values column names, or one row of data
+    *
+    **/
+  void append (List<String> values) {
+    if (names.isEmpty()) {
+      names.addAll(values);
+      for (int cc = 0; cc < values.size(); ++cc) columns.add(new IntColumn());
+      return;
+    }
+
+    if (values.size() != names.size())
+      throw new IllegalArgumentException("expected " + names.size() + " values, got " + values.size());
+
+    for (int cc = 0; cc < values.size(); ++cc) {
+      Column column = columns.get(cc);
+
+      // a column stays an int column until it holds something else
+      if (column instanceof IntColumn && !((IntColumn) column).accepts(values.get(cc))) {
+        column = new DictionaryColumn(column, size);
+        columns.set(cc, column);
+      }
+      column.add(values.get(cc), size);
+    }
+    ++size;
+
+    if (hasListeners()) {
+      beginChange();
+      nextAdd(size - 1, size);
+      endChange();
+    }
+  }
+
+  /**
+    * Releases the memory used only while filling this table (the dictionaries'
+    * hash tables and any unused array capacity). Rows may still be
+    * {@link append appended} afterwards, at some extra cost.
+    *
+    **/
+  void trim() {
+    for (Column column : columns) column.trim(size);
+  }
+
+  /**
+    * Removes every row, and the column names, from this table.
+    *
+    **/
+  @Override
+  public void clear() {
+    int removed = size;
+    List<ObservableList<String>> views = hasListeners() ? new ArrayList<>(this) : null;
+
+    names.clear();
+    columns.clear();
+    size = 0;
+
+    if (views != null && removed > 0) {
+      beginChange();
+      nextRemove(0, views);
+      endChange();
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  READING THE TABLE
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns a read-only view of the given row; the view is created on
+    * demand, and reads its values from this table's columns.
+    *
+    * @param row index of the row
+    *
+    * @return the row's values, in column order
+    *
+    **/
+  @Override
+  public ObservableList<String> get (int row) {
+    if (row < 0 || row >= size)
+      throw new IndexOutOfBoundsException("row " + row + " of " + size);
+    return new Row(row);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+    * Returns the value of the given cell.
+    *
+    * @param row index of the row
+    * @param column index of the column
+    *
+    * @return the cell's value, which may be {@code null}
+    *
+    **/
+  String value (int row, int column) {
+    return columns.get(column).get(row);
+  }
+
+  /**
+    * Returns the names of this table's columns.
+    *
+    * @return the column names, in order
+    *
+    **/
+  List<String> names() {
+    return names;
+  }
+
+  /**
+    * Returns an estimate of the heap memory used by this table.
+    *
+    * @return the approximate size of this table, in bytes
+    *
+    **/
+  long bytes() {
+    long bytes = 64;
+    for (String name : names) bytes += ContactIndex.stringBytes(name);
+    for (Column column : columns) bytes += column.bytes();
+    return bytes;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  ROWS AND COLUMNS
+  //
+  //----------------------------------------------------------------------------
+
+  // a read-only view of one row; rows never change, so listeners are ignored
+  private final class Row extends AbstractList<String> implements ObservableList<String> {
+    private final int row;
+
+    Row (int row) { this.row = row; }
+
+    @Override public String get (int column) { return columns.get(column).get(row); }
+    @Override public int size() { return columns.size(); }
+
+    @Override public void addListener (ListChangeListener<? super String> listener) { }
+    @Override public void removeListener (ListChangeListener<? super String> listener) { }
+    @Override public void addListener (InvalidationListener listener) { }
+    @Override public void removeListener (InvalidationListener listener) { }
+
+    @Override public boolean addAll (String... elements) { throw new UnsupportedOperationException(); }
+    @Override public boolean setAll (String... elements) { throw new UnsupportedOperationException(); }
+    @Override public boolean setAll (Collection<? extends String> col) { throw new UnsupportedOperationException(); }
+    @Override public boolean removeAll (String... elements) { throw new UnsupportedOperationException(); }
+    @Override public boolean retainAll (String... elements) { throw new UnsupportedOperationException(); }
+    @Override public void remove (int from, int to) { throw new UnsupportedOperationException(); }
+  }
+
+  // the values of one column
+  private interface Column {
+    String get (int row);
+    void add (String value, int row);
+    void trim (int size);
+    long bytes();
+  }
+
+  // a column of integers, with null as Integer.MIN_VALUE
+  private static final class IntColumn implements Column {
+    int[] values = new int[1024];
+
+    // can `value` be stored, and read back exactly as it was?
+    boolean accepts (String value) {
+      if (value == null) return true;
+      try {
+        int v = Integer.parseInt(value);
+        return v != Integer.MIN_VALUE && Integer.toString(v).equals(value);
+      } catch (NumberFormatException ex) {
+        return false;
+      }
+    }
+
+    @Override public String get (int row) {
+      return values[row] == Integer.MIN_VALUE ? null : Integer.toString(values[row]);
+    }
+
+    @Override public void add (String value, int row) {
+      if (row == values.length) values = Arrays.copyOf(values, row * 2);
+      values[row] = value == null ? Integer.MIN_VALUE : Integer.parseInt(value);
+    }
+
+    @Override public void trim (int size) { values = Arrays.copyOf(values, Math.max(size, 1)); }
+    @Override public long bytes() { return 16 + 16 + 4L * values.length; }
+  }
+
+  // a column of codes into a dictionary of distinct values, with null as -1
+  private static final class DictionaryColumn implements Column {
+    int[] codes;
+    final List<String> dictionary = new ArrayList<>();
+
+    // value -> code; only needed while filling, so dropped by trim()
+    Map<String, Integer> lookup = new HashMap<>();
+
+    // takes over the first `size` values of another column
+    DictionaryColumn (Column other, int size) {
+      codes = new int[Math.max(1024, size + 1)];
+      for (int row = 0; row < size; ++row) add(other.get(row), row);
+    }
+
+    @Override public String get (int row) {
+      return codes[row] < 0 ? null : dictionary.get(codes[row]);
+    }
+
+    @Override public void add (String value, int row) {
+      if (row == codes.length) codes = Arrays.copyOf(codes, row * 2);
+      if (value == null) { codes[row] = -1; return; }
+
+      if (lookup == null) {
+        lookup = new HashMap<>();
+        for (int code = 0; code < dictionary.size(); ++code) lookup.put(dictionary.get(code), code);
+      }
+
+      Integer code = lookup.get(value);
+      if (code == null) {
+        code = dictionary.size();
+        dictionary.add(value);
+        lookup.put(value, code);
+      }
+      codes[row] = code;
+    }
+
+    @Override public void trim (int size) {
+      codes = Arrays.copyOf(codes, Math.max(size, 1));
+      lookup = null;
+    }
+
+    @Override public long bytes() {
+      long bytes = 16 + 16 + 4L * codes.length + 40 + 8L * dictionary.size();
+      for (String value : dictionary) bytes += ContactIndex.stringBytes(value);
+      if (lookup != null) bytes += 48L * lookup.size();
+      return bytes;
+    }
+  }
+
+}
@@ -0,0 +1,310 @@
+package watson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+  * Prefix index for completing contacts' field values, e.g. for suggesting
+  * names and phone numbers as they're typed.
+  *
+  * <p>For each field, the distinct values (ignoring case) are kept in a
+  * sorted array, with the number of contacts having each value. The values
+  * starting with a given prefix are then a contiguous range of the array,
+  * found by binary search, and the {@code k} most common of them -- the
+  * completions -- are picked out of that range with a segment tree over the
+  * counts, in {@code O(k log n)}, however long the range is.</p>
+  *
+  * <p>New values are held in a hash map, which lookups scan, and merged into
+  * the sorted array (in a single pass) once there are enough of them, so
+  * filling the index costs {@code O(n log n)} and later additions cost
+  * amortised {@code O(1)}, not {@code O(n)} each.</p>
+  *
+  * <pre>{@code
+  * jshell> db.completions("surname", "wa", 3)
+  * $5 ==> Optional[[Watson, Walsh, Wang]]
+  * }</pre>
+  *
+  **/
+final class CompletionIndex implements ContactIndex {
+
+  // pending values are always scanned (rather than merged) up to this many
+  private static final int MERGE_PENDING = 4096;
+
+  // a value added since the last merge
+  private static final class Pending {
+    final String value;
+    int count = 0;
+
+    Pending (String value) {
+      this.value = value;
+    }
+  }
+
+  // the distinct values of one field
+  private static final class Dictionary {
+
+    // sorted, upper-cased values; each value as first seen; how many
+    // contacts have each value (0 for values removed since the last merge)
+    String[] keys   = new String[0];
+    String[] values = new String[0];
+    int[]    counts = new int[0];
+    int size = 0;
+    int removed = 0;
+
+    // segment tree over `counts`: tree[size + i] = i, and every other node
+    // holds the better (more common, then first) of its children's entries,
+    // so the best entry of any range is found in O(log size)
+    int[] tree = new int[0];
+
+    // upper-cased value -> value added since the last merge
+    Map<String, Pending> pending = new HashMap<>();
+
+    // returns the instance of `value` kept by this dictionary, so that equal
+    // values are only stored once
+    String add (String value) {
+      String key = value.toUpperCase(Locale.ROOT);
+
+      int at = Arrays.binarySearch(keys, 0, size, key);
+      if (at >= 0) {
+        if (counts[at]++ == 0) --removed;
+        update(at);
+        return values[at];
+      }
+
+      Pending p = pending.computeIfAbsent(key, k -> new Pending(value));
+      ++p.count;
+      return p.value;
+    }
+
+    void remove (String value) {
+      String key = value.toUpperCase(Locale.ROOT);
+
+      int at = Arrays.binarySearch(keys, 0, size, key);
+      if (at >= 0 && counts[at] > 0) {
+        if (--counts[at] == 0) ++removed;
+        update(at);
+        return;
+      }
+
+      Pending p = pending.get(key);
+      if (p != null && --p.count == 0) pending.remove(key);
+    }
+
+    // merge pending values into, and drop removed values from, the arrays,
+    // once there are enough of them that doing so (in O(size)) is cheaper
+    // than scanning them at every lookup
+    void maybeMerge() {
+      if (pending.size() > Math.max(MERGE_PENDING, size / 64) || removed > size / 4) merge();
+    }
+
+    void merge() {
+      if (pending.isEmpty() && removed == 0) return;
+
+      String[] added = pending.keySet().toArray(new String[0]);
+      Arrays.sort(added);
+
+      int length = size - removed + added.length;
+      String[] newKeys   = new String[length];
+      String[] newValues = new String[length];
+      int[]    newCounts = new int[length];
+
+      int ii = 0, aa = 0, nn = 0;
+      while (ii < size || aa < added.length) {
+        if (ii < size && counts[ii] == 0) { ++ii; continue; }
+
+        if (aa >= added.length || (ii < size && keys[ii].compareTo(added[aa]) < 0)) {
+          newKeys[nn] = keys[ii]; newValues[nn] = values[ii]; newCounts[nn] = counts[ii];
+          ++ii;
+        } else {
+          Pending p = pending.get(added[aa]);
+          newKeys[nn] = added[aa]; newValues[nn] = p.value; newCounts[nn] = p.count;
+          ++aa;
+        }
+        ++nn;
+      }
+
+      keys = newKeys; values = newValues; counts = newCounts;
+      size = length;
+      removed = 0;
+
+      // rather than clear(), which keeps the (possibly huge) table, and would
+      // make every scan of the pending values as slow as one over the table
+      pending = new HashMap<>();
+
+      tree = new int[2 * size];
+      for (int jj = 0; jj < size; ++jj) tree[size + jj] = jj;
+      for (int node = size - 1; node > 0; --node) tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+    }
+
+    // the more common of two entries (or the first, alphabetically, if
+    // they're equally common); -1 is "no entry"
+    int better (int a, int b) {
+      if (a < 0) return b;
+      if (b < 0) return a;
+      if (counts[a] != counts[b]) return counts[a] > counts[b] ? a : b;
+      return a < b ? a : b;
+    }
+
+    // the count of entry `at` has changed
+    void update (int at) {
+      for (int node = (size + at) >> 1; node > 0; node >>= 1)
+        tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+    }
+
+    // the best entry in [lo, hi)
+    int best (int lo, int hi) {
+      int best = -1;
+      for (lo += size, hi += size; lo < hi; lo >>= 1, hi >>= 1) {
+        if ((lo & 1) == 1) best = better(best, tree[lo++]);
+        if ((hi & 1) == 1) best = better(best, tree[--hi]);
+      }
+      return best;
+    }
+
+    // the (at most) k most common values starting with `prefix`
+    List<String> complete (String prefix, int k) {
+      maybeMerge();
+
+      // entries starting with `prefix` are those in [from, to)
+      String key = prefix.toUpperCase(Locale.ROOT);
+      int from = Arrays.binarySearch(keys, 0, size, key);
+      if (from < 0) from = -(from + 1);
+      int to = Arrays.binarySearch(keys, from, size, key + Character.MAX_VALUE);
+      if (to < 0) to = -(to + 1);
+
+      // candidates are {value, count, key}: the k best in the arrays, found by
+      // repeatedly taking the best entry of a range and splitting the range
+      // around it, plus any matching pending values
+      List<Object[]> candidates = new ArrayList<>();
+
+      PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) ->
+        a[0] == b[0] ? 0 : better(a[0], b[0]) == a[0] ? -1 : 1);
+      if (from < to) ranges.add(new int[] { best(from, to), from, to });
+
+      while (!ranges.isEmpty() && candidates.size() < k) {
+        int[] r = ranges.poll();
+        int at = r[0];
+        if (counts[at] == 0) break;
+
+        candidates.add(new Object[] { values[at], counts[at], keys[at] });
+        if (r[1] < at)     ranges.add(new int[] { best(r[1], at), r[1], at });
+        if (at + 1 < r[2]) ranges.add(new int[] { best(at + 1, r[2]), at + 1, r[2] });
+      }
+
+      for (Map.Entry<String, Pending> e : pending.entrySet())
+        if (e.getKey().startsWith(key))
+          candidates.add(new Object[] { e.getValue().value, e.getValue().count, e.getKey() });
+
+      candidates.sort((a, b) -> {
+        int byCount = Integer.compare((Integer) b[1], (Integer) a[1]);
+        return byCount != 0 ? byCount : ((String) a[2]).compareTo((String) b[2]);
+      });
+
+      List<String> completions = new ArrayList<>(Math.min(k, candidates.size()));
+      for (int ii = 0; ii < candidates.size() && ii < k; ++ii) completions.add((String) candidates.get(ii)[0]);
+      return completions;
+    }
+
+    long bytes() {
+      long bytes = 3 * (16 + 8L * keys.length) + 16 + 4L * tree.length;
+      for (int ii = 0; ii < size; ++ii) {
+        bytes += ContactIndex.stringBytes(keys[ii]);
+        if (values[ii] != keys[ii]) bytes += ContactIndex.stringBytes(values[ii]);
+      }
+
+      // entry, key, and Pending object
+      for (Pending p : pending.values()) bytes += 48 + 2 * ContactIndex.stringBytes(p.value) + 24;
+      return bytes;
+    }
+  }
+
+  // one Dictionary per contact field
+  private final Dictionary[] dictionaries;
+
+  // each contact's values (the instances kept by the dictionaries), by ID
+  private String[][] byID = new String[1024][];
+
+  /**
+    * Creates an empty {@link CompletionIndex} for contacts with the given
+    * number of fields.
+    *
+    * @param fields number of fields in each contact
+    *
+    **/
+  CompletionIndex (int fields) {
+    dictionaries = new Dictionary[fields];
+    for (int ff = 0; ff < fields; ++ff) dictionaries[ff] = new Dictionary();
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  ContactIndex
+  //
+  //----------------------------------------------------------------------------
+
+  @Override
+  public void put (int ID, String[] values) {
+    if (ID < 0) return;
+    remove(ID);
+
+    String[] kept = new String[values.length];
+    for (int ff = 0; ff < values.length; ++ff)
+      if (values[ff] != null) kept[ff] = dictionaries[ff].add(values[ff]);
+
+    if (ID >= byID.length) byID = Arrays.copyOf(byID, Math.max(ID + 1, byID.length * 2));
+    byID[ID] = kept;
+  }
+
+  @Override
+  public void remove (int ID) {
+    if (ID < 0 || ID >= byID.length || byID[ID] == null) return;
+
+    String[] kept = byID[ID];
+    for (int ff = 0; ff < kept.length; ++ff)
+      if (kept[ff] != null) dictionaries[ff].remove(kept[ff]);
+
+    byID[ID] = null;
+  }
+
+  @Override
+  public void clear() {
+    for (int ff = 0; ff < dictionaries.length; ++ff) dictionaries[ff] = new Dictionary();
+    byID = new String[1024][];
+  }
+
+  @Override
+  public long bytes() {
+    long bytes = 16 + 8L * byID.length;
+    for (String[] kept : byID) if (kept != null) bytes += 16 + 8L * kept.length;
+    for (Dictionary d : dictionaries) bytes += d.bytes();
+    return bytes;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  COMPLETING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns the (at most) {@code k} most common values of the given field
+    * which start with {@code prefix} (ignoring case), most common first, and
+    * alphabetically among equally common values.
+    *
+    * @param field index of the field in the values passed to {@link put put()}
+    * @param prefix start of the values to return
+    * @param k largest number of values to return
+    *
+    * @return the completions of {@code prefix}
+    *
+    **/
+  List<String> complete (int field, String prefix, int k) {
+    return dictionaries[field].complete(prefix, k);
+  }
+
+}
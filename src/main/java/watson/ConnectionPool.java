@@ -0,0 +1,277 @@
+package watson;
+
+import java.nio.charset.StandardCharsets;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+  * Pool of {@link Database#session Database sessions}, keyed by user, for
+  * {@link ApiServer}.
+  *
+  * <p>Opening a session means authenticating the user and preparing
+  * statements, which takes far longer than most requests, so sessions are
+  * kept open between requests: a request {@link borrow borrows} a session
+  * for its user (opening one if none is free), uses it alone, and
+  * {@link release releases} it, ready for that user's next request. Up to
+  * {@code maxIdle} sessions are kept open but unused, each for up to
+  * {@value IDLE_SECONDS} seconds. Through a {@link NetworkServer network
+  * server}, where opening a session also costs a connection handshake, an
+  * unused session is checked before it's reused, in case the server has
+  * stopped.</p>
+  *
+  * <p>Sessions are keyed by the user name and a (salted) digest of the
+  * password they were opened with, so a session is only reused by a request
+  * which gave the same password; the password itself isn't kept. A
+  * session's connection stays valid when its user's password is changed or
+  * the user is deleted, so those operations must {@link invalidate
+  * invalidate} the user's sessions.</p>
+  *
+  **/
+final class ConnectionPool implements AutoCloseable {
+
+  /** Longest time (in seconds) for which an unused session is kept open. **/
+  static final long IDLE_SECONDS = 60;
+
+  private final String dbName;
+  private final String bootPassword;
+  private final int maxIdle;
+
+  // random, per-pool salt for the password digests in keys
+  private final byte[] salt = new byte[16];
+
+  // key -> unused sessions, most recently used first
+  private final Map<String, Deque<Idle>> idle = new HashMap<>();
+  private int idleCount = 0;
+
+  // sessions in use -> their keys; a session invalidated while in use is
+  // removed, and closed when it's released
+  private final Map<Database, String> lent = new IdentityHashMap<>();
+
+  private boolean closed = false;
+
+  // an unused session, and when it was last released
+  private static final class Idle {
+    final Database session;
+    final long since = System.nanoTime();
+    Idle (Database session) { this.session = session; }
+  }
+
+  /**
+    * Creates an (empty) pool of sessions on an existing database.
+    *
+    * @param dbName name of the database
+    * @param bootPassword boot password for the database
+    * @param maxIdle most sessions kept open while unused
+    *
+    **/
+  ConnectionPool (String dbName, String bootPassword, int maxIdle) {
+    this.dbName = dbName;
+    this.bootPassword = bootPassword;
+    this.maxIdle = maxIdle;
+    new SecureRandom().nextBytes(salt);
+  }
+
+  /**
+    * Returns a session for the given user, which the caller has to itself
+    * until it's {@link release released}. An unused session opened with the
+    * same password is reused if there is one; otherwise, a new session is
+    * opened, which authenticates the user.
+    *
+    * @param user name of the user
+    * @param password the user's password
+    *
+    * @return a session, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if the user's name or password is
+    * wrong, or the pool is closed
+    *
+    **/
+  Optional<Database> borrow (String user, String password) {
+    String key = key(user, password);
+    if (key == null) return Optional.empty();
+
+    List<Database> expired = new ArrayList<>();
+    Database session = null;
+
+    synchronized (this) {
+      if (closed) return Optional.empty();
+      expire(expired);
+
+      Deque<Idle> sessions = idle.get(key);
+      if (sessions != null && !sessions.isEmpty()) {
+        session = sessions.pollFirst().session;
+        --idleCount;
+      }
+      if (session != null) lent.put(session, key);
+    }
+
+    for (Database old : expired) old.close();
+
+    // a network server may have stopped since the session was released
+    if (session != null && NetworkServer.attached() && !session.isValid()) {
+      synchronized (this) { lent.remove(session); }
+      session.close();
+      session = null;
+    }
+    if (session != null) return Optional.of(session);
+
+    // opening a session is slow, so it's done outside the lock
+    Optional<Database> opened = Database.session(dbName, bootPassword, user, password);
+    if (!opened.isPresent()) return opened;
+
+    synchronized (this) {
+      if (!closed) {
+        lent.put(opened.get(), key);
+        return opened;
+      }
+    }
+
+    opened.get().close();
+    return Optional.empty();
+  }
+
+  /**
+    * Returns a {@link borrow borrowed} session to the pool, to be reused by
+    * its user's next request (or closed, if there are already
+    * {@code maxIdle} unused sessions, or the session was invalidated).
+    *
+    * @param session the session to release
+    *
+    **/
+  void release (Database session) {
+    List<Database> expired = new ArrayList<>();
+    boolean keep = false;
+
+    synchronized (this) {
+      String key = lent.remove(session);
+
+      if (key != null && !closed) {
+        expire(expired);
+
+        // make room by closing the least recently used session (of any user)
+        if (idleCount >= maxIdle) {
+          Idle oldest = null;
+          Deque<Idle> from = null;
+          for (Deque<Idle> sessions : idle.values())
+            if (!sessions.isEmpty() && (oldest == null || sessions.peekLast().since < oldest.since)) {
+              oldest = sessions.peekLast();
+              from = sessions;
+            }
+          if (oldest != null) {
+            from.pollLast();
+            --idleCount;
+            expired.add(oldest.session);
+          }
+        }
+
+        if (idleCount < maxIdle) {
+          idle.computeIfAbsent(key, k -> new ArrayDeque<>()).addFirst(new Idle(session));
+          ++idleCount;
+          keep = true;
+        }
+      }
+    }
+
+    if (!keep) expired.add(session);
+    for (Database old : expired) old.close();
+  }
+
+  /**
+    * Closes every session of the given user, whatever password it was opened
+    * with. Sessions in use are closed when they're released.
+    *
+    * @param user name of the user
+    *
+    **/
+  void invalidate (String user) {
+    String prefix = user.toUpperCase(Locale.ROOT) + ":";
+    List<Database> closing = new ArrayList<>();
+
+    synchronized (this) {
+      for (Iterator<Map.Entry<String, Deque<Idle>>> it = idle.entrySet().iterator(); it.hasNext(); ) {
+        Map.Entry<String, Deque<Idle>> e = it.next();
+        if (!e.getKey().startsWith(prefix)) continue;
+        for (Idle i : e.getValue()) closing.add(i.session);
+        idleCount -= e.getValue().size();
+        it.remove();
+      }
+      lent.values().removeIf(key -> key.startsWith(prefix));
+    }
+
+    for (Database session : closing) session.close();
+  }
+
+  /**
+    * Returns the number of sessions open, in use or not.
+    *
+    * @return the number of open sessions
+    *
+    **/
+  synchronized int size() {
+    return idleCount + lent.size();
+  }
+
+  /**
+    * Closes every unused session, and stops pooling; sessions in use are
+    * closed when they're released.
+    *
+    **/
+  @Override
+  public void close() {
+    List<Database> closing = new ArrayList<>();
+
+    synchronized (this) {
+      closed = true;
+      for (Deque<Idle> sessions : idle.values())
+        for (Idle i : sessions) closing.add(i.session);
+      idle.clear();
+      idleCount = 0;
+    }
+
+    for (Database session : closing) session.close();
+  }
+
+  // moves sessions unused for more than IDLE_SECONDS from the pool to `expired`
+  private void expire (List<Database> expired) {
+    long cutoff = System.nanoTime() - TimeUnit.SECONDS.toNanos(IDLE_SECONDS);
+
+    for (Iterator<Deque<Idle>> it = idle.values().iterator(); it.hasNext(); ) {
+      Deque<Idle> sessions = it.next();
+      while (!sessions.isEmpty() && sessions.peekLast().since - cutoff < 0) {
+        expired.add(sessions.pollLast().session);
+        --idleCount;
+      }
+      if (sessions.isEmpty()) it.remove();
+    }
+  }
+
+  // the user's (all-uppercase) name and a salted digest of their password
+  private String key (String user, String password) {
+    try {
+      MessageDigest sha = MessageDigest.getInstance("SHA-256");
+      sha.update(salt);
+      sha.update(password.getBytes(StandardCharsets.UTF_8));
+      String USER = user.toUpperCase(Locale.ROOT);
+      return USER + ":" + Base64.getEncoder().encodeToString(sha.digest());
+
+    } catch (NoSuchAlgorithmException ex) { // every JVM has SHA-256
+      IOUtils.printError("borrow()", "SHA-256 is not available");
+      return null;
+    }
+  }
+
+}
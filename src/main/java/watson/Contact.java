@@ -192,6 +192,34 @@ public final class Contact {
     return value == null ? Optional.of("") : Optional.of(value);
   }
 
+  /**
+    * Returns the value of the (all-uppercase) {@code KEY} as it should be bound
+    * to a {@link java.sql.PreparedStatement}, that is, with doubled
+    * apostrophes un-escaped, or {@code null} if the value isn't set.
+    *
+    * @param KEY all-uppercase key of the value to return
+    *
+    * @return the unescaped value associated with {@code KEY}, or {@code null}
+    *
+    **/
+  String raw (String KEY) {
+    String value = info.get(KEY).getValue();
+    return value == null ? null : value.replace("''", "'");
+  }
+
+  /**
+    * Returns a copy of this {@link Contact}, unaffected by later calls to
+    * {@link set set()} on this one.
+    *
+    * @return a new {@link Contact} with the same values as this one
+    *
+    **/
+  Contact copy() {
+    Contact c = new Contact();
+    c.info.putAll(info);
+    return c;
+  }
+
   /**
     * If the given {@code key} exists in this {@link Contact}'s {@code info},
     * sets it to the given {@code value}.
@@ -0,0 +1,467 @@
+package watson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+  * Criteria for selecting contacts, by the values of their fields and the
+  * groups they belong to.
+  *
+  * <p>Criteria are built by chaining conditions, all of which must hold for
+  * a contact to match:</p>
+  *
+  * <pre>{@code
+  * jshell> ContactCriteria cc = new ContactCriteria().startsWith("surname", "o'").inGroup("family")
+  * cc ==> SURNAME starts with "o'" and in group "FAMILY"
+  *
+  * jshell> db.findContacts(cc)
+  * $2 ==> Optional[[3, 7]]
+  *
+  * jshell> db.deleteContacts(cc, true)   // dry run: count only
+  *        MESSAGE | deleteContacts() : 2 contacts would be deleted
+  * $3 ==> Optional[2]
+  * }</pre>
+  *
+  * <p>Name fields ({@code firstname} and {@code surname}) are compared
+  * case-insensitively. Criteria are compiled to parameterized SQL, so values
+  * never need escaping; {@code %} and {@code _} in {@link startsWith
+  * startsWith()} and {@link contains contains()} values match only
+  * themselves.</p>
+  *
+  * <p>A condition which can't be applied (on an unknown field, or with no
+  * text to search for) is an error, since leaving it out would make the
+  * criteria match more contacts than asked for: the method adding it throws
+  * an {@link IllegalArgumentException}.</p>
+  *
+  * <p>Criteria can also be saved as text: {@link toString toString()} gives
+  * a description which {@link parse parse()} turns back into the same
+  * criteria.</p>
+  *
+  **/
+public final class ContactCriteria {
+
+  // kinds of condition
+  private enum Op { EQUAL, STARTS_WITH, CONTAINS, SOUNDS_LIKE, IN_GROUP }
+
+  private static final class Condition {
+    final Op op;
+    final String KEY;   // null for IN_GROUP
+    final String value;
+
+    Condition (Op op, String KEY, String value) {
+      this.op = op;
+      this.KEY = KEY;
+      this.value = value;
+    }
+  }
+
+  private final List<Condition> conditions = new ArrayList<>();
+
+  // valid field names, in Contact's order
+  private static final Set<String> FIELDS =
+    Collections.unmodifiableSet(new Contact().info.keySet());
+
+  private static final List<String> FIELD_ORDER = new ArrayList<>(FIELDS);
+
+  /**
+    * Requires the given {@code field} to equal {@code value} ({@code null}
+    * matches contacts for which {@code field} is not set).
+    *
+    * @param field contact field, e.g. {@code "surname"}
+    * @param value value which the field must equal
+    *
+    * @return this {@link ContactCriteria}, with the condition added
+    *
+    * @throws IllegalArgumentException if {@code field} is not a contact field
+    *
+    **/
+  public ContactCriteria equal (String field, String value) {
+    return add(Op.EQUAL, field, value);
+  }
+
+  /**
+    * Requires the given {@code field} to start with {@code prefix}.
+    *
+    * @param field contact field, e.g. {@code "surname"}
+    * @param prefix text which the field must start with
+    *
+    * @return this {@link ContactCriteria}, with the condition added
+    *
+    * @throws IllegalArgumentException if {@code field} is not a contact field,
+    * or the text is {@code null} or empty
+    *
+    **/
+  public ContactCriteria startsWith (String field, String prefix) {
+    return add(Op.STARTS_WITH, field, prefix);
+  }
+
+  /**
+    * Requires the given {@code field} to contain {@code text}.
+    *
+    * @param field contact field, e.g. {@code "phone"}
+    * @param text text which the field must contain
+    *
+    * @return this {@link ContactCriteria}, with the condition added
+    *
+    * @throws IllegalArgumentException if {@code field} is not a contact field,
+    * or the text is {@code null} or empty
+    *
+    **/
+  public ContactCriteria contains (String field, String text) {
+    return add(Op.CONTAINS, field, text);
+  }
+
+  /**
+    * Requires the given name {@code field} to {@link Phonetic#soundsLike sound
+    * like} {@code name}: every word of {@code name} must be similar to a word
+    * of the field, in sound and spelling, so {@code "jon"} matches
+    * {@code "John"} and {@code "Jon Paul"}, but not {@code "Jane"}.
+    *
+    * <p>This condition is evaluated in SQL by the {@code SOUNDS_LIKE} Java
+    * function, which the database owner installs when connecting.</p>
+    *
+    * @param field name field, {@code "firstname"} or {@code "surname"}
+    * @param name name which the field must sound like
+    *
+    * @return this {@link ContactCriteria}, with the condition added
+    *
+    * @throws IllegalArgumentException if {@code field} is not a name field,
+    * or {@code name} is {@code null} or empty
+    *
+    **/
+  public ContactCriteria soundsLike (String field, String name) {
+    if ("PHONE".equalsIgnoreCase(field))
+      throw new IllegalArgumentException("only name fields can be matched by sound");
+    return add(Op.SOUNDS_LIKE, field, name);
+  }
+
+  /**
+    * Requires contacts to belong to the group with the given name.
+    *
+    * @param group name of the group
+    *
+    * @return this {@link ContactCriteria}, with the condition added
+    *
+    * @throws IllegalArgumentException if {@code group} is {@code null}, empty,
+    * or all whitespace
+    *
+    **/
+  public ContactCriteria inGroup (String group) {
+    if (group == null || group.trim().isEmpty())
+      throw new IllegalArgumentException("group name cannot be null or empty");
+    conditions.add(new Condition(Op.IN_GROUP, null, group.toUpperCase()));
+    return this;
+  }
+
+  /**
+    * Returns {@code true} if no conditions have been added (so every contact
+    * matches).
+    *
+    * @return {@code true} if and only if these criteria have no conditions
+    *
+    **/
+  public boolean isEmpty() {
+    return conditions.isEmpty();
+  }
+
+  // validate and add a field condition
+  private ContactCriteria add (Op op, String field, String value) {
+    String KEY = field == null ? null : field.toUpperCase();
+
+    if (KEY == null || !FIELDS.contains(KEY))
+      throw new IllegalArgumentException("unknown field \"" + field + "\"; valid fields are " + FIELDS);
+
+    if (op != Op.EQUAL && (value == null || value.isEmpty()))
+      throw new IllegalArgumentException("search text cannot be null or empty");
+
+    conditions.add(new Condition(op, KEY, value));
+    return this;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  SQL COMPILATION
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Compiles these criteria to an SQL boolean expression over the
+    * {@code CONTACTS} table of the given user, aliased as {@code alias}.
+    * Values are not included in the SQL, but appended (in order) to
+    * {@code params}, to be bound to a {@link java.sql.PreparedStatement}.
+    *
+    * @param USER (validated, all-uppercase) user whose tables are queried
+    * @param OWNER (all-uppercase) database owner, in whose schema the
+    * {@link Phonetic} functions are installed
+    * @param alias alias of the {@code CONTACTS} table in the statement
+    * @param params list to which the values to bind are appended
+    *
+    * @return an SQL expression, or {@code "1 = 1"} if there are no conditions
+    *
+    **/
+  String toSQL (String USER, String OWNER, String alias, List<String> params) {
+    if (conditions.isEmpty()) return "1 = 1";
+
+    StringBuilder sb = new StringBuilder();
+    for (Condition c : conditions) {
+      if (sb.length() > 0) sb.append(" and ");
+
+      // names are compared case-insensitively
+      boolean isName = c.KEY != null && !c.KEY.equals("PHONE");
+      String column = isName ? "upper(" + alias + "." + c.KEY + ")" : alias + "." + c.KEY;
+      String value  = (isName && c.value != null) ? c.value.toUpperCase() : c.value;
+
+      switch (c.op) {
+        case EQUAL:
+          if (value == null) sb.append(alias).append('.').append(c.KEY).append(" is null");
+          else { sb.append(column).append(" = ?"); params.add(value); }
+          break;
+
+        case STARTS_WITH:
+          sb.append(column).append(" like ? escape '\\'");
+          params.add(escapeLike(value) + "%");
+          break;
+
+        case CONTAINS:
+          sb.append(column).append(" like ? escape '\\'");
+          params.add("%" + escapeLike(value) + "%");
+          break;
+
+        case SOUNDS_LIKE:
+          sb.append(OWNER).append(".SOUNDS_LIKE(").append(alias).append('.').append(c.KEY).append(", ?) = 1");
+          params.add(c.value);
+          break;
+
+        case IN_GROUP:
+          sb.append("exists (select 1 from ").append(USER).append(".GROUPS g where g.contactid = ")
+            .append(alias).append(".id and g.name = ?)");
+          params.add(value);
+          break;
+      }
+    }
+    return sb.toString();
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  IN-MEMORY MATCHING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns {@code true} if these criteria refer to groups, and so can't be
+    * tested by {@link matches matches()}.
+    *
+    * @return {@code true} if and only if there's an {@link inGroup inGroup()}
+    * condition
+    *
+    **/
+  boolean usesGroups() {
+    for (Condition c : conditions) if (c.op == Op.IN_GROUP) return true;
+    return false;
+  }
+
+  /**
+    * Tests a contact against these criteria, without the database, with the
+    * same results as the SQL from {@link toSQL toSQL()}.
+    *
+    * @param values the contact's field values, in the order of
+    * {@link Contact}'s fields (see {@link ContactIndex})
+    *
+    * @return {@code true} if the contact satisfies every condition; always
+    * {@code false} if these criteria {@link usesGroups use groups}
+    *
+    **/
+  boolean matches (String[] values) {
+    for (Condition c : conditions) {
+      if (c.op == Op.IN_GROUP) return false;
+
+      String field = values[FIELD_ORDER.indexOf(c.KEY)];
+      if (field == null) {
+        if (c.op == Op.EQUAL && c.value == null) continue;
+        return false;
+      }
+
+      boolean isName = !c.KEY.equals("PHONE");
+      String column = isName ? field.toUpperCase() : field;
+      String value  = (isName && c.value != null) ? c.value.toUpperCase() : c.value;
+
+      switch (c.op) {
+        case EQUAL:       if (!column.equals(value)) return false; break;
+        case STARTS_WITH: if (!column.startsWith(value)) return false; break;
+        case CONTAINS:    if (!column.contains(value)) return false; break;
+        case SOUNDS_LIKE: if (Phonetic.soundsLike(field, c.value) != 1) return false; break;
+        default: return false;
+      }
+    }
+    return true;
+  }
+
+  // make LIKE's wildcards (and its escape character) match literally
+  static String escapeLike (String s) {
+    StringBuilder sb = new StringBuilder(s.length() + 8);
+    for (int ii = 0; ii < s.length(); ++ii) {
+      char ch = s.charAt(ii);
+      if (ch == '%' || ch == '_' || ch == '\\') sb.append('\\');
+      sb.append(ch);
+    }
+    return sb.toString();
+  }
+
+  /**
+    * Returns a description of these criteria, which {@link parse parse()}
+    * turns back into the same criteria.
+    *
+    * @return a description of these criteria
+    *
+    **/
+  @Override
+  public String toString() {
+    if (conditions.isEmpty()) return "all contacts";
+
+    StringBuilder sb = new StringBuilder();
+    for (Condition c : conditions) {
+      if (sb.length() > 0) sb.append(" and ");
+      switch (c.op) {
+        case EQUAL:       sb.append(c.KEY).append(" = ").append(c.value == null ? "null" : quote(c.value)); break;
+        case STARTS_WITH: sb.append(c.KEY).append(" starts with ").append(quote(c.value)); break;
+        case CONTAINS:    sb.append(c.KEY).append(" contains ").append(quote(c.value)); break;
+        case SOUNDS_LIKE: sb.append(c.KEY).append(" sounds like ").append(quote(c.value)); break;
+        case IN_GROUP:    sb.append("in group ").append(quote(c.value)); break;
+      }
+    }
+    return sb.toString();
+  }
+
+  // double-quote `s`, escaping quotes and backslashes
+  private static String quote (String s) {
+    return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  PARSING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Parses a description of criteria, as returned by
+    * {@link toString toString()}.
+    *
+    * <pre>{@code
+    * jshell> ContactCriteria.parse("surname starts with \"M\" and phone starts with \"+44\"")
+    * $4 ==> Optional[SURNAME starts with "M" and PHONE starts with "+44"]
+    * }</pre>
+    *
+    * <p>Keywords and field names are case-insensitive. Values are
+    * double-quoted, with {@code \"} for a quote and {@code \\} for a
+    * backslash.</p>
+    *
+    * @param text description of the criteria
+    *
+    * @return the criteria, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if {@code text} is invalid
+    *
+    **/
+  public static Optional<ContactCriteria> parse (String text) {
+    String opName = "parse()";
+    ContactCriteria criteria = new ContactCriteria();
+
+    if (text == null) {
+      IOUtils.printError(opName, "criteria text cannot be null");
+      return Optional.empty();
+    }
+    if (text.trim().equalsIgnoreCase("all contacts")) return Optional.of(criteria);
+
+    // words, "=", and quoted values (marked by a leading quote)
+    List<String> tokens = new ArrayList<>();
+    for (int ii = 0; ii < text.length(); ) {
+      char ch = text.charAt(ii);
+
+      if (Character.isWhitespace(ch)) { ++ii; continue; }
+      if (ch == '=') { tokens.add("="); ++ii; continue; }
+
+      if (ch == '"') {
+        StringBuilder sb = new StringBuilder("\"");
+        for (++ii; ii < text.length() && text.charAt(ii) != '"'; ++ii) {
+          if (text.charAt(ii) == '\\' && ii + 1 < text.length()) ++ii;
+          sb.append(text.charAt(ii));
+        }
+        if (ii++ >= text.length()) {
+          IOUtils.printError(opName, "unterminated quoted value in \"" + text + "\"");
+          return Optional.empty();
+        }
+        tokens.add(sb.toString());
+        continue;
+      }
+
+      int start = ii;
+      while (ii < text.length() && !Character.isWhitespace(text.charAt(ii))
+        && text.charAt(ii) != '=' && text.charAt(ii) != '"') ++ii;
+      tokens.add(text.substring(start, ii).toUpperCase());
+    }
+
+    // condition ("and" condition)*
+    for (int at = 0; ; ++at) {
+      try {
+        at = parseCondition(criteria, tokens, at);
+
+      // the condition was rejected by its method
+      } catch (IllegalArgumentException ex) {
+        IOUtils.printError(opName, ex.getMessage());
+        at = -1;
+      }
+
+      // the condition wasn't recognised
+      if (at < 0 || (at < tokens.size() && !tokens.get(at).equals("AND")) || at + 1 == tokens.size()) {
+        IOUtils.printError(opName, "invalid criteria \"" + text + "\"");
+        return Optional.empty();
+      }
+
+      if (at == tokens.size()) break;
+    }
+
+    return Optional.of(criteria);
+  }
+
+  // add the condition starting at tokens[at] to `criteria`; returns the
+  // position after it, or -1 if it's not a condition
+  private static int parseCondition (ContactCriteria criteria, List<String> tokens, int at) {
+    int left = tokens.size() - at;
+    if (left < 3) return -1;
+
+    String first = tokens.get(at), second = tokens.get(at + 1), third = tokens.get(at + 2);
+
+    if (first.equals("IN") && second.equals("GROUP") && isValue(third)) {
+      criteria.inGroup(third.substring(1));
+      return at + 3;
+    }
+
+    if (second.equals("=") && (third.equals("NULL") || isValue(third))) {
+      criteria.equal(first, third.equals("NULL") ? null : third.substring(1));
+      return at + 3;
+    }
+
+    if (second.equals("CONTAINS") && isValue(third)) {
+      criteria.contains(first, third.substring(1));
+      return at + 3;
+    }
+
+    if (left < 4 || !isValue(tokens.get(at + 3))) return -1;
+    String value = tokens.get(at + 3).substring(1);
+
+    if (second.equals("STARTS") && third.equals("WITH")) criteria.startsWith(first, value);
+    else if (second.equals("SOUNDS") && third.equals("LIKE")) criteria.soundsLike(first, value);
+    else return -1;
+    return at + 4;
+  }
+
+  // is this token a quoted value?
+  private static boolean isValue (String token) {
+    return token.startsWith("\"");
+  }
+
+}
@@ -0,0 +1,181 @@
+package watson;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+  * Forward-only cursor over a user's {@code CONTACTS} table, joined with that
+  * user's {@code GROUPS} table.
+  *
+  * <p>Each call to {@link next next()} advances to the next contact and
+  * collects all of the names of the groups that contact belongs to. Only one
+  * contact is held in memory at a time, so a cursor can walk tables of any
+  * size in constant memory.</p>
+  *
+  * <pre>{@code
+  * try (ContactCursor cc = new ContactCursor(connection, "JEFF")) {
+  *   while (cc.next())
+  *     System.out.println(cc.id() + " " + cc.surname() + " " + cc.groups());
+  * }
+  * }</pre>
+  *
+  **/
+final class ContactCursor implements AutoCloseable {
+
+  // rows fetched from Derby per round trip
+  private static final int FETCH_SIZE = 256;
+
+  private final String    USER;
+  private final Statement statement;
+  private final ResultSet resultSet;
+
+  // is there an unconsumed row waiting in the resultSet?
+  private boolean pending;
+
+  // current contact
+  private int    id;
+  private String firstname;
+  private String surname;
+  private String phone;
+  private final List<String> groups = new ArrayList<>();
+
+  /**
+    * Opens a cursor over the {@code CONTACTS} and {@code GROUPS} tables of the
+    * user with the given (all-uppercase, already-validated) {@code USER} name.
+    *
+    * @param connection {@link Connection} on which to open the cursor
+    * @param USER name of the user whose tables should be read
+    *
+    * @throws SQLException if the query could not be executed
+    *
+    **/
+  ContactCursor (Connection connection, String USER) throws SQLException {
+    this(connection, USER, null, Collections.emptyList(), 0);
+  }
+
+  /**
+    * Opens a cursor over those contacts of the given user which satisfy the
+    * condition {@code where}, in which the {@code CONTACTS} table has the
+    * alias {@code c}.
+    *
+    * @param connection {@link Connection} on which to open the cursor
+    * @param USER name of the user whose tables should be read
+    * @param where (trusted) SQL condition on contacts, or {@code null} for all
+    * contacts
+    * @param params values of the parameters in {@code where}, in order
+    * @param timeout most seconds for which the query may run (see
+    * {@link Statement#setQueryTimeout Statement.setQueryTimeout()}), or
+    * {@code 0} for no limit
+    *
+    * @throws SQLException if the query could not be executed
+    *
+    **/
+  ContactCursor (Connection connection, String USER, String where, List<String> params,
+    int timeout) throws SQLException {
+    this.USER = USER;
+
+    // ordering by contact ID puts all of a contact's groups in adjacent rows
+    PreparedStatement ps = connection.prepareStatement(
+      "select c.id, c.firstname, c.surname, c.phone, g.name from " +
+      USER + ".CONTACTS c left outer join " + USER + ".GROUPS g " +
+      "on g.contactid = c.id" + (where == null ? "" : " where " + where) +
+      " order by c.id, g.name",
+
+      // forward-only, read-only: Derby streams rows rather than materialising
+      ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    this.statement = ps;
+
+    try {
+      ps.setFetchSize(FETCH_SIZE);
+      ps.setQueryTimeout(timeout);
+      for (int ii = 0; ii < params.size(); ++ii) ps.setString(ii + 1, params.get(ii));
+
+      this.resultSet = ps.executeQuery();
+      this.pending = this.resultSet.next();
+
+    } catch (SQLException ex) {
+      ps.close();
+      throw ex;
+    }
+  }
+
+  /**
+    * Advances this cursor to the next contact.
+    *
+    * @return {@code true} if there was another contact, {@code false} if the
+    * cursor is exhausted
+    *
+    * @throws SQLException if there was a problem reading from the database
+    *
+    **/
+  boolean next() throws SQLException {
+    if (!pending) return false;
+
+    id        = resultSet.getInt(1);
+    firstname = resultSet.getString(2);
+    surname   = resultSet.getString(3);
+    phone     = resultSet.getString(4);
+    groups.clear();
+
+    // consume every row belonging to this contact
+    do {
+      String group = resultSet.getString(5);
+      if (group != null) groups.add(group);
+      pending = resultSet.next();
+    } while (pending && resultSet.getInt(1) == id);
+
+    return true;
+  }
+
+  /** Name of the user whose tables this cursor reads. **/
+  String user() { return USER; }
+
+  /** ID of the current contact. **/
+  int id() { return id; }
+
+  /** First name of the current contact, or {@code null}. **/
+  String firstname() { return firstname; }
+
+  /** Surname of the current contact, or {@code null}. **/
+  String surname() { return surname; }
+
+  /** Phone number of the current contact, or {@code null}. **/
+  String phone() { return phone; }
+
+  /** Names of the groups the current contact belongs to (reused between rows). **/
+  List<String> groups() { return groups; }
+
+  /**
+    * Asks the database to stop running this cursor's query, from any thread.
+    *
+    * <p>Not every driver can do this (embedded Derby can't), so callers
+    * which need to stop a query promptly should also stop calling
+    * {@link next next()}, and rely on a query timeout for the rest.</p>
+    *
+    * @return {@code true} if the request was accepted, {@code false} if the
+    * driver doesn't support it
+    *
+    **/
+  boolean cancel() {
+    try {
+      statement.cancel();
+      return true;
+    } catch (SQLException ex) {
+      return false;
+    }
+  }
+
+  @Override
+  public void close() throws SQLException {
+    try { resultSet.close(); }
+    finally { statement.close(); }
+  }
+
+}
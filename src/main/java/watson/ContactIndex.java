@@ -0,0 +1,65 @@
+package watson;
+
+/**
+  * An in-memory index over the current user's contacts, kept up to date by
+  * {@link Database}.
+  *
+  * <p>Indexes are created and filled on first use (see
+  * {@link Database#searchContacts Database.searchContacts()}); from then on,
+  * every {@link Database} method which adds, changes, or deletes contacts
+  * reports the change to every index, once the change has succeeded. If a
+  * transaction in which contacts were changed is rolled back, all indexes are
+  * {@link clear cleared} and refilled before they are next used.</p>
+  *
+  * <p>Field values are passed in the order of {@link Contact}'s fields
+  * ({@code FIRSTNAME}, {@code SURNAME}, {@code PHONE}), exactly as they are
+  * stored in the database, with {@code null} for fields which are not set.
+  * Like {@link Database}, indexes are not thread-safe.</p>
+  *
+  **/
+interface ContactIndex {
+
+  /**
+    * Adds the contact with the given {@code ID} to this index, replacing it if
+    * it's already indexed.
+    *
+    * @param ID ID of the contact
+    * @param values the contact's field values
+    *
+    **/
+  void put (int ID, String[] values);
+
+  /**
+    * Removes the contact with the given {@code ID} from this index, if it's
+    * indexed.
+    *
+    * @param ID ID of the contact
+    *
+    **/
+  void remove (int ID);
+
+  /** Removes every contact from this index. **/
+  void clear();
+
+  /**
+    * Returns an estimate of the heap memory used by this index.
+    *
+    * @return the approximate size of this index, in bytes
+    *
+    **/
+  long bytes();
+
+  /**
+    * Returns the approximate heap size of the given {@link String} (assuming
+    * a 64-bit JVM and a {@code char[]} for its contents), for {@link bytes}.
+    *
+    * @param s {@link String} to measure
+    *
+    * @return the approximate size of {@code s}, in bytes
+    *
+    **/
+  static long stringBytes (String s) {
+    return 24 + 16 + 2L * s.length();
+  }
+
+}
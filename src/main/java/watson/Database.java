@@ -1,26 +1,43 @@
 package watson;
 
+import java.io.IOException;
+
+import java.nio.file.Paths;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.Savepoint;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import java.util.stream.Collectors;
 
-import org.apache.derby.jdbc.EmbeddedDriver;
-
 import watson.Contact;
 
 /**
@@ -95,9 +112,11 @@ import watson.Contact;
   * {@link PasswordUtils}). Every other non-DBO user also has
   * a {@code CONTACTS} table, which holds a list of their contacts, and a
   * {@code GROUPS} table, which holds all of the relationships between the
-  * user's contacts and their groups of contacts. {@code SECURE} tables are, by
+  * user's contacts and their groups of contacts, and a {@code SMARTGROUPS}
+  * table, which holds the criteria of their smart groups (see
+  * {@link createSmartGroup createSmartGroup()}). {@code SECURE} tables are, by
   * default, hidden from non-DBO users. Each non-DBO user can only see their own
-  * {@code CONTACTS} and {@code GROUPS} tables.</p>
+  * {@code CONTACTS}, {@code GROUPS}, and {@code SMARTGROUPS} tables.</p>
   *
   * <p>Any user (including the DBO) can change their password with the
   * {@link changePassword changePassword()} method:</p>
@@ -131,7 +150,7 @@ import watson.Contact;
   *
   * jshell> db.users(); db.tables()
   * $14 ==> Optional[[OWNER, USERA, USERB, USERC]]
-  * $15 ==> [OWNER.SECURE, USERA.CONTACTS, USERA.GROUPS, USERA.SECURE, USERB.CONTACTS, USERB.GROUPS, USERB.SECURE, USERC.CONTACTS, USERC.GROUPS, USERC.SECURE]
+  * $15 ==> [OWNER.SECURE, USERA.CONTACTS, USERA.GROUPS, USERA.SECURE, USERA.SMARTGROUPS, USERB.CONTACTS, USERB.GROUPS, USERB.SECURE, USERB.SMARTGROUPS, USERC.CONTACTS, USERC.GROUPS, USERC.SECURE, USERC.SMARTGROUPS]
   * }</pre>
   *
   * <p>The DBO can delete a user with the {@link deleteUser deleteUser()}
@@ -145,7 +164,7 @@ import watson.Contact;
   *
   * jshell> db.users(); db.tables()
   * $17 ==> Optional[[OWNER, USERA, USERC]]
-  * $18 ==> [OWNER.SECURE, USERA.CONTACTS, USERA.GROUPS, USERA.SECURE, USERC.CONTACTS, USERC.GROUPS, USERC.SECURE]
+  * $18 ==> [OWNER.SECURE, USERA.CONTACTS, USERA.GROUPS, USERA.SECURE, USERA.SMARTGROUPS, USERC.CONTACTS, USERC.GROUPS, USERC.SECURE, USERC.SMARTGROUPS]
   * }</pre>
   *
   * <p>Note that usernames are case-insensitive, but passwords (obviously) are
@@ -186,7 +205,7 @@ import watson.Contact;
   * jshell> db.user(); db.owner(); db.tables(); db.users()
   * $23 ==> Optional[USERA]
   * $24 ==> Optional[OWNER]
-  * $25 ==> [USERA.CONTACTS, USERA.GROUPS]
+  * $25 ==> [USERA.CONTACTS, USERA.GROUPS, USERA.SMARTGROUPS]
   *          ERROR | users() : only database owner can view list of users
   * $26 ==> Optional.empty
   * }</pre>
@@ -437,6 +456,19 @@ import watson.Contact;
   * $63 ==> false
   * }</pre>
   *
+  * <h2>Exporting Contacts</h2>
+  *
+  * <p>A user's contacts (and the groups they belong to) can be exported to
+  * CSV, vCard, or JSON files with {@link exportContacts exportContacts()}. The
+  * DBO can export every user's contacts to a single file with
+  * {@link exportAllContacts exportAllContacts()}:</p>
+  *
+  * <pre>{@code
+  * jshell> db.exportContacts("usera.json.gz", Exporter.Format.JSON, true)
+  *        MESSAGE | exportContacts() : exported 6 contacts in 9 ms
+  * $64 ==> Optional[6]
+  * }</pre>
+  *
   **/
 public final class Database {
 
@@ -508,13 +540,36 @@ public final class Database {
   //
   //----------------------------------------------------------------------------
 
-//  private final Connection connection;
+  private final Connection connection;
   private final Statement statement;
 
-  // singleton class, so constructor is private
-  private Database (Connection connection, Statement statement) {
-//    this.connection = connection;
+  // prepared statements (ps_) prevent injection attacks
+  //  see: https://docs.oracle.com/javase/9/docs/api/java/sql/PreparedStatement.html
+  //  and: http://bobby-tables.com/java
+
+  private final PreparedStatement ps_chpwd;   // for changing password
+  private final PreparedStatement ps_adduser; // for adding a new user
+
+  // results of this connection's most recent query
+  private ResultSet resultSet = null;
+  private ResultSetMetaData rsmd = null;
+
+  // name of the connected user, for diagnostic events (see Events)
+  private final String userName;
+
+  // singleton class (apart from sessions), so constructor is private
+  private Database (Connection connection, Statement statement,
+    PreparedStatement ps_chpwd, PreparedStatement ps_adduser) {
+    this.connection = connection;
     this.statement = statement;
+    this.ps_chpwd = ps_chpwd;
+    this.ps_adduser = ps_adduser;
+
+    // Derby answers this from the connection itself, without running a query
+    String name = null;
+    try { name = connection.getMetaData().getUserName(); }
+    catch (SQLException ex) { IOUtils.printSQLException("Database()", ex); }
+    this.userName = name;
   }
 
   // database is accessed via connect() method
@@ -524,15 +579,6 @@ public final class Database {
   private static Database database = null;
   private static String derbyName = null;
   private static boolean newDB = false;
-  private static ResultSet resultSet = null;
-  private static ResultSetMetaData rsmd = null;
-
-  // prepared statements (ps_) prevent injection attacks
-  //  see: https://docs.oracle.com/javase/9/docs/api/java/sql/PreparedStatement.html
-  //  and: http://bobby-tables.com/java
-
-  private static PreparedStatement ps_chpwd = null;   // for changing password
-  private static PreparedStatement ps_adduser = null; // for adding a new user
 
   ///---------------------------------------------------------------------------
   ///
@@ -554,10 +600,23 @@ public final class Database {
     * Closes the connection to the current database, if such a connection
     * exists; resets all variables.
     *
+    * <p>A database opened in this JVM is shut down. One opened through a
+    * {@link NetworkServer network server} is left open, for any other
+    * instances using it; only this connection is closed.</p>
+    *
     **/
   public static void disconnect() {
 
-    try {
+    if (NetworkServer.attached()) {
+      if (database != null) try {
+        if (!database.connection.getAutoCommit()) database.connection.rollback();
+        database.connection.close();
+
+      } catch (SQLException ex) {
+        IOUtils.printSQLException("disconnect()", ex);
+      }
+
+    } else try {
       // shut down database, always throws an SQLException (http://bit.ly/2AcngnA)
       DriverManager.getConnection("jdbc:derby:" + derbyName + ";shutdown=true");
 
@@ -569,15 +628,15 @@ public final class Database {
     database   = null;
     derbyName  = null;
     newDB      = false;
-    resultSet  = null;
-    rsmd       = null;
-    ps_chpwd   = null;
-    ps_adduser = null;
+
+    // a tuning profile only applies to the connection it was given to
+    TuningProfile.restoreSystem();
   }
 
   /**
     * Constructs a properly-formatted {@code jdbc:derby} URL, given the database
-    * name and password and the user's username and password.
+    * name and password and the user's username and password. The URL is that
+    * of a network server if one is {@link NetworkServer#attach attached}.
     *
     * <p>Returns an {@link Optional#empty empty Optional} if any of the arguments
     * are {@code null}, but enforces no other restrictions on them.</p>
@@ -601,7 +660,7 @@ public final class Database {
 
     // return standard format URL for Derby connection
     StringBuilder sb = new StringBuilder();
-    sb.append("jdbc:derby:");    sb.append(dbName);
+    sb.append(NetworkServer.url(dbName));
     sb.append(";bootPassword="); sb.append(dbPwd);
     sb.append(";user=");         sb.append(userName);
     sb.append(";password=");     sb.append(userPwd);
@@ -609,6 +668,121 @@ public final class Database {
     return Optional.of(sb);
   }
 
+  /**
+    * Opens a new, independent {@link Connection} to an existing database.
+    *
+    * <p>Unlike {@link connect connect()}, this never creates a database and
+    * doesn't touch the singleton {@link Database}. It's used by services (like
+    * {@link BackupService}) which need their own connection so that they don't
+    * block the user's.</p>
+    *
+    * @param dbName name of the database to connect to
+    * @param dbPwd boot password for the database
+    * @param userName name of the user logging into the database
+    * @param userPwd password of the user logging into the database
+    *
+    * @return a new {@link Connection} to the database
+    *
+    * @throws SQLException if any argument is {@code null} or the connection
+    * could not be made
+    *
+    **/
+  static Connection newConnection (String dbName, String dbPwd,
+    String userName, String userPwd) throws SQLException {
+
+    Optional<StringBuilder> optSB = constructURL(dbName, dbPwd, userName, userPwd);
+    if (!optSB.isPresent())
+      throw new SQLException("illegal argument(s) -- no parameter can be null");
+
+    DriverManager.registerDriver(NetworkServer.driver());
+    return DriverManager.getConnection(optSB.get().toString());
+  }
+
+  /**
+    * Opens a new, independent session on an existing database.
+    *
+    * <p>A session is a {@link Database} object with a connection of its own.
+    * Unlike the object returned by {@link connect connect()}, it isn't the
+    * singleton: any number of sessions, for any users, may be open at once,
+    * as long as each is used by only one thread at a time. This is how
+    * {@link ApiServer} serves many users at once (see
+    * {@link ConnectionPool}).</p>
+    *
+    * <p>A session never creates a database, and doesn't run the DBO's
+    * set-up (installing SQL functions and so on), which is done by
+    * {@link connect connect()}. Sessions are ended with {@link close close()},
+    * not {@link disconnect disconnect()}, which shuts the database down.</p>
+    *
+    * <p>Each session keeps its own contact indexes (see
+    * {@link searchContacts searchContacts()}); changes made by one session
+    * (in this JVM, or another instance sharing the database through a
+    * {@link NetworkServer network server}) mark those of the user's other
+    * sessions as stale, so they're refilled before they're next used.</p>
+    *
+    * @param dbName name of the database to connect to
+    * @param dbPwd boot password for the database
+    * @param userName name of the user logging into the database
+    * @param userPwd password of the user logging into the database
+    *
+    * @return a new session, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if the database doesn't exist or the
+    * user's name or password is wrong
+    *
+    **/
+  static Optional<Database> session (String dbName, String dbPwd,
+    String userName, String userPwd) {
+
+    Connection conn;
+    try {
+      conn = StatementTracer.trace(newConnection(dbName, dbPwd, userName, userPwd));
+
+    } catch (SQLException ex) {
+      // wrong credentials are routine for a server: warn, rather than dumping the exception
+      if ("08004".equals(ex.getSQLState())) IOUtils.printWarning("session()", "invalid username or password");
+      else IOUtils.printSQLException("session()", ex);
+      return Optional.empty();
+    }
+
+    Optional<Database> session = getStatements(conn);
+    if (!session.isPresent()) try { conn.close(); } catch (SQLException ex) { }
+    return session;
+  }
+
+  /**
+    * Ends a {@link session session}, closing its connection. Any transaction
+    * in progress is rolled back. Does nothing to the singleton (see
+    * {@link disconnect disconnect()}).
+    *
+    **/
+  void close() {
+    if (this == database) return;
+
+    try {
+      if (!this.connection.getAutoCommit()) this.connection.rollback();
+      this.connection.close();
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException("close()", ex);
+    }
+  }
+
+  /**
+    * Returns {@code true} if this object's connection is still open and
+    * answering. A connection through a {@link NetworkServer network server}
+    * is lost if the server stops, and this is the only way to tell, short of
+    * a failed statement.
+    *
+    * @return {@code true} if the connection is usable
+    *
+    **/
+  boolean isValid() {
+    try {
+      return this.connection.isValid(1);
+    } catch (SQLException ex) {
+      return false;
+    }
+  }
+
   /**
     * Initialises or creates the database specified by {@code databaseName} and
     * returns a reference to that {@link Database}, wrapped in an {@link Optional}.
@@ -637,120 +811,378 @@ public final class Database {
     **/
   public static Optional<Database> connect (
     String databaseName, String bootPassword, String userName, String userPassword) {
+    return connect(databaseName, bootPassword, userName, userPassword, null, null);
+  }
+
+  /**
+    * As {@link connect(String, String, String, String)}, but first applies the
+    * given {@link TuningProfile} (page cache size, page size, statement cache
+    * size, log buffer size, and durability).
+    *
+    * <p>The profile's properties are set as system properties before the
+    * database boots, so they apply to this session; the JVM's previous values
+    * are restored when it's {@link disconnect disconnected} (or if the
+    * connection fails). If a new database is created, the profile's
+    * {@link TuningProfile#persistent page size} is also stored in the
+    * database itself (before any tables are created, so that it applies to
+    * every table, including those of users added later).</p>
+    *
+    * <p>If the database has already been booted by this JVM, the boot-time
+    * properties only take effect after the database is
+    * {@link disconnect disconnected} and reconnected.</p>
+    *
+    * @param databaseName name of the database to connect to / create
+    * @param bootPassword boot password for the database, required to connect to it
+    * @param userName name of the user connecting to / creating the database
+    * @param userPassword password for the user specified by {@code userName}
+    * @param profile tuning profile to apply; cannot be {@code null}
+    *
+    * @return the singleton {@link Database} object, wrapped in an
+    * {@link Optional}, or an {@link Optional#empty empty Optional} if there was
+    * a problem
+    *
+    **/
+  public static Optional<Database> connect (String databaseName, String bootPassword,
+    String userName, String userPassword, TuningProfile profile) {
+
+    if (profile == null) {
+      IOUtils.printError("connect()", "tuning profile cannot be null");
+      return Optional.empty();
+    }
+
+    return connect(databaseName, bootPassword, userName, userPassword, profile, null);
+  }
+
+  /**
+    * As {@link connect(String, String, String, String)}, but appends the given
+    * Derby boot {@code attributes} (like {@code "restoreFrom=/path"}) to the
+    * connection URL.
+    *
+    * <p>If {@code attributes} is not {@code null}, the database must already
+    * exist (or be recreated by the attributes themselves); it will never be
+    * created from scratch.</p>
+    *
+    * @param databaseName name of the database to connect to / create
+    * @param bootPassword boot password for the database, required to connect to it
+    * @param userName name of the user connecting to / creating the database
+    * @param userPassword password for the user specified by {@code userName}
+    * @param attributes extra {@code ;}-separated Derby URL attributes, or {@code null}
+    *
+    * @return the singleton {@link Database} object, wrapped in an
+    * {@link Optional}, or an {@link Optional#empty empty Optional} if there was
+    * a problem
+    *
+    **/
+  static Optional<Database> connect (String databaseName, String bootPassword,
+    String userName, String userPassword, String attributes) {
+    return connect(databaseName, bootPassword, userName, userPassword, null, attributes);
+  }
+
+  // all public connect() methods end up here; profile and attributes may be null
+  private static Optional<Database> connect (String databaseName, String bootPassword,
+    String userName, String userPassword, TuningProfile profile, String attributes) {
 
     if (database != null) {
       IOUtils.printWarning("connect()", "database already initialised");
       return Optional.of(database);
     }
 
+    // boot-time properties must be set before the database is opened
+    if (profile != null) {
+      profile.applyToSystem();
+      IOUtils.printMessage("connect()", "applied tuning profile " + profile);
+    }
+
     // if connection fails, return empty
     Optional<Connection> optConn = getConnection(
-      databaseName, bootPassword, userName, userPassword);
-    if (!optConn.isPresent()) return Optional.empty();
+      databaseName, bootPassword, userName, userPassword, attributes);
+    if (!optConn.isPresent()) {
+      TuningProfile.restoreSystem();
+      return Optional.empty();
+    }
+
+    // every statement created on this connection is traced (see StatementTracer)
+    Connection conn = StatementTracer.trace(optConn.get());
 
     // if statement initialisation fails, return empty
-    Optional<Statement> optState = getStatement(optConn.get());
-    if (!optState.isPresent()) return Optional.empty();
+    Optional<Database> optDB = getStatements(conn);
+    if (!optDB.isPresent()) {
+      TuningProfile.restoreSystem();
+      return Optional.empty();
+    }
+
+    database = optDB.get();
+
+    // if this is a new database, there's some setup left to do; it's all done
+    // in one transaction, so a half-initialised database is never committed
+    if (newDB && !database.inTransaction(tx ->
+        database.initialise(userName, userPassword, profile))) {
+      database = null; // reset mis-instantiated database
+      TuningProfile.restoreSystem();
+      return Optional.empty();
+    }
+
+    // Derby only enforces authentication once the new database is rebooted;
+    // through a network server, other instances could connect before then
+    if (newDB && NetworkServer.attached()) {
+      try { // shut down database, always throws an SQLException (http://bit.ly/2AcngnA)
+        DriverManager.getConnection(NetworkServer.url(databaseName) + ";user=" +
+          userName + ";password=" + userPassword + ";shutdown=true");
 
-    Statement state = optState.get();
-    Connection conn = optConn.get();
+      } catch (SQLException ex) {
+        // do nothing, this is expected
+      }
 
-    // if this is a new database, there's some setup left to do:
-    if (newDB) { try {
+      database = null;
+      newDB    = false;
+      return connect(databaseName, bootPassword, userName, userPassword, profile, attributes);
+    }
 
-        // must be signed in as DBO to run SYSCS_SET_DATABASE_PROPERTY
-        //  -> set requireAuthentication to true to enforce password authentication
-        state.executeUpdate(
-          "call SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(" +
-          "'derby.connection.requireAuthentication', 'true')");
+    // the DBO (re)installs the SQL functions any user's queries may call
+    if (database.userIsDBO()) {
+      database.installFunctions();
+      database.installSmartGroupsTables();
+      database.installChangesTables();
+      database.installGroupsIndexes();
+    }
 
-        // don't cache identity (primary key) values: http://bit.ly/2SKi1ml
-        // if the database doesn't shut down properly (as it might if the user
-        // hits the [X] button on the UI window), cached identity values are
-        // lost and may "jump" by 100 the next time the DB is opened
+    // if we've gotten this far, the connection is good; return the new db
+    derbyName = databaseName;
+    IOUtils.printMessage("connect()", "database successfully initialised");
+    return Optional.of(database);
+  }
 
-        state.executeUpdate(
-          "CALL SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(" +
-          "'derby.language.sequence.preallocator', '1')");
+  // Java functions (see Phonetic) created in the DBO's schema, and executable
+  // by every user: name -> signature and external name
+  private static final String[][] FUNCTIONS = {
+    { "SOUNDEX", "(name varchar(128)) returns varchar(4)", "watson.Phonetic.soundex" },
+    { "SOUNDS_LIKE", "(name varchar(128), query varchar(128)) returns int", "watson.Phonetic.soundsLike" }
+  };
+
+  // creates any of the FUNCTIONS missing from the DBO's schema; must be called
+  // by the DBO. A failure here is reported, but doesn't fail the connection
+  private void installFunctions() {
+
+    String OWNER = this.userName.toUpperCase();
+    String query = "select 1 from sys.sysaliases a, sys.sysschemas s " +
+      "where a.schemaid = s.schemaid and s.schemaname = ? and a.alias = ?";
+
+    try (PreparedStatement ps = this.connection.prepareStatement(query)) {
+      for (String[] function : FUNCTIONS) {
+        ps.setString(1, OWNER);
+        ps.setString(2, function[0]);
+        try (ResultSet rs = ps.executeQuery()) { if (rs.next()) continue; }
+
+        this.statement.executeUpdate("create function " + OWNER + "." + function[0] +
+          function[1] + " language java parameter style java no sql deterministic " +
+          "returns null on null input external name '" + function[2] + "'");
+        this.statement.executeUpdate(
+          "grant execute on function " + OWNER + "." + function[0] + " to public");
+
+        IOUtils.printMessage("connect()", "installed SQL function " + OWNER + "." + function[0]);
+      }
 
-        //----------------------------------------------------------------------
-        //
-        //  Note on user creation:
-        //
-        //  Only the DBO can create schemas (bit.ly/2Abear0) which are
-        //  different than the current user name, and only already-existing
-        //  users can log in to the database. Therefore, only the DBO can create
-        //  new users. Users cannot create schemas different than their own
-        //  usernames, and cannot create or delete tables outside their own
-        //  schemas. Theoretically, users could delete their own tables, but
-        //  this would leave their accounts in an unstable state. Users should
-        //  not be able to delete other users accounts, and they cannot delete
-        //  their own accounts while logged in.
-        //
-        //  The only logical setup, then, is that only the DBO can add and
-        //  delete user accounts, and that users cannot delete their own tables.
-        //
-        //----------------------------------------------------------------------
+    } catch (SQLException ex) {
+      IOUtils.printWarning("connect()", "could not install SQL functions; sounds-like criteria will fail");
+      IOUtils.printSQLException("connect()", ex);
+    }
+  }
 
-        // grant users the ability to reset their own passwords
-        state.executeUpdate(
-          "grant execute on procedure SYSCS_UTIL.SYSCS_RESET_PASSWORD to public");
+  // creates the SMARTGROUPS table (see createSmartGroup()) of each user who
+  // was added before smart groups existed; must be called by the DBO
+  private void installSmartGroupsTables() {
 
-        // before we can add the DBO to the database, we need to create the schema
-        state.executeUpdate("create schema " + userName);
+    Optional<List<String>> USERS = users();
+    if (!USERS.isPresent()) return;
+    List<String> TABLES = tables();
 
-        // don't use addUser() to add the DBO to the database, because it requires
-        // validation of the DBO's password from the SECURE table, which doesn't yet exist
+    try {
+      for (String USER : USERS.get())
+        if (TABLES.contains(USER + ".CONTACTS") && !TABLES.contains(USER + ".SMARTGROUPS")) {
+          createSmartGroupsTable(USER, USER);
+          IOUtils.printMessage("connect()", "created table " + USER + ".SMARTGROUPS");
+        }
 
-        state.execute("create table " + userName +
-          ".SECURE (salt varchar(1024) not null, hash varchar(1024) not null)");
+    } catch (SQLException ex) {
+      IOUtils.printWarning("connect()", "could not create SMARTGROUPS tables; smart groups will fail");
+      IOUtils.printSQLException("connect()", ex);
+    }
+  }
 
-        // generate salt and hash password
-        Optional<String> optsalt = PasswordUtils.generateSalt(512);
-        if (!optsalt.isPresent()) return Optional.empty();
-        String salt = optsalt.get();
+  // creates the CHANGES table (see createChangesTable()) of each user who was
+  // added before changes were counted in the database, and of the DBO (whose
+  // count is of users added and deleted); must be called by the DBO
+  private void installChangesTables() {
 
-        Optional<String> opthash = PasswordUtils.hashPassword(userPassword, salt);
-        if (!opthash.isPresent()) return Optional.empty();
-        String hash = opthash.get();
+    Optional<List<String>> USERS = users();
+    if (!USERS.isPresent()) return;
+    List<String> TABLES = tables();
+    String OWNER = this.userName.toUpperCase();
 
-        // add salt and hash to database
-        state.execute("insert into " + userName  +
-          ".SECURE (salt, hash) values ('" + salt + "', '" + hash + "')");
+    try {
+      for (String USER : USERS.get())
+        if ((TABLES.contains(USER + ".CONTACTS") || USER.equals(OWNER)) &&
+            !TABLES.contains(USER + ".CHANGES")) {
+          createChangesTable(USER, USER);
+          IOUtils.printMessage("connect()", "created table " + USER + ".CHANGES");
+        }
 
-      } catch (SQLException ex) {
-        IOUtils.printSQLException("connect()", ex);
-        return Optional.empty();
-    } }
+    } catch (SQLException ex) {
+      IOUtils.printWarning("connect()", "could not create CHANGES tables; searches will be slow");
+      IOUtils.printSQLException("connect()", ex);
+    }
+  }
 
-    database = new Database(conn, state);
+  // indexes the GROUPS table (see createGroupsIndex()) of each user who was
+  // added before it was indexed; must be called by the DBO
+  private void installGroupsIndexes() {
 
-    // if this is a new database, make sure we add the database owner to the
-    // list of users, and give the DBO full read/write access to the database
+    Optional<List<String>> USERS = users();
+    if (!USERS.isPresent()) return;
+    List<String> TABLES = tables();
 
-    if (newDB) {
-      try { // add the DBO to the list of full read/write access users
+    try {
+      // schemas whose GROUPS tables are already indexed
+      Set<String> indexed = new HashSet<>();
+      try (ResultSet rs = this.statement.executeQuery(
+        "select s.schemaname from SYS.SYSCONGLOMERATES c join SYS.SYSSCHEMAS s " +
+        "on c.schemaid = s.schemaid where c.conglomeratename = 'GROUPS_CONTACTID'")) {
+        while (rs.next()) indexed.add(rs.getString(1));
+      }
 
-        ps_adduser.setString(1, userName);
-        ps_adduser.setString(2, userPassword);
-        ps_adduser.execute();
+      for (String USER : USERS.get())
+        if (TABLES.contains(USER + ".GROUPS") && !indexed.contains(USER)) {
+          createGroupsIndex(USER);
+          IOUtils.printMessage("connect()", "indexed table " + USER + ".GROUPS");
+        }
 
-        state.executeUpdate(
-          "call SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(" +
-          "'derby.database.fullAccessUsers', '" + userName + "')");
+    } catch (SQLException ex) {
+      IOUtils.printWarning("connect()", "could not index GROUPS tables; reading groups will be slow");
+      IOUtils.printSQLException("connect()", ex);
+    }
+  }
 
-      } catch (SQLException ex) {
-        IOUtils.printError("connect()", "error giving database owner full read/write access to database");
-        database = null; // reset mis-instantiated database
-        return Optional.empty();
-    } }
+  // indexes the given user's GROUPS table by contact, so a contact's groups
+  // (as joined by ContactCursor, and deleted with the contact) are found by
+  // a lookup, rather than a scan of every membership
+  private void createGroupsIndex (String USERNAME) throws SQLException {
+    this.statement.execute("create index " + USERNAME + ".GROUPS_CONTACTID on " +
+      USERNAME + ".GROUPS (contactid, name)");
+  }
 
-    // if we've gotten this far, the connection is good; return the new db
-    derbyName = databaseName;
-    IOUtils.printMessage("connect()", "database successfully initialised");
-    return Optional.of(database);
+  // creates the given user's CHANGES table: a single count of the changes made
+  // to the user's contacts and groups, by any session (see indexOpsChanged())
+  private void createChangesTable (String USERNAME, String username) throws SQLException {
+    this.statement.execute("create table " + USERNAME + ".CHANGES (version bigint not null)");
+    this.statement.execute("insert into " + USERNAME + ".CHANGES (version) values (0)");
+    if (!USERNAME.equals(this.userName.toUpperCase())) // DBO already has permissions here
+      this.statement.execute("grant all privileges on " + USERNAME + ".CHANGES to " + username);
+  }
+
+  // creates the table of the given user's smart groups: each group's name,
+  // and its criteria (as given by ContactCriteria.toString())
+  private void createSmartGroupsTable (String USERNAME, String username) throws SQLException {
+    this.statement.execute("create table " + USERNAME + ".SMARTGROUPS" +
+      "(name varchar(40) not null, criteria varchar(1024) not null" +
+      ", constraint primary_key_s primary key (name))");
+    this.statement.execute("grant all privileges on " + USERNAME + ".SMARTGROUPS to " + username);
   }
 
+  // sets up a newly-created database, with `userName` as the database owner (DBO)
+  private boolean initialise (String userName, String userPassword, TuningProfile profile) {
+
+    try {
+      // must be signed in as DBO to run SYSCS_SET_DATABASE_PROPERTY
+      //  -> set requireAuthentication to true to enforce password authentication
+      this.statement.executeUpdate(
+        "call SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(" +
+        "'derby.connection.requireAuthentication', 'true')");
+
+      // don't cache identity (primary key) values: http://bit.ly/2SKi1ml
+      // if the database doesn't shut down properly (as it might if the user
+      // hits the [X] button on the UI window), cached identity values are
+      // lost and may "jump" by 100 the next time the DB is opened
+
+      this.statement.executeUpdate(
+        "CALL SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(" +
+        "'derby.language.sequence.preallocator', '1')");
+
+      // store the tuning profile in the database before any tables exist,
+      // so that derby.storage.pageSize applies to all of them
+      if (profile != null)
+        for (Map.Entry<String, String> e : profile.persistent().entrySet())
+          this.statement.executeUpdate(
+            "call SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(" +
+            "'" + e.getKey() + "', '" + e.getValue() + "')");
+
+      //----------------------------------------------------------------------
+      //
+      //  Note on user creation:
+      //
+      //  Only the DBO can create schemas (bit.ly/2Abear0) which are
+      //  different than the current user name, and only already-existing
+      //  users can log in to the database. Therefore, only the DBO can create
+      //  new users. Users cannot create schemas different than their own
+      //  usernames, and cannot create or delete tables outside their own
+      //  schemas. Theoretically, users could delete their own tables, but
+      //  this would leave their accounts in an unstable state. Users should
+      //  not be able to delete other users accounts, and they cannot delete
+      //  their own accounts while logged in.
+      //
+      //  The only logical setup, then, is that only the DBO can add and
+      //  delete user accounts, and that users cannot delete their own tables.
+      //
+      //----------------------------------------------------------------------
+
+      // grant users the ability to reset their own passwords
+      this.statement.executeUpdate(
+        "grant execute on procedure SYSCS_UTIL.SYSCS_RESET_PASSWORD to public");
+
+      // before we can add the DBO to the database, we need to create the schema
+      this.statement.executeUpdate("create schema " + userName);
+
+      // don't use addUser() to add the DBO to the database, because it requires
+      // validation of the DBO's password from the SECURE table, which doesn't yet exist
+
+      this.statement.execute("create table " + userName +
+        ".SECURE (salt varchar(1024) not null, hash varchar(1024) not null)");
+
+      // generate salt and hash password
+      Optional<String> optsalt = PasswordUtils.generateSalt(512);
+      if (!optsalt.isPresent()) return false;
+      String salt = optsalt.get();
+
+      Optional<String> opthash = PasswordUtils.hashPassword(userPassword, salt);
+      if (!opthash.isPresent()) return false;
+      String hash = opthash.get();
+
+      // add salt and hash to database
+      this.statement.execute("insert into " + userName  +
+        ".SECURE (salt, hash) values ('" + salt + "', '" + hash + "')");
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException("connect()", ex);
+      return false;
+    }
+
+    // add the DBO to the list of full read/write access users, and give the
+    // DBO full read/write access to the database
+    try {
+      ps_adduser.setString(1, userName);
+      ps_adduser.setString(2, userPassword);
+      ps_adduser.execute();
+
+      this.statement.executeUpdate(
+        "call SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(" +
+        "'derby.database.fullAccessUsers', '" + userName + "')");
+      return true;
+
+    } catch (SQLException ex) {
+      IOUtils.printError("connect()", "error giving database owner full read/write access to database");
+      IOUtils.printSQLException("connect()", ex);
+      return false;
+  } }
+
   /**
     * Attempts to acquire a connection to the database specified by
     * {@code dbName} with the user account specified by {@code userName}.
@@ -770,6 +1202,8 @@ public final class Database {
     * @param dbPwd boot password for the database, required to connect to it
     * @param userName name of the user connecting to / creating the database
     * @param userPwd password for the user specified by {@code userName}
+    * @param attributes extra Derby URL attributes; if not {@code null}, no
+    * attempt is made to create a new database
     *
     * @return a {@link Connection} to the specified database, wrapped in an
     * {@link Optional}, or an {@link Optional#empty empty Optional} if there
@@ -777,7 +1211,7 @@ public final class Database {
     *
     **/
   private static Optional<Connection> getConnection (
-    String dbName, String dbPwd, String userName, String userPwd) {
+    String dbName, String dbPwd, String userName, String userPwd, String attributes) {
 
     // get formatted URL
     Optional<StringBuilder> optSB = constructURL(dbName, dbPwd, userName, userPwd);
@@ -788,9 +1222,20 @@ public final class Database {
       return Optional.empty();
     } StringBuilder sb = optSB.get();
 
+    // boot attributes (restoreFrom, etc.) never fall back to creating a database
+    if (attributes != null) try {
+      sb.append(";"); sb.append(attributes);
+      DriverManager.registerDriver(NetworkServer.driver());
+      return Optional.of(DriverManager.getConnection(sb.toString()));
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException("getConnection()", ex);
+      return Optional.empty();
+    }
+
     try { // try to load database first, to avoid overwriting
 
-      DriverManager.registerDriver(new EmbeddedDriver());
+      DriverManager.registerDriver(NetworkServer.driver());
       Optional<Connection> retval = Optional.of(DriverManager.getConnection(sb.toString()));
       return retval;
 
@@ -800,8 +1245,9 @@ public final class Database {
       int    exi = ex.getErrorCode();
       String exs = ex.getSQLState();
 
-      // catch common cases
-      if (exi == 40000 && "08004".equals(exs)) {
+      // catch common cases (through a network server, a missing database
+      // gives the same error, so bad credentials are caught below, instead)
+      if (exi == 40000 && "08004".equals(exs) && !NetworkServer.attached()) {
         IOUtils.printError("getConnection()", "invalid username or password");
         return Optional.empty();
       }
@@ -814,12 +1260,17 @@ public final class Database {
         Properties p = System.getProperties();
         p.setProperty("derby.database.sqlAuthorization", "true");
 
-        // try to create the database
-        Optional<Connection> optConn = Optional.of(
+        // try to create the database (the client driver would send every
+        // property to the server, which has set sqlAuthorization itself; see
+        // NetworkServer.attach())
+        Optional<Connection> optConn = Optional.of(NetworkServer.attached() ?
+          DriverManager.getConnection(sb.toString()) :
           DriverManager.getConnection(sb.toString(), p) );
 
-        // flip the newDB switch
-        newDB = true;
+        // flip the newDB switch, unless Derby connected to an existing
+        // database instead (one created since, by another instance)
+        SQLWarning warning = optConn.get().getWarnings();
+        newDB = (warning == null || !"01J01".equals(warning.getSQLState()));
 
         // return the connection
         return optConn;
@@ -827,6 +1278,12 @@ public final class Database {
       // if there's an exception, the database can't be created
       } catch (SQLException e2) {
 
+        // the database exists, so the first attempt failed on the credentials
+        if (NetworkServer.attached() && "08004".equals(e2.getSQLState())) {
+          IOUtils.printError("getConnection()", "invalid username or password");
+          return Optional.empty();
+        }
+
         // unusual case? print error codes:
         IOUtils.printSQLException("getConnection()", ex);
         IOUtils.printSQLException("getConnection()", e2);
@@ -835,24 +1292,24 @@ public final class Database {
 
   /**
     * Initialises all {@link Statement} and {@link PreparedStatement} objects
-    * to be used with the current database.
+    * to be used with the given connection.
     *
     * <p>Returns an {@link Optional#empty empty Optional} if there was a
-    * problem, otherwise, returns the default {@link Statement} object for
-    * this database, wrapped in an {@link Optional}.</p>
+    * problem, otherwise, returns a new {@link Database} object, which uses
+    * those statements, wrapped in an {@link Optional}.</p>
     *
     * @param connection {@link Connection} used to create the default
     * {@link Statement} and all {@link PreparedStatement}s
     *
-    * @return the default {@link Statement} object for this database, wrapped in
+    * @return a new {@link Database} object for this connection, wrapped in
     * an {@link Optional}, or an {@link Optional#empty empty Optional} if there
     * was a problem
     *
     **/
-  private static Optional<Statement> getStatement (Connection connection) {
+  private static Optional<Database> getStatements (Connection connection) {
 
     if (connection == null) {
-      System.err.println("getStatement() : connection cannot be null");
+      IOUtils.printError("getStatements()", "connection cannot be null");
       return Optional.empty();
     }
 
@@ -861,64 +1318,290 @@ public final class Database {
       //------------------------------------------------------------------------
 
       // change user passwords
-      ps_chpwd = connection.prepareStatement(
+      PreparedStatement ps_chpwd = connection.prepareStatement(
         "call SYSCS_UTIL.SYSCS_RESET_PASSWORD(?, ?)");
 
       // create new users
-      ps_adduser = connection.prepareStatement(
+      PreparedStatement ps_adduser = connection.prepareStatement(
         "call SYSCS_UTIL.SYSCS_CREATE_USER(?, ?)");
 
-      // return the statement wrapped in an Optional
-      return Optional.of(connection.createStatement());
+      // return the new Database wrapped in an Optional
+      return Optional.of(new Database(connection, connection.createStatement(), ps_chpwd, ps_adduser));
 
     } catch (SQLException ex) {
-      IOUtils.printSQLException("getStatement()", ex);
+      IOUtils.printSQLException("getStatements()", ex);
       return Optional.empty();
   } }
 
   ///---------------------------------------------------------------------------
   ///
-  ///  GET, ADD, REMOVE, UPDATE CONTACTS IN CONTACTS TABLE
+  ///  TRANSACTIONS
   ///
   ///---------------------------------------------------------------------------
 
+  // how many inTransaction() calls are currently open
+  private int txDepth = 0;
+
   /**
-    * Attempts to find the contact with the specified {@code ID} number in the
-    * current user's {@code CONTACTS} table and return it as a {@link Contact}
-    * object.
+    * Runs {@code work} in a single transaction, committing it if {@code work}
+    * returns {@code true}, and rolling it back otherwise.
     *
-    * <p>Returns {@code Optional#empty an empty Optional} if the {@code ID}
-    * doesn't match any contact in the {@code CONTACTS} table or if there was an
-    * {@link SQLException}.</p>
+    * <p>Without a transaction, every statement is committed (and the
+    * transaction log synced to disk) as soon as it's run. Inside one, all of
+    * the statements run by {@code work} -- including those run by any other
+    * {@link Database} methods it calls -- are committed together, with a
+    * single log sync. Methods which run several statements, like
+    * {@link deleteContacts deleteContacts()} and {@link addUser addUser()},
+    * use a transaction themselves, so they either succeed completely or
+    * change nothing.</p>
     *
-    * @param ID ID number of the contact to retrieve
+    * <p>Transactions can be nested: an inner transaction is run inside a
+    * savepoint of the outer one. Rolling back an inner transaction only undoes
+    * that inner transaction's work; nothing is committed until the outermost
+    * transaction finishes.</p>
     *
-    * @return the contact with the specified {@code ID} number in the current
-    * user's {@code CONTACTS} table, wrapped in an {@link Optional}, or, if
-    * there was an error, {@code Optional#empty an empty Optional}
+    * <pre>{@code
+    * jshell> db.inTransaction(tx -> db.deleteContacts(3, 4) && db.addToGroup("lads", 1, 2))
+    *        MESSAGE | deleteContacts() : contacts successfully deleted
+    *        MESSAGE | addToGroup() : successfully added to group
+    * $3 ==> true
+    * }</pre>
+    *
+    * <p>If {@code work} throws an {@link SQLException}, the transaction is
+    * rolled back and {@code false} is returned. Any other exception is
+    * re-thrown, after the transaction is rolled back.</p>
+    *
+    * @param work {@link Transaction.Work} to run in the transaction
+    *
+    * @return {@code true} if and only if the transaction was committed
     *
     **/
-  public Optional<Contact> getContact (int ID) {
+  public boolean inTransaction (Transaction.Work work) {
 
-    // run some initial validation
-    String opName = "getContact()";
-    String USER = contactOpsInit(opName);
-    if (USER == null) return Optional.empty();
+    String opName = "inTransaction()";
 
-    try { // to update specified contacts in CONTACTS table
+    if (work == null) {
+      IOUtils.printError(opName, "no work given");
+      return false;
+    }
 
-      // return empty if contact ID doesn't exist
-      String query = "select * from " + USER + ".CONTACTS where id = " + ID;
-      if (!contactOpsContactsAffected(opName, query)) return Optional.empty();
+    boolean outermost = (txDepth == 0);
+    Savepoint savepoint = null;
 
-      // otherwise, extract contact from database
-      resultSet = this.statement.executeQuery(query);
-      rsmd = resultSet.getMetaData();
-      int numberOfColumns = rsmd.getColumnCount();
+    try {
+      if (outermost) this.connection.setAutoCommit(false);
+      else savepoint = this.connection.setSavepoint();
 
-      // get field names -- skip first, it's ID #
-      List<String> fields = new ArrayList<String>(4);
-      for (int ii = 2; ii <= numberOfColumns; ++ii)
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+      return false;
+    }
+
+    Transaction tx = new Transaction(this.connection, txDepth++);
+    long indexChangesBefore = indexChanges;
+    boolean committed = false;
+
+    try {
+      boolean commit = work.run(tx) && !tx.isRollbackOnly();
+
+      if (outermost) {
+        // changes to contacts are counted in the transaction which makes them
+        if (commit && changesPending) indexOpsCount();
+
+        if (commit) this.connection.commit();
+        else this.connection.rollback();
+      } else {
+        if (commit) this.connection.releaseSavepoint(savepoint);
+        else this.connection.rollback(savepoint);
+      }
+
+      // only once the commit (or release) has succeeded
+      committed = commit;
+      return commit;
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+      rollback(opName, savepoint);
+      return false;
+
+    } catch (RuntimeException | Error ex) {
+      rollback(opName, savepoint);
+      throw ex;
+
+    } finally {
+      --txDepth;
+
+      // contact indexes were told about changes which have now been undone
+      // (including by a commit which failed)
+      if (!committed && indexChanges != indexChangesBefore) indexesStale = true;
+
+      // nor do rolled-back changes need counting
+      if (outermost && !committed) changesPending = false;
+
+      if (outermost) {
+        try { this.connection.setAutoCommit(true); }
+        catch (SQLException ex) { IOUtils.printSQLException(opName, ex); }
+      }
+    }
+  }
+
+  // roll back to `savepoint` or, if it's null, roll back the whole transaction
+  private void rollback (String opName, Savepoint savepoint) {
+    try {
+      if (savepoint == null) this.connection.rollback();
+      else this.connection.rollback(savepoint);
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+    }
+  }
+
+  // runs the body of the public method `operation`, timed as a
+  // watson.DatabaseOperation event (see Events); the body gets the event, to
+  // set its row count
+  private <T> T timed (String operation, Function<Events.Op, T> body) {
+    try (Events.Op ev = Events.database(operation, userName)) {
+      return body.apply(ev);
+    }
+  }
+
+  ///---------------------------------------------------------------------------
+  ///
+  ///  IDENTITY (CONTACT ID) ALLOCATION
+  ///
+  ///---------------------------------------------------------------------------
+
+  /**
+    * Sets how many identity values Derby allocates at a time for the
+    * {@code ID} columns of every {@code CONTACTS} and {@code GROUPS} table.
+    *
+    * <p>New databases allocate one value at a time (a block size of 1), so
+    * that IDs never skip, but every insert then has to write to Derby's
+    * system sequence catalog. Larger blocks allocate that many values with a
+    * single catalog write, so most inserts don't touch the catalog at all. The
+    * cost is gap tolerance: if the database isn't shut down cleanly, the
+    * unused values in the current block are lost and the next ID "jumps" by
+    * up to {@code blockSize - 1}.</p>
+    *
+    * <p>This method can only be run by the database owner (DBO). The new block
+    * size takes effect the next time the database is booted.</p>
+    *
+    * <pre>{@code
+    * jshell> db.setIdentityBlockSize(100)
+    *        MESSAGE | setIdentityBlockSize() : identity values will be allocated in blocks of 100 from next boot
+    * $3 ==> true
+    * }</pre>
+    *
+    * @param blockSize number of identity values to allocate at a time ({@code >= 1})
+    *
+    * @return {@code true} if and only if the block size was successfully set
+    *
+    **/
+  public boolean setIdentityBlockSize (int blockSize) {
+    return timed("setIdentityBlockSize()", ev -> setIdentityBlockSize(blockSize, ev));
+  }
+
+  private boolean setIdentityBlockSize (int blockSize, Events.Op ev) {
+
+    String opName = "setIdentityBlockSize()";
+
+    // if current user is not DBO, they can't use this method
+    if (!userIsDBO()) {
+      IOUtils.printError(opName, "only database owner can change identity allocation");
+      return false;
+    }
+
+    if (blockSize < 1) {
+      IOUtils.printError(opName, "block size must be at least 1");
+      return false;
+    }
+
+    try {
+      this.statement.executeUpdate(
+        "call SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(" +
+        "'derby.language.sequence.preallocator', '" + blockSize + "')");
+
+      IOUtils.printMessage(opName, "identity values will be allocated in blocks of " +
+        blockSize + " from next boot");
+      return true;
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+      return false;
+    }
+  }
+
+  /**
+    * Returns the number of identity values Derby allocates at a time (see
+    * {@link setIdentityBlockSize setIdentityBlockSize()}), wrapped in an
+    * {@link Optional}.
+    *
+    * @return the identity block size, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public Optional<Integer> identityBlockSize() {
+    try {
+      resultSet = this.statement.executeQuery("values SYSCS_UTIL.SYSCS_GET_DATABASE_PROPERTY(" +
+        "'derby.language.sequence.preallocator')");
+      resultSet.next();
+
+      // Derby's default, if the property was never set, is 20
+      String value = resultSet.getString(1);
+      return Optional.of(value == null ? 20 : Integer.parseInt(value.trim()));
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException("identityBlockSize()", ex);
+      return Optional.empty();
+    }
+  }
+
+  ///---------------------------------------------------------------------------
+  ///
+  ///  GET, ADD, REMOVE, UPDATE CONTACTS IN CONTACTS TABLE
+  ///
+  ///---------------------------------------------------------------------------
+
+  /**
+    * Attempts to find the contact with the specified {@code ID} number in the
+    * current user's {@code CONTACTS} table and return it as a {@link Contact}
+    * object.
+    *
+    * <p>Returns {@code Optional#empty an empty Optional} if the {@code ID}
+    * doesn't match any contact in the {@code CONTACTS} table or if there was an
+    * {@link SQLException}.</p>
+    *
+    * @param ID ID number of the contact to retrieve
+    *
+    * @return the contact with the specified {@code ID} number in the current
+    * user's {@code CONTACTS} table, wrapped in an {@link Optional}, or, if
+    * there was an error, {@code Optional#empty an empty Optional}
+    *
+    **/
+  public Optional<Contact> getContact (int ID) {
+    return timed("getContact()", ev -> getContact(ID, ev));
+  }
+
+  private Optional<Contact> getContact (int ID, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "getContact()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    try { // to update specified contacts in CONTACTS table
+
+      // return empty if contact ID doesn't exist
+      String query = "select * from " + USER + ".CONTACTS where id = " + ID;
+      if (!contactOpsContactsAffected(opName, query)) return Optional.empty();
+
+      // otherwise, extract contact from database
+      resultSet = this.statement.executeQuery(query);
+      rsmd = resultSet.getMetaData();
+      int numberOfColumns = rsmd.getColumnCount();
+
+      // get field names -- skip first, it's ID #
+      List<String> fields = new ArrayList<String>(4);
+      for (int ii = 2; ii <= numberOfColumns; ++ii)
         fields.add(rsmd.getColumnName(ii));
 
       // get field values -- skip first, it's ID #
@@ -971,6 +1654,10 @@ public final class Database {
     *
     **/
   public boolean addContact (Contact contact) {
+    return timed("addContact()", ev -> addContact(contact, ev));
+  }
+
+  private boolean addContact (Contact contact, Events.Op ev) {
 
     // run some initial validation
     String opName = "addContact()";
@@ -983,15 +1670,118 @@ public final class Database {
       return false;
     }
 
-    try {
-      this.statement.execute("insert into " + USER + ".CONTACTS" + contact);
-      IOUtils.printMessage(opName, "successfully added contact");
-      return true;
+    // in a transaction, so the change is counted as the insert commits
+    return inTransaction(tx -> {
+      try {
+        this.statement.execute("insert into " + USER + ".CONTACTS" + contact,
+          Statement.RETURN_GENERATED_KEYS);
 
-    } catch (SQLException ex) {
-      IOUtils.printSQLException(opName, ex);
-      return false;
+        try (ResultSet keys = this.statement.getGeneratedKeys()) {
+          if (keys.next()) indexOpsPut(keys.getInt(1), contact);
+        }
+
+        IOUtils.printMessage(opName, "successfully added contact");
+        return true;
+
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
+  }
+
+  /**
+    * Attempts to add all of the given {@link Contact}s to the current user's
+    * {@code CONTACTS} table at once, and returns the ID numbers they were
+    * given.
+    *
+    * <p>This is the bulk path for importers. The {@code CONTACTS} table is
+    * locked, a contiguous block of {@code contacts.size()} identity values is
+    * reserved (the IDs returned are exactly the IDs which the inserts are
+    * given), and all contacts are inserted with a single batched
+    * {@link PreparedStatement}, in a single transaction. Importers can then
+    * use the returned IDs (to add contacts to groups, say) without querying
+    * the database for them, contact by contact.</p>
+    *
+    * <p>If any contact can't be inserted, none are, and an
+    * {@link Optional#empty empty Optional} is returned. {@code null} contacts
+    * and contacts with no fields set are not allowed.</p>
+    *
+    * @param contacts {@link Contact}s to add to the current user's
+    * {@code CONTACTS} table
+    *
+    * @return the ID numbers given to the {@code contacts}, in order, wrapped in
+    * an {@link Optional}, or an {@link Optional#empty empty Optional} if there
+    * was a problem
+    *
+    **/
+  public Optional<int[]> addContacts (List<Contact> contacts) {
+    return timed("addContacts()", ev -> addContacts(contacts, ev));
+  }
+
+  private Optional<int[]> addContacts (List<Contact> contacts, Events.Op ev) {
+    ev.rows(contacts == null ? 0 : contacts.size());
+
+    // run some initial validation
+    String opName = "addContacts()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    // operation-specific validation
+    if (contacts == null || contacts.size() < 1) {
+      IOUtils.printError(opName, "no contacts given");
+      return Optional.empty();
     }
+
+    for (Contact contact : contacts)
+      if (contact == null || contact.toString() == null) {
+        IOUtils.printError(opName, "contacts cannot be null or empty");
+        return Optional.empty();
+      }
+
+    List<String> FIELDS = new ArrayList<>(new Contact().info.keySet());
+    long start = System.nanoTime();
+
+    int[] IDs = new int[contacts.size()];
+
+    // lock, peek, and insert in one transaction, so the IDs can't be taken
+    // by another session in between, a failed batch adds nothing, and the
+    // change is counted once
+    boolean added = inTransaction(tx -> {
+      try (PreparedStatement ps = this.connection.prepareStatement(
+        "insert into " + USER + ".CONTACTS (" + String.join(", ", FIELDS) + ") values (" +
+        String.join(", ", Collections.nCopies(FIELDS.size(), "?")) + ")")) {
+
+        // with the table locked, no other session can take identity values, so
+        // this batch is given the `n` values starting from the next one
+        this.statement.execute("lock table " + USER + ".CONTACTS in exclusive mode");
+        resultSet = this.statement.executeQuery(
+          "values SYSCS_UTIL.SYSCS_PEEK_AT_IDENTITY('" + USER + "', 'CONTACTS')");
+        resultSet.next();
+        int first = (int) resultSet.getLong(1);
+
+        for (Contact contact : contacts) {
+          for (int ff = 0; ff < FIELDS.size(); ++ff)
+            ps.setString(ff + 1, contact.raw(FIELDS.get(ff)));
+          ps.addBatch();
+        }
+
+        ps.executeBatch();
+        for (int ii = 0; ii < IDs.length; ++ii) IDs[ii] = first + ii;
+        for (int ii = 0; ii < IDs.length; ++ii) indexOpsPut(IDs[ii], contacts.get(ii));
+        return true;
+
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
+
+    if (!added) return Optional.empty();
+
+    long ms = (System.nanoTime() - start) / 1000000;
+    IOUtils.printMessage(opName, "successfully added " + IDs.length + " contacts in " + ms + " ms");
+    return Optional.of(IDs);
   }
 
   /**
@@ -1017,6 +1807,11 @@ public final class Database {
     *
     **/
   public boolean updateContact (int ID, Contact contact) {
+    return timed("updateContact()", ev -> updateContact(ID, contact, ev));
+  }
+
+  private boolean updateContact (int ID, Contact contact, Events.Op ev) {
+    ev.rows(1);
 
     // run some initial validation
     String opName = "updateContact()";
@@ -1029,28 +1824,32 @@ public final class Database {
       return false;
     }
 
-    try { // to update specified contacts in CONTACTS table
-
-      // return false if no contacts are affected
-      String query = "select * from " + USER + ".CONTACTS where id = " + ID;
-      if (!contactOpsContactsAffected(opName, query)) return false;
-
-      String updates = contact.info.entrySet().stream().map(e -> {
-          String k = e.getKey();
-          String v = e.getValue().getValue();
-          if (v == null) return (k + " = null");
-          else return (k + " = '" + v + "'");
-        }).collect(Collectors.joining(", "));
+    // in a transaction, so the change is counted as the update commits
+    return inTransaction(tx -> {
+      try { // to update specified contacts in CONTACTS table
 
-      this.statement.execute("update " + USER + ".CONTACTS set " + updates + " where id = " + ID);
-      IOUtils.printMessage(opName, "contact successfully updated");
-      return true;
+        // return false if no contacts are affected
+        String query = "select * from " + USER + ".CONTACTS where id = " + ID;
+        if (!contactOpsContactsAffected(opName, query)) return false;
+
+        String updates = contact.info.entrySet().stream().map(e -> {
+            String k = e.getKey();
+            String v = e.getValue().getValue();
+            if (v == null) return (k + " = null");
+            else return (k + " = '" + v + "'");
+          }).collect(Collectors.joining(", "));
+
+        this.statement.execute("update " + USER + ".CONTACTS set " + updates + " where id = " + ID);
+        indexOpsPut(ID, contact);
+        IOUtils.printMessage(opName, "contact successfully updated");
+        return true;
 
-    // catch SQL exceptions
-    } catch (SQLException ex) {
-      IOUtils.printSQLException(opName, ex);
-      return false;
-    }
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
   }
 
   /**
@@ -1073,6 +1872,11 @@ public final class Database {
     *
     **/
   public boolean deleteContacts (int... IDs) {
+    return timed("deleteContacts()", ev -> deleteContacts(IDs, ev));
+  }
+
+  private boolean deleteContacts (int[] IDs, Events.Op ev) {
+    ev.rows(IDs == null ? 0 : IDs.length);
 
     // run some initial validation
     String opName = "deleteContacts()";
@@ -1085,28 +1889,27 @@ public final class Database {
       return false;
     }
 
-    try { // to delete specified contacts from CONTACTS table
+    return inTransaction(tx -> {
+      try { // to delete specified contacts from CONTACTS table
 
-      // return false if no contacts are affected
-      boolean any = false;
-      for (int ID : IDs) {
-        String query = "select * from " + USER + ".CONTACTS where id = " + ID;
-        any = (any || contactOpsContactsAffected(opName, query));
-      } if (!any) return false;
+        // return false if no contacts are affected
+        boolean any = false;
+        for (int ID : IDs) {
+          String query = "select * from " + USER + ".CONTACTS where id = " + ID;
+          any = (any || contactOpsContactsAffected(opName, query));
+        } if (!any) return false;
 
-      for (int ID : IDs) {
-        this.statement.execute("delete from " + USER + ".CONTACTS where id = " + ID);
-        this.statement.execute("delete from " + USER + ".GROUPS where contactid = " + ID);
-      }
+        contactOpsDelete(USER, IDs);
 
-      IOUtils.printMessage(opName, "contacts successfully deleted");
-      return true;
+        IOUtils.printMessage(opName, "contacts successfully deleted");
+        return true;
 
-    // catch SQL exceptions
-    } catch (SQLException ex) {
-      IOUtils.printSQLException(opName, ex);
-      return false;
-    }
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
   }
 
   /**
@@ -1132,6 +1935,11 @@ public final class Database {
     *
     **/
   public boolean addToGroup (String groupName, int... IDs) {
+    return timed("addToGroup()", ev -> addToGroup(groupName, IDs, ev));
+  }
+
+  private boolean addToGroup (String groupName, int[] IDs, Events.Op ev) {
+    ev.rows(IDs == null ? 0 : IDs.length);
 
     // run some initial validation
     String opName = "addToGroup()";
@@ -1146,51 +1954,66 @@ public final class Database {
 
     // validate group names
     if (!contactOpsValidateGroups(opName, groupName)) return false;
+    if (smartOpsIsSmartGroup(opName, USER, groupName)) return false;
 
-    try { // to add specified contacts to this group
+    return inTransaction(tx -> {
+      try { // to add specified contacts to this group
 
-      // return false if no contacts are affected
-      boolean any = false;
-      for (int ID : IDs) {
-        String query = "select * from " + USER + ".CONTACTS where id = " + ID;
-        any = (any || contactOpsContactsAffected(opName, query));
-      }
-
-      if (!any) {
-        IOUtils.printWarning(opName, "no users added to group");
-        return false;
-      }
+        // return false if no contacts are affected
+        boolean any = false;
+        for (int ID : IDs) {
+          String query = "select * from " + USER + ".CONTACTS where id = " + ID;
+          any = (any || contactOpsContactsAffected(opName, query));
+        }
 
-      // move groupName to all-caps
-      String GROUPNAME = groupName.toUpperCase();
+        if (!any) {
+          IOUtils.printWarning(opName, "no users added to group");
+          return false;
+        }
 
-      any = false;
-      for (int ID : IDs) {
+        // move groupName to all-caps
+        String GROUPNAME = groupName.toUpperCase();
+
+        // add each contact unless it's already associated with this group, in
+        // one batch (one round trip through a network server); each insert's
+        // update count says whether it added the contact. Another session
+        // (of this user) doing the same would block on the rows this one
+        // is checking, and vice versa, so the table is locked first
+        this.statement.execute("lock table " + USER + ".GROUPS in exclusive mode");
+
+        List<Integer> added = new ArrayList<>();
+        try (PreparedStatement ps = this.connection.prepareStatement(
+               "insert into " + USER + ".GROUPS(name, contactid) " +
+               "select cast(? as varchar(40)), cast(? as int) from SYSIBM.SYSDUMMY1 where not exists " +
+               "(select 1 from " + USER + ".GROUPS where contactid = ? and name = ?)")) {
+          for (int ID : IDs) {
+            ps.setString(1, GROUPNAME);
+            ps.setInt(2, ID);
+            ps.setInt(3, ID);
+            ps.setString(4, GROUPNAME);
+            ps.addBatch();
+          }
+
+          int[] counts = ps.executeBatch();
+          for (int ii = 0; ii < IDs.length; ++ii)
+            if (counts[ii] > 0) added.add(IDs[ii]);
+            else IOUtils.printWarning(opName, "user is already associated with group");
+        }
 
-        // first, check if this user is already associated with this group
-        resultSet = this.statement.executeQuery("select * from " + USER +
-          ".GROUPS where name = '" + GROUPNAME + "' and contactid = " + ID);
+        any = !added.isEmpty();
+        if (any) indexOpsGroups(g -> { for (int ID : added) g.add(GROUPNAME, ID); });
 
-        if (resultSet.next()) {
-          IOUtils.printWarning(opName, "user is already associated with group");
-          continue;
-        } any = true;
+        if (any) {
+          IOUtils.printMessage(opName, "successfully added to group");
+          return true;
+        } else return false;
 
-        // if not, add this user to the group
-        this.statement.execute("insert into " + USER + ".GROUPS(name, contactid) values ('" +
-          GROUPNAME + "', " + ID + ")");
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
       }
-
-      if (any) {
-        IOUtils.printMessage(opName, "successfully added to group");
-        return true;
-      } else return false;
-
-    // catch SQL exceptions
-    } catch (SQLException ex) {
-      IOUtils.printSQLException(opName, ex);
-      return false;
-    }
+    });
   }
 
   /**
@@ -1216,6 +2039,11 @@ public final class Database {
     *
     **/
   public boolean removeFromGroup (String groupName, int... IDs) {
+    return timed("removeFromGroup()", ev -> removeFromGroup(groupName, IDs, ev));
+  }
+
+  private boolean removeFromGroup (String groupName, int[] IDs, Events.Op ev) {
+    ev.rows(IDs == null ? 0 : IDs.length);
 
     // run some initial validation
     String opName = "removeFromGroup()";
@@ -1231,32 +2059,42 @@ public final class Database {
     // validate group names
     if (!contactOpsValidateGroups(opName, groupName)) return false;
 
-    try { // to remove specified contacts from this group
-
-      // check that this group has at least one member
-      String GROUPNAME = contactOpsGroupExists(opName, USER, groupName);
-      if (GROUPNAME == null) return false;
-
-      // return false if no contacts are affected
-      boolean any = false;
-      for (int ID : IDs) {
-        String query = "select * from " + USER + ".GROUPS where contactid = " +
-          ID + " and name = '" + GROUPNAME + "'";
-        any = (any || contactOpsContactsAffected(opName, query));
-      } if (!any) return false;
-
-      for (int ID : IDs)
-        this.statement.execute("delete from " + USER + ".GROUPS where contactid = " +
-          ID + " and name = '" + GROUPNAME + "'");
+    return inTransaction(tx -> {
+      try { // to remove specified contacts from this group
+
+        // check that this group has at least one member
+        String GROUPNAME = contactOpsGroupExists(opName, USER, groupName);
+        if (GROUPNAME == null) return false;
+
+        // return false if no contacts are affected
+        boolean any = false;
+        for (int ID : IDs) {
+          String query = "select * from " + USER + ".GROUPS where contactid = " +
+            ID + " and name = '" + GROUPNAME + "'";
+          any = (any || contactOpsContactsAffected(opName, query));
+        } if (!any) return false;
+
+        // in one batch (one round trip through a network server)
+        try (PreparedStatement ps = this.connection.prepareStatement(
+               "delete from " + USER + ".GROUPS where contactid = ? and name = ?")) {
+          for (int ID : IDs) {
+            ps.setInt(1, ID);
+            ps.setString(2, GROUPNAME);
+            ps.addBatch();
+          }
+          ps.executeBatch();
+        }
+        indexOpsGroups(g -> { for (int ID : IDs) g.remove(GROUPNAME, ID); });
 
-      IOUtils.printMessage(opName, "successfully removed from group");
-      return true;
+        IOUtils.printMessage(opName, "successfully removed from group");
+        return true;
 
-    // catch SQL exceptions
-    } catch (SQLException ex) {
-      IOUtils.printSQLException(opName, ex);
-      return false;
-    }
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
   }
 
   /**
@@ -1276,6 +2114,10 @@ public final class Database {
     *
     **/
   public boolean deleteGroup (String groupName) {
+    return timed("deleteGroup()", ev -> deleteGroup(groupName, ev));
+  }
+
+  private boolean deleteGroup (String groupName, Events.Op ev) {
 
     // run some initial validation
     String opName = "deleteGroup()";
@@ -1285,186 +2127,1984 @@ public final class Database {
     // validate group names
     if (!contactOpsValidateGroups(opName, groupName)) return false;
 
-    try { // to remove all contacts from this group
-
-      // check that this group has at least one member
-      String GROUPNAME = contactOpsGroupExists(opName, USER, groupName);
-      if (GROUPNAME == null) return false;
+    // in a transaction, so the change is counted as the delete commits
+    return inTransaction(tx -> {
+      try { // to remove all contacts from this group
 
-      // delete relationships between given group and contacts
-      this.statement.execute("delete from " + USER + ".GROUPS where name = '" + GROUPNAME + "'");
+        // check that this group has at least one member
+        String GROUPNAME = contactOpsGroupExists(opName, USER, groupName);
+        if (GROUPNAME == null) return false;
 
-      IOUtils.printMessage(opName, "successfully deleted group");
-      return true;
+        // delete relationships between given group and contacts
+        this.statement.execute("delete from " + USER + ".GROUPS where name = '" + GROUPNAME + "'");
+        indexOpsGroups(g -> g.drop(GROUPNAME));
 
-    // catch SQL exceptions
-    } catch (SQLException ex) {
-      IOUtils.printSQLException(opName, ex);
-      return false;
-    }
-  }
+        IOUtils.printMessage(opName, "successfully deleted group");
+        return true;
+
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
+  }
+
+  /**
+    * Attempts to rename a group in the current user's {@code GROUPS} table.
+    *
+    * @param oldName current name of the group which should be renamed
+    * @param newName new name to give to the group
+    *
+    * @return {@code true} if and only if the group referenced by
+    * {@code oldName} existed, and was successfully renamed to {@code newName}
+    *
+    * @see tables tables(), to see available tables
+    * @see printTable printTable(), to print a particular table to the terminal
+    * @see table table(), to get a particular table as a List
+    *
+    **/
+  public boolean renameGroup (String oldName, String newName) {
+    return timed("renameGroup()", ev -> renameGroup(oldName, newName, ev));
+  }
+
+  private boolean renameGroup (String oldName, String newName, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "renameGroup()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return false;
+
+    // validate group names
+    if (!contactOpsValidateGroups(opName, oldName, newName)) return false;
+    if (smartOpsIsSmartGroup(opName, USER, newName)) return false;
+
+    // operation-specific validation
+    if (oldName.equals(newName)) {
+      IOUtils.printWarning(opName, "old name is the same as new name");
+      return false;
+    }
+
+    // in a transaction, so the change is counted as the update commits
+    return inTransaction(tx -> {
+      try { // to rename this group
+
+        // check that this group has at least one member
+        String OLDNAME = contactOpsGroupExists(opName, USER, oldName);
+        if (OLDNAME == null) return false;
+
+        // change group name
+        String NEWNAME = newName.toUpperCase(); // capitalise
+        this.statement.execute("update " + USER + ".GROUPS set name = '" + NEWNAME +
+          "' where name = '" + OLDNAME + "'");
+        indexOpsGroups(g -> g.rename(OLDNAME, NEWNAME));
+
+        IOUtils.printMessage(opName, "successfully renamed group");
+        return true;
+
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
+  }
+
+  /**
+    * Attempts to move contacts from one group to another, in the current
+    * user's {@code GROUPS} table.
+    *
+    * <p>If no {@code IDs} are given, every member of {@code fromGroup} is
+    * moved; otherwise, only those of the given contacts which are members of
+    * {@code fromGroup}. Contacts which are already members of {@code toGroup}
+    * are only removed from {@code fromGroup}.</p>
+    *
+    * <p>Unlike a {@link removeFromGroup removeFromGroup()} followed by an
+    * {@link addToGroup addToGroup()}, the move is made with one
+    * {@code INSERT ... SELECT} and one {@code DELETE}, whatever the number of
+    * contacts, in a single transaction, so a group is never left half-moved.</p>
+    *
+    * <pre>{@code
+    * jshell> db.moveToGroup("work", "old_work")
+    *       MESSAGE | moveToGroup() : moved 12 contact(s) (11 newly added to OLD_WORK)
+    * $19 ==> Optional[12]
+    * }</pre>
+    *
+    * @param fromGroup name of the group from which contacts are moved
+    * @param toGroup name of the group to which contacts are moved
+    * @param IDs IDs of the contacts to move, or none to move the whole group
+    *
+    * @return the number of contacts removed from {@code fromGroup}, wrapped in
+    * an {@link Optional}, or an {@link Optional#empty empty Optional} if there
+    * was a problem (in which case, no memberships were changed)
+    *
+    **/
+  public Optional<Integer> moveToGroup (String fromGroup, String toGroup, int... IDs) {
+    return timed("moveToGroup()", ev -> moveToGroup(fromGroup, toGroup, IDs, ev));
+  }
+
+  private Optional<Integer> moveToGroup (String fromGroup, String toGroup, int[] IDs, Events.Op ev) {
+    Optional<Integer> moved = contactOpsTransfer("moveToGroup()", fromGroup, toGroup, true, IDs);
+    ev.rows(moved.orElse(0));
+    return moved;
+  }
+
+  /**
+    * Attempts to copy contacts from one group to another, in the current
+    * user's {@code GROUPS} table, so that they're members of both.
+    *
+    * <p>As with {@link moveToGroup moveToGroup()}, every member of
+    * {@code fromGroup} is copied if no {@code IDs} are given, and the copy is
+    * made with a single {@code INSERT ... SELECT}, which skips contacts that
+    * are already members of {@code toGroup}.</p>
+    *
+    * @param fromGroup name of the group whose members are copied
+    * @param toGroup name of the group to which they're added
+    * @param IDs IDs of the contacts to copy, or none to copy the whole group
+    *
+    * @return the number of contacts newly added to {@code toGroup}, wrapped in
+    * an {@link Optional}, or an {@link Optional#empty empty Optional} if there
+    * was a problem
+    *
+    **/
+  public Optional<Integer> copyToGroup (String fromGroup, String toGroup, int... IDs) {
+    return timed("copyToGroup()", ev -> copyToGroup(fromGroup, toGroup, IDs, ev));
+  }
+
+  private Optional<Integer> copyToGroup (String fromGroup, String toGroup, int[] IDs, Events.Op ev) {
+    Optional<Integer> added = contactOpsTransfer("copyToGroup()", fromGroup, toGroup, false, IDs);
+    ev.rows(added.orElse(0));
+    return added;
+  }
+
+  /**
+    * Attempts to return a {@link List} of all unique group names in the current
+    * user's {@code GROUPS} table, wrapped in an {@link Optional}.
+    *
+    * <p>Returns {@link Optional#empty an empty Optional} if there is a problem
+    * getting the name of the current user.</p>
+    *
+    * @return a {@link List} of all unique group names in the current user's
+    * {@code GROUPS} table, wrapped in an {@link Optional}, or if there was a
+    * problem, {@link Optional#empty an empty Optional}.
+    *
+    **/
+  public Optional<List<String>> groups() {
+    return timed("groups()", ev -> groups(ev));
+  }
+
+  private Optional<List<String>> groups(Events.Op ev) {
+
+    // run some initial validation
+    String opName = "groups()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    // get the GROUPS table as a List<List<String>>
+    List<List<String>> GROUPS = table(USER + ".GROUPS");
+
+    // select only the group "NAME" column, without the header
+    final int nameColumn = GROUPS.get(0).indexOf("NAME");
+
+    // get the group names (last column)
+    List<String> groupnames = GROUPS.stream().skip(1).map(l -> l.get(nameColumn))
+      .distinct().sorted().collect(Collectors.toList());
+
+    ev.rows(groupnames.size());
+    return Optional.of(groupnames);
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  PRIVATE METHODS FOR CONTACTS-RELATED OPERATIONS
+  //
+  //----------------------------------------------------------------------------
+
+  // deletes the given contacts, and their group memberships, and reports
+  // them to the indexes; as two batches, so that through a network server,
+  // this is two round trips, rather than two per contact
+  private void contactOpsDelete (String USER, int[] IDs) throws SQLException {
+    try (PreparedStatement contacts = this.connection.prepareStatement(
+           "delete from " + USER + ".CONTACTS where id = ?");
+         PreparedStatement groups = this.connection.prepareStatement(
+           "delete from " + USER + ".GROUPS where contactid = ?")) {
+      for (int ID : IDs) {
+        contacts.setInt(1, ID);
+        contacts.addBatch();
+        groups.setInt(1, ID);
+        groups.addBatch();
+      }
+      contacts.executeBatch();
+      groups.executeBatch();
+    }
+    indexOpsRemove(IDs);
+  }
+
+  // "header" for Contacts-related operations
+  private String contactOpsInit (String opName) {
+
+    // if current user is DBO, they can't use this method
+    if (userIsDBO()) {
+      IOUtils.printError(opName, "only regular (non-DBO) users have lists of contacts");
+      return null;
+    }
+
+    // if current user cannot be found for any reason, quit
+    Optional<String> OPTUSER = user();
+    if (!OPTUSER.isPresent()) return null;
+    String USER = OPTUSER.get();
+
+    return USER;
+  }
+
+  // returns true only if all group names are valid
+  private boolean contactOpsValidateGroups (String opName, String... args) {
+
+    for (String arg : args)
+      if (isNullOrWhitespace(arg)) {
+        IOUtils.printError(opName, "group names cannot be null, empty, or all whitespace");
+        return false;
+      }
+
+    // only allow alphanumeric characters (and underscores) in group names to
+    // prevent SQL injection attacks; use regex to find any non-alnum chars
+
+    Pattern p = Pattern.compile("[^a-zA-Z0-9_]");
+    Matcher m;
+
+    for (String arg : args) {
+      m = p.matcher(arg);
+      if (m.find()) {
+        IOUtils.printError(opName, "group names can only contain letters, numbers, and underscores");
+        return false;
+    } }
+
+    return true;
+  }
+
+  private String contactOpsGroupExists (String opName, String USER, String group) throws SQLException {
+
+    // get current groups from GROUPS table
+    List<String> GROUPS = new ArrayList<String>();
+    resultSet = this.statement.executeQuery("select distinct name from " + USER + ".GROUPS");
+    while (resultSet.next()) GROUPS.add(resultSet.getString(1));
+
+    // if no groups or given group doesn't exist, return true
+    String GROUP = group.toUpperCase(); // capitalise
+    if (GROUPS.size() < 1 || !GROUPS.contains(GROUP)) {
+      IOUtils.printWarning(opName, "group doesn't exist; no contacts affected");
+      return null;
+    } return GROUP;
+  }
+
+  // copies (or moves) the members of fromGroup (or just those in IDs, if any
+  // are given) to toGroup, set-based and in one transaction; returns the
+  // number of contacts added to toGroup (or removed from fromGroup)
+  private Optional<Integer> contactOpsTransfer (String opName, String fromGroup,
+    String toGroup, boolean move, int... IDs) {
+
+    // run some initial validation
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    // validate group names
+    if (!contactOpsValidateGroups(opName, fromGroup, toGroup)) return Optional.empty();
+    if (smartOpsIsSmartGroup(opName, USER, fromGroup)) return Optional.empty();
+    if (smartOpsIsSmartGroup(opName, USER, toGroup)) return Optional.empty();
+
+    String FROM = fromGroup.toUpperCase();
+    String TO   = toGroup.toUpperCase();
+
+    // operation-specific validation
+    if (FROM.equals(TO)) {
+      IOUtils.printWarning(opName, "source group is the same as destination group");
+      return Optional.empty();
+    }
+
+    // restrict to the given contacts (IDs are ints, so can't inject SQL)
+    String only = "";
+    if (IDs != null && IDs.length > 0)
+      only = " and g.contactid in (" + Arrays.stream(IDs).distinct()
+        .mapToObj(String::valueOf).collect(Collectors.joining(", ")) + ")";
+    String where = " where g.name = ?" + only;
+
+    int[] count = new int[2]; // added to TO, removed from FROM
+
+    boolean success = inTransaction(tx -> {
+      try { // to copy (and remove) the memberships
+
+        // the contacts affected, for the group index
+        List<Integer> members = new ArrayList<>();
+        try (PreparedStatement ps = this.connection.prepareStatement(
+               "select distinct g.contactid from " + USER + ".GROUPS g" + where)) {
+          ps.setString(1, FROM);
+          try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) members.add(rs.getInt(1));
+          }
+        }
+
+        if (members.isEmpty()) {
+          IOUtils.printWarning(opName, "group doesn't exist or has none of the given contacts; no contacts affected");
+          return false;
+        }
+
+        // add the memberships not already in TO
+        try (PreparedStatement ps = this.connection.prepareStatement(
+               "insert into " + USER + ".GROUPS(name, contactid) " +
+               "select distinct cast(? as varchar(40)), g.contactid from " + USER + ".GROUPS g" +
+               where + " and not exists (select 1 from " + USER + ".GROUPS t " +
+               "where t.name = ? and t.contactid = g.contactid)")) {
+          ps.setString(1, TO);
+          ps.setString(2, FROM);
+          ps.setString(3, TO);
+          count[0] = ps.executeUpdate();
+        }
+
+        if (move)
+          try (PreparedStatement ps = this.connection.prepareStatement(
+                 "delete from " + USER + ".GROUPS g" + where)) {
+            ps.setString(1, FROM);
+            count[1] = ps.executeUpdate();
+          }
+
+        indexOpsGroups(g -> {
+          for (int ID : members) {
+            g.add(TO, ID);
+            if (move) g.remove(FROM, ID);
+          }
+        });
+
+        return true;
+
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
+
+    if (!success) return Optional.empty();
+
+    if (move) {
+      IOUtils.printMessage(opName, "moved " + count[1] + " contact(s) (" +
+        count[0] + " newly added to " + TO + ")");
+      return Optional.of(count[1]);
+
+    } else {
+      IOUtils.printMessage(opName, "copied " + count[0] + " contact(s) to " + TO);
+      return Optional.of(count[0]);
+    }
+  }
+
+  private boolean contactOpsContactsAffected (String opName, String query) throws SQLException {
+
+    // get number of rows affected (if 0, return false)
+    int rowCount = 0;
+    resultSet = this.statement.executeQuery(query);
+    while (resultSet.next()) { ++rowCount; }
+
+    if (rowCount < 1) {
+      IOUtils.printWarning(opName, "no contacts affected");
+      return false;
+    } return true;
+  }
+
+  private boolean isNullOrWhitespace (String s) {
+    return (s == null || "".equals(s.trim()));
+  }
+
+  ///---------------------------------------------------------------------------
+  ///
+  ///  FIND, DELETE, UPDATE CONTACTS BY CRITERIA
+  ///
+  ///---------------------------------------------------------------------------
+
+  /**
+    * Returns the IDs of all of the current user's contacts which match the
+    * given {@link ContactCriteria}, in ascending order.
+    *
+    * <pre>{@code
+    * jshell> db.findContacts(new ContactCriteria().equal("surname", "watson"))
+    * $12 ==> Optional[[1, 3]]
+    * }</pre>
+    *
+    * @param criteria {@link ContactCriteria} which contacts must match
+    *
+    * @return the matching contact IDs, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public Optional<List<Integer>> findContacts (ContactCriteria criteria) {
+    return timed("findContacts()", ev -> findContacts(criteria, ev));
+  }
+
+  private Optional<List<Integer>> findContacts (ContactCriteria criteria, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "findContacts()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    if (criteria == null) {
+      IOUtils.printError(opName, "criteria cannot be null");
+      return Optional.empty();
+    }
+
+    // sounds-like conditions call functions in the DBO's schema
+    Optional<String> OWNER = owner();
+    if (!OWNER.isPresent()) return Optional.empty();
+
+    List<String> params = new ArrayList<>();
+    String query = "select c.id from " + USER + ".CONTACTS c where " +
+      criteria.toSQL(USER, OWNER.get(), "c", params) + " order by c.id";
+
+    try (PreparedStatement ps = criteriaOpsPrepare(query, params);
+         ResultSet rs = ps.executeQuery()) {
+
+      List<Integer> IDs = new ArrayList<>();
+      while (rs.next()) IDs.add(rs.getInt(1));
+
+      ev.rows(IDs.size());
+      return Optional.of(IDs);
+
+    // catch SQL exceptions
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+      return Optional.empty();
+    }
+  }
+
+  /**
+    * Deletes all of the current user's contacts which match the given
+    * {@link ContactCriteria}, along with their group memberships.
+    *
+    * <p>The criteria are compiled to a single parameterized {@code DELETE}
+    * (followed by a {@code DELETE} of the rows in the {@code GROUPS} table
+    * whose contacts no longer exist), run in one transaction. With
+    * {@code dryRun}, the matching contacts are only counted.</p>
+    *
+    * <pre>{@code
+    * jshell> db.deleteContacts(new ContactCriteria().startsWith("phone", "+44"), false)
+    *        MESSAGE | deleteContacts() : 2 contacts deleted
+    * $13 ==> Optional[2]
+    * }</pre>
+    *
+    * @param criteria {@link ContactCriteria} which contacts must match (which
+    * cannot be empty)
+    * @param dryRun if {@code true}, nothing is deleted; the number of contacts
+    * which would be deleted is returned
+    *
+    * @return the number of contacts deleted (or which would be deleted),
+    * wrapped in an {@link Optional}, or an {@link Optional#empty empty
+    * Optional} if there was a problem
+    *
+    **/
+  public Optional<Integer> deleteContacts (ContactCriteria criteria, boolean dryRun) {
+    return timed("deleteContacts()", ev -> deleteContacts(criteria, dryRun, ev));
+  }
+
+  private Optional<Integer> deleteContacts (ContactCriteria criteria, boolean dryRun, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "deleteContacts()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    // an empty criteria would match (and delete) every contact
+    if (criteria == null || criteria.isEmpty()) {
+      IOUtils.printError(opName, "criteria cannot be null or empty");
+      return Optional.empty();
+    }
+
+    Optional<String> OWNER = owner();
+    if (!OWNER.isPresent()) return Optional.empty();
+
+    List<String> params = new ArrayList<>();
+    String where = criteria.toSQL(USER, OWNER.get(), "c", params);
+    int[] count = { 0 };
+
+    boolean done = inTransaction(tx -> {
+      try {
+        if (dryRun) {
+          count[0] = criteriaOpsCount(USER, where, params);
+          return true;
+        }
+
+        // the deleted contacts, for the contact indexes (if there are any);
+        // read first, as they can't be found after the delete
+        List<Integer> IDs = new ArrayList<>();
+        if (!indexes.isEmpty()) {
+          try (PreparedStatement ps = criteriaOpsPrepare("select c.id from " + USER +
+                 ".CONTACTS c where " + where, params);
+               ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) IDs.add(rs.getInt(1));
+          }
+        }
+
+        // contacts first, so in-group criteria still match their members...
+        try (PreparedStatement ps = criteriaOpsPrepare("delete from " + USER +
+               ".CONTACTS c where " + where, params)) {
+          count[0] = ps.executeUpdate();
+        }
+        if (count[0] < 1) return true;
+
+        // ...then the memberships of contacts which no longer exist
+        this.statement.executeUpdate("delete from " + USER + ".GROUPS g where not exists " +
+          "(select 1 from " + USER + ".CONTACTS c where c.id = g.contactid)");
+
+        if (!IDs.isEmpty()) indexOpsRemove(IDs.stream().mapToInt(Integer::intValue).toArray());
+        else indexOpsChanged(); // other sessions' indexes are stale
+        return true;
+
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
+
+    if (!done) return Optional.empty();
+
+    ev.rows(count[0]);
+    IOUtils.printMessage(opName, count[0] + " contacts " + (dryRun ? "would be " : "") + "deleted");
+    return Optional.of(count[0]);
+  }
+
+  /**
+    * Sets the fields given in {@code changes} on all of the current user's
+    * contacts which match the given {@link ContactCriteria}.
+    *
+    * <p>Only the fields which are set (non-{@code null}) in {@code changes} are
+    * updated; all other fields keep their current values. The update is a
+    * single parameterized {@code UPDATE}, run in one transaction. With
+    * {@code dryRun}, the matching contacts are only counted.</p>
+    *
+    * <pre>{@code
+    * jshell> db.updateContacts(new ContactCriteria().equal("surname", "watson"),
+    *    ...>   new Contact().set("surname", "Watson-Jones"), false)
+    *        MESSAGE | updateContacts() : 2 contacts updated
+    * $14 ==> Optional[2]
+    * }</pre>
+    *
+    * @param criteria {@link ContactCriteria} which contacts must match (which
+    * cannot be empty)
+    * @param changes {@link Contact} holding the new values of the fields to
+    * update
+    * @param dryRun if {@code true}, nothing is updated; the number of contacts
+    * which would be updated is returned
+    *
+    * @return the number of contacts updated (or which would be updated),
+    * wrapped in an {@link Optional}, or an {@link Optional#empty empty
+    * Optional} if there was a problem
+    *
+    **/
+  public Optional<Integer> updateContacts (ContactCriteria criteria, Contact changes, boolean dryRun) {
+    return timed("updateContacts()", ev -> updateContacts(criteria, changes, dryRun, ev));
+  }
+
+  private Optional<Integer> updateContacts (ContactCriteria criteria, Contact changes, boolean dryRun, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "updateContacts()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    // an empty criteria would match (and update) every contact
+    if (criteria == null || criteria.isEmpty()) {
+      IOUtils.printError(opName, "criteria cannot be null or empty");
+      return Optional.empty();
+    }
+
+    if (changes == null) {
+      IOUtils.printError(opName, "changes cannot be null");
+      return Optional.empty();
+    }
+
+    // the new values come first in the statement, then the criteria
+    List<String> params = new ArrayList<>();
+    List<String> sets = new ArrayList<>();
+    for (String KEY : changes.info.keySet()) {
+      String value = changes.raw(KEY);
+      if (value == null) continue;
+      sets.add(KEY + " = ?");
+      params.add(value);
+    }
+
+    if (sets.isEmpty()) {
+      IOUtils.printError(opName, "no fields are set in changes");
+      return Optional.empty();
+    }
+
+    Optional<String> OWNER = owner();
+    if (!OWNER.isPresent()) return Optional.empty();
+
+    List<String> criteriaParams = new ArrayList<>();
+    String where = criteria.toSQL(USER, OWNER.get(), "c", criteriaParams);
+    params.addAll(criteriaParams);
+    int[] count = { 0 };
+
+    boolean done = inTransaction(tx -> {
+      try {
+        if (dryRun) {
+          count[0] = criteriaOpsCount(USER, where, criteriaParams);
+          return true;
+        }
+
+        // the updated rows, for the contact indexes (if there are any); read
+        // first, as the criteria may no longer match them after the update
+        Map<Integer, String[]> updated = new LinkedHashMap<>();
+        if (!indexes.isEmpty()) {
+          List<String> FIELDS = new ArrayList<>(changes.info.keySet());
+          try (PreparedStatement ps = criteriaOpsPrepare("select c.id, c." +
+                 String.join(", c.", FIELDS) + " from " + USER + ".CONTACTS c where " + where,
+                 criteriaParams);
+               ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+              String[] values = new String[FIELDS.size()];
+              for (int ff = 0; ff < values.length; ++ff) {
+                String change = changes.raw(FIELDS.get(ff));
+                values[ff] = change != null ? change : rs.getString(ff + 2);
+              }
+              updated.put(rs.getInt(1), values);
+            }
+          }
+        }
+
+        try (PreparedStatement ps = criteriaOpsPrepare("update " + USER +
+          ".CONTACTS c set " + String.join(", ", sets) + " where " + where, params)) {
+          count[0] = ps.executeUpdate();
+        }
+
+        for (Map.Entry<Integer, String[]> e : updated.entrySet())
+          indexOpsPut(e.getKey(), e.getValue());
+
+        // other sessions' indexes are stale, whether or not this one has any
+        if (updated.isEmpty() && count[0] > 0) indexOpsChanged();
+        return true;
+
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
+
+    if (!done) return Optional.empty();
+
+    ev.rows(count[0]);
+    IOUtils.printMessage(opName, count[0] + " contacts " + (dryRun ? "would be " : "") + "updated");
+    return Optional.of(count[0]);
+  }
+
+  // prepare `sql`, binding `params` (in order) to its parameters
+  private PreparedStatement criteriaOpsPrepare (String sql, List<String> params) throws SQLException {
+    PreparedStatement ps = this.connection.prepareStatement(sql);
+    for (int ii = 0; ii < params.size(); ++ii) ps.setString(ii + 1, params.get(ii));
+    return ps;
+  }
+
+  // count the user's contacts which match the compiled criteria `where`
+  private int criteriaOpsCount (String USER, String where, List<String> params) throws SQLException {
+    try (PreparedStatement ps = criteriaOpsPrepare("select count(*) from " + USER +
+           ".CONTACTS c where " + where, params);
+         ResultSet rs = ps.executeQuery()) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  ///---------------------------------------------------------------------------
+  ///
+  ///  SMART GROUPS
+  ///
+  ///---------------------------------------------------------------------------
+
+  /**
+    * Attempts to create a smart group: a group whose members are all of the
+    * current user's contacts which satisfy the given {@code criteria}.
+    *
+    * <p>The group's definition is saved in the user's {@code SMARTGROUPS}
+    * table, and its members are found once, when it's created. From then on,
+    * membership is kept up to date incrementally: whenever a contact is
+    * added, updated, or deleted, that one contact is tested against each
+    * smart group's criteria, in memory (see {@link GroupIndex}), so a smart
+    * group is never recomputed from scratch.</p>
+    *
+    * <p>Smart groups are queried like regular groups, with
+    * {@link contactsMatching contactsMatching()}, and can be combined with
+    * them there. They have no rows in the {@code GROUPS} table, though, so
+    * contacts can't be {@link addToGroup added} to them directly, and
+    * {@link ContactCriteria#inGroup ContactCriteria.inGroup()} doesn't see
+    * them. For the same reason, a smart group's criteria can't themselves
+    * refer to groups.</p>
+    *
+    * <pre>{@code
+    * jshell> db.createSmartGroup("uk_murphys", ContactCriteria.parse(
+    *    ...>   "surname starts with \"Murph\" and phone starts with \"+44\"").get())
+    *       MESSAGE | createSmartGroup() : smart group UK_MURPHYS created with 2 member(s)
+    * $14 ==> true
+    *
+    * jshell> db.contactsMatching("uk_murphys and not family")
+    * $15 ==> Optional[[7]]
+    * }</pre>
+    *
+    * @param name name of the smart group; like the names of regular groups,
+    * it may contain only letters, numbers, and underscores, and is
+    * case-insensitive
+    * @param criteria criteria which the group's members satisfy; can't be
+    * empty or use groups
+    *
+    * @return {@code true} if and only if the smart group was created
+    *
+    **/
+  public boolean createSmartGroup (String name, ContactCriteria criteria) {
+    return timed("createSmartGroup()", ev -> createSmartGroup(name, criteria, ev));
+  }
+
+  private boolean createSmartGroup (String name, ContactCriteria criteria, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "createSmartGroup()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return false;
+
+    // validate group name
+    if (!contactOpsValidateGroups(opName, name)) return false;
+
+    // operation-specific validation
+    if (criteria == null || criteria.isEmpty()) {
+      IOUtils.printError(opName, "criteria cannot be null or empty");
+      return false;
+    }
+
+    if (criteria.usesGroups()) {
+      IOUtils.printError(opName, "smart group criteria cannot refer to groups");
+      return false;
+    }
+
+    String definition = criteria.toString();
+    if (definition.length() > 1024) {
+      IOUtils.printError(opName, "criteria are too long to be saved");
+      return false;
+    }
+
+    // sounds-like conditions call functions in the DBO's schema
+    Optional<String> OWNER = owner();
+    if (!OWNER.isPresent()) return false;
+
+    String NAME = name.toUpperCase();
+
+    return inTransaction(tx -> {
+      try { // to save the definition and find the group's members
+
+        // a smart group can't share its name with a regular group
+        try (PreparedStatement ps = this.connection.prepareStatement(
+               "select 1 from " + USER + ".GROUPS where name = ?")) {
+          ps.setString(1, NAME);
+          try (ResultSet rs = ps.executeQuery()) {
+            if (rs.next()) {
+              IOUtils.printError(opName, "a regular group named " + NAME + " already exists");
+              return false;
+            }
+          }
+        }
+
+        try (PreparedStatement ps = this.connection.prepareStatement(
+               "insert into " + USER + ".SMARTGROUPS(name, criteria) values (?, ?)")) {
+          ps.setString(1, NAME);
+          ps.setString(2, definition);
+          ps.executeUpdate();
+        }
+
+        List<String> params = new ArrayList<>();
+        String query = "select c.id from " + USER + ".CONTACTS c where " +
+          criteria.toSQL(USER, OWNER.get(), "c", params);
+
+        List<Integer> members = new ArrayList<>();
+        try (PreparedStatement ps = criteriaOpsPrepare(query, params);
+             ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) members.add(rs.getInt(1));
+        }
+
+        int[] IDs = members.stream().mapToInt(Integer::intValue).toArray();
+        indexOpsGroups(g -> g.define(NAME, criteria, IDs));
+
+        ev.rows(IDs.length);
+        IOUtils.printMessage(opName, "smart group " + NAME + " created with " +
+          IDs.length + " member(s)");
+        return true;
+
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        if ("23505".equals(ex.getSQLState()))
+          IOUtils.printError(opName, "a smart group named " + NAME + " already exists");
+        else IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
+  }
+
+  /**
+    * Attempts to delete the given smart group. Its members are unaffected.
+    *
+    * @param name name of the smart group
+    *
+    * @return {@code true} if and only if the smart group existed, and was
+    * deleted
+    *
+    **/
+  public boolean deleteSmartGroup (String name) {
+    return timed("deleteSmartGroup()", ev -> deleteSmartGroup(name, ev));
+  }
+
+  private boolean deleteSmartGroup (String name, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "deleteSmartGroup()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return false;
+
+    // validate group name
+    if (!contactOpsValidateGroups(opName, name)) return false;
+
+    String NAME = name.toUpperCase();
+
+    // in a transaction, so the change is counted as the delete commits
+    return inTransaction(tx -> {
+      try (PreparedStatement ps = this.connection.prepareStatement(
+             "delete from " + USER + ".SMARTGROUPS where name = ?")) {
+        ps.setString(1, NAME);
+
+        if (ps.executeUpdate() < 1) {
+          IOUtils.printWarning(opName, "smart group doesn't exist");
+          return false;
+        }
+        indexOpsGroups(g -> g.undefine(NAME));
+
+        IOUtils.printMessage(opName, "smart group " + NAME + " deleted");
+        return true;
+
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
+  }
+
+  /**
+    * Returns the current user's smart groups, with their criteria (see
+    * {@link createSmartGroup createSmartGroup()}), ordered by name.
+    *
+    * <pre>{@code
+    * jshell> db.smartGroups()
+    * $16 ==> Optional[{UK_MURPHYS=surname starts with "Murph" and phone starts with "+44"}]
+    * }</pre>
+    *
+    * @return a {@link Map} from each smart group's name to its criteria,
+    * wrapped in an {@link Optional}, or an {@link Optional#empty empty
+    * Optional} if there was a problem
+    *
+    **/
+  public Optional<Map<String, String>> smartGroups() {
+    return timed("smartGroups()", ev -> smartGroups(ev));
+  }
+
+  private Optional<Map<String, String>> smartGroups(Events.Op ev) {
+
+    // run some initial validation
+    String opName = "smartGroups()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    Optional<Map<String, ContactCriteria>> definitions = smartOpsDefinitions(opName, USER);
+    if (!definitions.isPresent()) return Optional.empty();
+
+    Map<String, String> groups = new TreeMap<>();
+    for (Map.Entry<String, ContactCriteria> e : definitions.get().entrySet())
+      groups.put(e.getKey(), e.getValue().toString());
+
+    ev.rows(groups.size());
+    return Optional.of(groups);
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  PRIVATE METHODS FOR SMART GROUPS
+  //
+  //----------------------------------------------------------------------------
+
+  // the user's smart groups, by name; a user without a SMARTGROUPS table has
+  // none, and definitions which no longer parse are skipped
+  private Optional<Map<String, ContactCriteria>> smartOpsDefinitions (String opName, String USER) {
+    Map<String, ContactCriteria> definitions = new LinkedHashMap<>();
+
+    try (Statement st = this.connection.createStatement();
+         ResultSet rs = st.executeQuery("select name, criteria from " + USER +
+           ".SMARTGROUPS order by name")) {
+
+      while (rs.next()) {
+        Optional<ContactCriteria> criteria = ContactCriteria.parse(rs.getString(2));
+        if (criteria.isPresent()) definitions.put(rs.getString(1), criteria.get());
+        else IOUtils.printWarning(opName, "skipping invalid smart group " + rs.getString(1));
+      }
+      return Optional.of(definitions);
+
+    // catch SQL exceptions
+    } catch (SQLException ex) {
+      if ("42X05".equals(ex.getSQLState())) return Optional.of(definitions);
+      IOUtils.printSQLException(opName, ex);
+      return Optional.empty();
+    }
+  }
+
+  // true (after printing an error) if `group` names a smart group, or if the
+  // smart groups couldn't be read; regular group operations can't use them
+  private boolean smartOpsIsSmartGroup (String opName, String USER, String group) {
+    Optional<Map<String, ContactCriteria>> definitions = smartOpsDefinitions(opName, USER);
+    if (!definitions.isPresent()) return true;
+
+    if (definitions.get().containsKey(group.toUpperCase())) {
+      IOUtils.printError(opName, group.toUpperCase() + " is a smart group; its members are set by its criteria");
+      return true;
+    } return false;
+  }
+
+  ///---------------------------------------------------------------------------
+  ///
+  ///  FIND AND MERGE DUPLICATE CONTACTS
+  ///
+  ///---------------------------------------------------------------------------
+
+  /**
+    * Returns clusters of the current user's contacts which are probably the
+    * same person, e.g. after a file has been imported twice.
+    *
+    * <p>Contacts are duplicates if their phone numbers match (ignoring
+    * country codes and formatting) or their first names and surnames both
+    * {@link Phonetic#soundsLike sound alike}, and none of their fields
+    * conflict. Only contacts with the same phone number suffix or phonetic
+    * surname are ever compared (see {@link DuplicateDetector}), so this runs
+    * in close to linear time. Each cluster is in ascending order of ID, and
+    * can be passed as it is to {@link mergeContacts mergeContacts()}.</p>
+    *
+    * <pre>{@code
+    * jshell> db.findDuplicates()
+    *        MESSAGE | findDuplicates() : 2 clusters (3 duplicates) among 9 contacts; 6 comparisons in 12 ms
+    * $8 ==> Optional[[[1, 4], [2, 7, 8]]]
+    * }</pre>
+    *
+    * @return the clusters of duplicate contact IDs, wrapped in an
+    * {@link Optional}, or an {@link Optional#empty empty Optional} if there
+    * was a problem
+    *
+    **/
+  public Optional<List<List<Integer>>> findDuplicates() {
+    return timed("findDuplicates()", ev -> findDuplicates(ev));
+  }
+
+  private Optional<List<List<Integer>>> findDuplicates(Events.Op ev) {
+
+    // run some initial validation
+    String opName = "findDuplicates()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    long start = System.nanoTime();
+    List<String> FIELDS = new ArrayList<>(new Contact().info.keySet());
+    DuplicateDetector detector = new DuplicateDetector(FIELDS.indexOf("FIRSTNAME"),
+      FIELDS.indexOf("SURNAME"), FIELDS.indexOf("PHONE"));
+
+    Optional<Map<Integer, String[]>> contacts = duplicateOpsRead(opName, USER);
+    if (!contacts.isPresent()) return Optional.empty();
+    for (Map.Entry<Integer, String[]> e : contacts.get().entrySet())
+      detector.add(e.getKey(), e.getValue());
+
+    List<List<Integer>> clusters = new ArrayList<>();
+    int duplicates = 0;
+    for (int[] cluster : detector.clusters()) {
+      List<Integer> IDs = new ArrayList<>(cluster.length);
+      for (int ID : cluster) IDs.add(ID);
+      clusters.add(IDs);
+      duplicates += cluster.length - 1;
+    }
+
+    ev.rows(clusters.size());
+    IOUtils.printMessage(opName, clusters.size() + " clusters (" + duplicates +
+      " duplicates) among " + contacts.get().size() + " contacts; " + detector.comparisons() +
+      " comparisons in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    return Optional.of(clusters);
+  }
+
+  /**
+    * Merges each of the given clusters of contacts into its first contact.
+    *
+    * <p>For each cluster, the first contact is kept, and any of its fields
+    * which are not set are filled in from the other contacts, in order. The
+    * others' group memberships are moved to the kept contact (without
+    * duplicating any), and they're then deleted. All clusters are merged in
+    * one transaction: if any merge fails, none of them happen. IDs which no
+    * longer exist are ignored.</p>
+    *
+    * <pre>{@code
+    * jshell> db.mergeContacts(db.findDuplicates().get(), false)
+    *        MESSAGE | mergeContacts() : merged 3 contacts into 2
+    * $9 ==> Optional[{1=[4], 2=[7, 8]}]
+    * }</pre>
+    *
+    * @param clusters lists of contact IDs to merge, each into its first ID
+    * @param dryRun if {@code true}, only report what would be merged
+    *
+    * @return a report of the merges: the ID of each kept contact, mapped to
+    * the IDs merged into it, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public Optional<Map<Integer, List<Integer>>> mergeContacts (List<List<Integer>> clusters, boolean dryRun) {
+    return timed("mergeContacts()", ev -> mergeContacts(clusters, dryRun, ev));
+  }
+
+  private Optional<Map<Integer, List<Integer>>> mergeContacts (List<List<Integer>> clusters, boolean dryRun, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "mergeContacts()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    if (clusters == null) {
+      IOUtils.printError(opName, "clusters cannot be null");
+      return Optional.empty();
+    }
+
+    // a contact can't be merged into two others
+    Set<Integer> seen = new HashSet<>();
+    for (List<Integer> cluster : clusters)
+      for (Integer ID : cluster)
+        if (ID == null || !seen.add(ID)) {
+          IOUtils.printError(opName, "contact " + ID + " appears more than once in clusters");
+          return Optional.empty();
+        }
+
+    List<String> FIELDS = new ArrayList<>(new Contact().info.keySet());
+    Map<Integer, List<Integer>> report = new TreeMap<>();
+    int[] merged = { 0 };
+
+    boolean done = inTransaction(tx -> {
+      Optional<Map<Integer, String[]>> optContacts = duplicateOpsRead(opName, USER);
+      if (!optContacts.isPresent()) return false;
+      Map<Integer, String[]> contacts = optContacts.get();
+
+      String fill = "update " + USER + ".CONTACTS set " +
+        FIELDS.stream().map(f -> f + " = ?").collect(Collectors.joining(", ")) + " where id = ?";
+
+      try (PreparedStatement dropGroups = this.connection.prepareStatement("delete from " + USER +
+             ".GROUPS where contactid = ? and name in (select name from " + USER +
+             ".GROUPS where contactid = ?)");
+           PreparedStatement moveGroups = this.connection.prepareStatement("update " + USER +
+             ".GROUPS set contactid = ? where contactid = ?");
+           PreparedStatement fillKept = this.connection.prepareStatement(fill);
+           PreparedStatement delete = this.connection.prepareStatement("delete from " + USER +
+             ".CONTACTS where id = ?")) {
+
+        for (List<Integer> cluster : clusters) {
+          if (cluster.isEmpty() || !contacts.containsKey(cluster.get(0))) continue;
+          int kept = cluster.get(0);
+
+          List<Integer> losers = new ArrayList<>();
+          for (int ID : cluster.subList(1, cluster.size())) if (contacts.containsKey(ID)) losers.add(ID);
+          if (losers.isEmpty()) continue;
+          report.put(kept, losers);
+          merged[0] += losers.size();
+          if (dryRun) continue;
+
+          // fill in the kept contact's missing fields
+          String[] values = contacts.get(kept).clone();
+          for (int ID : losers)
+            for (int ff = 0; ff < values.length; ++ff)
+              if (values[ff] == null) values[ff] = contacts.get(ID)[ff];
+
+          if (!Arrays.equals(values, contacts.get(kept))) {
+            for (int ff = 0; ff < values.length; ++ff) fillKept.setString(ff + 1, values[ff]);
+            fillKept.setInt(values.length + 1, kept);
+            fillKept.addBatch();
+          }
+
+          // move group memberships, dropping those the kept contact already has
+          for (int ID : losers) {
+            dropGroups.setInt(1, ID);
+            dropGroups.setInt(2, kept);
+            dropGroups.executeUpdate();
+
+            moveGroups.setInt(1, kept);
+            moveGroups.setInt(2, ID);
+            moveGroups.executeUpdate();
+
+            delete.setInt(1, ID);
+            delete.addBatch();
+          }
+
+          contacts.put(kept, values);
+        }
+
+        if (!dryRun) {
+          fillKept.executeBatch();
+          delete.executeBatch();
+
+          for (Map.Entry<Integer, List<Integer>> e : report.entrySet()) {
+            indexOpsPut(e.getKey(), contacts.get(e.getKey()));
+            for (int ID : e.getValue()) {
+              indexOpsGroups(g -> g.move(ID, e.getKey()));
+              indexOpsRemove(ID);
+            }
+          }
+        }
+        return true;
+
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException(opName, ex);
+        return false;
+      }
+    });
+
+    if (!done) return Optional.empty();
+
+    ev.rows(merged[0]);
+    IOUtils.printMessage(opName, (dryRun ? "would merge " : "merged ") + merged[0] +
+      " contacts into " + report.size());
+    return Optional.of(report);
+  }
+
+  // read the ID and field values of every one of the user's contacts
+  private Optional<Map<Integer, String[]>> duplicateOpsRead (String opName, String USER) {
+    List<String> FIELDS = new ArrayList<>(new Contact().info.keySet());
+    Map<Integer, String[]> contacts = new HashMap<>();
+
+    try (Statement st = this.connection.createStatement(
+           ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      st.setFetchSize(1024);
+
+      try (ResultSet rs = st.executeQuery("select id, " + String.join(", ", FIELDS) +
+             " from " + USER + ".CONTACTS")) {
+        while (rs.next()) {
+          String[] values = new String[FIELDS.size()];
+          for (int ff = 0; ff < values.length; ++ff) values[ff] = rs.getString(ff + 2);
+          contacts.put(rs.getInt(1), values);
+        }
+      }
+      return Optional.of(contacts);
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+      return Optional.empty();
+    }
+  }
+
+  ///---------------------------------------------------------------------------
+  ///
+  ///  SEARCH CONTACTS AND GROUPS, COMPLETE FIELDS, LOOK UP PHONES; INDEXES
+  ///
+  ///---------------------------------------------------------------------------
+
+  // in-memory indexes over this user's contacts, created on first use and
+  // kept current by the methods which change contacts (see ContactIndex)
+  private final List<ContactIndex> indexes = new ArrayList<>();
+
+  // number of changes reported to the indexes; if a transaction rolls back
+  // after reporting changes, the indexes are stale, and refilled on next use
+  private long indexChanges = 0;
+  private boolean indexesStale = false;
+
+  // number of changes made to this user's contacts and groups which this
+  // object's indexes reflect. Every session, in any instance sharing the
+  // database, counts its changes in the user's CHANGES table (see
+  // indexOpsChanged()); if the count there differs, another session has
+  // changed the contacts, and the indexes are stale
+  private long indexVersion = 0;
+
+  // true if a change has been reported to the indexes, but not yet counted
+  // in the CHANGES table (which is done as the transaction commits)
+  private boolean changesPending = false;
+
+  // true once a missing CHANGES table has been reported
+  private boolean changesMissing = false;
+
+  /**
+    * Returns the IDs of all of the current user's contacts with a field which
+    * contains the given {@code text}, ignoring case, in ascending order.
+    *
+    * <p>Searches are answered from an in-memory trigram index (see
+    * {@link NGramIndex}) rather than by a {@code LIKE '%text%'} scan of the
+    * {@code CONTACTS} table. The index is built from the table on the first
+    * search, and from then on kept up to date by
+    * {@link addContact addContact()}, {@link updateContact updateContact()},
+    * {@link deleteContacts deleteContacts()}, and the other methods which
+    * change contacts.</p>
+    *
+    * <pre>{@code
+    * jshell> db.searchContacts("neil")
+    *        MESSAGE | searchContacts() : indexed 3 contacts in 4 ms (~1 kB)
+    * $9 ==> Optional[[1, 2]]
+    *
+    * jshell> db.searchContacts("+44")
+    * $10 ==> Optional[[1, 2]]
+    * }</pre>
+    *
+    * @param text text to search for
+    *
+    * @return the matching contact IDs, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public Optional<List<Integer>> searchContacts (String text) {
+    return timed("searchContacts()", ev -> searchContacts(text, ev));
+  }
+
+  private Optional<List<Integer>> searchContacts (String text, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "searchContacts()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    if (text == null || text.isEmpty()) {
+      IOUtils.printError(opName, "search text cannot be null or empty");
+      return Optional.empty();
+    }
+
+    Optional<NGramIndex> index = contactIndex(opName, USER, NGramIndex.class, NGramIndex::new);
+    if (!index.isPresent()) return Optional.empty();
+
+    int[] found = index.get().search(text);
+    ev.rows(found.length);
+
+    List<Integer> IDs = new ArrayList<>(found.length);
+    for (int ID : found) IDs.add(ID);
+    return Optional.of(IDs);
+  }
+
+  /**
+    * Returns the IDs of the current user's contacts whose names sound like the
+    * given {@code name}, closest matches first.
+    *
+    * <p>Each word of {@code name} must be {@link Phonetic#soundsLike similar}
+    * to a word of the contact's first name or surname: they must share a
+    * phonetic key (Soundex or Metaphone), and be within a small edit distance
+    * of each other, so misspellings and variant spellings match, but merely
+    * similar-sounding names don't. Searches are answered from an in-memory
+    * index of phonetic keys (see {@link NameIndex}), kept up to date like
+    * {@link searchContacts searchContacts()}'s. In SQL, the same test is
+    * available as {@link ContactCriteria#soundsLike ContactCriteria.soundsLike()}.</p>
+    *
+    * <pre>{@code
+    * jshell> db.searchNames("catherine obrian")
+    * $11 ==> Optional[[3, 12]]
+    * }</pre>
+    *
+    * @param name name to search for
+    *
+    * @return the matching contact IDs, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public Optional<List<Integer>> searchNames (String name) {
+    return timed("searchNames()", ev -> searchNames(name, ev));
+  }
+
+  private Optional<List<Integer>> searchNames (String name, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "searchNames()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    if (name == null || Phonetic.tokens(name).isEmpty()) {
+      IOUtils.printError(opName, "name must contain at least one letter");
+      return Optional.empty();
+    }
+
+    List<String> FIELDS = new ArrayList<>(new Contact().info.keySet());
+    Optional<NameIndex> index = contactIndex(opName, USER, NameIndex.class,
+      () -> new NameIndex(FIELDS.indexOf("FIRSTNAME"), FIELDS.indexOf("SURNAME")));
+    if (!index.isPresent()) return Optional.empty();
+
+    int[] found = index.get().search(name);
+    ev.rows(found.length);
+
+    List<Integer> IDs = new ArrayList<>(found.length);
+    for (int ID : found) IDs.add(ID);
+    return Optional.of(IDs);
+  }
+
+  /**
+    * Returns the IDs of the current user's contacts whose group memberships
+    * satisfy the given expression, in ascending order.
+    *
+    * <p>Expressions combine group names with {@code and}, {@code or},
+    * {@code not}, and parentheses ({@code &}, {@code |}, and {@code !} may be
+    * used instead of the words), with {@code not} binding tightest and
+    * {@code or} loosest. They're evaluated over an in-memory index of
+    * compressed bitmaps, one per group (see {@link GroupIndex}), built on the
+    * first call and kept up to date by {@link addToGroup addToGroup()},
+    * {@link removeFromGroup removeFromGroup()}, {@link deleteGroup
+    * deleteGroup()}, {@link renameGroup renameGroup()}, and the methods which
+    * delete contacts. {@link createSmartGroup Smart groups} may be used in
+    * expressions just like regular groups.</p>
+    *
+    * <pre>{@code
+    * jshell> db.contactsMatching("family and work and not lads")
+    * $12 ==> Optional[[2, 5]]
+    *
+    * jshell> db.contactsMatching("not (family or work)")
+    * $13 ==> Optional[[3, 4, 6]]
+    * }</pre>
+    *
+    * @param groupExpression expression over group names
+    *
+    * @return the matching contact IDs, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if the expression is invalid or
+    * there was a problem
+    *
+    **/
+  public Optional<List<Integer>> contactsMatching (String groupExpression) {
+    return timed("contactsMatching()", ev -> contactsMatching(groupExpression, ev));
+  }
+
+  private Optional<List<Integer>> contactsMatching (String groupExpression, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "contactsMatching()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    if (isNullOrWhitespace(groupExpression)) {
+      IOUtils.printError(opName, "group expression cannot be null, empty, or all whitespace");
+      return Optional.empty();
+    }
+
+    Optional<GroupIndex> index = contactIndex(opName, USER, GroupIndex.class, GroupIndex::new);
+    if (!index.isPresent()) return Optional.empty();
+
+    Optional<IntBitmap> matching = index.get().matching(opName, groupExpression);
+    if (!matching.isPresent()) return Optional.empty();
+
+    int[] found = matching.get().toArray();
+    ev.rows(found.length);
+
+    List<Integer> IDs = new ArrayList<>(found.length);
+    for (int ID : found) IDs.add(ID);
+    return Optional.of(IDs);
+  }
+
+  /**
+    * Most seconds for which a {@link filterContacts filterContacts()} query
+    * may run before the database abandons it.
+    **/
+  public static final int FILTER_TIMEOUT = 10;
+
+  // the cursor of the filterContacts() call in progress, if any, so that
+  // another thread can cancel it
+  private volatile ContactCursor filtering = null;
+
+  /**
+    * Streams the current user's contacts which match the given filter text
+    * to {@code rows}, with their groups, as
+    * {@link contactsWithGroups(Consumer) contactsWithGroups()} does.
+    *
+    * <p>Each word of {@code text} must start one of a contact's names or its
+    * phone number (ignoring case), so {@code "jo mur"} matches "John Murphy".
+    * Text containing a {@code "} is instead read as {@link ContactCriteria}
+    * (see {@link ContactCriteria#parse ContactCriteria.parse()}), e.g.
+    * {@code surname sounds like "murfy"}.</p>
+    *
+    * <p>This is meant to be called on a background thread, as the user
+    * types, so it can be stopped early: {@code cancelled} is checked before
+    * each contact is read (and if it returns {@code true}, the query is
+    * abandoned), {@link cancelFilter cancelFilter()} may be called from any
+    * other thread, and the query is given a timeout of
+    * {@value FILTER_TIMEOUT} seconds.</p>
+    *
+    * @param text filter text
+    * @param limit most contacts to return
+    * @param cancelled returns {@code true} once the results are no longer
+    * wanted
+    * @param rows receives the column names, and then each matching contact
+    *
+    * @return the number of contacts streamed, wrapped in an {@link Optional},
+    * or an {@link Optional#empty empty Optional} if the filter was cancelled,
+    * timed out, or there was a problem
+    *
+    **/
+  public Optional<Integer> filterContacts (String text, int limit,
+    BooleanSupplier cancelled, Consumer<List<String>> rows) {
+    return timed("filterContacts()", ev -> filterContacts(text, limit, cancelled, rows, ev));
+  }
+
+  private Optional<Integer> filterContacts (String text, int limit,
+    BooleanSupplier cancelled, Consumer<List<String>> rows, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "filterContacts()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    if (text == null || limit < 1) {
+      IOUtils.printError(opName, "filter text cannot be null, and limit must be at least 1");
+      return Optional.empty();
+    }
+
+    List<String> params = new ArrayList<>();
+    String where;
+
+    if (text.contains("\"")) {
+      Optional<ContactCriteria> criteria = ContactCriteria.parse(text);
+      if (!criteria.isPresent()) return Optional.empty();
+
+      // sounds-like conditions call functions in the DBO's schema
+      Optional<String> OWNER = owner();
+      if (!OWNER.isPresent()) return Optional.empty();
+      where = criteria.get().toSQL(USER, OWNER.get(), "c", params);
+
+    } else {
+      StringBuilder sb = new StringBuilder("1 = 1");
+      for (String word : text.trim().toUpperCase().split("\\s+")) {
+        if (word.isEmpty()) continue;
+        sb.append(" and (upper(c.firstname) like ? escape '\\' or upper(c.surname)")
+          .append(" like ? escape '\\' or c.phone like ? escape '\\')");
+        String prefix = ContactCriteria.escapeLike(word) + "%";
+        params.add(prefix); params.add(prefix); params.add(prefix);
+      }
+      where = sb.toString();
+    }
+
+    rows.accept(Arrays.asList("ID", "FIRSTNAME", "SURNAME", "PHONE", "GROUPS"));
+    int count = 0;
+
+    try (ContactCursor cc = new ContactCursor(this.connection, USER, where, params, FILTER_TIMEOUT)) {
+      filtering = cc;
+
+      while (count < limit && !cancelled.getAsBoolean() && cc.next()) {
+        rows.accept(Arrays.asList(String.valueOf(cc.id()), cc.firstname(),
+          cc.surname(), cc.phone(), String.join(", ", cc.groups())));
+        ++count;
+      }
+
+      if (cancelled.getAsBoolean()) return Optional.empty();
+
+      ev.rows(count);
+      return Optional.of(count);
+
+    // catch SQL exceptions; a cancelled or timed-out query isn't an error
+    } catch (SQLException ex) {
+      if ("XCL52".equals(ex.getSQLState())) {
+        if (!cancelled.getAsBoolean()) IOUtils.printWarning(opName, "filter query timed out");
+      } else IOUtils.printSQLException(opName, ex);
+      return Optional.empty();
+
+    } finally {
+      filtering = null;
+    }
+  }
+
+  /**
+    * Asks the database to stop the {@link filterContacts filterContacts()}
+    * query in progress, if there is one. Unlike the rest of this class, this
+    * method may be called from any thread.
+    *
+    * <p>Not every database driver supports this (embedded Derby doesn't), so
+    * callers should also make that query's {@code cancelled} supplier return
+    * {@code true}.</p>
+    *
+    * @return {@code true} if a query was in progress, and the driver accepted
+    * the request to stop it
+    *
+    **/
+  public boolean cancelFilter() {
+    ContactCursor cc = filtering;
+    return cc != null && cc.cancel();
+  }
 
   /**
-    * Attempts to rename a group in the current user's {@code GROUPS} table.
+    * Returns the (at most) {@code count} most common values of the given
+    * {@link Contact} field, among the current user's contacts, which start
+    * with the given {@code prefix} (ignoring case).
     *
-    * @param oldName current name of the group which should be renamed
-    * @param newName new name to give to the group
+    * <p>Completions are most common first (and alphabetical among equally
+    * common values). Like {@link searchContacts searchContacts()}, they come
+    * from an in-memory index (see {@link CompletionIndex}), built on the first
+    * call and kept up to date as contacts are changed, so they're cheap
+    * enough to look up as the user types.</p>
     *
-    * @return {@code true} if and only if the group referenced by
-    * {@code oldName} existed, and was successfully renamed to {@code newName}
+    * <pre>{@code
+    * jshell> db.completions("surname", "o'", 5)
+    * $11 ==> Optional[[O'Neill, O'Brien]]
     *
-    * @see tables tables(), to see available tables
-    * @see printTable printTable(), to print a particular table to the terminal
-    * @see table table(), to get a particular table as a List
+    * jshell> db.completions("phone", "+3534", 5)
+    * $12 ==> Optional[[+353445671234]]
+    * }</pre>
+    *
+    * @param field {@link Contact} field, e.g. {@code "surname"} or {@code "phone"}
+    * @param prefix start of the values to return
+    * @param count largest number of values to return
+    *
+    * @return the completions, wrapped in an {@link Optional}, or an
+    * {@link Optional#empty empty Optional} if there was a problem
     *
     **/
-  public boolean renameGroup (String oldName, String newName) {
+  public Optional<List<String>> completions (String field, String prefix, int count) {
+    return timed("completions()", ev -> completions(field, prefix, count, ev));
+  }
+
+  private Optional<List<String>> completions (String field, String prefix, int count, Events.Op ev) {
 
     // run some initial validation
-    String opName = "renameGroup()";
+    String opName = "completions()";
     String USER = contactOpsInit(opName);
-    if (USER == null) return false;
+    if (USER == null) return Optional.empty();
 
-    // validate group names
-    if (!contactOpsValidateGroups(opName, oldName, newName)) return false;
+    if (!new Contact().keyExists(field)) return Optional.empty();
 
-    // operation-specific validation
-    if (oldName.equals(newName)) {
-      IOUtils.printWarning(opName, "old name is the same as new name");
-      return false;
+    if (prefix == null || prefix.isEmpty() || count < 1) {
+      IOUtils.printError(opName, "prefix cannot be null or empty, and count must be at least 1");
+      return Optional.empty();
     }
 
-    try { // to rename this group
+    List<String> FIELDS = new ArrayList<>(new Contact().info.keySet());
+    Optional<CompletionIndex> index = contactIndex(opName, USER,
+      CompletionIndex.class, () -> new CompletionIndex(FIELDS.size()));
+    if (!index.isPresent()) return Optional.empty();
 
-      // check that this group has at least one member
-      String OLDNAME = contactOpsGroupExists(opName, USER, oldName);
-      if (OLDNAME == null) return false;
+    List<String> completions = index.get().complete(
+      FIELDS.indexOf(field.toUpperCase()), prefix, count);
 
-      // change group name
-      String NEWNAME = newName.toUpperCase(); // capitalise
-      this.statement.execute("update " + USER + ".GROUPS set name = '" + NEWNAME +
-        "' where name = '" + OLDNAME + "'");
+    ev.rows(completions.size());
+    return Optional.of(completions);
+  }
 
-      IOUtils.printMessage(opName, "successfully renamed group");
-      return true;
+  // for the DBO: an index of every user's phone numbers, the users it refers
+  // to (see PhoneIndex; a deleted user's place is null), and each user's count
+  // of changes to their contacts (and the DBO's, of users added and deleted)
+  // when their numbers were read; a user's numbers are read again once their
+  // count has moved on
+  private PhoneIndex allUsersPhoneIndex = null;
+  private List<String> allUsersPhoneIndexUsers = null;
+  private Map<String, Long> allUsersPhoneIndexVersions = null;
+
+  /**
+    * Finds the contacts with the given phone number, as for caller ID.
+    *
+    * <p>Numbers are compared by their digits alone, ignoring any leading
+    * {@code +} or zeros, and match if they're the same or if one ends with
+    * the other (and the shorter has at least {@value PhoneIndex#MIN_DIGITS}
+    * digits), so a number with a country code matches the same number
+    * without one. For a regular user, the user's own contacts are searched;
+    * for the DBO, every user's contacts are. Lookups are answered from an
+    * in-memory index (see {@link PhoneIndex}), in time proportional to the
+    * length of the number.</p>
+    *
+    * <pre>{@code
+    * jshell> db.lookupPhone("0445671234")
+    * $13 ==> Optional[{JEFF=[1]}]
+    * }</pre>
+    *
+    * @param number phone number to look up
+    *
+    * @return the IDs of the matching contacts, by user, wrapped in an
+    * {@link Optional}, or an {@link Optional#empty empty Optional} if there
+    * was a problem
+    *
+    **/
+  public Optional<Map<String, List<Integer>>> lookupPhone (String number) {
+    return timed("lookupPhone()", ev -> phoneOpsHelper("lookupPhone()", number, false, ev));
+  }
+
+  /**
+    * Finds the contacts whose phone numbers end with the given digits.
+    *
+    * <p>As for {@link lookupPhone lookupPhone()}, a regular user's own
+    * contacts are searched, and the DBO's searches cover every user.</p>
+    *
+    * <pre>{@code
+    * jshell> db.phonesEndingWith("1234")
+    * $14 ==> Optional[{JEFF=[1, 7]}]
+    * }</pre>
+    *
+    * @param digits last digits of the phone numbers to find
+    *
+    * @return the IDs of the matching contacts, by user, wrapped in an
+    * {@link Optional}, or an {@link Optional#empty empty Optional} if there
+    * was a problem
+    *
+    **/
+  public Optional<Map<String, List<Integer>>> phonesEndingWith (String digits) {
+    return timed("phonesEndingWith()", ev -> phoneOpsHelper("phonesEndingWith()", digits, true, ev));
+  }
+
+  // look up `number` in the current user's phone index or, for the DBO, in
+  // every user's
+  private Optional<Map<String, List<Integer>>> phoneOpsHelper (String opName,
+    String number, boolean suffix, Events.Op ev) {
+
+    if (number == null || (suffix ? !number.matches("[0-9]{1,18}") : PhoneIndex.key(number) < 0)) {
+      IOUtils.printError(opName, suffix ? "between 1 and 18 digits must be given" :
+        "phone numbers must have between 1 and 18 (not all zero) digits");
+      return Optional.empty();
+    }
+
+    PhoneIndex index;
+    List<String> USERS;
+
+    if (userIsDBO()) {
+      if (!phoneOpsRefreshAllUsers(opName)) return Optional.empty();
+      index = allUsersPhoneIndex;
+      USERS = allUsersPhoneIndexUsers;
+
+    } else {
+      String USER = contactOpsInit(opName);
+      if (USER == null) return Optional.empty();
+
+      List<String> FIELDS = new ArrayList<>(new Contact().info.keySet());
+      Optional<PhoneIndex> userIndex = contactIndex(opName, USER,
+        PhoneIndex.class, () -> new PhoneIndex(FIELDS.indexOf("PHONE")));
+      if (!userIndex.isPresent()) return Optional.empty();
+
+      index = userIndex.get();
+      USERS = Collections.singletonList(USER);
+    }
+
+    // references are (user << 32) | ID
+    long[] found = suffix ? index.endingWith(number) : index.lookup(number);
+    ev.rows(found.length);
+
+    Map<String, List<Integer>> IDs = new TreeMap<>();
+    for (long ref : found)
+      IDs.computeIfAbsent(USERS.get((int) (ref >>> 32)), u -> new ArrayList<>()).add((int) ref);
+
+    return Optional.of(IDs);
+  }
+
+  // every user but the DBO (who has no CONTACTS table), in order, or null
+  // if they can't be listed
+  private List<String> phoneOpsUsers() {
+
+    Optional<String> OPTOWNER = owner();
+    if (!OPTOWNER.isPresent()) return null;
+    String OWNER = OPTOWNER.get();
+
+    Optional<List<String>> OPTUSERS = users();
+    if (!OPTUSERS.isPresent()) return null;
+
+    return OPTUSERS.get().stream()
+      .filter(u -> !u.equals(OWNER)).sorted().collect(Collectors.toList());
+  }
+
+  // bring the DBO's index of every user's phone numbers up to date: the
+  // numbers of users whose counts of changes have moved on (or who have been
+  // added or deleted) are dropped from the index, and read again
+  private boolean phoneOpsRefreshAllUsers (String opName) {
+    String OWNER = this.userName.toUpperCase();
+
+    if (allUsersPhoneIndex == null) {
+      allUsersPhoneIndex = new PhoneIndex(-1);
+      allUsersPhoneIndexUsers = new ArrayList<>();
+      allUsersPhoneIndexVersions = new HashMap<>();
+    }
+
+    List<String> SLOTS = allUsersPhoneIndexUsers;
+    Map<String, Long> known = allUsersPhoneIndexVersions;
+
+    // counted before reading, so changes made while reading are read next
+    // time. The DBO's count moves when users are added or deleted, so only
+    // then are the users listed again (as they are if a deleted user's
+    // count can't be read)
+    List<String> USERS = SLOTS.stream().filter(Objects::nonNull).collect(Collectors.toList());
+    Map<String, Long> versions = indexOpsVersionsOrNull(OWNER, USERS);
+
+    if (versions == null || !Objects.equals(versions.get(OWNER), known.get(OWNER))) {
+      USERS = phoneOpsUsers();
+      if (USERS == null) return false;
+
+      List<String> COUNTED = new ArrayList<>(USERS);
+      COUNTED.add(OWNER);
+      versions = indexOpsVersions(opName, COUNTED);
+    }
+
+    long start = System.nanoTime();
+    int read = 0;
+
+    // deleted users
+    for (int uu = 0; uu < SLOTS.size(); ++uu)
+      if (SLOTS.get(uu) != null && !USERS.contains(SLOTS.get(uu))) {
+        allUsersPhoneIndex.removeUser(uu);
+        known.remove(SLOTS.get(uu));
+        SLOTS.set(uu, null);
+      }
+
+    try (Statement st = this.connection.createStatement(
+           ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      st.setFetchSize(1024);
+
+      for (String USER : USERS) {
+
+        // if the counts can't be read, every user's numbers are read again
+        Long version = versions == null ? null : versions.get(USER);
+        if (version != null && version.equals(known.get(USER))) continue;
+
+        int uu = SLOTS.indexOf(USER);
+        if (uu < 0) { uu = SLOTS.size(); SLOTS.add(USER); }
+        else allUsersPhoneIndex.removeUser(uu);
+
+        try (ResultSet rs = st.executeQuery("select id, phone from " + USER +
+               ".CONTACTS where phone is not null")) {
+          while (rs.next()) allUsersPhoneIndex.add(rs.getString(2), ((long) uu << 32) | rs.getInt(1));
+        }
+
+        if (version == null) known.remove(USER);
+        else known.put(USER, version);
+        ++read;
+      }
 
-    // catch SQL exceptions
     } catch (SQLException ex) {
       IOUtils.printSQLException(opName, ex);
+      allUsersPhoneIndex = null; // partly read; rebuilt next time
       return false;
     }
+
+    if (versions == null) known.remove(OWNER);
+    else if (versions.containsKey(OWNER)) known.put(OWNER, versions.get(OWNER));
+
+    if (read > 0) {
+      long ms = (System.nanoTime() - start) / 1000000;
+      IOUtils.printMessage(opName, "indexed phone numbers of " + read + " of " + USERS.size() +
+        " users in " + ms + " ms (" + allUsersPhoneIndex.size() + " numbers, ~" +
+        allUsersPhoneIndex.bytes() / 1024 + " kB)");
+    }
+    return true;
   }
 
   /**
-    * Attempts to return a {@link List} of all unique group names in the current
-    * user's {@code GROUPS} table, wrapped in an {@link Optional}.
-    *
-    * <p>Returns {@link Optional#empty an empty Optional} if there is a problem
-    * getting the name of the current user.</p>
+    * Returns an estimate of the heap memory used by the current user's
+    * in-memory contact indexes (for {@link searchContacts searchContacts()},
+    * {@link completions completions()}, etc.), or {@code 0} if none have
+    * been built yet.
     *
-    * @return a {@link List} of all unique group names in the current user's
-    * {@code GROUPS} table, wrapped in an {@link Optional}, or if there was a
-    * problem, {@link Optional#empty an empty Optional}.
+    * @return the approximate total size of the contact indexes, in bytes
     *
     **/
-  public Optional<List<String>> groups() {
+  public long indexBytes() {
+    long bytes = allUsersPhoneIndex == null ? 0 : allUsersPhoneIndex.bytes();
+    for (ContactIndex index : indexes) bytes += index.bytes();
+    return bytes;
+  }
 
-    // run some initial validation
-    String opName = "groups()";
-    String USER = contactOpsInit(opName);
-    if (USER == null) return Optional.empty();
+  // returns this user's index of the given type, creating and filling it (or
+  // refilling all of the indexes, if they're stale) first, if necessary
+  private <T extends ContactIndex> Optional<T> contactIndex (String opName,
+    String USER, Class<T> type, Supplier<T> create) {
 
-    // get the GROUPS table as a List<List<String>>
-    List<List<String>> GROUPS = table(USER + ".GROUPS");
+    // if the count of changes can't be read, the indexes are refilled
+    Map<String, Long> versions = indexOpsVersions(opName, Collections.singletonList(USER));
+    long version = versions == null ? -1 : versions.getOrDefault(USER, -1L);
 
-    // select only the group "NAME" column, without the header
-    final int nameColumn = GROUPS.get(0).indexOf("NAME");
+    if ((indexesStale || version < 0 || version != indexVersion) && !indexes.isEmpty()) {
+      for (ContactIndex index : indexes) index.clear();
+      if (!indexOpsFill(opName, USER, indexes)) return Optional.empty();
+    }
+    indexesStale = false;
+    indexVersion = version;
 
-    // get the group names (last column)
-    List<String> groupnames = GROUPS.stream().skip(1).map(l -> l.get(nameColumn))
-      .distinct().sorted().collect(Collectors.toList());
+    for (ContactIndex index : indexes)
+      if (type.isInstance(index)) return Optional.of(type.cast(index));
 
-    return Optional.of(groupnames);
+    T index = create.get();
+    if (!indexOpsFill(opName, USER, Collections.singletonList(index))) return Optional.empty();
+
+    indexes.add(index);
+    return Optional.of(index);
   }
 
-  //----------------------------------------------------------------------------
-  //
-  //  PRIVATE METHODS FOR CONTACTS-RELATED OPERATIONS
-  //
-  //----------------------------------------------------------------------------
+  // put every contact in the CONTACTS table into each of the given indexes
+  private boolean indexOpsFill (String opName, String USER, List<ContactIndex> targets) {
+    List<String> FIELDS = new ArrayList<>(new Contact().info.keySet());
+    long start = System.nanoTime();
+    int count = 0;
+
+    // the group index also holds the smart groups, whose members are found
+    // as the contacts are put into it, so they're defined first
+    List<GroupIndex> groupIndexes = new ArrayList<>();
+    for (ContactIndex index : targets)
+      if (index instanceof GroupIndex) groupIndexes.add((GroupIndex) index);
+
+    if (!groupIndexes.isEmpty()) {
+      Optional<Map<String, ContactCriteria>> smart = smartOpsDefinitions(opName, USER);
+      if (!smart.isPresent()) return false;
+      for (GroupIndex index : groupIndexes)
+        for (Map.Entry<String, ContactCriteria> e : smart.get().entrySet())
+          index.define(e.getKey(), e.getValue());
+    }
 
-  // "header" for Contacts-related operations
-  private String contactOpsInit (String opName) {
+    try (Statement st = this.connection.createStatement(
+           ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      st.setFetchSize(1024);
+
+      try (ResultSet rs = st.executeQuery("select id, " + String.join(", ", FIELDS) +
+             " from " + USER + ".CONTACTS")) {
+        while (rs.next()) {
+          String[] values = new String[FIELDS.size()];
+          for (int ff = 0; ff < values.length; ++ff) values[ff] = rs.getString(ff + 2);
+          for (ContactIndex index : targets) index.put(rs.getInt(1), values);
+          ++count;
+        }
+      }
 
-    // if current user is DBO, they can't use this method
-    if (userIsDBO()) {
-      IOUtils.printError(opName, "only regular (non-DBO) users have lists of contacts");
-      return null;
+      // group memberships, for the group index
+      if (!groupIndexes.isEmpty())
+        try (ResultSet rs = st.executeQuery("select name, contactid from " + USER + ".GROUPS")) {
+          while (rs.next())
+            for (GroupIndex index : groupIndexes) index.add(rs.getString(1), rs.getInt(2));
+        }
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+      return false;
     }
 
-    // if current user cannot be found for any reason, quit
-    Optional<String> OPTUSER = user();
-    if (!OPTUSER.isPresent()) return null;
-    String USER = OPTUSER.get();
+    long ms = (System.nanoTime() - start) / 1000000;
+    long kB = 0;
+    for (ContactIndex index : targets) kB += index.bytes() / 1024;
+    IOUtils.printMessage(opName, "indexed " + count + " contacts in " + ms + " ms (~" + kB + " kB)");
+    return true;
+  }
 
-    return USER;
+  // the given users' counts of changes to their contacts, by any session (see
+  // indexOpsChanged()), or null if they can't be read
+  private Map<String, Long> indexOpsVersions (String opName, List<String> USERS) {
+    try {
+      return indexOpsReadVersions(USERS);
+
+    } catch (SQLException ex) {
+      indexOpsMissing(opName, ex);
+      return null;
+    }
   }
 
-  // returns true only if all group names are valid
-  private boolean contactOpsValidateGroups (String opName, String... args) {
+  // as indexOpsVersions(), for `OWNER` and `USERS`, but null (without a
+  // warning) if any of them can't be read, as when a user has been deleted
+  private Map<String, Long> indexOpsVersionsOrNull (String OWNER, List<String> USERS) {
+    List<String> COUNTED = new ArrayList<>(USERS);
+    COUNTED.add(OWNER);
 
-    for (String arg : args)
-      if (isNullOrWhitespace(arg)) {
-        IOUtils.printError(opName, "group names cannot be null, empty, or all whitespace");
-        return false;
-      }
+    try {
+      return indexOpsReadVersions(COUNTED);
 
-    // only allow alphanumeric characters (and underscores) in group names to
-    // prevent SQL injection attacks; use regex to find any non-alnum chars
+    } catch (SQLException ex) {
+      return null;
+    }
+  }
 
-    Pattern p = Pattern.compile("[^a-zA-Z0-9_]");
-    Matcher m;
+  // one query for the given users' counts of changes
+  private Map<String, Long> indexOpsReadVersions (List<String> USERS) throws SQLException {
+    Map<String, Long> versions = new HashMap<>();
+    if (USERS.isEmpty()) return versions;
 
-    for (String arg : args) {
-      m = p.matcher(arg);
-      if (m.find()) {
-        IOUtils.printError(opName, "group names can only contain letters, numbers, and underscores");
-        return false;
-    } }
+    List<String> selects = new ArrayList<>();
+    for (String USER : USERS)
+      selects.add("select cast('" + USER + "' as varchar(128)), version from " + USER + ".CHANGES");
 
-    return true;
+    try (Statement st = this.connection.createStatement();
+         ResultSet rs = st.executeQuery(String.join(" union all ", selects))) {
+      while (rs.next()) versions.put(rs.getString(1), rs.getLong(2));
+      return versions;
+    }
   }
 
-  private String contactOpsGroupExists (String opName, String USER, String group) throws SQLException {
+  // count a change to this user's contacts, making other sessions' indexes
+  // stale. Every write which reports a change runs in a transaction, and the
+  // change is counted (once, however many rows changed) as it commits, so a
+  // change is never committed without being counted; outside a transaction,
+  // it's counted at once
+  private void indexOpsChanged() {
+    changesPending = true;
+    if (txDepth == 0) indexOpsCount();
+  }
 
-    // get current groups from GROUPS table
-    List<String> GROUPS = new ArrayList<String>();
-    resultSet = this.statement.executeQuery("select distinct name from " + USER + ".GROUPS");
-    while (resultSet.next()) GROUPS.add(resultSet.getString(1));
+  // add the pending change to this user's CHANGES table; if another session
+  // had changed the contacts first, this object's indexes are stale, too.
+  // The update locks the count until the transaction ends, so no other
+  // session's change can come between the update and the select
+  private void indexOpsCount() {
+    changesPending = false;
+    String USER = String.valueOf(userName).toUpperCase();
+
+    try (Statement st = this.connection.createStatement()) {
+      st.executeUpdate("update " + USER + ".CHANGES set version = version + 1");
+
+      try (ResultSet rs = st.executeQuery("select version from " + USER + ".CHANGES")) {
+        long version = rs.next() ? rs.getLong(1) : -1;
+        if (version < 0 || version - 1 != indexVersion) indexesStale = true;
+        indexVersion = version;
+      }
 
-    // if no groups or given group doesn't exist, return true
-    String GROUP = group.toUpperCase(); // capitalise
-    if (GROUPS.size() < 1 || !GROUPS.contains(GROUP)) {
-      IOUtils.printWarning(opName, "group doesn't exist; no contacts affected");
-      return null;
-    } return GROUP;
+    } catch (SQLException ex) {
+      indexOpsMissing("indexOpsCount()", ex);
+      indexesStale = true;
+    }
   }
 
-  private boolean contactOpsContactsAffected (String opName, String query) throws SQLException {
+  // count a user added or deleted, in the DBO's CHANGES table (which a
+  // database whose DBO hasn't connected since it existed doesn't have)
+  private void indexOpsUsersChanged() throws SQLException {
+    String OWNER = this.userName.toUpperCase();
+    if (tables().contains(OWNER + ".CHANGES"))
+      this.statement.executeUpdate("update " + OWNER + ".CHANGES set version = version + 1");
+  }
 
-    // get number of rows affected (if 0, return false)
-    int rowCount = 0;
-    resultSet = this.statement.executeQuery(query);
-    while (resultSet.next()) { ++rowCount; }
+  // report (once) that the CHANGES table couldn't be used; changes are then
+  // neither counted nor seen, and the indexes are refilled before every use
+  private void indexOpsMissing (String opName, SQLException ex) {
+    if (changesMissing) return;
+    changesMissing = true;
+    IOUtils.printWarning(opName, "could not read or count changes; the database " +
+      "owner must connect once to create CHANGES tables, and searches will be slow until then");
+    IOUtils.printSQLException(opName, ex);
+  }
 
-    if (rowCount < 1) {
-      IOUtils.printWarning(opName, "no contacts affected");
-      return false;
-    } return true;
+  // report an added or changed contact to the indexes
+  private void indexOpsPut (int ID, Contact contact) {
+    if (indexes.isEmpty()) { indexOpsChanged(); return; }
+
+    List<String> FIELDS = new ArrayList<>(contact.info.keySet());
+    String[] values = new String[FIELDS.size()];
+    for (int ff = 0; ff < values.length; ++ff) values[ff] = contact.raw(FIELDS.get(ff));
+
+    indexOpsPut(ID, values);
   }
 
-  private boolean isNullOrWhitespace (String s) {
-    return (s == null || "".equals(s.trim()));
+  // report an added or changed contact (by its field values) to the indexes
+  private void indexOpsPut (int ID, String[] values) {
+    indexOpsChanged();
+    if (indexes.isEmpty()) return;
+    for (ContactIndex index : indexes) index.put(ID, values);
+    ++indexChanges;
+  }
+
+  // report deleted contacts to the indexes
+  private void indexOpsRemove (int... IDs) {
+    indexOpsChanged();
+    if (indexes.isEmpty()) return;
+    for (ContactIndex index : indexes)
+      for (int ID : IDs) index.remove(ID);
+    ++indexChanges;
+  }
+
+  // report a change to group memberships to the group index, if there is one
+  private void indexOpsGroups (Consumer<GroupIndex> change) {
+    indexOpsChanged();
+    for (ContactIndex index : indexes)
+      if (index instanceof GroupIndex) {
+        change.accept((GroupIndex) index);
+        ++indexChanges;
+      }
   }
 
   ///---------------------------------------------------------------------------
@@ -1491,6 +4131,10 @@ public final class Database {
     *
     **/
   public Optional<List<String>> users() {
+    return timed("users()", ev -> users(ev));
+  }
+
+  private Optional<List<String>> users(Events.Op ev) {
 
     // if current user is not DBO, they can't use this method
     if(!userIsDBO()) {
@@ -1512,6 +4156,7 @@ public final class Database {
     }
 
     // return user names
+    ev.rows(USERS.size());
     return Optional.of(USERS);
   }
 
@@ -1539,6 +4184,10 @@ public final class Database {
     *
     **/
   public boolean addUser (String username, String password, String dboPassword) {
+    return timed("addUser()", ev -> addUser(username, password, dboPassword, ev));
+  }
+
+  private boolean addUser (String username, String password, String dboPassword, Events.Op ev) {
 
     //--------------------------------------------------------------------------
     //  validate username and password
@@ -1603,130 +4252,137 @@ public final class Database {
     // shift to uppercase
     String USERNAME = username.toUpperCase();
 
-    try {
+    return inTransaction(tx -> {
+      try {
 
-      // check that user doesn't already exist
-      if (USERS.contains(USERNAME)) {
-        IOUtils.printError("addUser()", "user \"" + USERNAME + "\" already exists");
-        return false;
-      }
+        // check that user doesn't already exist
+        if (USERS.contains(USERNAME)) {
+          IOUtils.printError("addUser()", "user \"" + USERNAME + "\" already exists");
+          return false;
+        }
 
-      // passwords can contain symbols, etc., so we need a prepared statement
-      if (!USERS.contains(USERNAME)) {
-        ps_adduser.setString(1, USERNAME);
-        ps_adduser.setString(2, password);
-        ps_adduser.execute();
-      }
+        // passwords can contain symbols, etc., so we need a prepared statement
+        if (!USERS.contains(USERNAME)) {
+          ps_adduser.setString(1, USERNAME);
+          ps_adduser.setString(2, password);
+          ps_adduser.execute();
+        }
 
-      //------------------------------------------------------------------------
-      //
-      //  CREATE USER'S DEFAULT TABLES AND GRANT FULL PERMISSIONS
-      //
-      //   - create tables only if they don't already exist
-      //   - don't create 'GROUPS' or 'CONTACTS' tables for DBO
-      //       (DBO is strictly a utility account for user management)
-      //   - since USERNAME is alnum only, no prepared statements needed
-      //
-      //------------------------------------------------------------------------
+        //------------------------------------------------------------------------
+        //
+        //  CREATE USER'S DEFAULT TABLES AND GRANT FULL PERMISSIONS
+        //
+        //   - create tables only if they don't already exist
+        //   - don't create 'GROUPS' or 'CONTACTS' tables for DBO
+        //       (DBO is strictly a utility account for user management)
+        //   - since USERNAME is alnum only, no prepared statements needed
+        //
+        //------------------------------------------------------------------------
 
-      String cTable = USERNAME + ".CONTACTS"; // user's contacts list
-      String gTable = USERNAME + ".GROUPS";   // user's contacts groups
-      String sTable = USERNAME + ".SECURE";   // user's hashed password and salt
+        String cTable = USERNAME + ".CONTACTS"; // user's contacts list
+        String gTable = USERNAME + ".GROUPS";   // user's contacts groups
+        String sTable = USERNAME + ".SECURE";   // user's hashed password and salt
 
-      // create 'CONTACTS' table
-      //  auto-increment: https://www.binarytides.com/create-autoincrement-columnfield-in-apache-derby/
-      //  phone numbers: https://www.cm.com/blog/how-to-format-international-telephone-numbers/
+        // create 'CONTACTS' table
+        //  auto-increment: https://www.binarytides.com/create-autoincrement-columnfield-in-apache-derby/
+        //  phone numbers: https://www.cm.com/blog/how-to-format-international-telephone-numbers/
 
-      if (!OWNER.equals(USERNAME) && !TABLES.contains(cTable)) {
+        if (!OWNER.equals(USERNAME) && !TABLES.contains(cTable)) {
 
-        // get column names and descriptions from Contact class
-        Contact c = new Contact();
+          // get column names and descriptions from Contact class
+          Contact c = new Contact();
 
-        // Contact class defines schema for Contacts table
-        this.statement.execute("create table " + cTable +
-          "(id int not null generated always as identity (start with 1, increment by 1), " +
-          (c.info.entrySet().stream().map(e -> e.getKey() + " " + e.getValue().getKey()).collect(Collectors.joining(", "))) +
-          ", constraint primary_key_c primary key (id))");
-        this.statement.execute("grant all privileges on " + cTable + " to " + username);
-      }
+          // Contact class defines schema for Contacts table
+          this.statement.execute("create table " + cTable +
+            "(id int not null generated always as identity (start with 1, increment by 1), " +
+            (c.info.entrySet().stream().map(e -> e.getKey() + " " + e.getValue().getKey()).collect(Collectors.joining(", "))) +
+            ", constraint primary_key_c primary key (id))");
+          this.statement.execute("grant all privileges on " + cTable + " to " + username);
+        }
 
-      // create 'GROUPS' table
-      if (!OWNER.equals(USERNAME) && !TABLES.contains(gTable)) {
-        this.statement.execute("create table " + gTable +
-          "(id int not null generated always as identity (start with 1, increment by 1), " +
-          "name varchar(40), contactid int" +
-          ", constraint primary_key_g primary key (id))");
-        this.statement.execute("grant all privileges on " + gTable + " to " + username);
-      }
+        // create 'GROUPS' table
+        if (!OWNER.equals(USERNAME) && !TABLES.contains(gTable)) {
+          this.statement.execute("create table " + gTable +
+            "(id int not null generated always as identity (start with 1, increment by 1), " +
+            "name varchar(40), contactid int" +
+            ", constraint primary_key_g primary key (id))");
+          this.statement.execute("grant all privileges on " + gTable + " to " + username);
+          createGroupsIndex(USERNAME);
+        }
 
-      //------------------------------------------------------------------------
-      //
-      //  CREATE 'SECURE' TABLE
-      //
-      //  User needs read/write permissions on SECURE table in order to update
-      //  their password, but they shouldn't be able to edit this table outside
-      //  of that use case. If the user edits the salt or the hash they could
-      //  leave their account in a corrupted state.
-      //
-      //------------------------------------------------------------------------
+        // create 'SMARTGROUPS' table
+        if (!OWNER.equals(USERNAME) && !TABLES.contains(USERNAME + ".SMARTGROUPS"))
+          createSmartGroupsTable(USERNAME, username);
 
-      if (!TABLES.contains(sTable)) {
-        this.statement.execute("create table " + sTable +
-          "(salt varchar(1024) not null, hash varchar(1024) not null)");
+        // create 'CHANGES' table
+        if (!OWNER.equals(USERNAME) && !TABLES.contains(USERNAME + ".CHANGES"))
+          createChangesTable(USERNAME, username);
 
-        // generate salt and hash password
-        Optional<String> optsalt = PasswordUtils.generateSalt(512);
-        if (!optsalt.isPresent()) return false;
-        String salt = optsalt.get();
+        //------------------------------------------------------------------------
+        //
+        //  CREATE 'SECURE' TABLE
+        //
+        //  User needs read/write permissions on SECURE table in order to update
+        //  their password, but they shouldn't be able to edit this table outside
+        //  of that use case. If the user edits the salt or the hash they could
+        //  leave their account in a corrupted state.
+        //
+        //------------------------------------------------------------------------
 
-        Optional<String> opthash = PasswordUtils.hashPassword(password, salt);
-        if (!opthash.isPresent()) return false;
-        String hash = opthash.get();
+        if (!TABLES.contains(sTable)) {
+          this.statement.execute("create table " + sTable +
+            "(salt varchar(1024) not null, hash varchar(1024) not null)");
 
-        // add salt and hash to database
-        this.statement.execute("insert into " + sTable  +
-          "(salt, hash) values ('" + salt + "', '" + hash + "')");
+          // generate salt and hash password
+          Optional<String> optsalt = PasswordUtils.generateSalt(512);
+          if (!optsalt.isPresent()) return false;
+          String salt = optsalt.get();
 
-        // grant user full permissions on SECURE table
-        if (!OWNER.equals(USERNAME)) // DBO already has permissions here
-          this.statement.execute("grant all privileges on " + sTable + " to " + username);
-      }
+          Optional<String> opthash = PasswordUtils.hashPassword(password, salt);
+          if (!opthash.isPresent()) return false;
+          String hash = opthash.get();
 
-      // if we've made it here and no errors have been thrown...
-      // ...we've successfully added a new user to the database!
+          // add salt and hash to database
+          this.statement.execute("insert into " + sTable  +
+            "(salt, hash) values ('" + salt + "', '" + hash + "')");
 
-      IOUtils.printMessage("addUser()", "user \"" + USERNAME + "\" successfully added");
-      return true;
+          // grant user full permissions on SECURE table
+          if (!OWNER.equals(USERNAME)) // DBO already has permissions here
+            this.statement.execute("grant all privileges on " + sTable + " to " + username);
+        }
 
-    // catch SQL errors
-    } catch (SQLException ex) {
+        // so every instance's index of all users' phone numbers finds the user
+        if (!OWNER.equals(USERNAME)) indexOpsUsersChanged();
 
-      int    exi = ex.getErrorCode();
-      String exs = ex.getSQLState();
+        // if we've made it here and no errors have been thrown...
+        // ...we've successfully added a new user to the database!
 
-      // catch common cases
-      if        (exi == 30000 && "42X01".equals(exs)) {
-        IOUtils.printError("addUser()", "username cannot be a reserved SQL word (see: bit.ly/2Abbzxc)");
+        IOUtils.printMessage("addUser()", "user \"" + USERNAME + "\" successfully added");
+        return true;
 
-        // user will exist in database at this point, but tables won't
-        // so make sure we delete that user
+      // catch SQL errors
+      } catch (SQLException ex) {
 
-        try {
-          this.statement.executeUpdate( // delete user
-            "call SYSCS_UTIL.SYSCS_DROP_USER('" + USERNAME + "')");
+        int    exi = ex.getErrorCode();
+        String exs = ex.getSQLState();
 
-        } catch (SQLException e2) {
-          IOUtils.printError("addUser()", "database has become corrupted. Export your information and create a new database.");
-          IOUtils.printSQLException("addUser()", e2);
-        }
+        // catch common cases
+        if        (exi == 30000 && "42X01".equals(exs)) {
+          IOUtils.printError("addUser()", "username cannot be a reserved SQL word (see: bit.ly/2Abbzxc)");
 
-      } else if (exi == 30000 && "28502".equals(exs)) {
-        IOUtils.printError("addUser()", "invalid username \"" + USERNAME + "\"");
+          // the user will exist in the database at this point, but their
+          // tables won't; returning false rolls the transaction back, which
+          // removes the user again
 
-      // unusual case? print error codes:
-      } else IOUtils.printSQLException("addUser()", ex);
-      return false;
-  } }
+        } else if (exi == 30000 && "28502".equals(exs)) {
+          IOUtils.printError("addUser()", "invalid username \"" + USERNAME + "\"");
+
+        // unusual case? print error codes:
+        } else IOUtils.printSQLException("addUser()", ex);
+        return false;
+      }
+    });
+  }
 
   /**
     * Attempts to delete the user with the given {@code username} from the
@@ -1749,6 +4405,10 @@ public final class Database {
     *
     **/
   public boolean deleteUser (String username, String dboPassword) {
+    return timed("deleteUser()", ev -> deleteUser(username, dboPassword, ev));
+  }
+
+  private boolean deleteUser (String username, String dboPassword, Events.Op ev) {
 
     //--------------------------------------------------------------------------
     //  verify that `username` is in the list of users
@@ -1776,30 +4436,43 @@ public final class Database {
     if (!OPTOWNER.isPresent()) return false;
     String OWNER = OPTOWNER.get();
 
-    try { // verify the DBO's password
-      if(!verifyPassword(OWNER, dboPassword)) return false;
+    return inTransaction(tx -> {
+      try { // verify the DBO's password
+        if(!verifyPassword(OWNER, dboPassword)) return false;
 
-      //------------------------------------------------------------------------
-      //  drop user's tables and schema
-      //------------------------------------------------------------------------
+        //------------------------------------------------------------------------
+        //  drop user's tables and schema
+        //------------------------------------------------------------------------
 
-      this.statement.execute("drop table "  + USERNAME + ".GROUPS");
-      this.statement.execute("drop table "  + USERNAME + ".CONTACTS");
-      this.statement.execute("drop table "  + USERNAME + ".SECURE");
-      this.statement.execute("drop schema " + USERNAME + " restrict");
+        // users added before smart groups existed may have no SMARTGROUPS table
+        if (tables().contains(USERNAME + ".SMARTGROUPS"))
+          this.statement.execute("drop table "  + USERNAME + ".SMARTGROUPS");
 
-      this.statement.executeUpdate( // delete user
-        "call SYSCS_UTIL.SYSCS_DROP_USER('" + USERNAME + "')");
+        // ...or CHANGES table
+        if (tables().contains(USERNAME + ".CHANGES"))
+          this.statement.execute("drop table "  + USERNAME + ".CHANGES");
 
-      // if we've made it this far without throwing an error, success!
-      IOUtils.printMessage("deleteUser()", "user \"" + USERNAME + "\" successfully deleted");
-      return true;
+        this.statement.execute("drop table "  + USERNAME + ".GROUPS");
+        this.statement.execute("drop table "  + USERNAME + ".CONTACTS");
+        this.statement.execute("drop table "  + USERNAME + ".SECURE");
+        this.statement.execute("drop schema " + USERNAME + " restrict");
 
-    // catch SQL exceptions
-    } catch (SQLException ex) {
-      IOUtils.printSQLException("deleteUser()", ex);
-      return false;
-    }
+        this.statement.executeUpdate( // delete user
+          "call SYSCS_UTIL.SYSCS_DROP_USER('" + USERNAME + "')");
+
+        // so every instance's index of all users' phone numbers drops the user
+        indexOpsUsersChanged();
+
+        // if we've made it this far without throwing an error, success!
+        IOUtils.printMessage("deleteUser()", "user \"" + USERNAME + "\" successfully deleted");
+        return true;
+
+      // catch SQL exceptions
+      } catch (SQLException ex) {
+        IOUtils.printSQLException("deleteUser()", ex);
+        return false;
+      }
+    });
   }
 
   /**
@@ -1821,6 +4494,10 @@ public final class Database {
     *
     **/
   public boolean changePassword (String oldPassword, String newPassword) {
+    return timed("changePassword()", ev -> changePassword(oldPassword, newPassword, ev));
+  }
+
+  private boolean changePassword (String oldPassword, String newPassword, Events.Op ev) {
 
     // if either argument is null or empty, throw an error
     if (isNullOrWhitespace(oldPassword) || isNullOrWhitespace(newPassword)) {
@@ -1842,35 +4519,38 @@ public final class Database {
     // verify the user's password
     if(!verifyPassword(USER, oldPassword)) return false;
 
-    try {
-      ps_chpwd.setString(1, USER);
-      ps_chpwd.setString(2, newPassword);
+    return inTransaction(tx -> {
+      try {
+        ps_chpwd.setString(1, USER);
+        ps_chpwd.setString(2, newPassword);
 
-      // generate salt and hash password
-      Optional<String> optsalt = PasswordUtils.generateSalt(512);
-      if (!optsalt.isPresent()) return false;
-      String salt = optsalt.get();
+        // generate salt and hash password
+        Optional<String> optsalt = PasswordUtils.generateSalt(512);
+        if (!optsalt.isPresent()) return false;
+        String salt = optsalt.get();
 
-      Optional<String> opthash = PasswordUtils.hashPassword(newPassword, salt);
-      if (!opthash.isPresent()) return false;
-      String hash = opthash.get();
+        Optional<String> opthash = PasswordUtils.hashPassword(newPassword, salt);
+        if (!opthash.isPresent()) return false;
+        String hash = opthash.get();
 
-      // update salt and hash in database
-      this.statement.execute("update " + USER + ".SECURE set hash = '" +
-        hash + "', salt = '" + salt + "'");
+        // update salt and hash in database
+        this.statement.execute("update " + USER + ".SECURE set hash = '" +
+          hash + "', salt = '" + salt + "'");
 
-      // don't update password until hash and salt are updated
-      ps_chpwd.execute();
+        // don't update password until hash and salt are updated
+        ps_chpwd.execute();
 
-      // inform the user that the password has been successfully changed
-      IOUtils.printMessage("changePassword()", "password successfully changed");
-      return true;
+        // inform the user that the password has been successfully changed
+        IOUtils.printMessage("changePassword()", "password successfully changed");
+        return true;
 
-    // catch SQL errors
-    } catch (SQLException ex) {
-      IOUtils.printSQLException("changePassword()", ex);
-      return false;
-  } }
+      // catch SQL errors
+      } catch (SQLException ex) {
+        IOUtils.printSQLException("changePassword()", ex);
+        return false;
+      }
+    });
+  }
 
   /**
     * Sets the password of the user with the given {@code username} to
@@ -1901,6 +4581,10 @@ public final class Database {
     *
     **/
   public boolean resetPassword (String username, String newPassword, String dboPassword) {
+    return timed("resetPassword()", ev -> resetPassword(username, newPassword, dboPassword, ev));
+  }
+
+  private boolean resetPassword (String username, String newPassword, String dboPassword, Events.Op ev) {
 
     // if any argument is null or empty, throw an error
     if (isNullOrWhitespace(username) || isNullOrWhitespace(newPassword)) {
@@ -1944,38 +4628,40 @@ public final class Database {
     if (!OPTOWNER.isPresent()) return false;
     String OWNER = OPTOWNER.get();
 
-    try { // verify the DBO's password
-      if(!verifyPassword(OWNER, dboPassword)) return false;
+    return inTransaction(tx -> {
+      try { // verify the DBO's password
+        if(!verifyPassword(OWNER, dboPassword)) return false;
 
-      ps_chpwd.setString(1, USERNAME);
-      ps_chpwd.setString(2, newPassword);
+        ps_chpwd.setString(1, USERNAME);
+        ps_chpwd.setString(2, newPassword);
 
-      // generate salt and hash password
-      Optional<String> optsalt = PasswordUtils.generateSalt(512);
-      if (!optsalt.isPresent()) return false;
-      String salt = optsalt.get();
+        // generate salt and hash password
+        Optional<String> optsalt = PasswordUtils.generateSalt(512);
+        if (!optsalt.isPresent()) return false;
+        String salt = optsalt.get();
 
-      Optional<String> opthash = PasswordUtils.hashPassword(newPassword, salt);
-      if (!opthash.isPresent()) return false;
-      String hash = opthash.get();
+        Optional<String> opthash = PasswordUtils.hashPassword(newPassword, salt);
+        if (!opthash.isPresent()) return false;
+        String hash = opthash.get();
 
-      // update salt and hash in database
-      this.statement.execute("update " + USERNAME + ".SECURE set hash = '" +
-        hash + "', salt = '" + salt + "'");
+        // update salt and hash in database
+        this.statement.execute("update " + USERNAME + ".SECURE set hash = '" +
+          hash + "', salt = '" + salt + "'");
 
-      // don't update password until hash and salt are updated
-      ps_chpwd.execute();
+        // don't update password until hash and salt are updated
+        ps_chpwd.execute();
 
-      // inform the user that the password has been successfully changed
-      IOUtils.printMessage("resetPassword()", "password successfully reset " +
-        "for user \"" + USERNAME + "\"");
-      return true;
+        // inform the user that the password has been successfully changed
+        IOUtils.printMessage("resetPassword()", "password successfully reset " +
+          "for user \"" + USERNAME + "\"");
+        return true;
 
-    // catch SQL errors
-    } catch (SQLException ex) {
-      IOUtils.printSQLException("resetPassword()", ex);
-      return false;
-    }
+      // catch SQL errors
+      } catch (SQLException ex) {
+        IOUtils.printSQLException("resetPassword()", ex);
+        return false;
+      }
+    });
   }
 
   /**
@@ -1996,18 +4682,26 @@ public final class Database {
     **/
   protected boolean verifyPassword (String username, String password) {
 
-    // verify that `username` is in the list of users
-    Optional<List<String>> OPTUSERS = users();
-    if (!OPTUSERS.isPresent()) return false;
-    List<String> USERS = OPTUSERS.get();
-
     // capitalise username
     String USERNAME = username.toUpperCase();
 
-    // check that USERNAME exists in the list of USERS
-    if (!USERS.contains(USERNAME)) {
-      IOUtils.printError("verifyPassword()", "user \"" + USERNAME + "\" doesn't exist");
-      return false;
+    // users other than the DBO can't list the users, but can only be
+    // verifying their own password, so they certainly exist
+    Optional<String> OPTUSER = user();
+    if (!OPTUSER.isPresent()) return false;
+
+    if (!OPTUSER.get().equals(USERNAME)) {
+
+      // verify that `username` is in the list of users
+      Optional<List<String>> OPTUSERS = users();
+      if (!OPTUSERS.isPresent()) return false;
+      List<String> USERS = OPTUSERS.get();
+
+      // check that USERNAME exists in the list of USERS
+      if (!USERS.contains(USERNAME)) {
+        IOUtils.printError("verifyPassword()", "user \"" + USERNAME + "\" doesn't exist");
+        return false;
+      }
     }
 
     try { // get the salt and hash from the user's SECURE table
@@ -2036,7 +4730,7 @@ public final class Database {
 
   ///---------------------------------------------------------------------------
   ///
-  ///  GET LIST OF TABLES, PRINT A TABLE, RETURN A TABLE AS List<List<String>>
+  ///  GET LIST OF TABLES, PRINT A TABLE, RETURN A TABLE, COUNT FACETS
   ///
   ///---------------------------------------------------------------------------
 
@@ -2055,6 +4749,10 @@ public final class Database {
     *
     **/
   public List<String> tables() {
+    return timed("tables()", ev -> tables(ev));
+  }
+
+  private List<String> tables(Events.Op ev) {
 
     // list of tables to return
     List<String> TABLES = new ArrayList<>();
@@ -2089,6 +4787,7 @@ public final class Database {
     }
 
     // return table names
+    ev.rows(TABLES.size());
     return TABLES;
   }
 
@@ -2159,14 +4858,41 @@ public final class Database {
     *
     **/
   public List<List<String>> table (String tableName) {
-
-    // return value
     List<List<String>> retval = new ArrayList<>();
+    if (!table(tableName, retval::add)) {
+      if (isNullOrWhitespace(tableName)) return null;
+      retval.clear(); // clear the half-initialised list
+    }
+    return retval;
+  }
+
+  /**
+    * Streams the specified table, row by row, to {@code rows}, provided the
+    * current user has permission to view that table.
+    *
+    * <p>Rows are passed as {@link table(String) table()} would return them,
+    * starting with a row of column names, but they're read through a
+    * forward-only cursor and never collected, so a caller which keeps them in
+    * a more compact form (like {@link ColumnarTable}) needn't hold the whole
+    * table as {@link String} lists.</p>
+    *
+    * @param tableName name of the table of interest
+    * @param rows receives the column names, and then each row of the table
+    *
+    * @return {@code true} if and only if the whole table was read (if not,
+    * some rows may have been passed to {@code rows} already)
+    *
+    **/
+  public boolean table (String tableName, Consumer<List<String>> rows) {
+    return timed("table()", ev -> table(tableName, rows, ev));
+  }
+
+  private boolean table (String tableName, Consumer<List<String>> rows, Events.Op ev) {
 
     // if tableName is null, empty, or all whitespace, throw error
     if (tableName == null || "".equals(tableName.trim())) {
       IOUtils.printError("table()", "tableName cannot be null, empty, or all whitespace");
-      return null;
+      return false;
     }
 
     // move table name to all-uppercase
@@ -2178,49 +4904,321 @@ public final class Database {
 
     if (!tables().contains(TABLE)) {
       IOUtils.printError("table()", "table \"" + TABLE + "\" cannot be found");
-      return retval;
+      return false;
     }
 
-    try {
-      resultSet = this.statement.executeQuery("select * from " + TABLE);
-      rsmd = resultSet.getMetaData();
-      int numberOfColumns = rsmd.getColumnCount();
-      int rowCount = 0;
+    try (Statement st = this.connection.createStatement(
+           ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      st.setFetchSize(1024);
 
-      // add column label row to table
-      retval.add(new ArrayList<String>());
+      try (ResultSet rs = st.executeQuery("select * from " + TABLE)) {
+        ResultSetMetaData md = rs.getMetaData();
+        int numberOfColumns = md.getColumnCount();
+        int rowCount = 0;
 
-      // get current row
-      List<String> row = retval.get(rowCount);
+        // add column names to 0th row of table
+        String[] row = new String[numberOfColumns];
+        for (int cc = 1; cc <= numberOfColumns; ++cc)
+          row[cc-1] = md.getColumnName(cc);
+        rows.accept(Arrays.asList(row));
 
-      // add column names to 0th row of table
-      for (int cc = 1; cc <= numberOfColumns; ++cc)
-        row.add(rsmd.getColumnName(cc));
+        while (rs.next()) {
 
-      while (resultSet.next()) {
+          // increment the row count
+          ++rowCount;
 
-        // increment the row count
-        ++rowCount;
+          // loop over columns and add to this row
+          row = new String[numberOfColumns];
+          for (int ii = 1; ii <= numberOfColumns; ++ii)
+            row[ii-1] = rs.getString(ii);
+          rows.accept(Arrays.asList(row));
+        }
+
+        ev.rows(rowCount).columns(numberOfColumns);
+        return true;
+      }
+
+    // catch SQL errors
+    } catch (SQLException ex) {
+      IOUtils.printSQLException("table()", ex);
+      return false;
+  } }
+
+  /**
+    * Returns the current user's {@code CONTACTS} table, as
+    * {@link table table()} would, with an extra {@code GROUPS} column listing
+    * the names of the groups each contact belongs to (alphabetically, and
+    * separated by {@code ", "}).
+    *
+    * <p>Contacts and their group memberships are read with a single joined
+    * query, streamed through a forward-only {@link ContactCursor}, which
+    * gathers each contact's groups as it goes. So, unlike reading the
+    * {@code CONTACTS} and {@code GROUPS} tables separately, or looking up each
+    * contact's groups in turn, each table is scanned only once.</p>
+    *
+    * <pre>{@code
+    * jshell> db.contactsWithGroups()
+    * $27 ==> [[ID, FIRSTNAME, SURNAME, PHONE, GROUPS], [1, Ann, Murphy, +441234567, FAMILY, WORK], [2, Bob, Murray, null, ]]
+    * }</pre>
+    *
+    * @return the current user's contacts and their groups, with a row of
+    * column names first, or an empty {@link List} if there was a problem
+    *
+    **/
+  public List<List<String>> contactsWithGroups() {
+    List<List<String>> retval = new ArrayList<>();
+    if (!contactsWithGroups(retval::add)) retval.clear(); // clear the half-initialised list
+    return retval;
+  }
+
+  /**
+    * Streams the current user's contacts, with their groups, to {@code rows},
+    * as {@link table(String, Consumer) table()} streams a table; the rows are
+    * those returned by {@link contactsWithGroups() contactsWithGroups()}.
+    *
+    * @param rows receives the column names, and then each contact
+    *
+    * @return {@code true} if and only if every contact was read
+    *
+    **/
+  public boolean contactsWithGroups (Consumer<List<String>> rows) {
+    return timed("contactsWithGroups()", ev -> contactsWithGroups(rows, ev));
+  }
 
-        // add a new row to retval
-        retval.add(new ArrayList<String>());
+  private boolean contactsWithGroups (Consumer<List<String>> rows, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "contactsWithGroups()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return false;
 
-        // get current row
-        row = retval.get(rowCount);
+    // add column label row to table
+    rows.accept(Arrays.asList("ID", "FIRSTNAME", "SURNAME", "PHONE", "GROUPS"));
+    int rowCount = 0;
 
-        // loop over columns and add to this row
-        for (int ii = 1; ii <= numberOfColumns; ++ii)
-          row.add(resultSet.getString(ii));
+    try (ContactCursor cc = new ContactCursor(this.connection, USER)) {
+      while (cc.next()) {
+        rows.accept(Arrays.asList(String.valueOf(cc.id()), cc.firstname(),
+          cc.surname(), cc.phone(), String.join(", ", cc.groups())));
+        ++rowCount;
       }
 
-      return retval;
+      ev.rows(rowCount).columns(5);
+      return true;
 
     // catch SQL errors
     } catch (SQLException ex) {
-      IOUtils.printSQLException("table()", ex);
-      retval.clear(); // clear the half-initialised list
-      return retval;
-  } }
+      IOUtils.printSQLException(opName, ex);
+      return false;
+    }
+  }
+
+  /**
+    * Returns the (at most) {@code count} most common values of a column of
+    * the specified table, with the number of rows having each one, provided
+    * the current user has permission to view that table.
+    *
+    * <p>These are the <em>facets</em> offered by the GUI's column filters.
+    * They're counted by the database, with a single {@code GROUP BY} query, so
+    * only the most common values are ever sent to the GUI, rather than every
+    * row. Values are most common first (and in ascending order among equally
+    * common values); {@code null} counts the rows with no value.</p>
+    *
+    * <p>As phone numbers are almost all distinct, a {@code PHONE} column is
+    * grouped by the numbers' country calling codes (e.g. {@code "+353"}), with
+    * {@code null} for numbers without one.</p>
+    *
+    * <pre>{@code
+    * jshell> db.facets("jeff.contacts", "surname", 3)
+    * $28 ==> Optional[{Murphy=41, Kelly=37, O'Brien=30}]
+    *
+    * jshell> db.facets("jeff.contacts", "phone", 3)
+    * $29 ==> Optional[{+353=912, +44=80, null=8}]
+    * }</pre>
+    *
+    * @param tableName name of the table of interest
+    * @param column name of the column whose values are counted
+    * @param count largest number of values to return
+    *
+    * @return the most common values, mapped to their numbers of rows, in
+    * order, wrapped in an {@link Optional}, or an {@link Optional#empty empty
+    * Optional} if there was a problem
+    *
+    **/
+  public Optional<Map<String, Integer>> facets (String tableName, String column, int count) {
+    return timed("facets()", ev -> facets(tableName, column, count, ev));
+  }
+
+  private Optional<Map<String, Integer>> facets (String tableName, String column, int count, Events.Op ev) {
+
+    String opName = "facets()";
+
+    if (isNullOrWhitespace(tableName) || isNullOrWhitespace(column) || count < 1) {
+      IOUtils.printError(opName, "table and column names cannot be null, empty, or all whitespace, and count must be at least 1");
+      return Optional.empty();
+    }
+
+    // as with table(), table names are checked against the available
+    // tables, and column names are checked for anything but letters
+    String TABLE  = tableName.toUpperCase();
+    String COLUMN = column.toUpperCase();
+
+    if (!tables().contains(TABLE)) {
+      IOUtils.printError(opName, "table \"" + TABLE + "\" cannot be found");
+      return Optional.empty();
+    }
+
+    if (!COLUMN.matches("[A-Z_]+")) {
+      IOUtils.printError(opName, "column names can only contain letters and underscores");
+      return Optional.empty();
+    }
+
+    String value = COLUMN.equals("PHONE") ? PhoneIndex.countryCodeSQL(COLUMN) : COLUMN;
+    String query = "select v, count(*) from (select " + value + " as v from " + TABLE +
+      ") t group by v order by 2 desc, 1 fetch first " + count + " rows only";
+
+    try (Statement st = this.connection.createStatement();
+         ResultSet rs = st.executeQuery(query)) {
+
+      Map<String, Integer> facets = new LinkedHashMap<>();
+      while (rs.next()) facets.put(rs.getString(1), rs.getInt(2));
+
+      ev.rows(facets.size());
+      return Optional.of(facets);
+
+    // catch SQL errors
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+      return Optional.empty();
+    }
+  }
+
+  ///---------------------------------------------------------------------------
+  ///
+  ///  EXPORT CONTACTS (AND GROUP MEMBERSHIPS) TO CSV, vCARD, JSON
+  ///
+  ///---------------------------------------------------------------------------
+
+  /**
+    * Exports the current user's contacts, along with the names of the groups
+    * each contact belongs to, to the file {@code fileName}.
+    *
+    * <p>Contacts are streamed from the database through a forward-only cursor
+    * and written through a buffered {@link java.nio.channels.FileChannel}, so
+    * this method runs in constant memory, regardless of the number of
+    * contacts. If {@code gzip} is {@code true}, the file is gzip-compressed
+    * (and, by convention, {@code fileName} should end in {@code .gz}).</p>
+    *
+    * <p>Returns {@link Optional#empty an empty Optional} if the current user
+    * is the DBO (who has no contacts; see
+    * {@link exportAllContacts exportAllContacts()}), or if there was a problem
+    * reading from the database or writing to the file.</p>
+    *
+    * @param fileName path of the file to create (or overwrite)
+    * @param format format of the exported file
+    * @param gzip if {@code true}, compress the exported file with gzip
+    *
+    * @return the number of contacts exported, wrapped in an {@link Optional},
+    * or an {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public Optional<Integer> exportContacts (String fileName, Exporter.Format format, boolean gzip) {
+    return timed("exportContacts()", ev -> exportContacts(fileName, format, gzip, ev));
+  }
+
+  private Optional<Integer> exportContacts (String fileName, Exporter.Format format, boolean gzip, Events.Op ev) {
+
+    // run some initial validation
+    String opName = "exportContacts()";
+    String USER = contactOpsInit(opName);
+    if (USER == null) return Optional.empty();
+
+    List<String> USERS = new ArrayList<>();
+    USERS.add(USER);
+
+    Optional<Integer> count = exportOpsHelper(opName, USERS, fileName, format, gzip, false);
+    ev.rows(count.orElse(0));
+    return count;
+  }
+
+  /**
+    * Exports every user's contacts, along with the names of the groups each
+    * contact belongs to, to the file {@code fileName}. Each exported record
+    * includes the name of the user who owns that contact.
+    *
+    * <p>This method can only be run by the database owner (DBO). Like
+    * {@link exportContacts exportContacts()}, it runs in constant memory.</p>
+    *
+    * @param fileName path of the file to create (or overwrite)
+    * @param format format of the exported file
+    * @param gzip if {@code true}, compress the exported file with gzip
+    *
+    * @return the number of contacts exported, wrapped in an {@link Optional},
+    * or an {@link Optional#empty empty Optional} if there was a problem
+    *
+    **/
+  public Optional<Integer> exportAllContacts (String fileName, Exporter.Format format, boolean gzip) {
+    return timed("exportAllContacts()", ev -> exportAllContacts(fileName, format, gzip, ev));
+  }
+
+  private Optional<Integer> exportAllContacts (String fileName, Exporter.Format format, boolean gzip, Events.Op ev) {
+
+    String opName = "exportAllContacts()";
+
+    // if current user is not DBO, they can't use this method
+    if (!userIsDBO()) {
+      IOUtils.printError(opName, "only database owner can export all users' contacts");
+      return Optional.empty();
+    }
+
+    Optional<String> OPTOWNER = owner();
+    if (!OPTOWNER.isPresent()) return Optional.empty();
+    String OWNER = OPTOWNER.get();
+
+    Optional<List<String>> OPTUSERS = users();
+    if (!OPTUSERS.isPresent()) return Optional.empty();
+
+    // the DBO has no CONTACTS or GROUPS tables
+    List<String> USERS = OPTUSERS.get().stream()
+      .filter(u -> !u.equals(OWNER)).sorted().collect(Collectors.toList());
+
+    Optional<Integer> count = exportOpsHelper(opName, USERS, fileName, format, gzip, true);
+    ev.rows(count.orElse(0));
+    return count;
+  }
+
+  // stream the contacts of each user in USERS to a single file
+  private Optional<Integer> exportOpsHelper (String opName, List<String> USERS,
+    String fileName, Exporter.Format format, boolean gzip, boolean withUser) {
+
+    if (isNullOrWhitespace(fileName) || format == null) {
+      IOUtils.printError(opName, "file name and format cannot be null, empty, or all whitespace");
+      return Optional.empty();
+    }
+
+    long start = System.nanoTime();
+    int count = 0;
+
+    try (Exporter exporter = new Exporter(Paths.get(fileName), format, gzip, withUser)) {
+
+      for (String USER : USERS)
+        try (ContactCursor cc = new ContactCursor(this.connection, USER)) {
+          while (cc.next()) { exporter.write(cc); ++count; }
+        }
+
+    } catch (SQLException ex) {
+      IOUtils.printSQLException(opName, ex);
+      return Optional.empty();
+
+    } catch (IOException ex) {
+      IOUtils.printError(opName, "could not write to file \"" + fileName + "\": " + ex.getMessage());
+      return Optional.empty();
+    }
+
+    long ms = (System.nanoTime() - start) / 1000000;
+    IOUtils.printMessage(opName, "exported " + count + " contacts in " + ms + " ms");
+    return Optional.of(count);
+  }
 
   ///---------------------------------------------------------------------------
   ///
@@ -0,0 +1,262 @@
+package watson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+  * Finds clusters of contacts which are probably the same person.
+  *
+  * <p>Rather than comparing every pair of contacts ({@code O(n^2)}), each
+  * contact is put into (at most) two <em>blocks</em>: one for the last
+  * {@value PhoneIndex#MIN_DIGITS} digits of its phone number, and one for the
+  * {@link Phonetic#metaphone Metaphone} key of its surname plus the first
+  * sound of its first name. Only contacts sharing a block are compared, so
+  * the work done is proportional to the sum of the squares of the block
+  * sizes, which for real contact lists is close to linear. Blocks larger than
+  * {@value MAX_BLOCK} contacts (e.g. a very common name) are sorted, and
+  * each contact is only compared with the {@value WINDOW} which follow it.</p>
+  *
+  * <p>Two contacts are duplicates if none of their fields conflict -- phone
+  * numbers match (as for {@link PhoneIndex#lookup caller ID}) and names are
+  * {@link Phonetic#soundsLike similar}, wherever both contacts have the field
+  * -- and they share either a phone number or both names. Duplicates of
+  * duplicates are duplicates too, so clusters are grown from the matches
+  * with a union-find structure, but two clusters are only joined if none of
+  * their members conflict: a contact with a surname and number alone doesn't
+  * join "John" and "Mary" with that surname and number into one cluster.</p>
+  *
+  **/
+final class DuplicateDetector {
+
+  // blocks larger than this are compared within a sliding window
+  static final int MAX_BLOCK = 256;
+
+  // size of that window
+  static final int WINDOW = 32;
+
+  // positions of the fields in the values passed to add()
+  private final int firstname, surname, phone;
+
+  // the contacts added so far, in order: IDs, name words, phone keys
+  private int[] IDs = new int[1024];
+  private List<String[]> firstnames = new ArrayList<>();
+  private List<String[]> surnames = new ArrayList<>();
+  private long[] phones = new long[1024];
+  private int size = 0;
+
+  // blocking key -> positions of the contacts in the block
+  private final Map<String, List<Integer>> blocks = new HashMap<>();
+
+  // union-find parent of each position, and the members of each root's set
+  private int[] parent;
+  private Map<Integer, List<Integer>> members;
+
+  private long comparisons = 0;
+
+  /**
+    * Creates an empty {@link DuplicateDetector}.
+    *
+    * @param firstname position of the first name in the values passed to {@link add add()}
+    * @param surname position of the surname
+    * @param phone position of the phone number
+    *
+    **/
+  DuplicateDetector (int firstname, int surname, int phone) {
+    this.firstname = firstname;
+    this.surname = surname;
+    this.phone = phone;
+  }
+
+  /**
+    * Adds the given contact to those to be checked for duplicates.
+    *
+    * @param ID ID of the contact
+    * @param values the contact's field values (see {@link ContactIndex})
+    *
+    **/
+  void add (int ID, String[] values) {
+    String[] first = words(values[firstname]);
+    String[] last  = words(values[surname]);
+    long key = PhoneIndex.key(values[phone]);
+
+    // a contact with no names or number can't be matched with anything
+    if (first.length == 0 && last.length == 0 && key < 0) return;
+
+    if (size == IDs.length) {
+      IDs = Arrays.copyOf(IDs, size * 2);
+      phones = Arrays.copyOf(phones, size * 2);
+    }
+    IDs[size] = ID;
+    firstnames.add(first);
+    surnames.add(last);
+    phones[size] = key;
+
+    if (key >= 0)
+      block("P" + key % 10_000_000L, size);
+
+    if (last.length > 0) {
+      StringBuilder sb = new StringBuilder("N");
+      for (String word : last) sb.append(Phonetic.metaphone(word)).append(' ');
+      if (first.length > 0) sb.append(Phonetic.metaphone(first[0]).charAt(0));
+      block(sb.toString(), size);
+    }
+
+    ++size;
+  }
+
+  private void block (String key, int position) {
+    blocks.computeIfAbsent(key, k -> new ArrayList<>(2)).add(position);
+  }
+
+  // the words of a name, or none if it's null
+  private static String[] words (String name) {
+    if (name == null) return new String[0];
+    List<String> words = Phonetic.tokens(name);
+
+    // Metaphone can drop every letter of a word (e.g. "Wy"), which would
+    // leave nothing to block on
+    words.removeIf(w -> Phonetic.metaphone(w).isEmpty());
+    return words.toArray(new String[0]);
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  CLUSTERING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns the clusters of duplicate contacts among those added: each
+    * cluster has at least two IDs, in ascending order, and clusters are
+    * ordered by their first (lowest) IDs.
+    *
+    * @return the clusters of duplicates
+    *
+    **/
+  List<int[]> clusters() {
+    parent = new int[size];
+    for (int ii = 0; ii < size; ++ii) parent[ii] = ii;
+    members = new HashMap<>();
+    comparisons = 0;
+
+    for (List<Integer> block : blocks.values()) {
+      int n = block.size();
+      if (n < 2) continue;
+
+      // every pair in a small block; neighbours in (sorted) large ones
+      int window = n;
+      if (n > MAX_BLOCK) {
+        block.sort(Comparator.comparing((Integer p) -> String.join(" ", firstnames.get(p)))
+          .thenComparingLong(p -> phones[p]));
+        window = WINDOW;
+      }
+
+      for (int ii = 0; ii < n; ++ii)
+        for (int jj = ii + 1; jj < n && jj <= ii + window; ++jj) {
+          int a = block.get(ii), b = block.get(jj);
+          if (find(a) == find(b)) continue;
+          ++comparisons;
+          if (matches(a, b)) union(find(a), find(b));
+        }
+    }
+
+    // gather the members of each set, in ascending order of ID
+    Map<Integer, List<Integer>> sets = new HashMap<>();
+    for (int ii = 0; ii < size; ++ii)
+      sets.computeIfAbsent(find(ii), r -> new ArrayList<>(2)).add(IDs[ii]);
+
+    List<int[]> clusters = new ArrayList<>();
+    for (List<Integer> set : sets.values()) {
+      if (set.size() < 2) continue;
+      int[] cluster = set.stream().mapToInt(Integer::intValue).sorted().toArray();
+      clusters.add(cluster);
+    }
+
+    clusters.sort(Comparator.comparingInt(c -> c[0]));
+    return clusters;
+  }
+
+  /**
+    * Returns the number of pairs of contacts compared by the last call to
+    * {@link clusters clusters()}.
+    *
+    * @return the number of comparisons made
+    *
+    **/
+  long comparisons() {
+    return comparisons;
+  }
+
+  // the root of position p's set (with path halving)
+  private int find (int p) {
+    while (parent[p] != p) p = parent[p] = parent[parent[p]];
+    return p;
+  }
+
+  // join the sets with roots a and b, unless any of their members conflict
+  private void union (int a, int b) {
+    List<Integer> ma = members.computeIfAbsent(a, r -> new ArrayList<>(Arrays.asList(r)));
+    List<Integer> mb = members.computeIfAbsent(b, r -> new ArrayList<>(Arrays.asList(r)));
+
+    for (int pa : ma) for (int pb : mb) if (conflict(pa, pb)) return;
+
+    if (ma.size() < mb.size()) { int t = a; a = b; b = t; List<Integer> tm = ma; ma = mb; mb = tm; }
+    parent[b] = a;
+    ma.addAll(mb);
+    members.remove(b);
+  }
+
+  // do any of the known fields of the contacts at positions a and b differ?
+  private boolean conflict (int a, int b) {
+    return compare(phones[a], phones[b]) < 0
+        || compare(firstnames.get(a), firstnames.get(b)) < 0
+        || compare(surnames.get(a), surnames.get(b)) < 0;
+  }
+
+  // are the contacts at positions a and b duplicates?
+  private boolean matches (int a, int b) {
+    int number = compare(phones[a], phones[b]);
+    int first  = compare(firstnames.get(a), firstnames.get(b));
+    int last   = compare(surnames.get(a), surnames.get(b));
+
+    if (number < 0 || first < 0 || last < 0) return false;
+    return number > 0 || (first > 0 && last > 0);
+  }
+
+  // 1 if both numbers are known and match, -1 if both are known and don't,
+  // and 0 if either is unknown
+  private static int compare (long a, long b) {
+    if (a < 0 || b < 0) return 0;
+    if (a == b) return 1;
+
+    long longer = Math.max(a, b), shorter = Math.min(a, b);
+    int digits = Long.toString(shorter).length();
+    if (digits < PhoneIndex.MIN_DIGITS) return -1;
+
+    long mod = 1;
+    for (int ii = 0; ii < digits; ++ii) mod *= 10;
+    return longer % mod == shorter ? 1 : -1;
+  }
+
+  // 1 if both names are known and either's words are all similar to some of
+  // the other's, -1 if both are known and they're not, and 0 otherwise
+  private static int compare (String[] a, String[] b) {
+    if (a.length == 0 || b.length == 0) return 0;
+    return covers(a, b) || covers(b, a) ? 1 : -1;
+  }
+
+  // is every word of `b` similar to some word of `a`?
+  private static boolean covers (String[] a, String[] b) {
+    for (String wb : b) {
+      boolean found = false;
+      for (String wa : a) if (Phonetic.similar(wa, wb) >= 0) { found = true; break; }
+      if (!found) return false;
+    }
+    return true;
+  }
+
+}
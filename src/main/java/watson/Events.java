@@ -0,0 +1,145 @@
+package watson;
+
+/**
+  * Java Flight Recorder events for database operations, password hashing,
+  * and UI table loads.
+  *
+  * <p>The events themselves ({@code watson.DatabaseOperation},
+  * {@code watson.PasswordHash}, and {@code watson.TableLoad}) are defined in
+  * {@link JfrEvents}, which is only loaded if the running JVM provides the
+  * {@code jdk.jfr} API (JDK 8u262 and later). On any other JVM, every method
+  * here returns a shared no-op {@link Op}.</p>
+  *
+  * <p>Events are only allocated while a recording has them enabled, and are
+  * recorded without stack traces, so they can be left on permanently. Record
+  * them with, for instance:</p>
+  *
+  * <pre>{@code
+  * $ java -XX:StartFlightRecording=filename=watson.jfr,settings=profile -jar ...
+  * $ jfr print --events watson.DatabaseOperation watson.jfr
+  * }</pre>
+  *
+  * <p>Usage, for a timed operation:</p>
+  *
+  * <pre>{@code
+  * try (Events.Op ev = Events.database("addToGroup()", userName)) {
+  *   ev.rows(IDs.length);
+  *   ...
+  * }
+  * }</pre>
+  *
+  * <p>({@link Database} methods are timed by its {@code timed()} helper,
+  * which wraps them like this.)</p>
+  *
+  **/
+final class Events {
+
+  // private constructor for utility class
+  private Events() { }
+
+  /**
+    * A single timed event. The event's duration runs from its creation until
+    * {@link close close()}.
+    *
+    **/
+  interface Op extends AutoCloseable {
+
+    /** Sets the number of rows read or written by this operation. **/
+    Op rows (long rows);
+
+    /** Sets the number of columns (for table loads). **/
+    Op columns (int columns);
+
+    /** Ends the timed operation and commits the event. **/
+    @Override
+    void close();
+  }
+
+  /** Creates the events; implemented by {@link JfrEvents}. **/
+  interface Factory {
+    Op database (String operation, String user);
+    Op hash (String algorithm, int iterations, int keyLength);
+    Op table (String source, String name);
+    void failed();
+  }
+
+  // shared, does-nothing Op for when JFR is unavailable or events are disabled
+  static final Op NOOP = new Op() {
+    @Override public Op rows (long rows) { return this; }
+    @Override public Op columns (int columns) { return this; }
+    @Override public void close() { }
+  };
+
+  private static final Factory FACTORY = load();
+
+  // JfrEvents can only be loaded if the jdk.jfr API exists
+  private static Factory load() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return (Factory) Class.forName("watson.JfrEvents").getDeclaredConstructor().newInstance();
+    } catch (Throwable t) {
+      return null;
+    }
+  }
+
+  /**
+    * Returns {@code true} if JFR events can be emitted by this JVM.
+    *
+    * @return {@code true} if and only if the {@code jdk.jfr} API is available
+    *
+    **/
+  static boolean available() {
+    return FACTORY != null;
+  }
+
+  /**
+    * Starts a {@code watson.DatabaseOperation} event.
+    *
+    * @param operation name of the operation, e.g. {@code "addToGroup()"}
+    * @param user user performing the operation
+    *
+    * @return the started event
+    *
+    **/
+  static Op database (String operation, String user) {
+    return FACTORY == null ? NOOP : FACTORY.database(operation, user);
+  }
+
+  /**
+    * Starts a {@code watson.PasswordHash} event.
+    *
+    * @param algorithm hashing algorithm
+    * @param iterations number of iterations of the hashing algorithm
+    * @param keyLength length of the generated key, in bits
+    *
+    * @return the started event
+    *
+    **/
+  static Op hash (String algorithm, int iterations, int keyLength) {
+    return FACTORY == null ? NOOP : FACTORY.hash(algorithm, iterations, keyLength);
+  }
+
+  /**
+    * Starts a {@code watson.TableLoad} event.
+    *
+    * @param source UI method doing the loading, e.g. {@code "displayTable()"}
+    * @param name name of the table or FXML page being loaded
+    *
+    * @return the started event
+    *
+    **/
+  static Op table (String source, String name) {
+    return FACTORY == null ? NOOP : FACTORY.table(source, name);
+  }
+
+  /**
+    * Marks the {@code watson.DatabaseOperation} in progress on this thread (if
+    * any) as failed. Called whenever an error is logged through
+    * {@link IOUtils}.
+    *
+    **/
+  static void failed() {
+    if (FACTORY != null) FACTORY.failed();
+  }
+
+}
@@ -0,0 +1,290 @@
+package watson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+  * Streaming writer for exporting contacts (and their group memberships) to
+  * CSV, vCard, or JSON files.
+  *
+  * <p>Exports are created with
+  * {@link Database#exportContacts Database.exportContacts()} (for the current
+  * user) or {@link Database#exportAllContacts Database.exportAllContacts()}
+  * (for the database owner, who can export every user's contacts at once):</p>
+  *
+  * <pre>{@code
+  * jshell> db.exportContacts("jeff.csv", Exporter.Format.CSV, false)
+  *        MESSAGE | exportContacts() : exported 6 contacts in 41 ms
+  * $3 ==> Optional[6]
+  *
+  * jshell> db.exportContacts("jeff.vcf.gz", Exporter.Format.VCARD, true)
+  *        MESSAGE | exportContacts() : exported 6 contacts in 12 ms
+  * $4 ==> Optional[6]
+  * }</pre>
+  *
+  * <p>Contacts are read one at a time through a forward-only cursor and are
+  * encoded straight into a fixed-size {@link ByteBuffer}, which is drained to a
+  * {@link FileChannel} (optionally through a gzip stream) whenever it fills.
+  * Memory use is therefore independent of the number of contacts exported.</p>
+  *
+  **/
+public final class Exporter implements AutoCloseable {
+
+  /** File formats supported by the {@link Exporter}. **/
+  public enum Format {
+
+    /** Comma-separated values (RFC 4180), groups separated by semicolons. **/
+    CSV,
+
+    /** vCard 3.0 (RFC 2426), groups exported as {@code CATEGORIES}. **/
+    VCARD,
+
+    /** A single JSON array with one object per contact. **/
+    JSON
+  }
+
+  // size of the encoding buffer; also used as the gzip stream's buffer size
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Format  format;
+  private final boolean withUser;
+
+  private final FileChannel         file;
+  private final OutputStream        gzip;
+  private final WritableByteChannel out;
+
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+  private final ByteBuffer     buffer  = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+  // for JSON: has at least one contact been written (do we need a comma)?
+  private boolean first = true;
+
+  // scratch space for building a single record; reused between records
+  private final StringBuilder sb = new StringBuilder(256);
+
+  /**
+    * Opens (creating or truncating) the file at {@code path} and writes the
+    * header for the given {@code format}.
+    *
+    * @param path file to write to
+    * @param format format of the exported file
+    * @param gzip if {@code true}, the file is gzip-compressed
+    * @param withUser if {@code true}, each record includes the owning user's
+    * name (used for the database owner's all-users export)
+    *
+    * @throws IOException if the file cannot be opened or written to
+    *
+    **/
+  Exporter (Path path, Format format, boolean gzip, boolean withUser) throws IOException {
+    this.format   = format;
+    this.withUser = withUser;
+
+    this.file = FileChannel.open(path, StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+    // if this throws, the caller has no Exporter to close, so the file is closed here
+    try {
+      if (gzip) {
+        this.gzip = new GZIPOutputStream(Channels.newOutputStream(file), BUFFER_SIZE);
+        this.out  = Channels.newChannel(this.gzip);
+      } else {
+        this.gzip = null;
+        this.out  = file;
+      }
+
+      switch (format) {
+        case CSV:
+          write(withUser ? "USER,ID,FIRSTNAME,SURNAME,PHONE,GROUPS\r\n"
+                         : "ID,FIRSTNAME,SURNAME,PHONE,GROUPS\r\n");
+          break;
+        case JSON:
+          write("[");
+          break;
+        default:
+          break;
+      }
+
+    } catch (IOException | RuntimeException ex) {
+      try { file.close(); }
+      catch (IOException suppressed) { ex.addSuppressed(suppressed); }
+      throw ex;
+    }
+  }
+
+  /**
+    * Writes the contact the given {@link ContactCursor} is currently pointing at.
+    *
+    * @param cc cursor positioned on the contact to write
+    *
+    * @throws IOException if the contact could not be written
+    *
+    **/
+  void write (ContactCursor cc) throws IOException {
+    sb.setLength(0);
+
+    switch (format) {
+      case CSV:   csv(cc);   break;
+      case VCARD: vcard(cc); break;
+      case JSON:  json(cc);  break;
+    }
+
+    write(sb);
+  }
+
+  /**
+    * Writes the footer for this file's format (if any), flushes all buffered
+    * output, and closes the file.
+    *
+    * @throws IOException if the file could not be flushed or closed
+    *
+    **/
+  @Override
+  public void close() throws IOException {
+    try {
+      if (format == Format.JSON) write(first ? "]\n" : "\n]\n");
+      drain();
+      if (gzip != null) gzip.close(); // writes gzip trailer, closes file
+
+    } finally {
+      file.close();
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  FORMATTERS
+  //
+  //----------------------------------------------------------------------------
+
+  private void csv (ContactCursor cc) {
+    if (withUser) { csvField(cc.user()); sb.append(','); }
+    sb.append(cc.id()).append(',');
+    csvField(cc.firstname()); sb.append(',');
+    csvField(cc.surname());   sb.append(',');
+    csvField(cc.phone());     sb.append(',');
+    csvField(String.join(";", cc.groups()));
+    sb.append("\r\n");
+  }
+
+  // quote a field only if it contains a comma, quote, or line break
+  private void csvField (String s) {
+    if (s == null) return;
+    boolean quote = false;
+    for (int ii = 0; ii < s.length() && !quote; ++ii) {
+      char ch = s.charAt(ii);
+      quote = (ch == ',' || ch == '"' || ch == '\r' || ch == '\n');
+    }
+    if (!quote) { sb.append(s); return; }
+    sb.append('"').append(s.replace("\"", "\"\"")).append('"');
+  }
+
+  private void vcard (ContactCursor cc) {
+    String first = cc.firstname() == null ? "" : cc.firstname();
+    String sur   = cc.surname()   == null ? "" : cc.surname();
+
+    sb.append("BEGIN:VCARD\r\nVERSION:3.0\r\n");
+    sb.append("N:");  vcardText(sur); sb.append(';'); vcardText(first); sb.append(";;;\r\n");
+    sb.append("FN:"); vcardText((first + " " + sur).trim()); sb.append("\r\n");
+    if (cc.phone() != null) sb.append("TEL;TYPE=VOICE:").append(cc.phone()).append("\r\n");
+
+    List<String> groups = cc.groups();
+    if (!groups.isEmpty()) {
+      sb.append("CATEGORIES:");
+      for (int ii = 0; ii < groups.size(); ++ii) {
+        if (ii > 0) sb.append(',');
+        vcardText(groups.get(ii));
+      } sb.append("\r\n");
+    }
+
+    sb.append("UID:").append(cc.user()).append('-').append(cc.id()).append("\r\n");
+    sb.append("END:VCARD\r\n");
+  }
+
+  // escape vCard TEXT values (RFC 2426, section 4)
+  private void vcardText (String s) {
+    for (int ii = 0; ii < s.length(); ++ii) {
+      char ch = s.charAt(ii);
+      if (ch == ',' || ch == ';' || ch == '\\') sb.append('\\');
+      sb.append(ch);
+    }
+  }
+
+  private void json (ContactCursor cc) {
+    sb.append(first ? "\n  {" : ",\n  {");
+    first = false;
+
+    if (withUser) { sb.append("\"user\": "); jsonString(cc.user()); sb.append(", "); }
+    sb.append("\"id\": ").append(cc.id());
+    sb.append(", \"firstname\": "); jsonString(cc.firstname());
+    sb.append(", \"surname\": ");   jsonString(cc.surname());
+    sb.append(", \"phone\": ");     jsonString(cc.phone());
+    sb.append(", \"groups\": [");
+
+    List<String> groups = cc.groups();
+    for (int ii = 0; ii < groups.size(); ++ii) {
+      if (ii > 0) sb.append(", ");
+      jsonString(groups.get(ii));
+    }
+
+    sb.append("]}");
+  }
+
+  private void jsonString (String s) {
+    if (s == null) { sb.append("null"); return; }
+    sb.append('"');
+    for (int ii = 0; ii < s.length(); ++ii) {
+      char ch = s.charAt(ii);
+      switch (ch) {
+        case '"':  sb.append("\\\""); break;
+        case '\\': sb.append("\\\\"); break;
+        case '\n': sb.append("\\n");  break;
+        case '\r': sb.append("\\r");  break;
+        case '\t': sb.append("\\t");  break;
+        default:
+          if (ch < 0x20) sb.append(String.format("\\u%04x", (int) ch));
+          else sb.append(ch);
+      }
+    }
+    sb.append('"');
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  BUFFERED CHANNEL OUTPUT
+  //
+  //----------------------------------------------------------------------------
+
+  // encode characters into the buffer, draining it to the channel when full
+  private void write (CharSequence cs) throws IOException {
+    CharBuffer chars = CharBuffer.wrap(cs);
+    while (true) {
+      CoderResult cr = encoder.encode(chars, buffer, true);
+      if (cr.isUnderflow()) break;
+      if (cr.isOverflow()) drain();
+      else cr.throwException();
+    }
+    encoder.reset();
+  }
+
+  // write all buffered bytes to the channel
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) out.write(buffer);
+    buffer.clear();
+  }
+
+}
@@ -0,0 +1,158 @@
+package watson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.util.Duration;
+
+/**
+  * Filters the contacts shown in a table as the user types, in the database
+  * rather than over rows already loaded into the GUI.
+  *
+  * <p>Typing only starts a query once it has paused for
+  * {@value DEBOUNCE_MS} ms, so a burst of keystrokes costs one query rather
+  * than one each. Queries ({@link Database#filterContacts
+  * Database.filterContacts()}) run one at a time, on a background thread;
+  * as soon as the text changes again, the query in progress is cancelled
+  * (see {@link Database#cancelFilter Database.cancelFilter()}), and its
+  * results are discarded, so only the latest text's results are shown.</p>
+  *
+  * <p>Results are streamed into the table in batches of {@value BATCH}
+  * contacts, so the first rows appear before the query has finished, and
+  * the time taken by the query (to its first row, and in total) is shown in
+  * a {@link Label}.</p>
+  *
+  **/
+final class FilterController {
+
+  /** Pause in typing (in ms) after which the filter is applied. **/
+  static final long DEBOUNCE_MS = 250;
+
+  /** Most contacts shown for a filter. **/
+  static final int LIMIT = 5000;
+
+  /** Contacts passed to the table at a time. **/
+  static final int BATCH = 256;
+
+  private final Database db;
+  private final Label status;
+  private final Consumer<ColumnarTable> show;
+  private final Runnable showAll;
+
+  // incremented whenever the text changes; a query whose generation is no
+  // longer current has been cancelled
+  private final AtomicLong generation = new AtomicLong();
+
+  private final PauseTransition debounce = new PauseTransition(Duration.millis(DEBOUNCE_MS));
+
+  // runs the queries, one at a time
+  private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "contact-filter");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+    * Filters the contacts shown in a table by the text in {@code field}.
+    *
+    * @param db {@link Database} from which contacts are read
+    * @param field field in which the user types the filter
+    * @param status label in which to show the number of results and the
+    * time taken to find them
+    * @param show displays a (new, and initially empty) table of results;
+    * called on the JavaFX Application Thread, with results appended later
+    * @param showAll displays every contact again, when the filter is cleared
+    *
+    **/
+  FilterController (Database db, TextField field, Label status,
+    Consumer<ColumnarTable> show, Runnable showAll) {
+    this.db = db;
+    this.status = status;
+    this.show = show;
+    this.showAll = showAll;
+
+    debounce.setOnFinished(e -> apply(field.getText()));
+
+    field.textProperty().addListener((observable, oldText, newText) -> {
+      cancel();
+      debounce.playFromStart();
+    });
+  }
+
+  // stops the query in progress (if any) and discards its results
+  private void cancel() {
+    generation.incrementAndGet();
+    db.cancelFilter();
+  }
+
+  // runs the query for `text` in the background, streaming its results into
+  // a new table
+  private void apply (String text) {
+    long current = generation.get();
+
+    if (text == null || text.trim().isEmpty()) {
+      status.setText("");
+      showAll.run();
+      return;
+    }
+
+    status.setText("searching...");
+
+    worker.submit(() -> {
+      long start = System.nanoTime();
+      long[] first = { -1 };
+      List<List<String>> batch = new ArrayList<>(BATCH);
+      ColumnarTable rows = new ColumnarTable();
+
+      Optional<Integer> count;
+      synchronized (db) { // the database is shared with the GUI thread
+        count = db.filterContacts(text, LIMIT, () -> generation.get() != current, row -> {
+
+          // the column names create the (empty) table, which is shown at once
+          if (rows.names().isEmpty()) {
+            rows.append(row);
+            Platform.runLater(() -> { if (generation.get() == current) show.accept(rows); });
+            return;
+          }
+
+          if (first[0] < 0) first[0] = System.nanoTime() - start;
+          batch.add(row);
+          if (batch.size() == BATCH) flush(rows, batch, current);
+        });
+      }
+      flush(rows, batch, current);
+
+      long ms = (System.nanoTime() - start) / 1000000;
+      Platform.runLater(() -> {
+        if (generation.get() != current) return;
+        if (!count.isPresent()) { status.setText("filter failed; see log for details"); return; }
+
+        int n = count.get();
+        status.setText((n == LIMIT ? "first " : "") + n + " contact" + (n == 1 ? "" : "s") +
+          (first[0] < 0 ? "" : ", first after " + first[0] / 1000000 + " ms") + ", all in " + ms + " ms");
+      });
+    });
+  }
+
+  // hands a batch of rows to the table, on the JavaFX Application Thread
+  private void flush (ColumnarTable rows, List<List<String>> batch, long current) {
+    if (batch.isEmpty()) return;
+    List<List<String>> copy = new ArrayList<>(batch);
+    batch.clear();
+
+    Platform.runLater(() -> {
+      if (generation.get() != current) return;
+      for (List<String> row : copy) rows.append(row);
+    });
+  }
+
+}
@@ -0,0 +1,292 @@
+package watson;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+  * Group-membership index, for set-algebra queries over groups.
+  *
+  * <p>The members of each group, and the set of all contacts, are kept as
+  * compressed bitmaps ({@link IntBitmap}) of contact IDs, so a query such as
+  * {@code "family and work and not lads"} is answered by intersecting and
+  * subtracting a few bitmaps, rather than by self-joins over the
+  * {@code GROUPS} table.</p>
+  *
+  * <p>As a {@link ContactIndex}, this index learns of added and deleted
+  * contacts like any other; {@link Database} also reports every change to
+  * group memberships to it, and fills it from the {@code GROUPS} table as
+  * well as the {@code CONTACTS} table.</p>
+  *
+  * <p>Smart groups -- groups defined by {@link ContactCriteria} -- are kept
+  * in the same way. Their members are found (by {@link Database}) when they're
+  * {@link define defined}, and from then on, every contact which is
+  * {@link put put} into this index is tested against each smart group's
+  * criteria, and added to or removed from the group, so membership is kept
+  * up to date one contact at a time, and never recomputed.</p>
+  *
+  * <pre>{@code
+  * jshell> db.contactsMatching("(family or friends) and not lads")
+  * $7 ==> Optional[[1, 4, 9]]
+  * }</pre>
+  *
+  **/
+final class GroupIndex implements ContactIndex {
+
+  // every contact
+  private IntBitmap all = new IntBitmap();
+
+  // (all-uppercase) group name -> its members; includes smart groups
+  private final Map<String, IntBitmap> groups = new HashMap<>();
+
+  // (all-uppercase) smart group name -> its criteria
+  private final Map<String, ContactCriteria> smart = new LinkedHashMap<>();
+
+  //----------------------------------------------------------------------------
+  //
+  //  ContactIndex
+  //
+  //----------------------------------------------------------------------------
+
+  @Override
+  public void put (int ID, String[] values) {
+    if (ID < 0) return;
+    all.add(ID);
+
+    for (Map.Entry<String, ContactCriteria> e : smart.entrySet())
+      if (e.getValue().matches(values)) add(e.getKey(), ID);
+      else remove(e.getKey(), ID);
+  }
+
+  @Override
+  public void remove (int ID) {
+    all.remove(ID);
+    groups.values().removeIf(members -> members.remove(ID) && members.isEmpty());
+  }
+
+  @Override
+  public void clear() {
+    all = new IntBitmap();
+    groups.clear();
+    smart.clear();
+  }
+
+  @Override
+  public long bytes() {
+    long bytes = all.bytes();
+    for (Map.Entry<String, IntBitmap> e : groups.entrySet())
+      bytes += 48 + ContactIndex.stringBytes(e.getKey()) + e.getValue().bytes();
+    return bytes;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  GROUP MEMBERSHIP
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Adds the contact with the given {@code ID} to a group.
+    *
+    * @param GROUP (all-uppercase) name of the group
+    * @param ID ID of the contact
+    *
+    **/
+  void add (String GROUP, int ID) {
+    if (ID >= 0) groups.computeIfAbsent(GROUP, g -> new IntBitmap()).add(ID);
+  }
+
+  /**
+    * Removes the contact with the given {@code ID} from a group.
+    *
+    * @param GROUP (all-uppercase) name of the group
+    * @param ID ID of the contact
+    *
+    **/
+  void remove (String GROUP, int ID) {
+    IntBitmap members = groups.get(GROUP);
+    if (members != null && members.remove(ID) && members.isEmpty()) groups.remove(GROUP);
+  }
+
+  /**
+    * Removes every contact from a group.
+    *
+    * @param GROUP (all-uppercase) name of the group
+    *
+    **/
+  void drop (String GROUP) {
+    groups.remove(GROUP);
+  }
+
+  /**
+    * Renames a group, merging it into any group which already has the new
+    * name.
+    *
+    * @param OLDNAME (all-uppercase) current name of the group
+    * @param NEWNAME (all-uppercase) new name of the group
+    *
+    **/
+  void rename (String OLDNAME, String NEWNAME) {
+    IntBitmap members = groups.remove(OLDNAME);
+    if (members == null) return;
+    groups.merge(NEWNAME, members, IntBitmap::or);
+  }
+
+  /**
+    * Moves all of one contact's group memberships to another contact, as
+    * when duplicate contacts are merged.
+    *
+    * @param from ID of the contact whose memberships are moved
+    * @param to ID of the contact which gets them
+    *
+    **/
+  void move (int from, int to) {
+    for (IntBitmap members : groups.values())
+      if (members.remove(from)) members.add(to);
+  }
+
+  /**
+    * Defines a smart group, with its current members.
+    *
+    * @param NAME (all-uppercase) name of the smart group
+    * @param criteria criteria which members must satisfy; must not
+    * {@link ContactCriteria#usesGroups use groups}
+    * @param members IDs of the contacts which currently satisfy {@code criteria}
+    *
+    **/
+  void define (String NAME, ContactCriteria criteria, int... members) {
+    smart.put(NAME, criteria);
+    groups.remove(NAME);
+    for (int ID : members) add(NAME, ID);
+  }
+
+  /**
+    * Removes a smart group.
+    *
+    * @param NAME (all-uppercase) name of the smart group
+    *
+    **/
+  void undefine (String NAME) {
+    if (smart.remove(NAME) != null) groups.remove(NAME);
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  GROUP EXPRESSIONS
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Evaluates a group expression, returning the contacts which satisfy it.
+    *
+    * <p>An expression is made of group names, {@code and}, {@code or},
+    * {@code not} (or {@code &}, {@code |}, {@code !}), and parentheses, with
+    * the usual precedence: {@code not}, then {@code and}, then {@code or}.
+    * Names and operators are case-insensitive. An unknown group has no
+    * members.</p>
+    *
+    * @param opName name of the calling operation, for error messages
+    * @param expression the group expression
+    *
+    * @return the matching contacts, or an {@link Optional#empty empty
+    * Optional} if the expression could not be parsed
+    *
+    **/
+  Optional<IntBitmap> matching (String opName, String expression) {
+    List<String> tokens = new ArrayList<>();
+
+    for (int ii = 0; ii < expression.length(); ) {
+      char ch = expression.charAt(ii);
+
+      if (Character.isWhitespace(ch)) { ++ii; continue; }
+      if ("()&|!".indexOf(ch) >= 0) { tokens.add(String.valueOf(ch)); ++ii; continue; }
+
+      int start = ii;
+      while (ii < expression.length() &&
+        (Character.isLetterOrDigit(expression.charAt(ii)) || expression.charAt(ii) == '_')) ++ii;
+
+      if (ii == start) {
+        IOUtils.printError(opName, "unexpected character '" + ch + "' in group expression");
+        return Optional.empty();
+      }
+
+      String word = expression.substring(start, ii).toUpperCase(Locale.ROOT);
+      tokens.add(word.equals("AND") ? "&" : word.equals("OR") ? "|" : word.equals("NOT") ? "!" : word);
+    }
+
+    Parser parser = new Parser(tokens);
+    IntBitmap result = parser.or();
+
+    if (result == null || parser.at < tokens.size()) {
+      IOUtils.printError(opName, "invalid group expression \"" + expression + "\"" +
+        (parser.at < tokens.size() ? " near \"" + tokens.get(parser.at) + "\"" : ""));
+      return Optional.empty();
+    }
+
+    // memberships of IDs which aren't contacts are never matched
+    return Optional.of(IntBitmap.and(result, all));
+  }
+
+  // recursive-descent parser and evaluator for group expressions; each
+  // method returns null on a syntax error
+  private final class Parser {
+    final List<String> tokens;
+    int at = 0;
+
+    Parser (List<String> tokens) {
+      this.tokens = tokens;
+    }
+
+    boolean accept (String token) {
+      if (at < tokens.size() && tokens.get(at).equals(token)) { ++at; return true; }
+      return false;
+    }
+
+    // or := and ("|" and)*
+    IntBitmap or() {
+      IntBitmap left = and();
+      while (left != null && accept("|")) {
+        IntBitmap right = and();
+        left = right == null ? null : IntBitmap.or(left, right);
+      }
+      return left;
+    }
+
+    // and := not ("&" not)*; "a & !b" is a single difference, not a complement
+    IntBitmap and() {
+      IntBitmap left = not();
+      while (left != null && accept("&")) {
+        if (accept("!")) {
+          IntBitmap right = not();
+          left = right == null ? null : IntBitmap.andNot(left, right);
+        } else {
+          IntBitmap right = not();
+          left = right == null ? null : IntBitmap.and(left, right);
+        }
+      }
+      return left;
+    }
+
+    // not := "!" not | "(" or ")" | group
+    IntBitmap not() {
+      if (accept("!")) {
+        IntBitmap operand = not();
+        return operand == null ? null : IntBitmap.andNot(all, operand);
+      }
+
+      if (accept("(")) {
+        IntBitmap inner = or();
+        return inner != null && accept(")") ? inner : null;
+      }
+
+      if (at >= tokens.size() || "&|!()".contains(tokens.get(at))) return null;
+      IntBitmap members = groups.get(tokens.get(at++));
+      return members == null ? new IntBitmap() : members;
+    }
+  }
+
+}
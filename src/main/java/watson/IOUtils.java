@@ -5,60 +5,83 @@ import java.sql.SQLException;
 /**
   * Utility class for uniformly-formatted error/warning messaging.
   *
+  * <p>Messages are handed to the asynchronous {@link Log}, which formats them
+  * and writes them to the standard error stream (and, optionally, to a log
+  * file) on a background thread. See {@link Log} for levels, rate limiting,
+  * and log files.</p>
+  *
   **/
 public class IOUtils {
 
   // private constructor for utility class
   private IOUtils() { }
 
+  // the last error logged on each thread (see lastError())
+  private static final ThreadLocal<String> lastError = new ThreadLocal<>();
+
+  /**
+    * Returns, and forgets, the last error logged on the calling thread, so
+    * that callers like {@link ApiServer} can report why an operation failed
+    * to someone other than the person reading the log.
+    *
+    * @return the last error message logged on this thread since the last
+    * call, or {@code null} if there wasn't one
+    *
+    **/
+  static String lastError() {
+    String message = lastError.get();
+    lastError.remove();
+    return message;
+  }
+
   /**
-    * Prints an error message to the standard error stream.
+    * Logs an error message.
     *
     * @param methodSignature signature of the calling method, for debugging
     * @param message message to present to the user
     *
     **/
   protected static void printError (String methodSignature, String message) {
-    System.err.printf("         ERROR | %s : %s%n", methodSignature, message);
+    Events.failed();
+    lastError.set(message);
+    Log.log(Log.Level.ERROR, methodSignature, message);
   }
 
   /**
-    * Prints a warning message to the standard error stream.
+    * Logs a warning message.
     *
     * @param methodSignature signature of the calling method, for debugging
     * @param message message to present to the user
     *
     **/
   protected static void printWarning (String methodSignature, String message) {
-    System.err.printf("       WARNING | %s : %s%n", methodSignature, message);
+    Log.log(Log.Level.WARNING, methodSignature, message);
   }
 
   /**
-    * Prints a message to the standard error stream.
+    * Logs a message.
     *
     * @param methodSignature signature of the calling method, for debugging
     * @param message message to present to the user
     *
     **/
   protected static void printMessage (String methodSignature, String message) {
-    System.err.printf("       MESSAGE | %s : %s%n", methodSignature, message);
+    Log.log(Log.Level.MESSAGE, methodSignature, message);
   }
 
   /**
-    * Prints an {@link SQLException} message to the standard error stream.
+    * Logs an {@link SQLException} message (and any chained exceptions).
     *
     * @param methodSignature signature of the calling method, for debugging
-    * @param ex {@link SQLException} to print to the terminal
+    * @param ex {@link SQLException} to log
     *
     * @see <a href="http://bit.ly/2zJV23d">Derby SimpleApp.java</a>
     *
     **/
   protected static void printSQLException (String methodSignature, SQLException ex) {
-    while (ex != null) {
-      System.err.printf("  SQLException | %s : %s [SQL State: %s, Error Code: %d]%n",
-        methodSignature, ex.getMessage(), ex.getSQLState(), ex.getErrorCode());
-      ex = ex.getNextException();
-    } System.err.println();
+    Events.failed();
+    lastError.set(ex.getMessage());
+    Log.log(methodSignature, ex);
   }
 
 }
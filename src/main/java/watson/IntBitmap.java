@@ -0,0 +1,415 @@
+package watson;
+
+import java.util.Arrays;
+
+/**
+  * A compressed set of non-negative {@code int}s, in the style of a Roaring
+  * bitmap, for sets of contact IDs.
+  *
+  * <p>The set is split into chunks by the high 16 bits of its values. Each
+  * chunk's low 16 bits are held in a container which is either a sorted
+  * {@code char[]} (for up to {@value ARRAY_MAX} values) or a 65536-bit
+  * bitmap, whichever is smaller, so sparse and dense sets are both compact,
+  * and {@link and and}, {@link or or}, and {@link andNot andNot} run a chunk
+  * at a time, on whole 64-bit words where both chunks are dense.</p>
+  *
+  * <p>Instances are not thread-safe. The set operations return new
+  * instances, and never share containers with their arguments.</p>
+  *
+  **/
+final class IntBitmap {
+
+  // most values in an array container; any more, and a bitmap is smaller
+  private static final int ARRAY_MAX = 4096;
+
+  // 64-bit words in a bitmap container
+  private static final int WORDS = 1 << 10;
+
+  // the low 16 bits of the values in one chunk
+  private static final class Container {
+    char[] values;  // sorted values, for an array container; otherwise null
+    long[] bits;    // for a bitmap container; otherwise null
+    int card;       // number of values
+
+    static Container array (char[] values, int card) {
+      Container c = new Container();
+      c.values = values;
+      c.card = card;
+      return c;
+    }
+
+    static Container bitmap (long[] bits) {
+      Container c = new Container();
+      c.bits = bits;
+      for (long word : bits) c.card += Long.bitCount(word);
+      return c.normalize();
+    }
+
+    boolean contains (char v) {
+      if (bits != null) return (bits[v >>> 6] & (1L << v)) != 0;
+      return Arrays.binarySearch(values, 0, card, v) >= 0;
+    }
+
+    boolean add (char v) {
+      if (bits != null) {
+        long mask = 1L << v;
+        if ((bits[v >>> 6] & mask) != 0) return false;
+        bits[v >>> 6] |= mask;
+        ++card;
+        return true;
+      }
+
+      int at = Arrays.binarySearch(values, 0, card, v);
+      if (at >= 0) return false;
+      at = -(at + 1);
+
+      if (card == values.length) values = Arrays.copyOf(values, Math.max(4, card * 2));
+      System.arraycopy(values, at, values, at + 1, card - at);
+      values[at] = v;
+      if (++card > ARRAY_MAX) toBitmap();
+      return true;
+    }
+
+    boolean remove (char v) {
+      if (bits != null) {
+        long mask = 1L << v;
+        if ((bits[v >>> 6] & mask) == 0) return false;
+        bits[v >>> 6] &= ~mask;
+        --card;
+        normalize();
+        return true;
+      }
+
+      int at = Arrays.binarySearch(values, 0, card, v);
+      if (at < 0) return false;
+      System.arraycopy(values, at + 1, values, at, card - at - 1);
+      --card;
+      return true;
+    }
+
+    void toBitmap() {
+      bits = new long[WORDS];
+      for (int ii = 0; ii < card; ++ii) bits[values[ii] >>> 6] |= 1L << values[ii];
+      values = null;
+    }
+
+    // use an array container if it's smaller
+    Container normalize() {
+      if (bits != null && card <= ARRAY_MAX) {
+        values = new char[Math.max(4, card)];
+        int n = 0;
+        for (int ww = 0; ww < WORDS; ++ww)
+          for (long word = bits[ww]; word != 0; word &= word - 1)
+            values[n++] = (char) ((ww << 6) + Long.numberOfTrailingZeros(word));
+        bits = null;
+      }
+      return this;
+    }
+
+    Container copy() {
+      Container c = new Container();
+      c.values = values == null ? null : Arrays.copyOf(values, card);
+      c.bits = bits == null ? null : bits.clone();
+      c.card = card;
+      return c;
+    }
+
+    long[] bitsCopy() {
+      if (bits != null) return bits.clone();
+      long[] b = new long[WORDS];
+      for (int ii = 0; ii < card; ++ii) b[values[ii] >>> 6] |= 1L << values[ii];
+      return b;
+    }
+
+    static Container and (Container x, Container y) {
+      if (x.bits != null && y.bits != null) {
+        long[] b = new long[WORDS];
+        for (int ww = 0; ww < WORDS; ++ww) b[ww] = x.bits[ww] & y.bits[ww];
+        return bitmap(b);
+      }
+
+      // at least one array: keep those of its values in the other
+      if (x.bits != null) { Container t = x; x = y; y = t; }
+      char[] out = new char[Math.min(x.card, y.card)];
+      int n = 0;
+
+      // test against y's bits if it has (or is worth making) them: merging two
+      // long arrays of random values mispredicts most of its branches
+      if (y.bits != null || y.card > 256) {
+        long[] yBits = y.bits != null ? y.bits : y.bitsCopy();
+        for (int ii = 0; ii < x.card; ++ii)
+          if ((yBits[x.values[ii] >>> 6] & (1L << x.values[ii])) != 0) out[n++] = x.values[ii];
+        return array(out, n);
+      }
+
+      for (int ii = 0, jj = 0; ii < x.card && jj < y.card; ) {
+        if (x.values[ii] < y.values[jj]) ++ii;
+        else if (x.values[ii] > y.values[jj]) ++jj;
+        else { out[n++] = x.values[ii++]; ++jj; }
+      }
+      return array(out, n);
+    }
+
+    static Container or (Container x, Container y) {
+      if (x.bits == null && y.bits == null && x.card + y.card <= ARRAY_MAX) {
+        char[] out = new char[x.card + y.card];
+        int ii = 0, jj = 0, n = 0;
+        while (ii < x.card || jj < y.card) {
+          if (jj >= y.card || (ii < x.card && x.values[ii] < y.values[jj])) out[n++] = x.values[ii++];
+          else if (ii >= x.card || y.values[jj] < x.values[ii]) out[n++] = y.values[jj++];
+          else { out[n++] = x.values[ii++]; ++jj; }
+        }
+        return array(out, n);
+      }
+
+      long[] b = x.bitsCopy();
+      if (y.bits != null) for (int ww = 0; ww < WORDS; ++ww) b[ww] |= y.bits[ww];
+      else for (int ii = 0; ii < y.card; ++ii) b[y.values[ii] >>> 6] |= 1L << y.values[ii];
+      return bitmap(b);
+    }
+
+    static Container andNot (Container x, Container y) {
+      if (x.bits == null) {
+        char[] out = new char[x.card];
+        int n = 0;
+
+        // as for and()
+        if (y.bits != null || y.card > 256) {
+          long[] yBits = y.bits != null ? y.bits : y.bitsCopy();
+          for (int ii = 0; ii < x.card; ++ii)
+            if ((yBits[x.values[ii] >>> 6] & (1L << x.values[ii])) == 0) out[n++] = x.values[ii];
+          return array(out, n);
+        }
+
+        int jj = 0;
+        for (int ii = 0; ii < x.card; ++ii) {
+          while (jj < y.card && y.values[jj] < x.values[ii]) ++jj;
+          if (jj >= y.card || y.values[jj] != x.values[ii]) out[n++] = x.values[ii];
+        }
+        return array(out, n);
+      }
+
+      long[] b = x.bits.clone();
+      if (y.bits != null) for (int ww = 0; ww < WORDS; ++ww) b[ww] &= ~y.bits[ww];
+      else for (int ii = 0; ii < y.card; ++ii) b[y.values[ii] >>> 6] &= ~(1L << y.values[ii]);
+      return bitmap(b);
+    }
+  }
+
+  // high 16 bits of each chunk, in ascending order, and the chunks' containers
+  private char[] keys = new char[4];
+  private Container[] containers = new Container[4];
+  private int size = 0;
+
+  //----------------------------------------------------------------------------
+  //
+  //  SINGLE VALUES
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Adds {@code value} to this set.
+    *
+    * @param value non-negative value to add
+    *
+    * @return {@code true} if {@code value} was not already in this set
+    *
+    **/
+  boolean add (int value) {
+    char high = (char) (value >>> 16);
+    int at = Arrays.binarySearch(keys, 0, size, high);
+
+    if (at < 0) {
+      at = -(at + 1);
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+        containers = Arrays.copyOf(containers, size * 2);
+      }
+      System.arraycopy(keys, at, keys, at + 1, size - at);
+      System.arraycopy(containers, at, containers, at + 1, size - at);
+      keys[at] = high;
+      containers[at] = Container.array(new char[4], 0);
+      ++size;
+    }
+
+    return containers[at].add((char) value);
+  }
+
+  /**
+    * Removes {@code value} from this set.
+    *
+    * @param value value to remove
+    *
+    * @return {@code true} if {@code value} was in this set
+    *
+    **/
+  boolean remove (int value) {
+    int at = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+    if (at < 0 || value < 0 || !containers[at].remove((char) value)) return false;
+
+    if (containers[at].card == 0) {
+      System.arraycopy(keys, at + 1, keys, at, size - at - 1);
+      System.arraycopy(containers, at + 1, containers, at, size - at - 1);
+      containers[--size] = null;
+    }
+    return true;
+  }
+
+  /**
+    * Returns {@code true} if {@code value} is in this set.
+    *
+    * @param value value to look for
+    *
+    * @return {@code true} if and only if {@code value} is in this set
+    *
+    **/
+  boolean contains (int value) {
+    if (value < 0) return false;
+    int at = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+    return at >= 0 && containers[at].contains((char) value);
+  }
+
+  /**
+    * Returns the number of values in this set.
+    *
+    * @return the number of values in this set
+    *
+    **/
+  int cardinality() {
+    int card = 0;
+    for (int ii = 0; ii < size; ++ii) card += containers[ii].card;
+    return card;
+  }
+
+  /**
+    * Returns {@code true} if this set is empty.
+    *
+    * @return {@code true} if and only if this set has no values
+    *
+    **/
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+    * Returns the values in this set, in ascending order.
+    *
+    * @return the values in this set
+    *
+    **/
+  int[] toArray() {
+    int[] out = new int[cardinality()];
+    int n = 0;
+
+    for (int ii = 0; ii < size; ++ii) {
+      int high = keys[ii] << 16;
+      Container c = containers[ii];
+
+      if (c.bits == null)
+        for (int jj = 0; jj < c.card; ++jj) out[n++] = high | c.values[jj];
+      else
+        for (int ww = 0; ww < WORDS; ++ww)
+          for (long word = c.bits[ww]; word != 0; word &= word - 1)
+            out[n++] = high | ((ww << 6) + Long.numberOfTrailingZeros(word));
+    }
+    return out;
+  }
+
+  /**
+    * Returns an estimate of the heap memory used by this set.
+    *
+    * @return the approximate size of this set, in bytes
+    *
+    **/
+  long bytes() {
+    long bytes = 32 + 16 + 2L * keys.length + 16 + 8L * containers.length;
+    for (int ii = 0; ii < size; ++ii) {
+      Container c = containers[ii];
+      bytes += 32 + (c.bits != null ? 16 + 8L * WORDS : 16 + 2L * c.values.length);
+    }
+    return bytes;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  SET OPERATIONS
+  //
+  //----------------------------------------------------------------------------
+
+  // append a non-empty container
+  private void append (char key, Container c) {
+    if (c.card == 0) return;
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      containers = Arrays.copyOf(containers, size * 2);
+    }
+    keys[size] = key;
+    containers[size++] = c;
+  }
+
+  /**
+    * Returns the intersection of two sets.
+    *
+    * @param a first set
+    * @param b second set
+    *
+    * @return a new set holding the values in both {@code a} and {@code b}
+    *
+    **/
+  static IntBitmap and (IntBitmap a, IntBitmap b) {
+    IntBitmap out = new IntBitmap();
+    int ii = 0, jj = 0;
+    while (ii < a.size && jj < b.size) {
+      if (a.keys[ii] < b.keys[jj]) ++ii;
+      else if (a.keys[ii] > b.keys[jj]) ++jj;
+      else { out.append(a.keys[ii], Container.and(a.containers[ii], b.containers[jj])); ++ii; ++jj; }
+    }
+    return out;
+  }
+
+  /**
+    * Returns the union of two sets.
+    *
+    * @param a first set
+    * @param b second set
+    *
+    * @return a new set holding the values in either {@code a} or {@code b}
+    *
+    **/
+  static IntBitmap or (IntBitmap a, IntBitmap b) {
+    IntBitmap out = new IntBitmap();
+    int ii = 0, jj = 0;
+    while (ii < a.size || jj < b.size) {
+      if (jj >= b.size || (ii < a.size && a.keys[ii] < b.keys[jj])) {
+        out.append(a.keys[ii], a.containers[ii].copy()); ++ii;
+      } else if (ii >= a.size || b.keys[jj] < a.keys[ii]) {
+        out.append(b.keys[jj], b.containers[jj].copy()); ++jj;
+      } else {
+        out.append(a.keys[ii], Container.or(a.containers[ii], b.containers[jj])); ++ii; ++jj;
+      }
+    }
+    return out;
+  }
+
+  /**
+    * Returns the difference of two sets.
+    *
+    * @param a first set
+    * @param b second set
+    *
+    * @return a new set holding the values in {@code a} but not in {@code b}
+    *
+    **/
+  static IntBitmap andNot (IntBitmap a, IntBitmap b) {
+    IntBitmap out = new IntBitmap();
+    int jj = 0;
+    for (int ii = 0; ii < a.size; ++ii) {
+      while (jj < b.size && b.keys[jj] < a.keys[ii]) ++jj;
+      if (jj < b.size && b.keys[jj] == a.keys[ii])
+        out.append(a.keys[ii], Container.andNot(a.containers[ii], b.containers[jj]));
+      else out.append(a.keys[ii], a.containers[ii].copy());
+    }
+    return out;
+  }
+
+}
@@ -0,0 +1,164 @@
+package watson;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+  * {@code jdk.jfr} implementation of {@link Events}.
+  *
+  * <p>This is the only class which refers to {@code jdk.jfr}; it is loaded
+  * reflectively by {@link Events}, and only if that API is present, so the
+  * rest of the app still runs on JVMs without it. Compiling it also needs
+  * that API, so under a JDK 8 compiler, the {@code jdk8} Maven profile leaves
+  * it out of the build (and events are then never recorded).</p>
+  *
+  **/
+final class JfrEvents implements Events.Factory {
+
+  //----------------------------------------------------------------------------
+  //
+  //  EVENT TYPES
+  //
+  //----------------------------------------------------------------------------
+
+  @Name("watson.DatabaseOperation")
+  @Label("Database Operation")
+  @Category({ "Watson", "Database" })
+  @Description("A public Database method, e.g. addToGroup() or table()")
+  @StackTrace(false)
+  static final class DatabaseOperation extends Event {
+    @Label("Operation") String  operation;
+    @Label("User")      String  user;
+    @Label("Rows")      long    rows;
+    @Label("Success")   boolean success = true;
+  }
+
+  @Name("watson.PasswordHash")
+  @Label("Password Hash")
+  @Category({ "Watson", "Security" })
+  @Description("PasswordUtils.hashPassword()")
+  @StackTrace(false)
+  static final class PasswordHash extends Event {
+    @Label("Algorithm")                    String algorithm;
+    @Label("Iterations")                   int    iterations;
+    @Label("Key Length") @DataAmount(DataAmount.BITS) int keyLength;
+  }
+
+  @Name("watson.TableLoad")
+  @Label("Table Load")
+  @Category({ "Watson", "UI" })
+  @Description("A table or page loaded into the UI")
+  @StackTrace(false)
+  static final class TableLoad extends Event {
+    @Label("Source")  String source;
+    @Label("Name")    String name;
+    @Label("Rows")    long   rows;
+    @Label("Columns") int    columns;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  OPS
+  //
+  //----------------------------------------------------------------------------
+
+  // database operation currently running on each thread (for failed())
+  private static final ThreadLocal<DatabaseOp> CURRENT = new ThreadLocal<>();
+
+  private static final class DatabaseOp implements Events.Op {
+    final DatabaseOperation event;
+    final DatabaseOp outer;
+
+    DatabaseOp (DatabaseOperation event) {
+      this.event = event;
+      this.outer = CURRENT.get();
+      CURRENT.set(this);
+      event.begin();
+    }
+
+    @Override public Events.Op rows (long rows) { event.rows = rows; return this; }
+    @Override public Events.Op columns (int columns) { return this; }
+
+    @Override
+    public void close() {
+      event.commit();
+      if (outer == null) CURRENT.remove();
+      else CURRENT.set(outer);
+    }
+  }
+
+  private static final class HashOp implements Events.Op {
+    final PasswordHash event;
+
+    HashOp (PasswordHash event) {
+      this.event = event;
+      event.begin();
+    }
+
+    @Override public Events.Op rows (long rows) { return this; }
+    @Override public Events.Op columns (int columns) { return this; }
+    @Override public void close() { event.commit(); }
+  }
+
+  private static final class TableOp implements Events.Op {
+    final TableLoad event;
+
+    TableOp (TableLoad event) {
+      this.event = event;
+      event.begin();
+    }
+
+    @Override public Events.Op rows (long rows) { event.rows = rows; return this; }
+    @Override public Events.Op columns (int columns) { event.columns = columns; return this; }
+    @Override public void close() { event.commit(); }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  FACTORY
+  //
+  //----------------------------------------------------------------------------
+
+  // every event is checked with isEnabled() first, so when no recording wants
+  // it, only a short-lived (and usually scalar-replaced) object is created
+
+  @Override
+  public Events.Op database (String operation, String user) {
+    DatabaseOperation event = new DatabaseOperation();
+    if (!event.isEnabled()) return Events.NOOP;
+    event.operation = operation;
+    event.user      = user;
+    return new DatabaseOp(event);
+  }
+
+  @Override
+  public Events.Op hash (String algorithm, int iterations, int keyLength) {
+    PasswordHash event = new PasswordHash();
+    if (!event.isEnabled()) return Events.NOOP;
+    event.algorithm  = algorithm;
+    event.iterations = iterations;
+    event.keyLength  = keyLength;
+    return new HashOp(event);
+  }
+
+  @Override
+  public Events.Op table (String source, String name) {
+    TableLoad event = new TableLoad();
+    if (!event.isEnabled()) return Events.NOOP;
+    event.source = source;
+    event.name   = name;
+    return new TableOp(event);
+  }
+
+  @Override
+  public void failed() {
+    DatabaseOp op = CURRENT.get();
+    if (op != null) op.event.success = false;
+  }
+
+}
@@ -0,0 +1,278 @@
+package watson;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+  * Minimal JSON reading and writing, for {@link ApiServer} and {@link Cli}.
+  *
+  * <p>Values are represented by plain Java objects: objects as
+  * {@link Map}s (with {@link String} keys, in order), arrays as
+  * {@link List}s, and strings, numbers, booleans, and {@code null} as
+  * {@link String}s, {@link Number}s ({@link Long} when integral, otherwise
+  * {@link Double}), {@link Boolean}s, and {@code null}.</p>
+  *
+  * <pre>{@code
+  * jshell> Json.parse("{\"ids\": [1, 2], \"ok\": true}")
+  * $1 ==> {ids=[1, 2], ok=true}
+  *
+  * jshell> Json.write($1)
+  * $2 ==> "{\"ids\":[1,2],\"ok\":true}"
+  * }</pre>
+  *
+  **/
+final class Json {
+
+  // private constructor for utility class
+  private Json() { }
+
+  /** Deepest nesting of objects and arrays which {@link parse parse()} accepts. **/
+  static final int MAX_DEPTH = 64;
+
+  //----------------------------------------------------------------------------
+  //
+  //  WRITING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns the given value as JSON. Besides the types listed
+    * {@link Json above}, any {@link Collection} or {@code int[]} is written
+    * as an array, and any other object as a string (its {@code toString()}).
+    *
+    * @param value value to write
+    *
+    * @return the value, as compact JSON
+    *
+    **/
+  static String write (Object value) {
+    StringBuilder sb = new StringBuilder();
+    write(value, sb);
+    return sb.toString();
+  }
+
+  /**
+    * Appends the given value, as JSON, to a {@link StringBuilder}.
+    *
+    * @param value value to write
+    * @param sb where to write it
+    *
+    **/
+  static void write (Object value, StringBuilder sb) {
+
+    if (value == null || value instanceof Boolean || value instanceof Number) {
+      sb.append(value);
+
+    } else if (value instanceof Map) {
+      sb.append('{');
+      boolean first = true;
+      for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+        if (!first) sb.append(',');
+        first = false;
+        string(String.valueOf(e.getKey()), sb);
+        sb.append(':');
+        write(e.getValue(), sb);
+      }
+      sb.append('}');
+
+    } else if (value instanceof Collection) {
+      sb.append('[');
+      boolean first = true;
+      for (Object element : (Collection<?>) value) {
+        if (!first) sb.append(',');
+        first = false;
+        write(element, sb);
+      }
+      sb.append(']');
+
+    } else if (value instanceof int[]) {
+      int[] values = (int[]) value;
+      sb.append('[');
+      for (int ii = 0; ii < values.length; ++ii) {
+        if (ii > 0) sb.append(',');
+        sb.append(values[ii]);
+      }
+      sb.append(']');
+
+    } else string(value.toString(), sb);
+  }
+
+  // a JSON string, with quotes, backslashes, and control characters escaped
+  private static void string (String s, StringBuilder sb) {
+    sb.append('"');
+    for (int ii = 0; ii < s.length(); ++ii) {
+      char ch = s.charAt(ii);
+      switch (ch) {
+        case '"':  sb.append("\\\""); break;
+        case '\\': sb.append("\\\\"); break;
+        case '\n': sb.append("\\n");  break;
+        case '\r': sb.append("\\r");  break;
+        case '\t': sb.append("\\t");  break;
+        default:
+          if (ch < 0x20) sb.append(String.format("\\u%04x", (int) ch));
+          else sb.append(ch);
+      }
+    }
+    sb.append('"');
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  READING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Parses a JSON document.
+    *
+    * @param text the JSON document
+    *
+    * @return its value, as described {@link Json above}
+    *
+    * @throws IllegalArgumentException if {@code text} isn't valid JSON, or
+    * is nested more than {@value MAX_DEPTH} deep; the message says where
+    *
+    **/
+  static Object parse (String text) {
+    Parser parser = new Parser(text);
+    Object value = parser.value();
+    parser.space();
+    if (parser.at < text.length()) throw parser.error("unexpected text after the end of the document");
+    return value;
+  }
+
+  // recursive-descent parser over a single document
+  private static final class Parser {
+    final String text;
+    int at = 0;
+    int depth = 0; // of objects and arrays, so deep nesting can't overflow the stack
+
+    Parser (String text) { this.text = text; }
+
+    IllegalArgumentException error (String message) {
+      return new IllegalArgumentException("invalid JSON at character " + at + ": " + message);
+    }
+
+    void space() {
+      while (at < text.length() && Character.isWhitespace(text.charAt(at))) ++at;
+    }
+
+    boolean accept (char ch) {
+      space();
+      if (at < text.length() && text.charAt(at) == ch) { ++at; return true; }
+      return false;
+    }
+
+    void expect (char ch) {
+      if (!accept(ch)) throw error("expected '" + ch + "'");
+    }
+
+    Object value() {
+      space();
+      if (at >= text.length()) throw error("unexpected end of document");
+
+      char ch = text.charAt(at);
+      if (ch == '{') return object();
+      if (ch == '[') return array();
+      if (ch == '"') return string();
+      if (ch == '-' || (ch >= '0' && ch <= '9')) return number();
+      if (text.startsWith("true", at))  { at += 4; return Boolean.TRUE; }
+      if (text.startsWith("false", at)) { at += 5; return Boolean.FALSE; }
+      if (text.startsWith("null", at))  { at += 4; return null; }
+      throw error("unexpected character '" + ch + "'");
+    }
+
+    void nest() {
+      if (++depth > MAX_DEPTH) throw error("nested more than " + MAX_DEPTH + " deep");
+    }
+
+    Map<String, Object> object() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      nest();
+      expect('{');
+      if (accept('}')) { --depth; return map; }
+      do {
+        space();
+        if (at >= text.length() || text.charAt(at) != '"') throw error("expected a string key");
+        String key = string();
+        expect(':');
+        map.put(key, value());
+      } while (accept(','));
+      expect('}');
+      --depth;
+      return map;
+    }
+
+    List<Object> array() {
+      List<Object> list = new ArrayList<>();
+      nest();
+      expect('[');
+      if (accept(']')) { --depth; return list; }
+      do list.add(value()); while (accept(','));
+      expect(']');
+      --depth;
+      return list;
+    }
+
+    String string() {
+      StringBuilder sb = new StringBuilder();
+      ++at; // opening quote
+
+      while (true) {
+        if (at >= text.length()) throw error("unterminated string");
+        char ch = text.charAt(at++);
+        if (ch == '"') return sb.toString();
+        if (ch != '\\') { sb.append(ch); continue; }
+
+        if (at >= text.length()) throw error("unterminated string");
+        char esc = text.charAt(at++);
+        switch (esc) {
+          case '"': case '\\': case '/': sb.append(esc); break;
+          case 'b': sb.append('\b'); break;
+          case 'f': sb.append('\f'); break;
+          case 'n': sb.append('\n'); break;
+          case 'r': sb.append('\r'); break;
+          case 't': sb.append('\t'); break;
+          case 'u':
+            if (at + 4 > text.length()) throw error("incomplete \\u escape");
+            try {
+              sb.append((char) Integer.parseInt(text.substring(at, at + 4), 16));
+            } catch (NumberFormatException ex) {
+              throw error("invalid \\u escape");
+            }
+            at += 4;
+            break;
+          default: throw error("invalid escape '\\" + esc + "'");
+        }
+      }
+    }
+
+    Number number() {
+      int start = at;
+      if (text.charAt(at) == '-') ++at;
+      boolean integral = true;
+
+      if (at + 1 < text.length() && text.charAt(at) == '0' && Character.isDigit(text.charAt(at + 1)))
+        throw error("numbers cannot have leading zeros");
+
+      while (at < text.length()) {
+        char ch = text.charAt(at);
+        if (ch >= '0' && ch <= '9') ++at;
+        else if (ch == '.' || ch == 'e' || ch == 'E' || ch == '+' || ch == '-') { integral = false; ++at; }
+        else break;
+      }
+
+      String number = text.substring(start, at);
+      try {
+        return integral ? (Number) Long.parseLong(number) : (Number) Double.parseDouble(number);
+      } catch (NumberFormatException ex) {
+        at = start;
+        throw error("invalid number \"" + number + "\"");
+      }
+    }
+  }
+
+}
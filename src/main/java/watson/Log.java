@@ -0,0 +1,607 @@
+package watson;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.sql.SQLException;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+  * Asynchronous, leveled logging for everything printed through
+  * {@link IOUtils}.
+  *
+  * <p>Logging a message costs the calling thread one level check and, if the
+  * level is enabled, one enqueue onto a fixed-size, lock-free ring buffer. A
+  * single background (daemon) thread drains the buffer, formats each message,
+  * and writes it to the standard error stream and (optionally) to a set of
+  * rotating log files. Messages of a silenced level are discarded before
+  * anything is allocated.</p>
+  *
+  * <pre>{@code
+  * jshell> Log.setLevel(Log.Level.WARNING)   // hide "MESSAGE"s
+  *
+  * jshell> Log.toFile(Paths.get("watson.log"), 1 << 20, 5)
+  * $2 ==> true
+  * }</pre>
+  *
+  * <p>Each call site (the {@code methodSignature} passed to {@link IOUtils})
+  * may log at most {@link setRateLimit rateLimit} messages per level per
+  * second; the rest are counted and summarised in a single
+  * "{@code N similar messages suppressed}" line, once that second is over
+  * (or on {@link flush flush()}). {@link Level#ERROR ERROR}s are never
+  * suppressed. If the ring buffer fills up, new messages are dropped (and
+  * counted) rather than blocking the caller.</p>
+  *
+  * <p>The initial configuration can also be given as system properties:
+  * {@code watson.log.level} (a {@link Level} name), {@code watson.log.file}
+  * (path of the log file), and {@code watson.log.rateLimit} (messages per
+  * call site per second, {@code 0} for no limit). Buffered messages are
+  * written out when the JVM exits, or on demand with {@link flush flush()}.</p>
+  *
+  **/
+public final class Log {
+
+  // private constructor for utility class
+  private Log() { }
+
+  /** Severity levels, from least to most severe. **/
+  public enum Level {
+
+    /** Fine-grained diagnostics, hidden by default. **/
+    DEBUG,
+
+    /** Normal progress messages ("successfully added contact", etc.). **/
+    MESSAGE,
+
+    /** Problems which don't stop an operation from completing. **/
+    WARNING,
+
+    /** Operations which failed. **/
+    ERROR,
+
+    /** Disables logging entirely. **/
+    OFF
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  CONFIGURATION
+  //
+  //----------------------------------------------------------------------------
+
+  // number of slots in the ring buffer (must be a power of 2)
+  private static final int CAPACITY = 1 << 13;
+  private static final int MASK     = CAPACITY - 1;
+
+  // longest the writer sleeps when there's nothing to write
+  private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  // longest flush() waits for the writer to catch up
+  private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  private static volatile int     minLevel  = Level.MESSAGE.ordinal();
+  private static volatile int     rateLimit = 100;
+  private static volatile boolean console   = true;
+
+  // current log file, if any (written only by the writer thread, once set)
+  private static volatile RollingFile file = null;
+
+  /**
+    * Sets the minimum level of messages which are logged. Messages of lower
+    * levels are discarded without being formatted.
+    *
+    * @param level minimum level to log ({@link Level#OFF OFF} to log nothing)
+    *
+    **/
+  public static void setLevel (Level level) {
+    if (level != null) minLevel = level.ordinal();
+  }
+
+  /**
+    * Returns the minimum level of messages which are logged.
+    *
+    * @return the current minimum {@link Level}
+    *
+    **/
+  public static Level level() {
+    return Level.values()[minLevel];
+  }
+
+  /**
+    * Returns {@code true} if messages of the given level are logged.
+    *
+    * @param level level to check
+    *
+    * @return {@code true} if and only if messages of {@code level} are logged
+    *
+    **/
+  public static boolean isEnabled (Level level) {
+    return level.ordinal() >= minLevel && level != Level.OFF;
+  }
+
+  /**
+    * Sets the maximum number of messages which each call site can log, per
+    * level, per second.
+    *
+    * @param perSecond maximum messages per call site per second, or {@code 0}
+    * for no limit
+    *
+    **/
+  public static void setRateLimit (int perSecond) {
+    rateLimit = Math.max(0, perSecond);
+  }
+
+  /**
+    * Enables or disables logging to the standard error stream.
+    *
+    * @param enabled if {@code false}, messages are only written to the log
+    * file (if there is one)
+    *
+    **/
+  public static void setConsole (boolean enabled) {
+    console = enabled;
+  }
+
+  /**
+    * Starts writing messages to the file at {@code path} (as well as the
+    * standard error stream). When the file grows past {@code maxBytes}, it is
+    * renamed to {@code path.1} (and {@code path.1} to {@code path.2}, etc.)
+    * and a new file is started. At most {@code maxFiles} old files are kept.
+    *
+    * @param path log file to append to
+    * @param maxBytes size at which the log file is rotated
+    * @param maxFiles number of rotated files to keep
+    *
+    * @return {@code true} if and only if the log file was opened
+    *
+    **/
+  public static boolean toFile (Path path, long maxBytes, int maxFiles) {
+
+    if (path == null || maxBytes < 1 || maxFiles < 0) {
+      IOUtils.printError("Log.toFile()", "invalid log file configuration");
+      return false;
+    }
+
+    // write out everything queued so far before switching files
+    flush();
+
+    try {
+      RollingFile old = file;
+      file = new RollingFile(path, maxBytes, maxFiles);
+      if (old != null) old.close();
+      return true;
+
+    } catch (IOException ex) {
+      IOUtils.printError("Log.toFile()", "could not open log file: " + ex.getMessage());
+      return false;
+    }
+  }
+
+  /**
+    * Returns the number of messages which have been dropped because the ring
+    * buffer was full.
+    *
+    * @return number of messages dropped since the JVM started
+    *
+    **/
+  public static long dropped() {
+    return dropped.get();
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  LOGGING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Logs a message, if its level is enabled.
+    *
+    * @param level severity of the message
+    * @param site signature of the calling method, e.g. {@code "addContact()"}
+    * @param message message to log
+    *
+    **/
+  public static void log (Level level, String site, String message) {
+    if (level.ordinal() < minLevel || level == Level.OFF) return;
+    if (!admit(level, site)) return;
+    enqueue(new Record(level, site, message, null));
+  }
+
+  /**
+    * Logs a message, if its level is enabled. The message is only built
+    * (by calling {@code message.get()}) if it will actually be logged.
+    *
+    * @param level severity of the message
+    * @param site signature of the calling method, e.g. {@code "addContact()"}
+    * @param message supplies the message to log
+    *
+    **/
+  public static void log (Level level, String site, Supplier<String> message) {
+    if (level.ordinal() < minLevel || level == Level.OFF) return;
+    if (!admit(level, site)) return;
+    enqueue(new Record(level, site, message.get(), null));
+  }
+
+  /**
+    * Logs an {@link SQLException} (and every exception chained to it) at
+    * {@link Level#ERROR ERROR} level. The exceptions are only formatted on the
+    * writer thread.
+    *
+    * @param site signature of the calling method, e.g. {@code "addContact()"}
+    * @param ex exception to log
+    *
+    **/
+  public static void log (String site, SQLException ex) {
+    if (Level.ERROR.ordinal() < minLevel) return;
+    if (!admit(Level.ERROR, site)) return;
+    enqueue(new Record(Level.ERROR, site, null, ex));
+  }
+
+  /**
+    * Blocks until every message logged before this call has been written (or
+    * until a few seconds have passed), then flushes the log file.
+    *
+    **/
+  public static void flush() {
+    reportSuppressed(false);
+
+    long target   = head.get();
+    long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+
+    while (tail.get() < target && System.nanoTime() < deadline) {
+      LockSupport.unpark(WRITER);
+      LockSupport.parkNanos(100_000);
+    }
+
+    // the writer flushes sinks when it goes idle; wait for that too
+    while (flushed.get() < target && System.nanoTime() < deadline) {
+      LockSupport.unpark(WRITER);
+      LockSupport.parkNanos(100_000);
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  PER-CALL-SITE RATE LIMITING
+  //
+  //----------------------------------------------------------------------------
+
+  // one limiter per level per call site
+  private static final ConcurrentHashMap<String, Limiter[]> limiters = new ConcurrentHashMap<>();
+
+  private static final class Limiter {
+
+    // (window number << 32) | (messages logged in that window)
+    final AtomicLong    state      = new AtomicLong();
+    final AtomicInteger suppressed = new AtomicInteger();
+  }
+
+  // returns true if this call site may log another message at this level
+  // now; errors are always logged, so a failure is never lost
+  private static boolean admit (Level level, String site) {
+    int limit = rateLimit;
+    if (limit == 0 || level == Level.ERROR) return true;
+
+    Limiter[] byLevel = limiters.get(site);
+    if (byLevel == null) {
+      byLevel = new Limiter[Level.values().length];
+      for (int ii = 0; ii < byLevel.length; ++ii) byLevel[ii] = new Limiter();
+      Limiter[] raced = limiters.putIfAbsent(site, byLevel);
+      if (raced != null) byLevel = raced;
+    }
+
+    Limiter limiter = byLevel[level.ordinal()];
+
+    // nanoTime() may be negative, so the window is compared as the int kept
+    // in the top half of the state, not as the (sign-extended) long
+    int window = (int) Math.floorDiv(System.nanoTime(), 1_000_000_000L);
+
+    while (true) {
+      long state = limiter.state.get();
+      long count = (int) (state >>> 32) == window ? (state & 0xFFFFFFFFL) : 0;
+
+      if (count >= limit) {
+        limiter.suppressed.incrementAndGet();
+        return false;
+      }
+
+      if (limiter.state.compareAndSet(state, ((long) window << 32) | (count + 1))) {
+
+        // first message of a new window: report what was suppressed in the last one
+        if (count == 0) {
+          int n = limiter.suppressed.getAndSet(0);
+          if (n > 0) enqueue(new Record(level, site, n + " similar messages suppressed", null));
+        }
+
+        return true;
+      }
+    }
+  }
+
+  // report the messages suppressed at every call site, so a burst which has
+  // ended is summarised without waiting for that site to log again; if
+  // `endedOnly`, only windows which are over are reported
+  private static void reportSuppressed (boolean endedOnly) {
+    int window = (int) Math.floorDiv(System.nanoTime(), 1_000_000_000L);
+
+    for (Map.Entry<String, Limiter[]> e : limiters.entrySet()) {
+      Limiter[] byLevel = e.getValue();
+      for (int ll = 0; ll < byLevel.length; ++ll) {
+        Limiter limiter = byLevel[ll];
+        if (limiter.suppressed.get() == 0) continue;
+        if (endedOnly && (int) (limiter.state.get() >>> 32) == window) continue;
+
+        int n = limiter.suppressed.getAndSet(0);
+        if (n > 0) enqueue(new Record(Level.values()[ll], e.getKey(),
+          n + " similar messages suppressed", null));
+      }
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  LOCK-FREE RING BUFFER (MANY PRODUCERS, ONE CONSUMER)
+  //
+  //----------------------------------------------------------------------------
+
+  private static final class Record {
+    final long         time = System.currentTimeMillis();
+    final String       thread = Thread.currentThread().getName();
+    final Level        level;
+    final String       site;
+    final String       message;
+    final SQLException ex;
+
+    Record (Level level, String site, String message, SQLException ex) {
+      this.level   = level;
+      this.site    = site;
+      this.message = message;
+      this.ex      = ex;
+    }
+  }
+
+  private static final AtomicReferenceArray<Record> slots = new AtomicReferenceArray<>(CAPACITY);
+
+  // next sequence number to be claimed by a producer
+  private static final AtomicLong head = new AtomicLong();
+
+  // next sequence number to be read by the writer
+  private static final AtomicLong tail = new AtomicLong();
+
+  // all records before this sequence number have been flushed to their sinks
+  private static final AtomicLong flushed = new AtomicLong();
+
+  private static final AtomicLong dropped = new AtomicLong();
+
+  private static void enqueue (Record record) {
+    while (true) {
+      long seq = head.get();
+
+      // buffer full: drop the message rather than block the caller
+      if (seq - tail.get() >= CAPACITY) {
+        dropped.incrementAndGet();
+        return;
+      }
+
+      if (head.compareAndSet(seq, seq + 1)) {
+        slots.set((int) seq & MASK, record);
+        return;
+      }
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  BACKGROUND WRITER
+  //
+  //----------------------------------------------------------------------------
+
+  private static final Thread WRITER = new Thread(Log::drain, "watson-log");
+
+  static {
+    String level = System.getProperty("watson.log.level");
+    if (level != null) {
+      try { setLevel(Level.valueOf(level.trim().toUpperCase())); }
+      catch (IllegalArgumentException ex) { /* keep the default */ }
+    }
+
+    String limit = System.getProperty("watson.log.rateLimit");
+    if (limit != null) {
+      try { setRateLimit(Integer.parseInt(limit.trim())); }
+      catch (NumberFormatException ex) { /* keep the default */ }
+    }
+
+    WRITER.setDaemon(true);
+    WRITER.start();
+
+    String path = System.getProperty("watson.log.file");
+    if (path != null) toFile(Paths.get(path), 10L << 20, 5);
+
+    // write out anything still queued when the JVM exits
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      flush();
+      RollingFile rf = file;
+      if (rf != null) rf.close();
+    }, "watson-log-shutdown"));
+  }
+
+  // body of the writer thread: write records as they arrive, sleep when idle
+  private static void drain() {
+    StringBuilder sb = new StringBuilder(256);
+    SimpleDateFormat stamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    long idle = 0;
+    long reportedDrops = 0;
+    long lastSweep = System.nanoTime();
+
+    while (true) {
+      long seq = tail.get();
+
+      if (seq < head.get()) {
+        Record record = slots.get((int) seq & MASK);
+
+        // slot claimed, but the producer hasn't stored its record yet
+        if (record == null) { Thread.yield(); continue; }
+
+        slots.set((int) seq & MASK, null);
+        tail.set(seq + 1);
+        write(record, sb, stamp);
+        idle = 0;
+        continue;
+      }
+
+      long drops = dropped.get();
+      if (drops > reportedDrops) {
+        write(new Record(Level.WARNING, "Log", (drops - reportedDrops) +
+          " messages dropped (log buffer full)", null), sb, stamp);
+        reportedDrops = drops;
+      }
+
+      // about once a second, summarise bursts which have ended
+      if (System.nanoTime() - lastSweep >= 1_000_000_000L) {
+        lastSweep = System.nanoTime();
+        reportSuppressed(true);
+        if (tail.get() < head.get()) continue;
+      }
+
+      // nothing left to write: flush sinks, then back off
+      if (flushed.get() < seq) {
+        PrintStream err = System.err;
+        err.flush();
+        RollingFile rf = file;
+        if (rf != null) rf.flush();
+        flushed.set(seq);
+      }
+
+      idle = Math.min(MAX_IDLE_NANOS, Math.max(100_000, idle * 2));
+      LockSupport.parkNanos(idle);
+    }
+  }
+
+  // format one record and send it to every sink
+  private static void write (Record record, StringBuilder sb, SimpleDateFormat stamp) {
+    sb.setLength(0);
+
+    if (record.ex == null) {
+      line(sb, record.level.name(), record.site, record.message);
+
+    } else {
+      for (SQLException ex = record.ex; ex != null; ex = ex.getNextException())
+        line(sb, "SQLException", record.site, ex.getMessage() + " [SQL State: " +
+          ex.getSQLState() + ", Error Code: " + ex.getErrorCode() + "]");
+      sb.append(System.lineSeparator());
+    }
+
+    if (console) System.err.print(sb);
+
+    RollingFile rf = file;
+    if (rf != null) rf.write(stamp.format(new Date(record.time)) + " [" + record.thread + "] ", sb);
+  }
+
+  // "       MESSAGE | addContact() : successfully added contact"
+  private static void line (StringBuilder sb, String label, String site, String message) {
+    for (int ii = label.length(); ii < 14; ++ii) sb.append(' ');
+    sb.append(label).append(" | ").append(site).append(" : ").append(message)
+      .append(System.lineSeparator());
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  ROTATING LOG FILE
+  //
+  //----------------------------------------------------------------------------
+
+  private static final class RollingFile {
+    private final Path path;
+    private final long maxBytes;
+    private final int  maxFiles;
+
+    private Writer writer;
+    private long   size;
+
+    RollingFile (Path path, long maxBytes, int maxFiles) throws IOException {
+      this.path     = path;
+      this.maxBytes = maxBytes;
+      this.maxFiles = maxFiles;
+      open();
+    }
+
+    private void open() throws IOException {
+      Path parent = path.toAbsolutePath().getParent();
+      if (parent != null) Files.createDirectories(parent);
+      this.size   = Files.exists(path) ? Files.size(path) : 0;
+      this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // prefix every line of `text` with `prefix`
+    synchronized void write (String prefix, CharSequence text) {
+      if (writer == null) return;
+      try {
+        int start = 0;
+        for (int ii = 0; ii < text.length(); ++ii) {
+          if (text.charAt(ii) != '\n') continue;
+          if (ii > start && text.charAt(start) != '\r') {
+            writer.append(prefix).append(text, start, ii + 1);
+            size += prefix.length() + ii + 1 - start;
+          }
+          start = ii + 1;
+        }
+        if (size >= maxBytes) rotate();
+
+      } catch (IOException ex) {
+        System.err.println("Log : could not write to log file: " + ex.getMessage());
+        writer = null;
+      }
+    }
+
+    // path.(n-1) -> path.n, ..., path -> path.1
+    private void rotate() throws IOException {
+      writer.close();
+      String name = path.getFileName().toString();
+
+      if (maxFiles < 1) Files.deleteIfExists(path);
+      else {
+        Files.deleteIfExists(path.resolveSibling(name + "." + maxFiles));
+        for (int ii = maxFiles - 1; ii >= 1; --ii) {
+          Path from = path.resolveSibling(name + "." + ii);
+          if (Files.exists(from))
+            Files.move(from, path.resolveSibling(name + "." + (ii + 1)), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(path, path.resolveSibling(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+      }
+
+      open();
+    }
+
+    synchronized void flush() {
+      try { if (writer != null) writer.flush(); }
+      catch (IOException ex) { writer = null; }
+    }
+
+    synchronized void close() {
+      try { if (writer != null) writer.close(); }
+      catch (IOException ex) { /* nothing more can be done */ }
+      writer = null;
+    }
+  }
+
+}
@@ -1,18 +1,27 @@
 package watson;
 
-import org.controlsfx.control.table.TableFilter;
+import org.controlsfx.control.textfield.AutoCompletionBinding;
+import org.controlsfx.control.textfield.TextFields;
 
 import java.awt.Desktop;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
@@ -22,11 +31,14 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.SelectionMode;
+import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
@@ -105,6 +117,8 @@ public class MasterController {
     *
     **/
   protected static boolean refreshApp (String fxml, String title) {
+    Events.Op ev = Events.table("refreshApp()", fxml);
+
     try {
       scene = new Scene(FXMLLoader.load(MasterController.class.getClassLoader().getResource(fxml)), 800, 450);
       if (title != null) stage.setTitle(title);
@@ -116,6 +130,9 @@ public class MasterController {
       IOUtils.printError("refreshApp()", "IOException while attempting to refresh app");
       ex.printStackTrace();
       return false;
+
+    } finally {
+      ev.close();
     }
   }
 
@@ -421,36 +438,140 @@ public class MasterController {
 
   @FXML
   protected void displayTable (String tableName, double columnWidth, boolean firstTime) {
+    try (Events.Op ev = Events.table("displayTable()", tableName)) {
+
+      // stream the table into a compact, column-oriented model
+      ColumnarTable rows = new ColumnarTable();
+      db.table(tableName, rows::append);
+      displayRows(tableName, rows, columnWidth, firstTime);
+
+      ev.rows(rows.size()).columns(rows.names().size());
+    }
+  }
 
-    // convert table to FX-formatted table
-    List<List<String>> TABLE = db.table(tableName);
-
-    // loop over table rows
-    TableColumn<ObservableList<String>, String> column;
-    for (int rr = 0; rr < TABLE.size(); ++rr) {
-      List<String> row = TABLE.get(rr);
-
-      // add column headers to table
-      if (rr == 0) { if(firstTime) {
-          for (int cc = 0; cc < row.size(); ++cc) {
-            final int ff = cc;
-            column = new TableColumn<>(row.get(cc));
-            column.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().get(ff)));
-            column.setPrefWidth(columnWidth);
-            table.getColumns().add(column);
-
-      } } } else { // add all other rows of data
-        ObservableList<String> tableRow = FXCollections.observableArrayList();
-        tableRow.clear();
-        for (String cell : row) tableRow.add(cell);
-        data.add(tableRow);
+  /**
+    * Displays the given rows in the main table on the page.
+    *
+    * <p>The rows are kept column by column (see {@link ColumnarTable}), and
+    * the table only asks for views of the rows it shows, so even very large
+    * tables cost little more memory than their distinct values.</p>
+    *
+    * <p>Columns of names, phone numbers, and groups can be filtered from
+    * their context menus, which offer the most common values in the column
+    * (see {@link Database#facets Database.facets()}). These are counted by
+    * the database when a menu is opened, so loading a table doesn't require
+    * the distinct values of every column to be found.</p>
+    *
+    * @param tableName name of the table from which {@code rows} were read,
+    * for the column filters
+    * @param rows rows to display, with their column names
+    * @param columnWidth preferred width of each column
+    * @param firstTime if {@code true}, the columns are created from the
+    * column names of {@code rows}
+    *
+    **/
+  protected void displayRows (String tableName, ColumnarTable rows, double columnWidth, boolean firstTime) {
+    rows.trim();
+
+    // add column headers to table
+    if (firstTime) {
+      TableColumn<ObservableList<String>, String> column;
+      for (int cc = 0; cc < rows.names().size(); ++cc) {
+        final int ff = cc;
+        column = new TableColumn<>(rows.names().get(cc));
+        column.setCellValueFactory(param -> new ReadOnlyObjectWrapper<>(param.getValue().get(ff)));
+        column.setPrefWidth(columnWidth);
+        table.getColumns().add(column);
     } }
 
-    table.setItems(data);
+    data = rows;
     table.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
-    TableFilter tf = TableFilter.forTableView(table).apply();
+    // filter, then sort, without changing the rows themselves
+    filtered = new FilteredList<>(rows);
+    filters.clear();
+    SortedList<ObservableList<String>> sorted = new SortedList<>(filtered);
+    sorted.comparatorProperty().bind(table.comparatorProperty());
+    table.setItems(sorted);
+
+    for (int cc = 0; cc < table.getColumns().size(); ++cc)
+      facetMenu(tableName, table.getColumns().get(cc), cc);
+  }
+
+  // most values to offer in a column's filter menu
+  private static final int FACETS = 20;
+
+  // the displayed rows, and the value each filtered column must have
+  private FilteredList<ObservableList<String>> filtered;
+  private final Map<Integer, Predicate<String>> filters = new HashMap<>();
+
+  // gives a column a context menu of its most common values, if it's a
+  // column of names, phone numbers, or groups
+  private void facetMenu (String tableName, TableColumn<ObservableList<String>, ?> column, int cc) {
+    String name = column.getText().replaceFirst(" \\[.*\\]$", "");
+    column.setText(name);
+    column.setContextMenu(null);
+
+    // contacts' GROUPS lists come from the GROUPS table next to CONTACTS
+    String facetTable = tableName, facetColumn = name;
+    if (name.equals("GROUPS") && tableName.toUpperCase().endsWith(".CONTACTS")) {
+      facetTable = tableName.substring(0, tableName.length() - ".CONTACTS".length()) + ".GROUPS";
+      facetColumn = "NAME";
+
+    } else if (!Arrays.asList("FIRSTNAME", "SURNAME", "PHONE", "NAME").contains(name)) return;
+
+    final String TABLE = facetTable, COLUMN = facetColumn;
+    ContextMenu menu = new ContextMenu();
+    column.setContextMenu(menu);
+
+    // counts are only looked up when the menu is opened
+    menu.setOnShowing(e -> {
+      menu.getItems().clear();
+
+      MenuItem all = new MenuItem("Show all");
+      all.setOnAction(a -> { filters.remove(cc); column.setText(name); refilter(); });
+      menu.getItems().addAll(all, new SeparatorMenuItem());
+
+      Map<String, Integer> facets = db.facets(TABLE, COLUMN, FACETS).orElse(Collections.emptyMap());
+      for (Map.Entry<String, Integer> facet : facets.entrySet()) {
+        String value = facet.getKey();
+        MenuItem item = new MenuItem((value == null ? "(none)" : value) + "  (" + facet.getValue() + ")");
+
+        item.setOnAction(a -> {
+          filters.put(cc, facetMatcher(name, value));
+          column.setText(name + " [" + (value == null ? "(none)" : value) + "]");
+          refilter();
+        });
+        menu.getItems().add(item);
+      }
+    });
+  }
+
+  // tests a cell of the named column against a value from its facets
+  private static Predicate<String> facetMatcher (String name, String value) {
+    switch (name) {
+      case "PHONE":
+        return cell -> Objects.equals(PhoneIndex.countryCode(cell), value);
+
+      case "GROUPS":
+        if (value == null) return cell -> cell == null || cell.isEmpty();
+        return cell -> cell != null && Arrays.asList(cell.split(", ")).contains(value);
 
+      default:
+        return cell -> Objects.equals(cell, value);
+    }
+  }
+
+  // shows only the rows which pass every column's filter
+  private void refilter() {
+    if (filters.isEmpty()) { filtered.setPredicate(null); return; }
+
+    Map<Integer, Predicate<String>> active = new HashMap<>(filters);
+    filtered.setPredicate(row -> {
+      for (Map.Entry<Integer, Predicate<String>> f : active.entrySet())
+        if (!f.getValue().test(row.get(f.getKey()))) return false;
+      return true;
+    });
   }
 
   //----------------------------------------------------------------------------
@@ -545,6 +666,11 @@ public class MasterController {
           phone.setText(phoneString); //     == null ? "" : phoneString);
     }
 
+    // suggest names and numbers from existing contacts as the user types
+    autoComplete(firstName, "FIRSTNAME");
+    autoComplete(surName,   "SURNAME");
+    autoComplete(phone,     "PHONE");
+
     // request focus on the first field by default
     Platform.runLater(() -> firstName.requestFocus());
     dialog.showAndWait();
@@ -578,6 +704,26 @@ public class MasterController {
     }
   }
 
+  // most suggestions to show, and how long typing must pause (in ms) before
+  // they're looked up
+  private static final int  SUGGESTIONS = 8;
+  private static final long SUGGESTION_DELAY_MS = 150;
+
+  // suggest completions of `textField` from the values of `field` in the
+  // user's contacts
+  private static void autoComplete (TextField textField, String field) {
+    AutoCompletionBinding<String> binding = TextFields.bindAutoCompletion(textField, request -> {
+      String prefix = request.getUserText().trim();
+      if (request.isCancelled() || prefix.isEmpty()) return Collections.<String>emptyList();
+
+      // suggestions are looked up on a background thread
+      synchronized (db) {
+        return db.completions(field, prefix, SUGGESTIONS).orElse(Collections.emptyList());
+      }
+    });
+    binding.setDelay(SUGGESTION_DELAY_MS);
+  }
+
   @FXML
   private boolean deleteContacts() {
 
@@ -605,9 +751,8 @@ public class MasterController {
     // quietly quit if user closed window or clicked "CANCEL"
     if (alert.getResult() != ButtonType.OK) return false;
 
-    // delete contacts
-    for (String contactID : contactIDs)
-      db.deleteContacts(Integer.parseInt(contactID));
+    // delete contacts (all at once, in a single transaction)
+    db.deleteContacts(contactIDs.stream().mapToInt(Integer::parseInt).toArray());
 
     refreshApp("UserContactsFXML.fxml", "MyContacts :: Contacts");
     return true;
@@ -659,6 +804,9 @@ public class MasterController {
 
     TextField newgroup = new TextField();
 
+    // suggest existing group names, in case the user types one
+    TextFields.bindAutoCompletion(newgroup, groupnames).setDelay(SUGGESTION_DELAY_MS);
+
     vb.getChildren().add(option);
     vb.getChildren().add(newgroup);
 
@@ -673,8 +821,7 @@ public class MasterController {
 
     // add selected users to group
     String group = newgroupname.length() < 1 ? selection.getValue() : newgroupname;
-    for (String contactID : contactIDs)
-      db.addToGroup(group, Integer.parseInt(contactID));
+    db.addToGroup(group, contactIDs.stream().mapToInt(Integer::parseInt).toArray());
 
     // notify user and refresh page
     alert = new Alert(AlertType.CONFIRMATION, contactIDs.size() +
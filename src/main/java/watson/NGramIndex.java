@@ -0,0 +1,207 @@
+package watson;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+  * Trigram (3-gram) inverted index for substring searches over contacts'
+  * fields.
+  *
+  * <p>Every field value is upper-cased and split into its overlapping
+  * three-character substrings, and each trigram maps to a sorted list (a
+  * plain {@code int[]}) of the IDs of the contacts containing it. A query of
+  * three or more characters is answered by intersecting the (shortest first)
+  * lists of its trigrams and checking the few remaining candidates against
+  * the query itself, rather than by scanning every contact the way Derby's
+  * {@code LIKE '%...%'} does. Shorter queries scan the stored values.</p>
+  *
+  * <pre>{@code
+  * jshell> db.searchContacts("neil")
+  * $4 ==> Optional[[1, 2]]
+  * }</pre>
+  *
+  **/
+final class NGramIndex implements ContactIndex {
+
+  // length of each n-gram
+  private static final int N = 3;
+
+  // separates field values in `text`; can't appear in a query, so no match
+  // (or trigram) ever spans two fields
+  private static final char SEPARATOR = '\u0000';
+
+  // trigram (three 16-bit chars, packed into a long) -> contacts containing it
+  private final Map<Long, Postings> postings = new HashMap<>();
+
+  // upper-cased, SEPARATOR-joined field values of each contact, by ID
+  private String[] text = new String[1024];
+  private int count = 0;
+
+  //----------------------------------------------------------------------------
+  //
+  //  ContactIndex
+  //
+  //----------------------------------------------------------------------------
+
+  @Override
+  public void put (int ID, String[] values) {
+    if (ID < 0) return;
+    remove(ID);
+
+    StringBuilder sb = new StringBuilder();
+    for (String value : values) {
+      if (sb.length() > 0) sb.append(SEPARATOR);
+      if (value != null) sb.append(value.toUpperCase(Locale.ROOT));
+    }
+    String s = sb.toString();
+
+    if (ID >= text.length) text = Arrays.copyOf(text, Math.max(ID + 1, text.length * 2));
+    text[ID] = s;
+    ++count;
+
+    for (long gram : grams(s))
+      postings.computeIfAbsent(gram, g -> new Postings()).add(ID);
+  }
+
+  @Override
+  public void remove (int ID) {
+    if (ID < 0 || ID >= text.length || text[ID] == null) return;
+
+    for (long gram : grams(text[ID])) {
+      Postings p = postings.get(gram);
+      if (p == null) continue;
+      p.remove(ID);
+      if (p.size == 0) postings.remove(gram);
+    }
+
+    text[ID] = null;
+    --count;
+  }
+
+  @Override
+  public void clear() {
+    postings.clear();
+    text = new String[1024];
+    count = 0;
+  }
+
+  @Override
+  public long bytes() {
+
+    // map entry, Long key, Postings object, and its array
+    long bytes = 16 + 8L * text.length;
+    for (Postings p : postings.values()) bytes += 48 + 24 + p.bytes();
+    for (String s : text) if (s != null) bytes += ContactIndex.stringBytes(s);
+    return bytes;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  SEARCHING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns the IDs, in ascending order, of all indexed contacts with a field
+    * containing {@code query} (ignoring case).
+    *
+    * @param query text to search for; must not be empty
+    *
+    * @return IDs of the matching contacts
+    *
+    **/
+  int[] search (String query) {
+    String q = query.toUpperCase(Locale.ROOT);
+    if (q.indexOf(SEPARATOR) >= 0) return new int[0];
+
+    // too short to have any n-grams: check every contact
+    if (q.length() < N) {
+      int[] found = new int[count];
+      int size = 0;
+      for (int ID = 0; ID < text.length; ++ID)
+        if (text[ID] != null && text[ID].contains(q)) found[size++] = ID;
+      return Arrays.copyOf(found, size);
+    }
+
+    // fetch the posting list of every trigram in the query; if any trigram
+    // isn't indexed, nothing can match
+    long[] grams = grams(q);
+    Postings[] lists = new Postings[grams.length];
+    for (int ii = 0; ii < grams.length; ++ii) {
+      lists[ii] = postings.get(grams[ii]);
+      if (lists[ii] == null) return new int[0];
+    }
+
+    // intersect, starting with the shortest list, so the candidate set only
+    // shrinks from there
+    Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+    int[] candidates = Arrays.copyOf(lists[0].IDs, lists[0].size);
+    int size = candidates.length;
+
+    for (int ll = 1; ll < lists.length && size > 0; ++ll)
+      size = intersect(candidates, size, lists[ll]);
+
+    // all of the query's trigrams appearing in a contact doesn't mean the
+    // query does (in that order), so check each remaining candidate
+    int matched = 0;
+    for (int ii = 0; ii < size; ++ii)
+      if (text[candidates[ii]].contains(q)) candidates[matched++] = candidates[ii];
+
+    return Arrays.copyOf(candidates, matched);
+  }
+
+  /**
+    * Returns the number of contacts in this index.
+    *
+    * @return the number of indexed contacts
+    *
+    **/
+  int size() {
+    return count;
+  }
+
+  // keep only those of the first `size` IDs in `candidates` which are also in
+  // `list` (both sorted); returns the new size
+  private static int intersect (int[] candidates, int size, Postings list) {
+    int kept = 0, at = 0;
+
+    for (int ii = 0; ii < size; ++ii) {
+      int ID = candidates[ii];
+
+      // gallop ahead in `list`, which is usually much longer than `candidates`
+      int step = 1, hi = at;
+      while (hi < list.size && list.IDs[hi] < ID) { at = hi; hi += step; step <<= 1; }
+      at = Arrays.binarySearch(list.IDs, at, Math.min(hi + 1, list.size), ID);
+
+      if (at >= 0) candidates[kept++] = ID;
+      else at = -(at + 1);
+      if (at >= list.size) break;
+    }
+    return kept;
+  }
+
+  // the distinct trigrams of `s` which don't span a SEPARATOR, sorted
+  private static long[] grams (String s) {
+    int n = s.length() - N + 1;
+    if (n < 1) return new long[0];
+
+    long[] grams = new long[n];
+    int size = 0;
+
+    for (int ii = 0; ii < n; ++ii) {
+      char a = s.charAt(ii), b = s.charAt(ii + 1), c = s.charAt(ii + 2);
+      if (a == SEPARATOR || b == SEPARATOR || c == SEPARATOR) continue;
+      grams[size++] = ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    Arrays.sort(grams, 0, size);
+    int distinct = 0;
+    for (int ii = 0; ii < size; ++ii)
+      if (distinct == 0 || grams[distinct - 1] != grams[ii]) grams[distinct++] = grams[ii];
+
+    return Arrays.copyOf(grams, distinct);
+  }
+
+}
@@ -0,0 +1,200 @@
+package watson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+  * Phonetic index for fuzzy searches on contacts' names.
+  *
+  * <p>Every word of a contact's {@code FIRSTNAME} and {@code SURNAME} is
+  * filed under two phonetic keys -- its {@link Phonetic#soundex Soundex} code
+  * and its {@link Phonetic#metaphone Metaphone} key -- each of which maps to a
+  * sorted list of the IDs of the contacts with a word having that key. To
+  * search for a name, the lists of each of its words' keys are merged (giving
+  * the contacts with a word which sounds like it), the results for all of its
+  * words are intersected, and only the few remaining candidates are compared
+  * with the query, by {@link Phonetic#distance bounded edit distance}.</p>
+  *
+  * <pre>{@code
+  * jshell> db.searchNames("jon obrian")
+  * $6 ==> Optional[[4, 9]]
+  * }</pre>
+  *
+  **/
+final class NameIndex implements ContactIndex {
+
+  // positions of the name fields in the values passed to put()
+  private final int[] fields;
+
+  // "S" + Soundex code, or "M" + Metaphone key -> contacts with a word having it
+  private final Map<String, Postings> postings = new HashMap<>();
+
+  // words of each contact's names (see Phonetic.tokens()), by ID
+  private String[][] words = new String[1024][];
+
+  /**
+    * Creates an empty {@link NameIndex} over the given fields.
+    *
+    * @param fields positions of the name fields in the values passed to
+    * {@link put put()}
+    *
+    **/
+  NameIndex (int... fields) {
+    this.fields = fields.clone();
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  ContactIndex
+  //
+  //----------------------------------------------------------------------------
+
+  @Override
+  public void put (int ID, String[] values) {
+    if (ID < 0) return;
+    remove(ID);
+
+    List<String> tokens = new ArrayList<>();
+    for (int field : fields)
+      if (values[field] != null) tokens.addAll(Phonetic.tokens(values[field]));
+    if (tokens.isEmpty()) return;
+
+    if (ID >= words.length) words = Arrays.copyOf(words, Math.max(ID + 1, words.length * 2));
+    words[ID] = tokens.toArray(new String[0]);
+
+    for (String token : words[ID])
+      for (String key : keys(token))
+        postings.computeIfAbsent(key, k -> new Postings()).add(ID);
+  }
+
+  @Override
+  public void remove (int ID) {
+    if (ID < 0 || ID >= words.length || words[ID] == null) return;
+
+    for (String token : words[ID])
+      for (String key : keys(token)) {
+        Postings p = postings.get(key);
+        if (p == null) continue;
+        p.remove(ID);
+        if (p.size == 0) postings.remove(key);
+      }
+
+    words[ID] = null;
+  }
+
+  @Override
+  public void clear() {
+    postings.clear();
+    words = new String[1024][];
+  }
+
+  @Override
+  public long bytes() {
+
+    // map entry, String key, Postings object, and its array
+    long bytes = 16 + 8L * words.length;
+    for (Map.Entry<String, Postings> e : postings.entrySet())
+      bytes += 48 + ContactIndex.stringBytes(e.getKey()) + e.getValue().bytes();
+    for (String[] w : words) {
+      if (w == null) continue;
+      bytes += 16 + 8L * w.length;
+      for (String token : w) bytes += ContactIndex.stringBytes(token);
+    }
+    return bytes;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  SEARCHING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns the IDs of all indexed contacts for which every word of
+    * {@code name} is {@link Phonetic#similar similar} to a word of the
+    * contact's names, closest matches (by total edit distance) first, and in
+    * ascending order among equally close matches.
+    *
+    * @param name name to search for
+    *
+    * @return IDs of the matching contacts
+    *
+    **/
+  int[] search (String name) {
+    List<String> queries = Phonetic.tokens(name);
+    if (queries.isEmpty()) return new int[0];
+
+    // contacts with a word which sounds like each query word, intersected
+    int[] candidates = null;
+    for (String q : queries) {
+      int[] alike = alike(q);
+      candidates = candidates == null ? alike : intersect(candidates, alike);
+      if (candidates.length == 0) return candidates;
+    }
+
+    // then keep only those close enough, ranked by distance
+    long[] ranked = new long[candidates.length];
+    int size = 0;
+
+    for (int ID : candidates) {
+      int total = 0;
+      for (String q : queries) {
+        int best = -1;
+        for (String token : words[ID]) {
+          int d = Phonetic.similar(token, q);
+          if (d >= 0 && (best < 0 || d < best)) best = d;
+        }
+        if (best < 0) { total = -1; break; }
+        total += best;
+      }
+      if (total >= 0) ranked[size++] = ((long) total << 32) | ID;
+    }
+
+    Arrays.sort(ranked, 0, size);
+    int[] found = new int[size];
+    for (int ii = 0; ii < size; ++ii) found[ii] = (int) ranked[ii];
+    return found;
+  }
+
+  // the sorted IDs of contacts with a word sharing a phonetic key with `token`
+  private int[] alike (String token) {
+    String[] keys = keys(token);
+    Postings a = postings.get(keys[0]), b = postings.get(keys[1]);
+    if (a == null && b == null) return new int[0];
+    if (a == null) return Arrays.copyOf(b.IDs, b.size);
+    if (b == null) return Arrays.copyOf(a.IDs, a.size);
+
+    // merge the two sorted lists
+    int[] union = new int[a.size + b.size];
+    int ii = 0, jj = 0, size = 0;
+    while (ii < a.size || jj < b.size) {
+      int next;
+      if (jj >= b.size || (ii < a.size && a.IDs[ii] < b.IDs[jj])) next = a.IDs[ii++];
+      else if (ii >= a.size || b.IDs[jj] < a.IDs[ii]) next = b.IDs[jj++];
+      else { next = a.IDs[ii++]; ++jj; }
+      union[size++] = next;
+    }
+    return Arrays.copyOf(union, size);
+  }
+
+  // the IDs in both (sorted) arrays
+  private static int[] intersect (int[] a, int[] b) {
+    int[] both = new int[Math.min(a.length, b.length)];
+    int ii = 0, jj = 0, size = 0;
+    while (ii < a.length && jj < b.length) {
+      if (a[ii] < b[jj]) ++ii;
+      else if (a[ii] > b[jj]) ++jj;
+      else { both[size++] = a[ii]; ++ii; ++jj; }
+    }
+    return Arrays.copyOf(both, size);
+  }
+
+  // the phonetic keys of a word
+  private static String[] keys (String token) {
+    return new String[] { "S" + Phonetic.soundex(token), "M" + Phonetic.metaphone(token) };
+  }
+
+}
@@ -0,0 +1,360 @@
+package watson;
+
+import java.io.IOException;
+
+import java.net.InetAddress;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.sql.Driver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.derby.drda.NetworkServerControl;
+import org.apache.derby.jdbc.ClientDriver;
+import org.apache.derby.jdbc.EmbeddedDriver;
+
+/**
+  * Chooses how {@link Database} opens databases: in this JVM (the default),
+  * or through a Derby Network Server on {@code localhost}.
+  *
+  * <p>An embedded database can only be opened by the JVM which boots it, so
+  * only one instance of the app (or {@link Cli} or {@link ApiServer}) can
+  * use a database at a time. Once {@link attach attached} to a network
+  * server, every connection is made through Derby's client driver instead,
+  * and any number of instances, each attached to the same server, can share
+  * a database:</p>
+  *
+  * <pre>{@code
+  * jshell> NetworkServer.attach(NetworkServer.DEFAULT_PORT)
+  *        MESSAGE | attach() : started network server on localhost:1527
+  * $1 ==> true
+  *
+  * jshell> Database db = Database.connect("example", "bootpass", "owner", "ownerpass").get()
+  *        MESSAGE | connect() : database successfully initialised
+  * }</pre>
+  *
+  * <p>If no server is answering on the port, one is started in this JVM,
+  * listening only on the loopback interface; it stops when this JVM exits,
+  * cutting off any other instances attached to it. For a server which
+  * outlives the instances using it, run one on its own with the
+  * {@code dbserver} script (see {@link main main()}). Database names are
+  * relative to the directory of whichever JVM runs the server.</p>
+  *
+  * <p>Each statement run through the client driver is a round trip to the
+  * server, so {@link Database} methods which change many rows send them as
+  * batches, and {@link ApiServer} keeps its sessions open between requests
+  * (see {@link ConnectionPool}).</p>
+  *
+  **/
+public final class NetworkServer {
+
+  // private constructor for utility class
+  private NetworkServer() { }
+
+  /** Port on which Derby's Network Server listens, by default. **/
+  public static final int DEFAULT_PORT = 1527;
+
+  /** Longest time (in seconds) to wait for a new server to answer. **/
+  static final long START_SECONDS = 10;
+
+  private static final String USAGE = String.join("\n",
+    "usage: dbserver [--port <port>]",
+    "",
+    "serves the databases in this directory to instances started with --network");
+
+  // port of the attached server, or 0 when databases are opened in this JVM
+  private static int port = 0;
+
+  // the server, if it was started by this JVM
+  private static NetworkServerControl control = null;
+
+  // the port's lock file, held while this JVM's server runs
+  private static FileChannel lock = null;
+
+  //----------------------------------------------------------------------------
+  //
+  //  ATTACHING AND DETACHING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Makes every new {@link Database} connection go through the network
+    * server on the given {@code localhost} port, starting the server (in this
+    * JVM) if none is answering there.
+    *
+    * <p>Connections which are already open are unaffected, so this should be
+    * called before connecting.</p>
+    *
+    * @param port port on which the server listens
+    *
+    * @return {@code true} if a server is now attached on that port
+    *
+    **/
+  public static synchronized boolean attach (int port) {
+    String opName = "attach()";
+
+    if (NetworkServer.port == port) return true;
+
+    if (NetworkServer.port != 0 || Database.name() != null) {
+      IOUtils.printError(opName, "detach from the network server and disconnect from the database first");
+      return false;
+    }
+
+    if (port < 1 || port > 65535) {
+      IOUtils.printError(opName, "invalid port " + port);
+      return false;
+    }
+
+    NetworkServerControl server;
+    try {
+      server = new NetworkServerControl(InetAddress.getLoopbackAddress(), port);
+    } catch (Exception ex) {
+      IOUtils.printError(opName, "could not create network server control: " + ex.getMessage());
+      return false;
+    }
+
+    // another instance (or the dbserver script) may already be serving
+    if (ping(server)) return attached(opName, port, "attached to");
+
+    // only the instance holding this port's lock file starts a server, so two
+    // instances starting at once don't both try (the loser's server would
+    // fail to listen, and its ping be answered by the winner's)
+    FileChannel channel;
+    FileLock held;
+    try {
+      channel = FileChannel.open(Paths.get(System.getProperty("java.io.tmpdir"),
+        "watson-derby-" + port + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      held = channel.tryLock();
+      if (held == null) channel.close();
+
+    } catch (IOException ex) {
+      IOUtils.printError(opName, "could not lock network server port " + port + ": " + ex.getMessage());
+      return false;
+    }
+
+    // another instance is starting a server; wait for it
+    if (held == null) {
+      if (answers(opName, server)) return attached(opName, port, "attached to");
+      return false;
+    }
+
+    // a server started other than by an instance (so without the lock) is used,
+    // but it's not this JVM's to shut down
+    if (ping(server)) {
+      unlock(channel);
+      return attached(opName, port, "attached to");
+    }
+
+    // databases created through this server must enforce their grants (see
+    // Database.getConnection()), whichever instance creates them
+    System.setProperty("derby.database.sqlAuthorization", "true");
+
+    try { // start() returns at once; the server answers once it's listening
+      server.start(null);
+
+    } catch (Exception ex) {
+      IOUtils.printError(opName, "could not start network server: " + ex.getMessage());
+      unlock(channel);
+      return false;
+    }
+
+    if (!answers(opName, server)) {
+      unlock(channel);
+      return false;
+    }
+
+    control = server;
+    lock = channel;
+    attached(opName, port, "started");
+
+    // so the databases it has open are shut down cleanly when this JVM exits
+    Runtime.getRuntime().addShutdownHook(new Thread(NetworkServer::detach));
+    return true;
+  }
+
+  /**
+    * Goes back to opening databases in this JVM. If this JVM started the
+    * attached server, it's shut down, which disconnects any other instances
+    * using it.
+    *
+    * <p>Should be called after {@link Database#disconnect disconnecting}.</p>
+    *
+    **/
+  public static synchronized void detach() {
+    if (control != null) try {
+      control.shutdown();
+      IOUtils.printMessage("detach()", "shut down network server on localhost:" + port);
+
+    } catch (Exception ex) {
+      IOUtils.printWarning("detach()", "could not shut down network server: " + ex.getMessage());
+    }
+
+    if (lock != null) unlock(lock);
+
+    control = null;
+    lock = null;
+    port = 0;
+  }
+
+  /**
+    * Returns {@code true} if connections are made through a network server.
+    *
+    * @return {@code true} if a network server is {@link attach attached}
+    *
+    **/
+  public static synchronized boolean attached() { return port != 0; }
+
+  /**
+    * Removes a {@code --network [port]} option from a front end's command-line
+    * arguments, if it's there, and {@link attach attaches} to the server on
+    * that port (or {@link DEFAULT_PORT}).
+    *
+    * @param args the arguments; the option is removed from them
+    *
+    * @return {@code false} if the option was given, but the server couldn't
+    * be attached
+    *
+    **/
+  static boolean option (List<String> args) {
+    int at = args.indexOf("--network");
+    if (at < 0) return true;
+
+    int port = DEFAULT_PORT;
+    if (at + 1 < args.size() && args.get(at + 1).matches("\\d{1,5}")) {
+      port = Integer.parseInt(args.get(at + 1));
+      args.remove(at + 1);
+    }
+    args.remove(at);
+
+    return attach(port);
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  CONNECTION URLS
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns the start of a {@code jdbc:derby} URL for the given database:
+    * {@code jdbc:derby://localhost:<port>/<dbName>} when {@link attach
+    * attached} to a network server, and {@code jdbc:derby:<dbName>}
+    * otherwise. Attributes ({@code ;user=...} and so on) follow it.
+    *
+    * @param dbName name of the database
+    *
+    * @return the URL of the database, without attributes
+    *
+    **/
+  static synchronized String url (String dbName) {
+    return port == 0 ? "jdbc:derby:" + dbName : "jdbc:derby://localhost:" + port + "/" + dbName;
+  }
+
+  /**
+    * Returns the JDBC driver for the URLs returned by {@link url url()}:
+    * Derby's client driver when {@link attach attached} to a network server,
+    * and its embedded driver otherwise.
+    *
+    * @return a new instance of the driver
+    *
+    **/
+  static synchronized Driver driver() {
+    return port == 0 ? new EmbeddedDriver() : new ClientDriver();
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  STANDALONE SERVER
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Runs a network server, serving the databases in the current directory,
+    * until the JVM is stopped. Instances started with {@code --network}
+    * attach to it:
+    *
+    * <pre>{@code
+    * $ ./dbserver
+    * $ ./run --network
+    * $ ./cli example jeff stats --network
+    * $ ./server example --network
+    * }</pre>
+    *
+    * @param args {@code --port <port>}, optionally
+    *
+    **/
+  public static void main (String[] args) {
+    List<String> rest = new ArrayList<>(Arrays.asList(args));
+    int port = DEFAULT_PORT;
+
+    try {
+      for (int at; (at = rest.indexOf("--port")) >= 0; rest.subList(at, at + 2).clear())
+        port = Integer.parseInt(rest.get(at + 1));
+    } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+      rest.add("--port");
+    }
+
+    if (!rest.isEmpty()) {
+      System.err.println(USAGE);
+      System.exit(2);
+    }
+
+    if (!attach(port) || control == null) {
+      if (control == null && attached()) IOUtils.printError("main()", "a server is already listening on port " + port);
+      Log.flush();
+      System.exit(1);
+    }
+
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> { detach(); Log.flush(); }));
+
+    // hold the JVM open until it's stopped
+    try { new CountDownLatch(1).await(); } catch (InterruptedException ex) { }
+  }
+
+  // records that connections now go through the server on `port`; returns true
+  private static boolean attached (String opName, int port, String how) {
+    NetworkServer.port = port;
+    IOUtils.printMessage(opName, how + " network server on localhost:" + port);
+    return true;
+  }
+
+  // waits (for up to START_SECONDS) for a server to answer on the control's port
+  private static boolean answers (String opName, NetworkServerControl server) {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(START_SECONDS);
+
+    while (!ping(server)) {
+      if (System.nanoTime() - deadline > 0) {
+        IOUtils.printError(opName, "no network server answered on localhost within " +
+          START_SECONDS + " s (see derby.log)");
+        return false;
+      }
+      try { Thread.sleep(50); } catch (InterruptedException ex) { Thread.currentThread().interrupt(); return false; }
+    }
+
+    return true;
+  }
+
+  // releases a port's lock file (closing the channel releases the lock)
+  private static void unlock (FileChannel channel) {
+    try { channel.close(); } catch (IOException ex) { }
+  }
+
+  // true if a server answers on the control's port
+  private static boolean ping (NetworkServerControl server) {
+    try {
+      server.ping();
+      return true;
+    } catch (Exception ex) {
+      return false;
+    }
+  }
+
+}
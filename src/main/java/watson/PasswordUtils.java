@@ -161,6 +161,8 @@ public final class PasswordUtils {
     // generateSecret() returns an opaque SecretKey object, which contains no
     // underlying "raw key material" -- just the cryptographic key
 
+    Events.Op ev = Events.hash(ALGORITHM, ITERATIONS, KEY_LENGTH);
+
     try {
       SecretKeyFactory fac = SecretKeyFactory.getInstance(ALGORITHM);
       byte[] securePassword = fac.generateSecret(spec).getEncoded();
@@ -182,6 +184,7 @@ public final class PasswordUtils {
       //  always cleared from `spec`, unless JVM crashes / exits in try{} block
 
       spec.clearPassword();
+      ev.close();
     }
   }
 
@@ -0,0 +1,483 @@
+package watson;
+
+import java.util.Arrays;
+
+/**
+  * Reverse (caller-ID style) lookup index for contacts' phone numbers.
+  *
+  * <p>Every number is reduced to a canonical key -- its digits, without the
+  * {@code +} or any leading zeros (international or trunk prefixes), as a
+  * {@code long} -- so {@code "+353445671234"}, {@code "00353445671234"}, and
+  * {@code "0445671234"} become {@code 353445671234} and {@code 445671234}.
+  * Keys are stored in a trie on their digits read <em>backwards</em>, so
+  * numbers with the same last digits share a path, whatever country code
+  * they do or don't have.</p>
+  *
+  * <p>The trie is a burst trie: a node holds a small, unsorted bucket of
+  * entries until it has more than sixteen, and is then split into ten
+  * children, by the next digit. A lookup visits at most one node per digit of
+  * the number being looked up, so it costs {@code O(length)} (plus the number
+  * of matches), however many numbers are indexed.</p>
+  *
+  * <p>Entries are {@code long} references: for the index of a single user's
+  * contacts (a {@link ContactIndex}), the contact's ID; for an index of all
+  * users' contacts, {@code (user << 32) | ID}, with {@code user} an index into
+  * a list of users kept by the caller.</p>
+  *
+  **/
+final class PhoneIndex implements ContactIndex {
+
+  /**
+    * Fewest digits two numbers must share (at the end) for one to be matched
+    * by {@link lookup lookup()} as the other, with or without a country or
+    * area code.
+    **/
+  static final int MIN_DIGITS = 7;
+
+  // most entries in a node before it's split into children
+  private static final int BUCKET = 16;
+
+  // most digits in a key (a long holds any 18-digit number)
+  private static final int MAX_DIGITS = 18;
+
+  private static final long[] POW10 = new long[MAX_DIGITS + 1];
+  static {
+    POW10[0] = 1;
+    for (int ii = 1; ii <= MAX_DIGITS; ++ii) POW10[ii] = POW10[ii - 1] * 10;
+  }
+
+  // a node of the trie; before it's split (children == null), its entries
+  // are all those below it; after, only those which end exactly at it
+  private static final class Node {
+    Node[] children = null;
+    long[] keys = new long[2];
+    long[] refs = new long[2];
+    int size = 0;
+
+    void add (long key, long ref) {
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+        refs = Arrays.copyOf(refs, size * 2);
+      }
+      keys[size] = key;
+      refs[size] = ref;
+      ++size;
+    }
+
+    boolean remove (long key, long ref) {
+      for (int ii = 0; ii < size; ++ii)
+        if (refs[ii] == ref && keys[ii] == key) {
+          --size;
+          keys[ii] = keys[size];
+          refs[ii] = refs[size];
+          return true;
+        }
+      return false;
+    }
+  }
+
+  // position of the phone number in the values passed to put(), or -1 if
+  // this index isn't a ContactIndex
+  private final int field;
+
+  private Node root = new Node();
+  private int count = 0;
+
+  // each contact's key, by ID (0 if the contact has no number); only kept
+  // when this is a ContactIndex
+  private long[] keyByID = new long[1024];
+
+  /**
+    * Creates an empty {@link PhoneIndex}.
+    *
+    * @param field position of the phone number in the values passed to
+    * {@link put put()}, or {@code -1} if this index is filled with
+    * {@link add add()}, and not kept up to date as a {@link ContactIndex}
+    *
+    **/
+  PhoneIndex (int field) {
+    this.field = field;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  ContactIndex
+  //
+  //----------------------------------------------------------------------------
+
+  @Override
+  public void put (int ID, String[] values) {
+    if (ID < 0) return;
+    remove(ID);
+
+    long key = key(values[field]);
+    if (key < 0) return;
+
+    if (ID >= keyByID.length) keyByID = Arrays.copyOf(keyByID, Math.max(ID + 1, keyByID.length * 2));
+    keyByID[ID] = key;
+    insert(key, ID);
+  }
+
+  @Override
+  public void remove (int ID) {
+    if (ID < 0 || ID >= keyByID.length || keyByID[ID] == 0) return;
+
+    long key = keyByID[ID];
+    keyByID[ID] = 0;
+
+    // follow the path the entry was inserted along
+    Node node = root;
+    int length = digits(key);
+    for (int depth = 0; node.children != null && depth < length; ++depth) {
+      node = node.children[digit(key, depth)];
+      if (node == null) return;
+    }
+
+    if (node.remove(key, ID)) --count;
+  }
+
+  @Override
+  public void clear() {
+    root = new Node();
+    count = 0;
+    keyByID = new long[1024];
+  }
+
+  @Override
+  public long bytes() {
+    return 16 + 8L * keyByID.length + bytes(root);
+  }
+
+  private static long bytes (Node node) {
+    long bytes = 32 + 2 * (16 + 8L * node.keys.length);
+    if (node.children != null) {
+      bytes += 16 + 8 * 10;
+      for (Node child : node.children) if (child != null) bytes += bytes(child);
+    }
+    return bytes;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  ADDING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Adds the given phone number to this index, with the given reference.
+    *
+    * @param phone phone number
+    * @param ref reference to return when {@code phone} is found
+    *
+    **/
+  void add (String phone, long ref) {
+    long key = key(phone);
+    if (key >= 0) insert(key, ref);
+  }
+
+  /**
+    * Returns the number of phone numbers in this index.
+    *
+    * @return the number of indexed phone numbers
+    *
+    **/
+  int size() {
+    return count;
+  }
+
+  /**
+    * Removes every reference to the given user from this index of all users'
+    * contacts (see {@link PhoneIndex}), so that user's numbers can be
+    * {@link add added} again.
+    *
+    * @param user index of the user in the caller's list of users
+    *
+    **/
+  void removeUser (int user) {
+    count -= removeUser(root, user);
+  }
+
+  // removes the references to `user` at or below `node`; returns how many
+  private static int removeUser (Node node, int user) {
+    if (node == null) return 0;
+    int removed = 0;
+
+    for (int ii = 0; ii < node.size; )
+      if ((int) (node.refs[ii] >>> 32) == user) {
+        --node.size;
+        node.keys[ii] = node.keys[node.size];
+        node.refs[ii] = node.refs[node.size];
+        ++removed;
+      } else ++ii;
+
+    if (node.children != null) for (Node child : node.children) removed += removeUser(child, user);
+    return removed;
+  }
+
+  private void insert (long key, long ref) {
+    int length = digits(key);
+
+    Node node = root;
+    int depth = 0;
+    while (node.children != null && depth < length) {
+      int digit = digit(key, depth++);
+      if (node.children[digit] == null) node.children[digit] = new Node();
+      node = node.children[digit];
+    }
+
+    node.add(key, ref);
+    ++count;
+    if (node.children == null && node.size > BUCKET) split(node, depth);
+  }
+
+  // move the entries of `node` (at `depth`) which don't end there into ten
+  // new children, by their next digit
+  private static void split (Node node, int depth) {
+    if (depth >= MAX_DIGITS) return;
+
+    Node[] children = new Node[10];
+    int kept = 0;
+
+    for (int ii = 0; ii < node.size; ++ii) {
+      long key = node.keys[ii];
+
+      if (digits(key) == depth) {
+        node.keys[kept] = key;
+        node.refs[kept] = node.refs[ii];
+        ++kept;
+        continue;
+      }
+
+      int digit = digit(key, depth);
+      if (children[digit] == null) children[digit] = new Node();
+      children[digit].add(key, node.refs[ii]);
+    }
+
+    node.size = kept;
+    node.children = children;
+
+    for (Node child : children)
+      if (child != null && child.size > BUCKET) split(child, depth + 1);
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  LOOKING UP
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns the references of all numbers which are the given number.
+    * Numbers match if they're the same, or if one ends with the other and
+    * the shorter has at least {@value MIN_DIGITS} digits (so a number with a
+    * country code matches the same number without one).
+    *
+    * @param phone phone number to look up
+    *
+    * @return references of the matching numbers, in ascending order
+    *
+    **/
+  long[] lookup (String phone) {
+    long key = key(phone);
+    if (key < 0) return new long[0];
+
+    int length = digits(key);
+    Refs found = new Refs();
+
+    Node node = root;
+    for (int depth = 0; ; ++depth) {
+
+      // an unsplit node: check each of its entries
+      if (node.children == null) {
+        for (int ii = 0; ii < node.size; ++ii) {
+          long k = node.keys[ii];
+          int kLength = digits(k);
+
+          if (k == key
+              || (length >= MIN_DIGITS && kLength > length && k % POW10[length] == key)
+              || (kLength >= MIN_DIGITS && kLength < length && key % POW10[kLength] == k))
+            found.add(node.refs[ii]);
+        }
+        break;
+      }
+
+      // a split node's entries are the last `depth` digits of `key`
+      if (depth == length || depth >= MIN_DIGITS)
+        for (int ii = 0; ii < node.size; ++ii) found.add(node.refs[ii]);
+
+      // every number below the end of `key` ends with it
+      if (depth == length) {
+        if (length >= MIN_DIGITS) for (Node child : node.children) collect(child, found);
+        break;
+      }
+
+      node = node.children[digit(key, depth)];
+      if (node == null) break;
+    }
+
+    return found.sorted();
+  }
+
+  /**
+    * Returns the references of all numbers which end with the given digits.
+    *
+    * @param digits last digits of the numbers to find (leading zeros count)
+    *
+    * @return references of the matching numbers, in ascending order
+    *
+    **/
+  long[] endingWith (String digits) {
+    int length = digits.length();
+    if (length < 1 || length > MAX_DIGITS) return new long[0];
+    long suffix = Long.parseLong(digits);
+
+    Refs found = new Refs();
+
+    Node node = root;
+    for (int depth = 0; ; ++depth) {
+
+      if (node.children == null) {
+        for (int ii = 0; ii < node.size; ++ii)
+          if (digits(node.keys[ii]) >= length && node.keys[ii] % POW10[length] == suffix)
+            found.add(node.refs[ii]);
+        break;
+      }
+
+      if (depth == length) {
+        collect(node, found);
+        break;
+      }
+
+      node = node.children[digit(suffix, depth)];
+      if (node == null) break;
+    }
+
+    return found.sorted();
+  }
+
+  // every entry at or below `node`
+  private static void collect (Node node, Refs found) {
+    if (node == null) return;
+    for (int ii = 0; ii < node.size; ++ii) found.add(node.refs[ii]);
+    if (node.children != null) for (Node child : node.children) collect(child, found);
+  }
+
+  // a growable list of references
+  private static final class Refs {
+    long[] refs = new long[8];
+    int size = 0;
+
+    void add (long ref) {
+      if (size == refs.length) refs = Arrays.copyOf(refs, size * 2);
+      refs[size++] = ref;
+    }
+
+    long[] sorted() {
+      long[] sorted = Arrays.copyOf(refs, size);
+      Arrays.sort(sorted);
+      return sorted;
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  KEYS
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns the canonical key of the given phone number: its digits, without
+    * any leading zeros, or {@code -1} if it has no (non-zero) digits or too
+    * many.
+    *
+    * @param phone phone number, e.g. {@code "+353445671234"}
+    *
+    * @return the key of {@code phone}, or {@code -1}
+    *
+    **/
+  static long key (String phone) {
+    if (phone == null) return -1;
+
+    long key = 0;
+    int length = 0;
+
+    for (int ii = 0; ii < phone.length(); ++ii) {
+      char ch = phone.charAt(ii);
+      if (ch < '0' || ch > '9') continue;
+      if (length == 0 && ch == '0') continue;
+      if (++length > MAX_DIGITS) return -1;
+      key = key * 10 + (ch - '0');
+    }
+
+    return length == 0 ? -1 : key;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  COUNTRY CODES
+  //
+  //----------------------------------------------------------------------------
+
+  // the two-digit country calling codes; +1 and +7 are the only one-digit
+  // codes, and all others have three digits (no code is a prefix of another)
+  private static final String TWO_DIGIT_CODES =
+    "20 27 30 31 32 33 34 36 39 40 41 43 44 45 46 47 48 49 51 52 53 54 55 56 " +
+    "57 58 60 61 62 63 64 65 66 81 82 84 86 90 91 92 93 94 95 98";
+
+  /**
+    * Returns the country calling code of an international phone number
+    * (written with a leading {@code +} or {@code 00}), e.g. {@code "+353"}
+    * for {@code "+353445671234"} or {@code "00353445671234"}.
+    *
+    * @param phone phone number
+    *
+    * @return the number's country code, with a {@code +}, or {@code null} if
+    * it's {@code null}, not international, or too short to have one
+    *
+    **/
+  static String countryCode (String phone) {
+    if (phone == null) return null;
+
+    String digits = phone.startsWith("+") ? phone.substring(1) :
+      phone.startsWith("00") ? phone.substring(2) : null;
+    if (digits == null || digits.length() < 4) return null;
+
+    if (digits.charAt(0) == '1' || digits.charAt(0) == '7') return "+" + digits.substring(0, 1);
+    if (TWO_DIGIT_CODES.contains(digits.substring(0, 2))) return "+" + digits.substring(0, 2);
+    return "+" + digits.substring(0, 3);
+  }
+
+  /**
+    * Returns an SQL expression giving the same result as
+    * {@link countryCode countryCode()} for the phone numbers in the given
+    * column.
+    *
+    * @param column (trusted) name of a column of phone numbers
+    *
+    * @return an SQL expression for the numbers' country codes
+    *
+    **/
+  static String countryCodeSQL (String column) {
+    String digits = "(case when " + column + " like '+%' then substr(" + column + ", 2) " +
+      "when " + column + " like '00%' then substr(" + column + ", 3) end)";
+
+    return "(case when length(" + digits + ") < 4 then null " +
+      "when substr(" + digits + ", 1, 1) in ('1', '7') then '+' || substr(" + digits + ", 1, 1) " +
+      "when substr(" + digits + ", 1, 2) in ('" + TWO_DIGIT_CODES.replace(" ", "', '") + "') " +
+      "then '+' || substr(" + digits + ", 1, 2) " +
+      "else '+' || substr(" + digits + ", 1, 3) end)";
+  }
+
+  // the number of digits in (positive) `key`
+  private static int digits (long key) {
+    int length = 1;
+    while (length < POW10.length && key >= POW10[length]) ++length;
+    return length;
+  }
+
+  // the `depth`th digit of `key`, counting from 0 at the end
+  private static int digit (long key, int depth) {
+    return (int) ((key / POW10[depth]) % 10);
+  }
+
+}
@@ -0,0 +1,353 @@
+package watson;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+  * Phonetic keys and fuzzy comparison for people's names.
+  *
+  * <p>Two keys are computed for every name: its {@link soundex Soundex} code,
+  * and a {@link metaphone Metaphone}-style key, which handles the English
+  * spelling rules Soundex doesn't ({@code PH}, {@code TH}, silent letters,
+  * soft {@code C} and {@code G}, and so on). Names which share either key
+  * "sound alike", and are then {@link similar similar} if they're also within
+  * a small edit distance of each other, so that {@code "Jon"} matches
+  * {@code "John"}, {@code "Geoff"} matches {@code "Jeff"}, and
+  * {@code "Katherine"} matches {@code "Catherine"}, while {@code "Ann"} and
+  * {@code "Ian"} (which share a Metaphone key) do not.</p>
+  *
+  * <pre>{@code
+  * jshell> Phonetic.soundex("O'Brien"); Phonetic.metaphone("Stephen")
+  * $1 ==> "O165"
+  * $2 ==> "STFN"
+  *
+  * jshell> Phonetic.soundsLike("Mary Katherine", "catherine")
+  * $3 ==> 1
+  * }</pre>
+  *
+  * <p>{@link soundex soundex()} and {@link soundsLike soundsLike()} are also
+  * installed in the database as the Java functions {@code SOUNDEX} and
+  * {@code SOUNDS_LIKE}, in the database owner's schema, for use in SQL (see
+  * {@link ContactCriteria#soundsLike ContactCriteria.soundsLike()}).</p>
+  *
+  **/
+public final class Phonetic {
+
+  // private constructor for utility class
+  private Phonetic() { }
+
+  // Soundex digit of each letter, A-Z; '0' for letters which are dropped
+  private static final String SOUNDEX = "01230120022455012623010202";
+
+  //----------------------------------------------------------------------------
+  //
+  //  PHONETIC KEYS
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns the (American) Soundex code of the given name: its first letter,
+    * followed by three digits which encode its consonants.
+    *
+    * @param name name to encode
+    *
+    * @return the Soundex code of {@code name}, or an empty {@link String} if
+    * it has no letters, or {@code null} if it's {@code null}
+    *
+    **/
+  public static String soundex (String name) {
+    if (name == null) return null;
+
+    String w = letters(name);
+    if (w.isEmpty()) return "";
+
+    StringBuilder sb = new StringBuilder(4).append(w.charAt(0));
+    char last = SOUNDEX.charAt(w.charAt(0) - 'A');
+
+    for (int ii = 1; ii < w.length() && sb.length() < 4; ++ii) {
+      char ch = w.charAt(ii);
+      char digit = SOUNDEX.charAt(ch - 'A');
+
+      // H and W don't separate letters with the same code; vowels do
+      if (ch == 'H' || ch == 'W') continue;
+      if (digit != '0' && digit != last) sb.append(digit);
+      last = digit;
+    }
+
+    while (sb.length() < 4) sb.append('0');
+    return sb.toString();
+  }
+
+  /**
+    * Returns a Metaphone-style phonetic key for the given name.
+    *
+    * <p>This follows the original Metaphone rules for English spellings
+    * ({@code PH} is {@code F}, {@code TH} is {@code 0}, {@code C} and
+    * {@code G} are soft before {@code E}, {@code I}, or {@code Y}, an initial
+    * {@code KN} or {@code WR} loses its first letter, and so on), and drops
+    * all vowels but an initial one, which is always {@code A}.</p>
+    *
+    * @param name name to encode
+    *
+    * @return the key of {@code name}, or an empty {@link String} if it has
+    * no letters, or {@code null} if it's {@code null}
+    *
+    **/
+  public static String metaphone (String name) {
+    if (name == null) return null;
+
+    String w = letters(name);
+    if (w.startsWith("KN") || w.startsWith("GN") || w.startsWith("PN")
+        || w.startsWith("AE") || w.startsWith("WR")) w = w.substring(1);
+    else if (w.startsWith("WH")) w = "W" + w.substring(2);
+    else if (w.startsWith("X"))  w = "S" + w.substring(1);
+
+    int n = w.length();
+    StringBuilder sb = new StringBuilder(n);
+
+    for (int ii = 0; ii < n; ++ii) {
+      char ch   = w.charAt(ii);
+      char prev = ii > 0     ? w.charAt(ii - 1) : 0;
+      char next = ii + 1 < n ? w.charAt(ii + 1) : 0;
+      char afterNext = ii + 2 < n ? w.charAt(ii + 2) : 0;
+
+      // doubled letters sound like one (but "CC" is usually "KS")
+      if (ch == prev && ch != 'C') continue;
+
+      switch (ch) {
+        case 'A': case 'E': case 'I': case 'O': case 'U':
+          if (ii == 0) sb.append('A');
+          break;
+
+        case 'B': // silent in a final "MB"
+          if (!(ii == n - 1 && prev == 'M')) sb.append('B');
+          break;
+
+        case 'C':
+          if (next == 'I' && afterNext == 'A') sb.append('X');
+          else if (next == 'H') sb.append(prev == 'S' ? 'K' : 'X');
+          else if (next == 'E' || next == 'I' || next == 'Y') { if (prev != 'S') sb.append('S'); }
+          else sb.append('K');
+          break;
+
+        case 'D':
+          sb.append(next == 'G' && isSoftening(afterNext) ? 'J' : 'T');
+          break;
+
+        case 'G':
+          if (next == 'H') { if (ii == 0) sb.append('K'); }  // "Ghent", but "Hugh"
+          else if (next == 'N' && (ii + 2 == n || (ii + 4 == n && w.endsWith("NED")))) { } // "Gn", "Gned"
+          else if (prev == 'D' && isSoftening(next)) { }  // already "J"
+          else sb.append(isSoftening(next) ? 'J' : 'K');
+          break;
+
+        case 'H': // silent after a letter it combines with, or between a vowel and a consonant
+          if (prev != 0 && "CGPST".indexOf(prev) >= 0) break;
+          if (isVowel(prev) && !isVowel(next)) break;
+          sb.append('H');
+          break;
+
+        case 'K':
+          if (prev != 'C') sb.append('K');
+          break;
+
+        case 'P':
+          sb.append(next == 'H' ? 'F' : 'P');
+          break;
+
+        case 'Q': sb.append('K'); break;
+
+        case 'S':
+          if (next == 'H' || (next == 'I' && (afterNext == 'O' || afterNext == 'A'))) sb.append('X');
+          else sb.append('S');
+          break;
+
+        case 'T':
+          if (next == 'H') sb.append('0');
+          else if (next == 'I' && (afterNext == 'O' || afterNext == 'A')) sb.append('X');
+          else if (!(next == 'C' && afterNext == 'H')) sb.append('T');
+          break;
+
+        case 'V': sb.append('F'); break;
+
+        case 'W': case 'Y': // only sounded before a vowel
+          if (isVowel(next)) sb.append(ch);
+          break;
+
+        case 'X': sb.append("KS"); break;
+        case 'Z': sb.append('S');  break;
+
+        default: sb.append(ch); // F, J, L, M, N, R
+      }
+    }
+
+    return sb.toString();
+  }
+
+  private static boolean isVowel (char ch) {
+    return ch == 'A' || ch == 'E' || ch == 'I' || ch == 'O' || ch == 'U';
+  }
+
+  // E, I, and Y make a preceding C or G soft
+  private static boolean isSoftening (char ch) {
+    return ch == 'E' || ch == 'I' || ch == 'Y';
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  FUZZY MATCHING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Returns the Levenshtein (edit) distance between {@code a} and {@code b},
+    * or {@code max + 1} if it's greater than {@code max}.
+    *
+    * <p>Only the band of the dynamic-programming table within {@code max} of
+    * its diagonal is filled, so this costs {@code O(max * length)}, rather
+    * than {@code O(length^2)}, and gives up as soon as every entry in a row
+    * exceeds {@code max}.</p>
+    *
+    * @param a first string
+    * @param b second string
+    * @param max largest distance of interest
+    *
+    * @return the edit distance, or {@code max + 1}
+    *
+    **/
+  public static int distance (String a, String b, int max) {
+    int m = a.length(), n = b.length();
+    if (Math.abs(m - n) > max) return max + 1;
+
+    // entries outside the band are never less than `over`
+    int over = max + 1;
+    int[] prev = new int[n + 1], curr = new int[n + 1];
+    for (int jj = 0; jj <= n; ++jj) prev[jj] = Math.min(jj, over);
+
+    for (int ii = 1; ii <= m; ++ii) {
+      int from = Math.max(1, ii - max), to = Math.min(n, ii + max);
+      curr[0] = Math.min(ii, over);
+      if (from > 1) curr[from - 1] = over;
+      if (to < n) curr[to + 1] = over;
+
+      int rowMin = curr[0];
+      for (int jj = from; jj <= to; ++jj) {
+        int cost = a.charAt(ii - 1) == b.charAt(jj - 1) ? 0 : 1;
+        int d = Math.min(prev[jj - 1] + cost, Math.min(prev[jj], curr[jj - 1]) + 1);
+        curr[jj] = Math.min(d, over);
+        rowMin = Math.min(rowMin, curr[jj]);
+      }
+      if (rowMin > max) return over;
+
+      int[] swap = prev; prev = curr; curr = swap;
+    }
+
+    return prev[n];
+  }
+
+  /**
+    * Returns the largest edit distance allowed between two similar names,
+    * the longer of which has the given length: one edit for names of up to
+    * four letters, two for up to eight, and three for longer names.
+    *
+    * @param length length of the longer name
+    *
+    * @return the largest distance allowed
+    *
+    **/
+  static int maxDistance (int length) {
+    return length <= 4 ? 1 : length <= 8 ? 2 : 3;
+  }
+
+  /**
+    * Returns the edit distance between two name tokens (as returned by
+    * {@link tokens tokens()}) if they're similar -- they share a phonetic key
+    * and are within {@link maxDistance maxDistance()} edits of each other --
+    * or {@code -1} if they're not.
+    *
+    * @param a first token
+    * @param b second token
+    *
+    * @return the distance between {@code a} and {@code b}, or {@code -1}
+    *
+    **/
+  static int similar (String a, String b) {
+    if (a.equals(b)) return 0;
+    if (!soundex(a).equals(soundex(b)) && !metaphone(a).equals(metaphone(b))) return -1;
+
+    int max = maxDistance(Math.max(a.length(), b.length()));
+    int d = distance(a, b, max);
+    return d > max ? -1 : d;
+  }
+
+  /**
+    * Returns {@code 1} if every word of {@code query} is {@link similar
+    * similar} to some word of {@code name}, and {@code 0} otherwise (or if
+    * either is {@code null}). Returns an {@code int} rather than a
+    * {@code boolean} because Derby's SQL functions can't return booleans.
+    *
+    * <pre>{@code
+    * jshell> Phonetic.soundsLike("O'Brien", "obrian"); Phonetic.soundsLike("Ann", "Ian")
+    * $4 ==> 1
+    * $5 ==> 0
+    * }</pre>
+    *
+    * @param name name to test, e.g. a contact's first name
+    * @param query name to look for
+    *
+    * @return {@code 1} if {@code name} sounds like {@code query}, else {@code 0}
+    *
+    **/
+  public static int soundsLike (String name, String query) {
+    if (name == null || query == null) return 0;
+
+    List<String> names = tokens(name), queries = tokens(query);
+    if (queries.isEmpty()) return 0;
+
+    for (String q : queries) {
+      boolean found = false;
+      for (String t : names) if (similar(t, q) >= 0) { found = true; break; }
+      if (!found) return 0;
+    }
+    return 1;
+  }
+
+  /**
+    * Splits the given name into its words -- on anything other than letters
+    * and apostrophes, which are dropped, so {@code "O'Brien"} is one word --
+    * and upper-cases them.
+    *
+    * @param name name to split
+    *
+    * @return the words of {@code name}
+    *
+    **/
+  static List<String> tokens (String name) {
+    List<String> tokens = new ArrayList<>(2);
+    StringBuilder sb = new StringBuilder();
+
+    for (int ii = 0; ii <= name.length(); ++ii) {
+      char ch = ii < name.length() ? name.charAt(ii) : ' ';
+      if (ch == '\'' || ch == '\u2019') continue;
+
+      if (Character.isLetter(ch)) sb.append(ch);
+      else if (sb.length() > 0) { tokens.add(letters(sb.toString())); sb.setLength(0); }
+    }
+
+    tokens.removeIf(String::isEmpty);
+    return tokens;
+  }
+
+  // the letters A-Z of `s`, upper-cased, with accents removed
+  private static String letters (String s) {
+    String decomposed = Normalizer.normalize(s, Normalizer.Form.NFD);
+    StringBuilder sb = new StringBuilder(decomposed.length());
+    for (int ii = 0; ii < decomposed.length(); ++ii) {
+      char ch = Character.toUpperCase(decomposed.charAt(ii));
+      if (ch >= 'A' && ch <= 'Z') sb.append(ch);
+    }
+    return sb.toString();
+  }
+
+}
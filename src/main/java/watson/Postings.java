@@ -0,0 +1,66 @@
+package watson;
+
+import java.util.Arrays;
+
+/**
+  * A sorted, growable list of contact IDs, as kept by the in-memory
+  * {@link ContactIndex}es for each of their keys.
+  *
+  **/
+final class Postings {
+
+  /** The IDs, in ascending order; only the first {@link size} are valid. **/
+  int[] IDs = new int[4];
+
+  /** Number of IDs in this list. **/
+  int size = 0;
+
+  /**
+    * Adds the given {@code ID} to this list, if it's not already in it.
+    *
+    * @param ID ID to add
+    *
+    **/
+  void add (int ID) {
+
+    // IDs are handed out in increasing order, so this is usually an append
+    if (size == 0 || IDs[size - 1] < ID) {
+      if (size == IDs.length) IDs = Arrays.copyOf(IDs, size * 2);
+      IDs[size++] = ID;
+      return;
+    }
+
+    int at = Arrays.binarySearch(IDs, 0, size, ID);
+    if (at >= 0) return;
+    at = -(at + 1);
+
+    if (size == IDs.length) IDs = Arrays.copyOf(IDs, size * 2);
+    System.arraycopy(IDs, at, IDs, at + 1, size - at);
+    IDs[at] = ID;
+    ++size;
+  }
+
+  /**
+    * Removes the given {@code ID} from this list, if it's in it.
+    *
+    * @param ID ID to remove
+    *
+    **/
+  void remove (int ID) {
+    int at = Arrays.binarySearch(IDs, 0, size, ID);
+    if (at < 0) return;
+    System.arraycopy(IDs, at + 1, IDs, at, size - at - 1);
+    --size;
+  }
+
+  /**
+    * Returns an estimate of the heap memory used by this list.
+    *
+    * @return the approximate size of this list, in bytes
+    *
+    **/
+  long bytes() {
+    return 24 + 16 + 4L * IDs.length;
+  }
+
+}
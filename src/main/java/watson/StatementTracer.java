@@ -0,0 +1,627 @@
+package watson;
+
+import java.io.IOException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+  * Traces every SQL statement run on a {@link Connection}, collecting
+  * per-statement timings and writing slow statements (with their Derby
+  * execution plans) to a slow-query log.
+  *
+  * <p>{@link Database} traces its own connection, so every statement it runs
+  * (through its shared {@link Statement}, its {@link PreparedStatement}s, or
+  * a {@link ContactCursor}) is covered. Tracing is off by default:</p>
+  *
+  * <pre>{@code
+  * jshell> StatementTracer.setEnabled(true)
+  *
+  * jshell> StatementTracer.setSlowQueryThreshold(50)   // milliseconds
+  *
+  * jshell> db.addContact(new Contact().set("firstname", "Jimmy"))
+  *        MESSAGE | addContact() : successfully added contact
+  * $4 ==> true
+  *
+  * jshell> System.out.print(StatementTracer.report(10))
+  *  calls   total ms     max ms     rows  caller / statement
+  *      1       3.21       3.21        1  Database.addContact()
+  *                                          insert into JEFF.CONTACTS (FIRSTNAME) values (?)
+  * }</pre>
+  *
+  * <p>Statements are grouped by the (outermost public) {@code Database}
+  * method which ran them and their <em>normalized</em> SQL: string and numeric literals are replaced
+  * with {@code ?} and whitespace is collapsed, so that statements which differ
+  * only in their values (and passwords passed as literals) are counted
+  * together, and never written to the logs. Queries are timed from execution
+  * until their {@link ResultSet} is exhausted or closed, so the time taken to
+  * fetch the rows is included. They're recorded once the {@link ResultSet}
+  * is closed (explicitly, or by re-running or closing its statement).</p>
+  *
+  * <p>When a slow-query threshold is set, Derby's runtime statistics are
+  * switched on for each traced connection, and the plan of every statement
+  * slower than the threshold is fetched with
+  * {@code SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()}. Slow statements are
+  * logged as {@link Log.Level#WARNING WARNING}s and, if a
+  * {@link setSlowQueryLog slow-query log} file is set, written there in full
+  * (with their plans).</p>
+  *
+  * <p>Tracing can also be enabled with the system properties
+  * {@code watson.trace=true} and {@code watson.trace.slowMs=<threshold>}.</p>
+  *
+  **/
+public final class StatementTracer {
+
+  // private constructor for utility class
+  private StatementTracer() { }
+
+  //----------------------------------------------------------------------------
+  //
+  //  CONFIGURATION
+  //
+  //----------------------------------------------------------------------------
+
+  private static volatile boolean enabled   = Boolean.getBoolean("watson.trace");
+  private static volatile long    slowNanos = slowNanos(Long.getLong("watson.trace.slowMs", 0L));
+  private static volatile Path    slowLog   = null;
+
+  /**
+    * Enables or disables collection of per-statement statistics (see
+    * {@link stats stats()}). The slow-query log works independently of this
+    * setting.
+    *
+    * @param enable if {@code true}, statistics are collected for every
+    * statement
+    *
+    **/
+  public static void setEnabled (boolean enable) {
+    enabled = enable;
+  }
+
+  /**
+    * Returns {@code true} if per-statement statistics are being collected.
+    *
+    * @return {@code true} if and only if tracing is enabled
+    *
+    **/
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+    * Sets the duration above which statements are written to the slow-query
+    * log.
+    *
+    * <p>While the slow-query log is enabled, Derby collects runtime statistics
+    * for every statement on each traced connection; once it's disabled, each
+    * connection stops collecting them before its next statement.</p>
+    *
+    * @param millis slow-query threshold, in milliseconds, or {@code 0} (or a
+    * negative number) to disable the slow-query log
+    *
+    **/
+  public static void setSlowQueryThreshold (long millis) {
+    slowNanos = slowNanos(millis);
+  }
+
+  // a slow-query threshold in nanoseconds, or -1 if the log is disabled
+  private static long slowNanos (long millis) {
+    return millis <= 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  /**
+    * Sets the file to which slow statements (and their execution plans) are
+    * appended. Slow statements are always summarised through {@link Log}.
+    *
+    * @param path slow-query log file, or {@code null} to only use {@link Log}
+    *
+    **/
+  public static void setSlowQueryLog (Path path) {
+    slowLog = path;
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  STATISTICS
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Accumulated statistics for a single normalized statement, run from a
+    * single calling method.
+    *
+    **/
+  public static final class Stats {
+
+    private final String caller;
+    private final String sql;
+
+    private final AtomicLong count      = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos   = new AtomicLong();
+    private final AtomicLong rows       = new AtomicLong();
+
+    private Stats (String caller, String sql) {
+      this.caller = caller;
+      this.sql    = sql;
+    }
+
+    private void add (long nanos, long nRows) {
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      if (nRows > 0) rows.addAndGet(nRows);
+
+      long max;
+      do { max = maxNanos.get(); }
+      while (nanos > max && !maxNanos.compareAndSet(max, nanos));
+    }
+
+    /** Method which ran the statement, e.g. {@code "Database.addContact()"}. **/
+    public String caller() { return caller; }
+
+    /** Normalized SQL text of the statement. **/
+    public String sql() { return sql; }
+
+    /** Number of times the statement was run. **/
+    public long count() { return count.get(); }
+
+    /** Total time spent running the statement, in milliseconds. **/
+    public double totalMillis() { return totalNanos.get() / 1e6; }
+
+    /** Longest single run of the statement, in milliseconds. **/
+    public double maxMillis() { return maxNanos.get() / 1e6; }
+
+    /** Total rows returned (queries) or affected (updates). **/
+    public long rows() { return rows.get(); }
+
+    @Override
+    public String toString() {
+      return String.format("%6d %10.2f %10.2f %8d  %s%n%41s  %s%n",
+        count(), totalMillis(), maxMillis(), rows(), caller, "", sql);
+    }
+  }
+
+  // caller + '\n' + normalized SQL -> stats
+  private static final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+  /**
+    * Returns the statistics collected so far, slowest (by total time) first.
+    *
+    * @return a {@link List} of {@link Stats}, one per calling method and
+    * normalized statement
+    *
+    **/
+  public static List<Stats> stats() {
+    List<Stats> list = new ArrayList<>(stats.values());
+    list.sort(Comparator.comparingLong((Stats s) -> s.totalNanos.get()).reversed());
+    return Collections.unmodifiableList(list);
+  }
+
+  /**
+    * Returns a table of the {@code top} statements by total time.
+    *
+    * @param top maximum number of statements to include
+    *
+    * @return a printable report of the collected statistics
+    *
+    **/
+  public static String report (int top) {
+    StringBuilder sb = new StringBuilder(String.format(
+      "%6s %10s %10s %8s  %s%n", "calls", "total ms", "max ms", "rows", "caller / statement"));
+    List<Stats> list = stats();
+    for (int ii = 0; ii < Math.min(top, list.size()); ++ii) sb.append(list.get(ii));
+    return sb.toString();
+  }
+
+  /** Discards all statistics collected so far. **/
+  public static void reset() {
+    stats.clear();
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  SQL NORMALIZATION
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Replaces string and numeric literals in {@code sql} with {@code ?} and
+    * collapses runs of whitespace into single spaces.
+    *
+    * <pre>{@code
+    * jshell> StatementTracer.normalize("select * from JEFF.CONTACTS\n  where id = 12 and surname = 'O''Brien'")
+    * $1 ==> "select * from JEFF.CONTACTS where id = ? and surname = ?"
+    * }</pre>
+    *
+    * @param sql SQL text to normalize
+    *
+    * @return normalized SQL text
+    *
+    **/
+  public static String normalize (String sql) {
+    if (sql == null) return null;
+
+    StringBuilder sb = new StringBuilder(sql.length());
+    int len = sql.length();
+
+    for (int ii = 0; ii < len; ++ii) {
+      char ch = sql.charAt(ii);
+
+      // string literal ('' is an escaped quote)
+      if (ch == '\'') {
+        ++ii;
+        while (ii < len) {
+          if (sql.charAt(ii) == '\'') {
+            if (ii + 1 < len && sql.charAt(ii + 1) == '\'') ii += 2;
+            else break;
+          } else ++ii;
+        }
+        sb.append('?');
+
+      // numeric literal (but not digits inside identifiers like GROUP2)
+      } else if (Character.isDigit(ch) && (sb.length() == 0 ||
+          !Character.isLetterOrDigit(sb.charAt(sb.length() - 1)) &&
+          sb.charAt(sb.length() - 1) != '_')) {
+        while (ii + 1 < len && (Character.isDigit(sql.charAt(ii + 1)) || sql.charAt(ii + 1) == '.')) ++ii;
+        sb.append('?');
+
+      } else if (Character.isWhitespace(ch)) {
+        if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') sb.append(' ');
+
+      } else sb.append(ch);
+    }
+
+    int end = sb.length();
+    while (end > 0 && sb.charAt(end - 1) == ' ') --end;
+    sb.setLength(end);
+    return sb.toString();
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  PROXIES
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Wraps {@code connection} so that every {@link Statement},
+    * {@link PreparedStatement}, and {@link CallableStatement} created from it
+    * is traced.
+    *
+    * @param connection connection to trace
+    *
+    * @return a traced view of {@code connection}
+    *
+    **/
+  static Connection trace (Connection connection) {
+    return (Connection) Proxy.newProxyInstance(StatementTracer.class.getClassLoader(),
+      new Class<?>[]{ Connection.class }, new ConnectionHandler(connection));
+  }
+
+  // unwrap reflective exceptions, so callers see the original SQLException
+  private static Object invoke (Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  // state shared by all of the statements created from one connection
+  private static final class ConnectionHandler implements InvocationHandler {
+    final Connection connection;
+
+    // has Derby's runtime statistics collection been switched on?
+    boolean runtimeStatistics = false;
+
+    // most recently started statement on this connection
+    volatile Trace last = null;
+
+    ConnectionHandler (Connection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public Object invoke (Object proxy, Method method, Object[] args) throws Throwable {
+      Object result = StatementTracer.invoke(connection, method, args);
+      String name = method.getName();
+
+      if (result instanceof Statement) {
+        String sql = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : null;
+        Class<?> type = name.equals("prepareCall")      ? CallableStatement.class
+                      : name.equals("prepareStatement") ? PreparedStatement.class
+                      : Statement.class;
+        return Proxy.newProxyInstance(StatementTracer.class.getClassLoader(),
+          new Class<?>[]{ type }, new StatementHandler(this, (Statement) result, normalize(sql)));
+      }
+
+      return result;
+    }
+
+    // switch runtime statistics on, so plans are available for slow
+    // statements, or (once the slow-query log is disabled) off again, since
+    // collecting them slows down every statement
+    void runtimeStatistics (boolean on) {
+      if (runtimeStatistics == on) return;
+      runtimeStatistics = on;
+      int flag = on ? 1 : 0;
+      try (Statement st = connection.createStatement()) {
+        st.execute("call SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(" + flag + ")");
+        st.execute("call SYSCS_UTIL.SYSCS_SET_STATISTICS_TIMING(" + flag + ")");
+      } catch (SQLException ex) {
+        IOUtils.printSQLException("StatementTracer", ex);
+      }
+    }
+
+    // plan of the last statement run on this connection, if it was `trace`
+    String plan (Trace trace) {
+      if (!runtimeStatistics || last != trace) return null;
+      try (Statement st = connection.createStatement();
+           ResultSet rs = st.executeQuery("values SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")) {
+        if (!rs.next() || rs.getString(1) == null) return null;
+
+        // the plan quotes the statement with its literals; don't log those
+        String plan = rs.getString(1);
+        int from = plan.indexOf("Statement Text:");
+        int to   = plan.indexOf("Parse Time:");
+        if (from < 0 || to < from) return plan;
+        return plan.substring(0, from) + "Statement Text: " + System.lineSeparator() +
+          "\t" + trace.sql + System.lineSeparator() + plan.substring(to);
+      } catch (SQLException ex) {
+        return null;
+      }
+    }
+  }
+
+  // a single run of a statement
+  private static final class Trace {
+    final ConnectionHandler owner;
+    final String sql;
+    final long   start = System.nanoTime();
+    long   end = 0;
+    String caller;
+    long   rows = 0;
+    boolean done = false;
+
+    // the query's (unwrapped) ResultSet, if this is a query
+    ResultSet resultSet = null;
+
+    Trace (ConnectionHandler owner, String sql, String caller) {
+      this.owner  = owner;
+      this.sql    = sql;
+      this.caller = caller;
+    }
+
+    // the rows have run out: stop the clock (but the ResultSet may still be open)
+    void stop() {
+      if (end == 0) end = System.nanoTime();
+    }
+
+    // Derby only has the runtime statistics of a query once its ResultSet is
+    // closed, so queries are closed before they're recorded
+    void finish() {
+      stop();
+      if (done) return;
+      done = true;
+
+      if (resultSet != null) {
+        try { resultSet.close(); }
+        catch (SQLException ex) { /* already closed, or closing anyway */ }
+      }
+
+      long nanos = end - start;
+      long slow  = slowNanos;
+      boolean isSlow = slow >= 0 && nanos >= slow;
+
+      if (caller == null && (enabled || isSlow)) caller = caller();
+      if (enabled) stats.computeIfAbsent(caller + '\n' + sql, k -> new Stats(caller, sql)).add(nanos, rows);
+      if (isSlow) slowQuery(this, nanos);
+    }
+  }
+
+  private static final class StatementHandler implements InvocationHandler {
+    final ConnectionHandler owner;
+    final Statement statement;
+    final String sql; // normalized; null for plain Statements
+
+    // query whose ResultSet hasn't been exhausted or closed yet
+    Trace pending = null;
+
+    StatementHandler (ConnectionHandler owner, Statement statement, String sql) {
+      this.owner     = owner;
+      this.statement = statement;
+      this.sql       = sql;
+    }
+
+    @Override
+    public Object invoke (Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+
+      // re-running or closing a statement implicitly closes its ResultSet
+      if (pending != null && (name.startsWith("execute") || name.equals("close"))) {
+        pending.finish();
+        pending = null;
+      }
+
+      if (name.equals("getResultSet")) return wrap(StatementTracer.invoke(statement, method, args));
+      if (!name.startsWith("execute")) return StatementTracer.invoke(statement, method, args);
+
+      // runtime statistics are only collected while the slow-query log is on
+      boolean trace = enabled;
+      boolean slow  = slowNanos >= 0;
+      owner.runtimeStatistics(slow);
+
+      // nothing to record: skip the bookkeeping entirely
+      if (!trace && !slow) return StatementTracer.invoke(statement, method, args);
+
+      String text = (args != null && args.length > 0 && args[0] instanceof String)
+        ? normalize((String) args[0]) : this.sql;
+      if (name.equals("executeBatch")) text = "[batch] " + text;
+
+      // the stack is only walked up front when statistics are collected
+      Trace t = new Trace(owner, text, trace ? caller() : null);
+      owner.last = t;
+
+      Object result;
+      try {
+        result = StatementTracer.invoke(statement, method, args);
+      } catch (Throwable ex) {
+        t.finish();
+        throw ex;
+      }
+
+      if (result instanceof ResultSet) {
+        pending = t;
+        t.resultSet = (ResultSet) result;
+        return wrap(result);
+      }
+
+      if (result instanceof Integer || result instanceof Long) {
+        t.rows = ((Number) result).longValue();
+      } else if (result instanceof int[]) {
+        for (int n : (int[]) result) if (n > 0) t.rows += n;
+      } else if (result instanceof long[]) {
+        for (long n : (long[]) result) if (n > 0) t.rows += n;
+      } else if (Boolean.TRUE.equals(result)) {
+        pending = t; // ResultSet will be fetched with getResultSet()
+        return result;
+      } else if (Boolean.FALSE.equals(result)) {
+        t.rows = Math.max(0, statement.getUpdateCount());
+      }
+
+      t.finish();
+      return result;
+    }
+
+    private Object wrap (Object result) {
+      if (!(result instanceof ResultSet) || pending == null) return result;
+      pending.resultSet = (ResultSet) result;
+      return Proxy.newProxyInstance(StatementTracer.class.getClassLoader(),
+        new Class<?>[]{ ResultSet.class }, new ResultSetHandler(this, (ResultSet) result, pending));
+    }
+  }
+
+  // counts rows, and finishes the trace once the rows run out
+  private static final class ResultSetHandler implements InvocationHandler {
+    final StatementHandler owner;
+    final ResultSet resultSet;
+    final Trace trace;
+
+    ResultSetHandler (StatementHandler owner, ResultSet resultSet, Trace trace) {
+      this.owner     = owner;
+      this.resultSet = resultSet;
+      this.trace     = trace;
+    }
+
+    @Override
+    public Object invoke (Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+
+      if (name.equals("close")) trace.stop();
+      Object result = StatementTracer.invoke(resultSet, method, args);
+
+      if (name.equals("close")) finish();
+      else if (name.equals("next")) {
+        if (Boolean.TRUE.equals(result)) ++trace.rows;
+        else trace.stop();
+      }
+
+      return result;
+    }
+
+    private void finish() {
+      trace.finish();
+      if (owner.pending == trace) owner.pending = null;
+    }
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  CALLERS AND THE SLOW-QUERY LOG
+  //
+  //----------------------------------------------------------------------------
+
+  // names of Database's public methods, which statements are attributed to
+  private static final Set<String> PUBLIC_METHODS = new HashSet<>();
+  static {
+    for (Method method : Database.class.getDeclaredMethods())
+      if (Modifier.isPublic(method.getModifiers())) PUBLIC_METHODS.add(method.getName());
+  }
+
+  // "Database.addContact()": the outermost public Database method on the
+  // stack, so statements run by private helpers and lambdas are counted
+  // against the operation which ran them (and one public method calling
+  // another counts as the outer one); failing that, the first frame outside
+  // of this class and JDBC
+  private static String caller() {
+    String first = null, outermost = null;
+
+    for (StackTraceElement frame : Thread.currentThread().getStackTrace()) {
+      String cls = frame.getClassName();
+      if (cls.startsWith(StatementTracer.class.getName()) || cls.startsWith("java.") ||
+          cls.startsWith("javax.") || cls.startsWith("sun.") || cls.startsWith("jdk.") ||
+          cls.startsWith("com.sun.proxy") || cls.contains("$Proxy")) continue;
+
+      String name = cls.substring(cls.lastIndexOf('.') + 1) + "." + frame.getMethodName() + "()";
+      if (first == null) first = name;
+      if (cls.equals(Database.class.getName()) && PUBLIC_METHODS.contains(frame.getMethodName()))
+        outermost = name;
+    }
+
+    return outermost != null ? outermost : first != null ? first : "unknown";
+  }
+
+  private static void slowQuery (Trace trace, long nanos) {
+    String plan = trace.owner.plan(trace);
+    String summary = String.format("slow statement (%.1f ms, %d rows): %s",
+      nanos / 1e6, trace.rows, trace.sql);
+
+    Path path = slowLog;
+    if (path == null) {
+      Log.log(Log.Level.WARNING, trace.caller, plan == null ? summary : summary + System.lineSeparator() + plan);
+      return;
+    }
+
+    Log.log(Log.Level.WARNING, trace.caller, summary);
+
+    String entry = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()) +
+      " " + trace.caller + " : " + summary + System.lineSeparator() +
+      (plan == null ? "  (plan unavailable)" + System.lineSeparator() : plan.trim() + System.lineSeparator()) +
+      System.lineSeparator();
+
+    try {
+      Files.write(path, entry.getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException ex) {
+      IOUtils.printError("StatementTracer", "could not write slow-query log: " + ex.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,132 @@
+package watson;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/**
+  * A transaction (or, when nested, a savepoint within a transaction) opened
+  * by {@link Database#inTransaction Database.inTransaction()}.
+  *
+  * <p>Every {@link Database} method called while the transaction is open runs
+  * as part of it. Nothing is committed until the outermost
+  * {@link Work} returns {@code true}, so a group of operations costs one log
+  * sync instead of one per statement:</p>
+  *
+  * <pre>{@code
+  * jshell> db.inTransaction(tx -> db.addContact(jimmy) && db.addToGroup("family", 1, 2))
+  *        MESSAGE | addContact() : successfully added contact
+  *        MESSAGE | addToGroup() : successfully added to group
+  * $3 ==> true
+  * }</pre>
+  *
+  * <p>Within a transaction, {@link savepoint savepoint()} and
+  * {@link rollbackTo rollbackTo()} can be used to undo part of the work
+  * without abandoning the rest, and {@link setRollbackOnly setRollbackOnly()}
+  * abandons everything, even if the {@link Work} returns {@code true}.</p>
+  *
+  **/
+public final class Transaction {
+
+  /**
+    * Work to run in a transaction. Return {@code true} to commit, or
+    * {@code false} (or throw an exception) to roll back.
+    *
+    **/
+  @FunctionalInterface
+  public interface Work {
+
+    /**
+      * Runs this work inside the given transaction.
+      *
+      * @param tx the open {@link Transaction}
+      *
+      * @return {@code true} if the work should be committed
+      *
+      * @throws SQLException if there was a problem accessing the database
+      *
+      **/
+    boolean run (Transaction tx) throws SQLException;
+  }
+
+  private final Connection connection;
+  private final int depth;
+  private boolean rollbackOnly = false;
+
+  // created only by Database.inTransaction()
+  Transaction (Connection connection, int depth) {
+    this.connection = connection;
+    this.depth = depth;
+  }
+
+  /**
+    * Returns how deeply this transaction is nested: {@code 0} for an outermost
+    * transaction, {@code 1} for a transaction opened within it, and so on.
+    *
+    * @return the nesting depth of this transaction
+    *
+    **/
+  public int depth() {
+    return depth;
+  }
+
+  /**
+    * Sets a savepoint, which the transaction can later be
+    * {@link rollbackTo rolled back to}.
+    *
+    * @return the new {@link Savepoint}
+    *
+    * @throws SQLException if the savepoint could not be set
+    *
+    **/
+  public Savepoint savepoint() throws SQLException {
+    return connection.setSavepoint();
+  }
+
+  /**
+    * Undoes all work done since the given savepoint was set. The savepoint
+    * itself, and all work done before it, remains.
+    *
+    * @param savepoint {@link Savepoint} to roll back to
+    *
+    * @throws SQLException if the transaction could not be rolled back
+    *
+    **/
+  public void rollbackTo (Savepoint savepoint) throws SQLException {
+    connection.rollback(savepoint);
+  }
+
+  /**
+    * Releases the given savepoint (and any set after it), keeping all of the
+    * work done since it was set.
+    *
+    * @param savepoint {@link Savepoint} to release
+    *
+    * @throws SQLException if the savepoint could not be released
+    *
+    **/
+  public void release (Savepoint savepoint) throws SQLException {
+    connection.releaseSavepoint(savepoint);
+  }
+
+  /**
+    * Marks this transaction to be rolled back when its {@link Work} finishes,
+    * whatever the {@link Work} returns.
+    *
+    **/
+  public void setRollbackOnly() {
+    rollbackOnly = true;
+  }
+
+  /**
+    * Returns {@code true} if this transaction will be rolled back.
+    *
+    * @return {@code true} if and only if {@link setRollbackOnly setRollbackOnly()}
+    * has been called
+    *
+    **/
+  public boolean isRollbackOnly() {
+    return rollbackOnly;
+  }
+
+}
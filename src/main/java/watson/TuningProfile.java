@@ -0,0 +1,165 @@
+package watson;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+  * Named sets of Derby storage, cache, and logging properties which can be
+  * applied when a database is created or booted.
+  *
+  * <p>Pass a profile to
+  * {@link Database#connect(String, String, String, String, TuningProfile) Database.connect()}:</p>
+  *
+  * <pre>{@code
+  * jshell> Database db = Database.connect("example", "bootpass", "owner", "ownerpass", TuningProfile.HIGH_THROUGHPUT).get()
+  *        MESSAGE | connect() : applied tuning profile HIGH_THROUGHPUT
+  *        MESSAGE | connect() : database successfully initialised
+  * db ==> watson.Database@5ba23b66
+  * }</pre>
+  *
+  * <p>Properties are applied in two places:</p>
+  *
+  * <ul>
+  * <li>at boot time, every property is set as a JVM system property before
+  * the database is opened. System properties take precedence over
+  * database-wide properties, so they always apply to the booted database.
+  * (The {@link DEFAULT} profile clears them, restoring Derby's defaults.)
+  * The JVM's previous values are restored when the database is
+  * {@link Database#disconnect disconnected}, so a profile never outlives the
+  * connection it was given to.</li>
+  * <li>when a new database is created, its {@link persistent page size} is
+  * also stored as a database-wide property. {@code derby.storage.pageSize}
+  * only affects tables created after it is set, so this keeps the page size
+  * for tables created in later sessions (when a user is added, say). The
+  * cache, log buffer, and durability settings are system-wide in Derby, so
+  * they only apply while a profile is in use.</li>
+  * </ul>
+  *
+  * <p>Run {@code src/main/resources/TuningBenchmark.java} in the
+  * {@code jshell} to compare the profiles on a generated dataset.</p>
+  *
+  **/
+public enum TuningProfile {
+
+  /**
+    * Small caches for memory-constrained machines: 200-page (800 KiB) page
+    * cache, 20-statement cache, 16 KiB log buffer. Keeps Derby's 4 KiB pages,
+    * so that each page in the small cache holds little unused data.
+    **/
+  LOW_MEMORY ("200", null, "20", "16384", null),
+
+  /** Derby's own defaults (1000-page cache, 4 KiB pages, 100 statements). **/
+  DEFAULT (null, null, null, null, null),
+
+  /**
+    * Large caches for big contact lists: 8 KiB pages (so scans read half as
+    * many pages), 8000-page (64 MiB) page cache, 500-statement cache, 256 KiB
+    * log buffer. Fully durable.
+    **/
+  HIGH_THROUGHPUT ("8000", "8192", "500", "262144", null),
+
+  /**
+    * {@link HIGH_THROUGHPUT}, but with {@code derby.system.durability=test},
+    * so commits are not synced to disk. Only for one-off bulk imports into a
+    * database which can be recreated: a crash can corrupt the database.
+    **/
+  BULK_LOAD ("8000", "8192", "500", "262144", "test");
+
+  /** Page cache size, in pages. **/
+  public static final String PAGE_CACHE_SIZE = "derby.storage.pageCacheSize";
+
+  /** Page size of newly-created tables, in bytes. **/
+  public static final String PAGE_SIZE = "derby.storage.pageSize";
+
+  /** Number of compiled statements cached per database. **/
+  public static final String STATEMENT_CACHE_SIZE = "derby.language.statementCacheSize";
+
+  /** Size of the in-memory transaction log buffer, in bytes. **/
+  public static final String LOG_BUFFER_SIZE = "derby.storage.logBufferSize";
+
+  /** Durability of commits ({@code null} = fully durable, {@code "test"} = no syncs). **/
+  public static final String DURABILITY = "derby.system.durability";
+
+  private final Map<String, String> properties = new LinkedHashMap<>();
+
+  // the JVM's values of the properties before a profile was applied (null
+  // values meaning "unset"), or null if no profile is applied
+  private static Map<String, String> saved = null;
+
+  private TuningProfile (String pageCacheSize, String pageSize,
+    String statementCacheSize, String logBufferSize, String durability) {
+
+    properties.put(PAGE_CACHE_SIZE,      pageCacheSize);
+    properties.put(PAGE_SIZE,            pageSize);
+    properties.put(STATEMENT_CACHE_SIZE, statementCacheSize);
+    properties.put(LOG_BUFFER_SIZE,      logBufferSize);
+    properties.put(DURABILITY,           durability);
+  }
+
+  /**
+    * Returns all of the properties set by this profile. A {@code null} value
+    * means "use Derby's default".
+    *
+    * @return an unmodifiable {@link Map} of Derby property names to values
+    *
+    **/
+  public Map<String, String> properties() {
+    return Collections.unmodifiableMap(properties);
+  }
+
+  /**
+    * Returns the properties of this profile which should be stored in a new
+    * database: only {@code derby.storage.pageSize}, if this profile sets it.
+    * Derby reads the other properties from the JVM only, so storing them in
+    * a database would have no effect.
+    *
+    * @return an unmodifiable {@link Map} of Derby property names to non-null
+    * values
+    *
+    **/
+  public Map<String, String> persistent() {
+    String pageSize = properties.get(PAGE_SIZE);
+    if (pageSize == null) return Collections.emptyMap();
+    return Collections.singletonMap(PAGE_SIZE, pageSize);
+  }
+
+  /**
+    * Sets (or, for {@code null} values, clears) each of this profile's
+    * properties as a JVM system property, so they apply to the next database
+    * booted. The JVM's previous values are kept for
+    * {@link restoreSystem restoreSystem()}; applying a second profile before
+    * then keeps the values from before the first.
+    *
+    **/
+  void applyToSystem() {
+    synchronized (TuningProfile.class) {
+      if (saved == null) {
+        saved = new HashMap<>();
+        for (String k : properties.keySet()) saved.put(k, System.getProperty(k));
+      }
+
+      properties.forEach((k, v) -> {
+        if (v == null) System.clearProperty(k);
+        else System.setProperty(k, v);
+      });
+    }
+  }
+
+  /**
+    * Puts back the JVM system properties as they were before a profile was
+    * {@link applyToSystem applied}. Does nothing if no profile is applied.
+    *
+    **/
+  static synchronized void restoreSystem() {
+    if (saved == null) return;
+
+    saved.forEach((k, v) -> {
+      if (v == null) System.clearProperty(k);
+      else System.setProperty(k, v);
+    });
+    saved = null;
+  }
+
+}
@@ -1,9 +1,15 @@
 package watson;
 
 import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
 
 public class UserContactsController extends MasterController {
 
+  // filter text, and the number of results and time taken to find them
+  @FXML private TextField filter;
+  @FXML private Label latency;
+
   //----------------------------------------------------------------------------
   //  initialize() is called when UserContactsFXML.fxml is loaded
   //----------------------------------------------------------------------------
@@ -14,10 +20,24 @@ public class UserContactsController extends MasterController {
     data.clear(); // clear table data
     table.setItems(data); // clear table
 
-    // load user's CONTACTS table
-    displayTable(USER + ".CONTACTS", 189, true);
+    // load user's CONTACTS table, with each contact's groups, in one query
+    showAll(true);
+
+    // filter contacts in the database as the user types
+    new FilterController(db, filter, latency,
+      rows -> displayRows(USER + ".CONTACTS", rows, 151, false),
+      () -> showAll(false));
 
   } // end initialize()
 
-}
+  // show all of the user's contacts, creating the columns if `firstTime`
+  private void showAll (boolean firstTime) {
+    try (Events.Op ev = Events.table("displayTable()", USER + ".CONTACTS")) {
+      ColumnarTable rows = new ColumnarTable();
+      synchronized (db) { db.contactsWithGroups(rows::append); }
+      displayRows(USER + ".CONTACTS", rows, 151, firstTime);
+      ev.rows(rows.size()).columns(rows.names().size());
+    }
+  }
 
+}
@@ -0,0 +1,320 @@
+package watson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+  * Buffers bursts of small writes to a {@link Database} and commits them
+  * together, in a single transaction.
+  *
+  * <p>Each write (an {@link Database#addContact addContact()},
+  * {@link Database#addToGroup addToGroup()}, etc., or any
+  * {@link Transaction.Work}) is queued, and a {@link CompletableFuture} for its
+  * result is returned immediately. The queue is flushed when it holds
+  * {@code maxOps} writes, when the oldest write has waited
+  * {@code maxDelayMillis}, or when {@link flush flush()} or
+  * {@link close close()} is called. A flush runs every queued write in one
+  * transaction -- so the whole batch costs a single log sync -- with each
+  * write in its own savepoint, so a write which fails is rolled back (and its
+  * future completed with {@code false}) without affecting the others.</p>
+  *
+  * <pre>{@code
+  * jshell> WriteCoalescer wc = WriteCoalescer.open(db, 100, 5, WriteCoalescer.Durability.DURABLE).get()
+  *
+  * jshell> for (int id : ids) wc.addToGroup("family", id)
+  *
+  * jshell> wc.close()
+  *        MESSAGE | addToGroup() : successfully added to group
+  *        ...
+  *        MESSAGE | flush() : committed 40 writes (40 succeeded) in 31 ms
+  * }</pre>
+  *
+  * <p>{@link Database} is not thread-safe. Flushes triggered by
+  * {@code maxDelayMillis} run on a background thread, holding the
+  * {@link Database} object's monitor; code which uses the {@link Database}
+  * directly while a {@link WriteCoalescer} is open should do so in a
+  * {@code synchronized (db)} block (or {@link flush flush()} and
+  * {@link close close()} the coalescer first).</p>
+  *
+  **/
+public final class WriteCoalescer implements AutoCloseable {
+
+  /** When the futures returned by a {@link WriteCoalescer} are completed. **/
+  public enum Durability {
+
+    /**
+      * Futures are completed once their batch has been committed, so a
+      * {@code true} result means the write is on disk. If the commit fails,
+      * every write in the batch completes with {@code false}.
+      **/
+    DURABLE,
+
+    /**
+      * Futures are completed as soon as their write has run (inside the
+      * batch's transaction), before the batch is committed. Lower latency,
+      * but a {@code true} result may still be lost if the commit fails (which
+      * is logged as an error).
+      **/
+    APPLIED
+  }
+
+  // a queued write and its result
+  private static final class Pending {
+    final Transaction.Work work;
+    final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+    Pending (Transaction.Work work) {
+      this.work = work;
+    }
+  }
+
+  private final Database db;
+  private final int maxOps;
+  private final long maxDelayMillis;
+  private final Durability durability;
+
+  private final ScheduledExecutorService timer;
+
+  // guarded by `this`
+  private List<Pending> queue = new ArrayList<>();
+  private ScheduledFuture<?> scheduled = null;
+  private boolean closed = false;
+
+  private WriteCoalescer (Database db, int maxOps, long maxDelayMillis, Durability durability) {
+    this.db = db;
+    this.maxOps = maxOps;
+    this.maxDelayMillis = maxDelayMillis;
+    this.durability = durability;
+
+    this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "watson-coalescer");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+    * Opens a {@link WriteCoalescer} on the given {@link Database}.
+    *
+    * @param db {@link Database} to write to
+    * @param maxOps number of queued writes which triggers a flush
+    * @param maxDelayMillis longest a write can wait before it's flushed, in
+    * milliseconds ({@code 0} to only flush on {@code maxOps},
+    * {@link flush flush()}, and {@link close close()})
+    * @param durability when the returned futures are completed
+    *
+    * @return a new {@link WriteCoalescer}, wrapped in an {@link Optional}, or
+    * an {@link Optional#empty empty Optional} if any argument was invalid
+    *
+    **/
+  public static Optional<WriteCoalescer> open (Database db, int maxOps,
+    long maxDelayMillis, Durability durability) {
+
+    String opName = "WriteCoalescer.open()";
+
+    if (db == null || durability == null) {
+      IOUtils.printError(opName, "database and durability cannot be null");
+      return Optional.empty();
+    }
+
+    if (maxOps < 1 || maxDelayMillis < 0) {
+      IOUtils.printError(opName, "maxOps must be at least 1, and maxDelayMillis cannot be negative");
+      return Optional.empty();
+    }
+
+    return Optional.of(new WriteCoalescer(db, maxOps, maxDelayMillis, durability));
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  QUEUEING WRITES
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Queues {@code work}, to be run in the next flushed batch.
+    *
+    * @param work {@link Transaction.Work} to run
+    *
+    * @return a future for the result of {@code work} ({@code true} if it
+    * returned {@code true} and was committed); completed exceptionally if
+    * {@code work} threw a {@link RuntimeException}
+    *
+    **/
+  public CompletableFuture<Boolean> submit (Transaction.Work work) {
+
+    Pending p = new Pending(work);
+    boolean full;
+
+    synchronized (this) {
+      if (closed || work == null) {
+        IOUtils.printError("submit()", closed ? "coalescer is closed" : "no work given");
+        p.result.complete(false);
+        return p.result;
+      }
+
+      queue.add(p);
+      full = queue.size() >= maxOps;
+
+      // first write in an empty queue starts the clock
+      if (!full && queue.size() == 1 && maxDelayMillis > 0)
+        scheduled = timer.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    if (full) flush();
+    return p.result;
+  }
+
+  /**
+    * Queues {@link Database#addContact db.addContact(contact)}. The
+    * {@code contact} is copied, so it can be changed and re-used immediately.
+    *
+    * @param contact {@link Contact} to add
+    *
+    * @return a future for the result of {@code addContact()}
+    *
+    **/
+  public CompletableFuture<Boolean> addContact (Contact contact) {
+    Contact c = contact == null ? null : contact.copy();
+    return submit(tx -> db.addContact(c));
+  }
+
+  /**
+    * Queues {@link Database#updateContact db.updateContact(ID, contact)}. The
+    * {@code contact} is copied, so it can be changed and re-used immediately.
+    *
+    * @param ID ID of the contact to update
+    * @param contact new values for the contact
+    *
+    * @return a future for the result of {@code updateContact()}
+    *
+    **/
+  public CompletableFuture<Boolean> updateContact (int ID, Contact contact) {
+    Contact c = contact == null ? null : contact.copy();
+    return submit(tx -> db.updateContact(ID, c));
+  }
+
+  /**
+    * Queues {@link Database#deleteContacts db.deleteContacts(IDs)}.
+    *
+    * @param IDs IDs of the contacts to delete
+    *
+    * @return a future for the result of {@code deleteContacts()}
+    *
+    **/
+  public CompletableFuture<Boolean> deleteContacts (int... IDs) {
+    int[] copy = IDs == null ? null : IDs.clone();
+    return submit(tx -> db.deleteContacts(copy));
+  }
+
+  /**
+    * Queues {@link Database#addToGroup db.addToGroup(groupName, IDs)}.
+    *
+    * @param groupName name of the group
+    * @param IDs IDs of the contacts to add to the group
+    *
+    * @return a future for the result of {@code addToGroup()}
+    *
+    **/
+  public CompletableFuture<Boolean> addToGroup (String groupName, int... IDs) {
+    int[] copy = IDs == null ? null : IDs.clone();
+    return submit(tx -> db.addToGroup(groupName, copy));
+  }
+
+  /**
+    * Queues {@link Database#removeFromGroup db.removeFromGroup(groupName, IDs)}.
+    *
+    * @param groupName name of the group
+    * @param IDs IDs of the contacts to remove from the group
+    *
+    * @return a future for the result of {@code removeFromGroup()}
+    *
+    **/
+  public CompletableFuture<Boolean> removeFromGroup (String groupName, int... IDs) {
+    int[] copy = IDs == null ? null : IDs.clone();
+    return submit(tx -> db.removeFromGroup(groupName, copy));
+  }
+
+  //----------------------------------------------------------------------------
+  //
+  //  FLUSHING
+  //
+  //----------------------------------------------------------------------------
+
+  /**
+    * Runs and commits every queued write now, on the calling thread.
+    *
+    **/
+  public void flush() {
+
+    // the db lock is taken before the queue is drained, so batches are always
+    // committed in the order they were queued
+    synchronized (db) {
+
+      List<Pending> batch;
+      synchronized (this) {
+        if (queue.isEmpty()) return;
+        batch = queue;
+        queue = new ArrayList<>();
+        if (scheduled != null) scheduled.cancel(false);
+        scheduled = null;
+      }
+
+      long start = System.nanoTime();
+      boolean[] results = new boolean[batch.size()];
+
+      boolean committed = db.inTransaction(tx -> {
+        for (int ii = 0; ii < batch.size(); ++ii) {
+          Pending p = batch.get(ii);
+
+          // each write is a nested transaction, i.e., runs in its own savepoint
+          try {
+            results[ii] = db.inTransaction(p.work);
+          } catch (RuntimeException ex) {
+            p.result.completeExceptionally(ex);
+            continue;
+          }
+
+          if (durability == Durability.APPLIED) p.result.complete(results[ii]);
+        }
+        return true;
+      });
+
+      int succeeded = 0;
+      for (int ii = 0; ii < batch.size(); ++ii) {
+        if (committed && results[ii]) ++succeeded;
+        if (durability == Durability.DURABLE) batch.get(ii).result.complete(committed && results[ii]);
+      }
+
+      long ms = (System.nanoTime() - start) / 1000000;
+      if (committed) {
+        IOUtils.printMessage("flush()", "committed " + batch.size() + " writes (" +
+          succeeded + " succeeded) in " + ms + " ms");
+      } else {
+        IOUtils.printError("flush()", "batch of " + batch.size() + " writes could not be committed");
+      }
+    }
+  }
+
+  /**
+    * Flushes any queued writes and stops the background timer. Writes
+    * submitted after this are rejected.
+    *
+    **/
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) return;
+      closed = true;
+    }
+    flush();
+    timer.shutdown();
+  }
+
+}
@@ -0,0 +1,67 @@
+//------------------------------------------------------------------------------
+//
+//  Run this script in the jshell to compare identity block sizes (see
+//  Database.setIdentityBlockSize()) and the bulk Database.addContacts() path.
+//  Each block size gets its own fresh database.
+//
+//    $ jshell --class-path target/assignment-1.0-SNAPSHOT-jar-with-dependencies.jar \
+//        src/main/resources/IdentityBenchmark.java 2>/dev/null
+//
+//  (stderr is discarded because every Database call logs a message.)
+//
+//------------------------------------------------------------------------------
+
+import watson.*
+import java.util.*
+
+// size of the generated dataset
+int N_CONTACTS = 2000
+
+String[] FIRST = { "mark", "julia", "chet", "harry", "phil", "susan", "raj", "quentin", "george", "tom" }
+String[] SUR   = { "jones", "stevens", "watson", "mumson", "O'Brien", "wills", "unger", "murphy" }
+
+// returns elapsed milliseconds since `start` (from System.nanoTime())
+long ms (long start) { return (System.nanoTime() - start) / 1000000; }
+
+List<Contact> generate() {
+  Random rand = new Random(42); // same dataset for every run
+  List<Contact> contacts = new ArrayList<>();
+  for (int ii = 0; ii < N_CONTACTS; ++ii)
+    contacts.add(new Contact().set("firstname", FIRST[rand.nextInt(FIRST.length)])
+      .set("surname", SUR[rand.nextInt(SUR.length)])
+      .set("phone", "+353" + (100000000 + rand.nextInt(900000000))));
+  return contacts;
+}
+
+// builds a fresh database with the given block size; times one-at-a-time and bulk inserts
+long[] bench (int blockSize) {
+  String name = "identity-" + blockSize;
+  List<Contact> contacts = generate();
+
+  Database db = Database.connect(name, "bootpass", "owner", "ownerpass").get();
+  db.addUser("bench", "benchpass", "ownerpass");
+  db.setIdentityBlockSize(blockSize);
+  Database.disconnect();
+  db = Database.connect(name, "bootpass", "bench", "benchpass").get();
+
+  long start = System.nanoTime();
+  for (Contact c : contacts) db.addContact(c);
+  long single = ms(start);
+
+  start = System.nanoTime();
+  db.addContacts(contacts);
+  long bulk = ms(start);
+
+  Database.disconnect();
+  return new long[]{ single, bulk };
+}
+
+System.out.printf("%n  %d contacts, inserted one at a time, then in bulk (times in ms)%n%n", N_CONTACTS)
+System.out.printf("  %-10s %12s %12s%n", "block size", "addContact", "addContacts")
+
+for (int size : new int[]{ 1, 20, 100, 1000 }) {
+  long[] t = bench(size);
+  System.out.printf("  %-10d %12d %12d%n", size, t[0], t[1]);
+}
+
+/exit
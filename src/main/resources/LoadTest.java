@@ -0,0 +1,145 @@
+//------------------------------------------------------------------------------
+//
+//  Run this script in the jshell to load-test the HTTP/JSON API (see
+//  ApiServer) on localhost. It creates (once) a database of several users'
+//  contacts, then, for each number of pooled sessions, starts a server and
+//  has many concurrent clients send it a mix of filter queries, group
+//  lookups, and new contacts, as different users, for a few seconds.
+//
+//    $ jshell --class-path target/assignment-1.0-SNAPSHOT-jar-with-dependencies.jar \
+//        src/main/resources/LoadTest.java 2>/dev/null
+//
+//  (stderr is discarded because every Database call logs a message.)
+//
+//------------------------------------------------------------------------------
+
+import watson.*
+import java.io.*
+import java.net.*
+import java.nio.charset.StandardCharsets
+import java.nio.file.*
+import java.util.*
+import java.util.concurrent.*
+import java.util.concurrent.atomic.*
+
+// size of the generated dataset, and of the test
+String DB_NAME      = "loadtest"
+int    N_USERS      = 4
+int    N_CONTACTS   = 20000  // per user
+int    N_CLIENTS    = 64     // concurrent clients
+int    SECONDS      = 10     // per run
+
+String[] FIRST = { "mark", "julia", "chet", "harry", "phil", "susan", "raj", "quentin", "george", "tom" }
+String[] SUR   = { "jones", "stevens", "watson", "mumson", "O'Brien", "wills", "unger", "murphy" }
+String[] GROUP = { "family", "friends", "work", "lads" }
+
+// creates the database and its users' contacts, unless it already exists
+void seed() {
+  if (Files.isDirectory(Paths.get(DB_NAME))) return;
+
+  Database db = Database.connect(DB_NAME, "bootpass", "owner", "ownerpass").get();
+  for (int uu = 0; uu < N_USERS; ++uu) db.addUser("user" + (char) ('a' + uu), "pass", "ownerpass");
+  Database.disconnect();
+
+  Random rand = new Random(42);
+  for (int uu = 0; uu < N_USERS; ++uu) {
+    db = Database.connect(DB_NAME, "bootpass", "user" + (char) ('a' + uu), "pass").get();
+
+    List<Contact> contacts = new ArrayList<>();
+    for (int ii = 0; ii < N_CONTACTS; ++ii)
+      contacts.add(new Contact().set("firstname", FIRST[rand.nextInt(FIRST.length)])
+        .set("surname", SUR[rand.nextInt(SUR.length)])
+        .set("phone", "+353" + (100000000 + rand.nextInt(900000000))));
+    int[] IDs = db.addContacts(contacts).get();
+
+    for (String group : GROUP) {
+      int[] members = new int[IDs.length / 8];
+      for (int ii = 0; ii < members.length; ++ii) members[ii] = IDs[rand.nextInt(IDs.length)];
+      db.addToGroup(group, members);
+    }
+    Database.disconnect();
+  }
+}
+
+// sends one request, returning its status (or -1 if it couldn't be sent)
+int request (int port, String user, String method, String path, String body) {
+  try {
+    HttpURLConnection c = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+    c.setRequestMethod(method);
+    c.setRequestProperty("Authorization", "Basic " +
+      Base64.getEncoder().encodeToString((user + ":pass").getBytes(StandardCharsets.UTF_8)));
+    if (body != null) {
+      c.setDoOutput(true);
+      try (OutputStream out = c.getOutputStream()) { out.write(body.getBytes(StandardCharsets.UTF_8)); }
+    }
+
+    int status = c.getResponseCode();
+    try (InputStream in = status < 400 ? c.getInputStream() : c.getErrorStream()) {
+      if (in != null) while (in.read(new byte[8192]) > 0) { } // drain, so the connection is reused
+    }
+    return status;
+
+  } catch (IOException ex) {
+    return -1;
+  }
+}
+
+// runs the clients against a server with the given number of sessions; returns
+// { requests, errors, requests/s, p50, p95, p99 (in microseconds) }
+long[] run (int sessions) throws Exception {
+  ApiServer server = ApiServer.start(DB_NAME, "bootpass", 0, sessions).get();
+  int port = server.port();
+
+  // one request per user first, so the pool's sessions are already open
+  for (int uu = 0; uu < N_USERS; ++uu) request(port, "user" + (char) ('a' + uu), "GET", "/groups", null);
+
+  long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+  List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+  AtomicLong errors = new AtomicLong();
+  ExecutorService clients = Executors.newFixedThreadPool(N_CLIENTS);
+
+  for (int cc = 0; cc < N_CLIENTS; ++cc) {
+    int client = cc;
+    clients.submit(() -> {
+      Random rand = new Random(client);
+      String user = "user" + (char) ('a' + client % N_USERS);
+      long[] times = new long[1 << 16];
+      int n = 0;
+
+      while (System.nanoTime() < end && n < times.length) {
+        int pick = rand.nextInt(10);
+        long start = System.nanoTime();
+        int status =
+          pick < 8 ? request(port, user, "GET", "/contacts?limit=50&q=" +
+                       FIRST[rand.nextInt(FIRST.length)].substring(0, 2) + "+" + SUR[rand.nextInt(SUR.length)].charAt(0), null) :
+          pick < 9 ? request(port, user, "GET", "/groups/" + GROUP[rand.nextInt(GROUP.length)], null) :
+                     request(port, user, "POST", "/contacts", "{\"firstname\":\"load\",\"surname\":\"test\"}");
+        times[n++] = System.nanoTime() - start;
+        if (status < 200 || status >= 300) errors.incrementAndGet();
+      }
+      latencies.add(Arrays.copyOf(times, n));
+    });
+  }
+
+  clients.shutdown();
+  clients.awaitTermination(SECONDS + 60, TimeUnit.SECONDS);
+  server.stop();
+
+  long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+  if (all.length == 0) return new long[6];
+  return new long[]{ all.length, errors.get(), all.length / SECONDS,
+    all[all.length / 2] / 1000, all[all.length * 95 / 100] / 1000, all[all.length * 99 / 100] / 1000 };
+}
+
+seed()
+
+System.out.printf("%n  %d clients, %d users with %d contacts each, %d s per run (latencies in us)%n%n",
+  N_CLIENTS, N_USERS, N_CONTACTS, SECONDS)
+System.out.printf("  %-10s %10s %8s %10s %10s %10s %10s%n", "sessions", "requests", "errors", "req/s", "p50", "p95", "p99")
+
+for (int sessions : new int[]{ 1, 4, 16, 64 }) {
+  long[] r = run(sessions);
+  System.out.printf("  %-10d %10d %8d %10d %10d %10d %10d%n", sessions, r[0], r[1], r[2], r[3], r[4], r[5]);
+}
+
+/exit
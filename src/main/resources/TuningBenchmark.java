@@ -0,0 +1,71 @@
+//------------------------------------------------------------------------------
+//
+//  Run this script in the jshell to compare Derby tuning profiles on a
+//  generated dataset. Each profile gets its own fresh database.
+//
+//    $ jshell --class-path target/assignment-1.0-SNAPSHOT-jar-with-dependencies.jar \
+//        src/main/resources/TuningBenchmark.java 2>/dev/null
+//
+//  (stderr is discarded because every Database call logs a message.)
+//
+//------------------------------------------------------------------------------
+
+import watson.*
+import java.util.*
+
+// size of the generated dataset
+int N_CONTACTS = 5000
+int N_READS    = 20
+int N_LOOKUPS  = 2000
+
+String[] FIRST = { "mark", "julia", "chet", "harry", "phil", "susan", "raj", "quentin", "george", "tom", "edward", "aoife", "niamh", "sean" }
+String[] SUR   = { "jones", "stevens", "watson", "mumson", "O'Brien", "wills", "unger", "murphy", "kelly", "byrne", "ryan", "walsh" }
+String[] GROUP = { "family", "lads", "work", "clients", "hiking" }
+
+// returns elapsed milliseconds since `start` (from System.nanoTime())
+long ms (long start) { return (System.nanoTime() - start) / 1000000; }
+
+// builds a fresh database with the given profile and times a mixed workload
+long[] bench (TuningProfile profile) {
+  String name = "bench-" + profile.toString().toLowerCase();
+  Random rand = new Random(42); // same dataset for every profile
+
+  Database db = Database.connect(name, "bootpass", "owner", "ownerpass", profile).get();
+  db.addUser("bench", "benchpass", "ownerpass");
+  Database.disconnect();
+  db = Database.connect(name, "bootpass", "bench", "benchpass", profile).get();
+
+  long start = System.nanoTime();
+  Contact c = new Contact();
+  for (int ii = 0; ii < N_CONTACTS; ++ii)
+    db.addContact(c.set("firstname", FIRST[rand.nextInt(FIRST.length)])
+      .set("surname", SUR[rand.nextInt(SUR.length)])
+      .set("phone", "+353" + (100000000 + rand.nextInt(900000000))));
+  long insert = ms(start);
+
+  start = System.nanoTime();
+  for (int ii = 1; ii <= N_CONTACTS; ii += 3)
+    db.addToGroup(GROUP[rand.nextInt(GROUP.length)], ii);
+  long group = ms(start);
+
+  start = System.nanoTime();
+  for (int ii = 0; ii < N_READS; ++ii) db.table("bench.contacts");
+  long scan = ms(start);
+
+  start = System.nanoTime();
+  for (int ii = 0; ii < N_LOOKUPS; ++ii) db.getContact(1 + rand.nextInt(N_CONTACTS));
+  long lookup = ms(start);
+
+  Database.disconnect();
+  return new long[]{ insert, group, scan, lookup };
+}
+
+System.out.printf("%n  %d contacts, %d full scans, %d point lookups (times in ms)%n%n", N_CONTACTS, N_READS, N_LOOKUPS)
+System.out.printf("  %-16s %10s %10s %10s %10s%n", "profile", "insert", "addToGroup", "scan", "lookup")
+
+for (TuningProfile p : TuningProfile.values()) {
+  long[] t = bench(p);
+  System.out.printf("  %-16s %10d %10d %10d %10d%n", p, t[0], t[1], t[2], t[3]);
+}
+
+/exit